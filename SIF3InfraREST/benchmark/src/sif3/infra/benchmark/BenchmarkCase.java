@@ -0,0 +1,101 @@
+/*
+ * BenchmarkCase.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single benchmark. The runner calls invoke() repeatedly and measures the average time per call. Anything that must not be
+ * measured (i.e. loading test data) must be done in setup() which is called once before the first warm-up iteration.<br/><br/>
+ * 
+ * The value returned by invoke() is consumed by the runner so that the JIT cannot remove the measured code.
+ * 
+ * @author agent
+ *
+ */
+public abstract class BenchmarkCase
+{
+	private String name;
+	private Map<String, String> params = new LinkedHashMap<String, String>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param name The fully qualified name of the benchmark (i.e. 'conversion.StudentCollectionType.marshalXML').
+	 */
+	public BenchmarkCase(String name)
+	{
+		this.name = name;
+	}
+	
+	public String getName()
+	{
+		return name;
+	}
+
+	public Map<String, String> getParams()
+	{
+		return params;
+	}
+
+	/**
+	 * Adds a parameter to this benchmark. Parameters are reported with the result (i.e. 'size=100').
+	 * 
+	 * @param paramName Name of the parameter.
+	 * @param value Value of the parameter.
+	 * 
+	 * @return This benchmark case so that calls can be chained.
+	 */
+	public BenchmarkCase addParam(String paramName, Object value)
+	{
+		params.put(paramName, String.valueOf(value));
+		return this;
+	}
+	
+	/**
+	 * Called once before the benchmark is run. Default does nothing.
+	 * 
+	 * @throws Exception Setup failed. The benchmark will be skipped.
+	 */
+	public void setup() throws Exception
+	{
+	}
+	
+	/**
+	 * Called once after the last measured iteration (i.e. to stop threads started in setup()). Default does nothing.
+	 * 
+	 * @throws Exception Tear down failed.
+	 */
+	public void tearDown() throws Exception
+	{
+	}
+
+	/**
+	 * The operation to measure.
+	 * 
+	 * @return The result of the operation. It is consumed by the runner.
+	 * 
+	 * @throws Exception The operation failed. The benchmark is aborted.
+	 */
+	public abstract Object invoke() throws Exception;
+	
+	@Override
+	public String toString()
+	{
+		return (params.isEmpty()) ? name : name + " " + params;
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * BenchmarkRunner.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.benchmark;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONObject;
+
+import au.com.systemic.framework.utils.FileReaderWriter;
+
+/**
+ * Simple micro benchmark runner for the framework. Each benchmark is run for a number of warm-up iterations followed by a number
+ * of measured iterations. Each iteration calls the benchmark for a fixed amount of time and records the average time per call.
+ * The score of a benchmark is the mean of its measured iterations in microseconds per operation. The error is the half width
+ * of the 99% confidence interval of that mean.<br/><br/>
+ * 
+ * The results are written as JSON, laid out like the JSON result format of JMH, so that results of different releases can be 
+ * compared with the usual tools.<br/><br/>
+ * 
+ * Usage: BenchmarkRunner [resultFile]<br/>
+ * The following system properties can be used to change the defaults:<br/>
+ * - benchmark.warmup: Number of warm-up iterations (default 3)<br/>
+ * - benchmark.iterations: Number of measured iterations (default 5)<br/>
+ * - benchmark.iterationTime: Time per iteration in milliseconds (default 1000)<br/>
+ * - benchmark.filter: Only run benchmarks whose name contains this value.<br/>
+ * 
+ * @author agent
+ *
+ */
+public class BenchmarkRunner
+{
+	private static final String DEFAULT_RESULT_FILE = "build/benchmark/results.json";
+	
+	/* z value for a 99% confidence interval */
+	private static final double Z_99 = 2.576;
+
+	private int warmupIterations = Integer.getInteger("benchmark.warmup", 3);
+	private int measureIterations = Integer.getInteger("benchmark.iterations", 5);
+	private long iterationTimeMillis = Long.getLong("benchmark.iterationTime", 1000L);
+	private String filter = System.getProperty("benchmark.filter");
+	
+	/* Consumes the results of the benchmark calls so that they cannot be optimised away. */
+	private volatile int sink = 0;
+	
+	/**
+	 * Runs all given benchmarks and returns the results in JMH's JSON layout. If the setup or a call of a benchmark fails then the
+	 * error is printed and that benchmark is skipped. It has no result in this case. tearDown() is called for every benchmark that 
+	 * has been started, even if it failed.
+	 * 
+	 * @param benchmarks The benchmarks to run.
+	 * 
+	 * @return See desc.
+	 * 
+	 * @throws Exception The results could not be created.
+	 */
+	public JSONArray run(List<BenchmarkCase> benchmarks) throws Exception
+	{
+		JSONArray results = new JSONArray();
+		for (BenchmarkCase benchmark : benchmarks)
+		{
+			if ((filter != null) && (benchmark.getName().indexOf(filter) < 0))
+			{
+				continue;
+			}
+			
+			System.out.println("# Benchmark: " + benchmark);
+			double[] scores = runBenchmark(benchmark);
+			if (scores != null)
+			{
+				JSONObject result = makeResult(benchmark, scores);
+				System.out.println(String.format("Result: %.3f +/- %.3f us/op%n", result.getJSONObject("primaryMetric").getDouble("score"), result.getJSONObject("primaryMetric").getDouble("scoreError")));
+				results.put(result);
+			}
+		}
+		return results;
+	}
+	
+	public static void main(String[] args)
+	{
+		// Benchmarks measure the production path. Debug logging would add timers and payload logging.
+		Logger.getRootLogger().setLevel(Level.WARN);
+		
+		String resultFileName = (args.length > 0) ? args[0] : DEFAULT_RESULT_FILE;
+		try
+		{
+			BenchmarkRunner runner = new BenchmarkRunner();
+			List<BenchmarkCase> benchmarks = ConversionBenchmarks.getBenchmarks();
+			benchmarks.addAll(ExecutorBenchmarks.getBenchmarks());
+			JSONArray results = runner.run(benchmarks);
+			
+			File resultFile = new File(resultFileName);
+			if (resultFile.getParentFile() != null)
+			{
+				resultFile.getParentFile().mkdirs();
+			}
+			FileReaderWriter.writeContentToFile(results.toString(2), resultFileName);
+			System.out.println("Results written to " + resultFile.getAbsolutePath());
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	
+	/*
+	 * Runs the warm-up and measured iterations of the given benchmark and returns the scores. Null is returned if the benchmark
+	 * failed. The error is printed in this case.
+	 */
+	private double[] runBenchmark(BenchmarkCase benchmark)
+	{
+		try
+		{
+			benchmark.setup();
+			for (int i = 1; i <= warmupIterations; i++)
+			{
+				System.out.println(String.format("# Warmup Iteration %d: %.3f us/op", i, runIteration(benchmark)));
+			}
+			
+			double[] scores = new double[measureIterations];
+			for (int i = 0; i < measureIterations; i++)
+			{
+				scores[i] = runIteration(benchmark);
+				System.out.println(String.format("Iteration %d: %.3f us/op", i + 1, scores[i]));
+			}
+			return scores;
+		}
+		catch (Exception ex)
+		{
+			System.out.println("# Benchmark " + benchmark.getName() + " failed and is skipped: " + ex.getMessage());
+			ex.printStackTrace();
+			return null;
+		}
+		finally
+		{
+			try
+			{
+				benchmark.tearDown();
+			}
+			catch (Exception ex)
+			{
+				System.out.println("# Tear down of benchmark " + benchmark.getName() + " failed: " + ex.getMessage());
+				ex.printStackTrace();
+			}
+		}
+	}
+	
+	/*
+	 * Calls the benchmark until the iteration time is used up and returns the average time per call in microseconds.
+	 */
+	private double runIteration(BenchmarkCase benchmark) throws Exception
+	{
+		long ops = 0;
+		long start = System.nanoTime();
+		long end = start + (iterationTimeMillis * 1000000L);
+		long now = start;
+		int localSink = 0;
+		do
+		{
+			Object result = benchmark.invoke();
+			localSink += (result != null) ? result.hashCode() : 0;
+			ops++;
+			now = System.nanoTime();
+		}
+		while (now < end);
+		sink += localSink;
+		
+		return (now - start) / 1000.0 / ops;
+	}
+	
+	private JSONObject makeResult(BenchmarkCase benchmark, double[] scores) throws Exception
+	{
+		double mean = 0;
+		for (double score : scores)
+		{
+			mean += score;
+		}
+		mean = mean / scores.length;
+		
+		double error = Double.NaN;
+		if (scores.length > 1)
+		{
+			double variance = 0;
+			for (double score : scores)
+			{
+				variance += (score - mean) * (score - mean);
+			}
+			variance = variance / (scores.length - 1);
+			error = Z_99 * Math.sqrt(variance / scores.length);
+		}
+
+		JSONArray rawData = new JSONArray();
+		for (double score : scores)
+		{
+			rawData.put(score);
+		}
+		
+		JSONObject primaryMetric = new JSONObject();
+		primaryMetric.put("score", mean);
+		primaryMetric.put("scoreError", error);
+		primaryMetric.put("scoreUnit", "us/op");
+		primaryMetric.put("rawData", new JSONArray().put(rawData));
+		
+		JSONObject params = new JSONObject();
+		for (Map.Entry<String, String> param : benchmark.getParams().entrySet())
+		{
+			params.put(param.getKey(), param.getValue());
+		}
+		
+		JSONObject result = new JSONObject();
+		result.put("benchmark", benchmark.getName());
+		result.put("mode", "avgt");
+		result.put("warmupIterations", warmupIterations);
+		result.put("measurementIterations", measureIterations);
+		result.put("measurementTime", iterationTimeMillis + " ms");
+		result.put("jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+		if (params.length() > 0)
+		{
+			result.put("params", params);
+		}
+		result.put("primaryMetric", primaryMetric);
+		
+		return result;
+	}
+}
@@ -0,0 +1,261 @@
+/*
+ * ConversionBenchmarks.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.benchmark;
+
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+import sif.dd.au30.conversion.DataModelMarshalFactory;
+import sif.dd.au30.conversion.DataModelUnmarshalFactory;
+import sif.dd.au30.model.StudentCollectionType;
+import sif.dd.au30.model.StudentPersonalType;
+import sif3.common.conversion.MarshalFactory;
+import sif3.common.conversion.UnmarshalFactory;
+import sif3.common.utils.UUIDGenerator;
+import sif3.infra.common.conversion.InfraMarshalFactory;
+import sif3.infra.common.conversion.InfraUnmarshalFactory;
+import sif3.infra.common.model.EnvironmentType;
+import sif3.infra.common.model.ErrorType;
+import sif3.infra.common.model.QueueType;
+import au.com.systemic.framework.utils.FileReaderWriter;
+
+/**
+ * Benchmarks for the XML and JSON conversion paths of the framework. For each object type there is a marshal and an unmarshal 
+ * benchmark for XML and JSON:<br/>
+ * - Infrastructure objects: EnvironmentType (TestData/xml/input/environment_large.xml), QueueType and ErrorType.<br/>
+ * - AU data model: StudentCollectionType with 1, 100 and 10,000 students. The students are taken from 
+ *   TestData/xml/input/StudentPersonals.xml and repeated (with a new RefId) as often as needed.<br/><br/>
+ * 
+ * The benchmarks use the same marshal and unmarshal factories as the framework does at runtime.
+ * 
+ * @author agent
+ *
+ */
+public class ConversionBenchmarks
+{
+	private static final String TEST_DATA_DIR = "TestData/xml/input/";
+	private static final String ENVIRONMENT_FILE = TEST_DATA_DIR + "environment_large.xml";
+	private static final String STUDENTS_FILE = TEST_DATA_DIR + "StudentPersonals.xml";
+	
+	private static final int[] STUDENT_COLLECTION_SIZES = {1, 100, 10000};
+	
+	private static final MarshalFactory infraMarshaller = new InfraMarshalFactory();
+	private static final UnmarshalFactory infraUnmarshaller = new InfraUnmarshalFactory();
+	private static final MarshalFactory dmMarshaller = new DataModelMarshalFactory();
+	private static final UnmarshalFactory dmUnmarshaller = new DataModelUnmarshalFactory();
+	
+	/**
+	 * Returns all conversion benchmarks in the order they shall be run.
+	 * 
+	 * @return See desc.
+	 */
+	public static List<BenchmarkCase> getBenchmarks()
+	{
+		List<BenchmarkCase> benchmarks = new ArrayList<BenchmarkCase>();
+		
+		addConversionBenchmarks(benchmarks, "EnvironmentType", null, new ObjectSource()
+		{
+			@Override
+			public Object create() throws Exception
+			{
+				return infraUnmarshaller.unmarshal(FileReaderWriter.getFileContent(ENVIRONMENT_FILE), EnvironmentType.class, MediaType.APPLICATION_XML_TYPE);
+			}
+		}, infraMarshaller, infraUnmarshaller);
+		
+		addConversionBenchmarks(benchmarks, "QueueType", null, new ObjectSource()
+		{
+			@Override
+			public Object create() throws Exception
+			{
+				return makeQueue();
+			}
+		}, infraMarshaller, infraUnmarshaller);
+
+		addConversionBenchmarks(benchmarks, "ErrorType", null, new ObjectSource()
+		{
+			@Override
+			public Object create() throws Exception
+			{
+				return makeError();
+			}
+		}, infraMarshaller, infraUnmarshaller);
+		
+		for (final int size : STUDENT_COLLECTION_SIZES)
+		{
+			addConversionBenchmarks(benchmarks, "StudentCollectionType", size, new ObjectSource()
+			{
+				@Override
+				public Object create() throws Exception
+				{
+					return makeStudents(size);
+				}
+			}, dmMarshaller, dmUnmarshaller);
+		}
+		
+		return benchmarks;
+	}
+
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	
+	/*
+	 * Creates the object to marshal. Called in setup only.
+	 */
+	private interface ObjectSource
+	{
+		public Object create() throws Exception;
+	}
+	
+	/*
+	 * Adds the marshal and unmarshal benchmarks for XML and JSON for the object created by the given source.
+	 */
+	private static void addConversionBenchmarks(List<BenchmarkCase> benchmarks, String typeName, Integer size, ObjectSource source, MarshalFactory marshaller, UnmarshalFactory unmarshaller)
+	{
+		MediaType[] mediaTypes = {MediaType.APPLICATION_XML_TYPE, MediaType.APPLICATION_JSON_TYPE};
+		for (MediaType mediaType : mediaTypes)
+		{
+			String format = MediaType.APPLICATION_JSON_TYPE.equals(mediaType) ? "JSON" : "XML";
+			BenchmarkCase marshal = new MarshalBenchmark("conversion." + typeName + ".marshal" + format, source, marshaller, mediaType);
+			BenchmarkCase unmarshal = new UnmarshalBenchmark("conversion." + typeName + ".unmarshal" + format, source, marshaller, unmarshaller, mediaType);
+			if (size != null)
+			{
+				marshal.addParam("size", size);
+				unmarshal.addParam("size", size);
+			}
+			benchmarks.add(marshal);
+			benchmarks.add(unmarshal);
+		}
+	}
+
+	private static class MarshalBenchmark extends BenchmarkCase
+	{
+		private ObjectSource source;
+		private MarshalFactory marshaller;
+		private MediaType mediaType;
+		private Object object = null;
+		
+		MarshalBenchmark(String name, ObjectSource source, MarshalFactory marshaller, MediaType mediaType)
+		{
+			super(name);
+			this.source = source;
+			this.marshaller = marshaller;
+			this.mediaType = mediaType;
+		}
+
+		@Override
+		public void setup() throws Exception
+		{
+			object = source.create();
+		}
+
+		@Override
+		public Object invoke() throws Exception
+		{
+			return marshaller.marshal(object, mediaType);
+		}
+	}
+	
+	private static class UnmarshalBenchmark extends BenchmarkCase
+	{
+		private ObjectSource source;
+		private MarshalFactory marshaller;
+		private UnmarshalFactory unmarshaller;
+		private MediaType mediaType;
+		private Class<?> objectClass = null;
+		private String payload = null;
+		
+		UnmarshalBenchmark(String name, ObjectSource source, MarshalFactory marshaller, UnmarshalFactory unmarshaller, MediaType mediaType)
+		{
+			super(name);
+			this.source = source;
+			this.marshaller = marshaller;
+			this.unmarshaller = unmarshaller;
+			this.mediaType = mediaType;
+		}
+
+		@Override
+		public void setup() throws Exception
+		{
+			Object object = source.create();
+			objectClass = object.getClass();
+			payload = marshaller.marshal(object, mediaType);
+		}
+
+		@Override
+		public Object invoke() throws Exception
+		{
+			return unmarshaller.unmarshal(payload, objectClass, mediaType);
+		}
+	}
+	
+	private static QueueType makeQueue()
+	{
+		QueueType queue = new QueueType();
+		queue.setId(UUIDGenerator.getUUID());
+		queue.setName("StudentConsumerQueue");
+		queue.setPolling("IMMEDIATE");
+		queue.setOwnerId(UUIDGenerator.getUUID());
+		queue.setQueueUri("http://localhost:9080/SIF3InfraREST/sif3/queues/" + queue.getId());
+		queue.setOwnerUri("http://localhost:9080/SIF3InfraREST/sif3/environments/" + queue.getOwnerId());
+		queue.setIdleTimeout(30000L);
+		queue.setMinWaitTime(0L);
+		queue.setMaxConcurrentConnections(5L);
+		queue.setCreated(new GregorianCalendar());
+		queue.setLastAccessed(new GregorianCalendar());
+		queue.setLastModified(new GregorianCalendar());
+		queue.setMessageCount(42L);
+		return queue;
+	}
+	
+	private static ErrorType makeError()
+	{
+		ErrorType error = new ErrorType();
+		error.setId(UUIDGenerator.getUUID());
+		error.setCode(404);
+		error.setScope("StudentPersonals");
+		error.setMessage("Student with RefId 164da5d9bcbf4cf8a058ba0b0efde9ba does not exist.");
+		error.setDescription("The requested object could not be found in the zone 'auSchoolTestingZone'.");
+		return error;
+	}
+	
+	/*
+	 * Returns a student collection with the given number of students. The students of the test data file are repeated as
+	 * often as required. Each copy gets a new RefId.
+	 */
+	private static StudentCollectionType makeStudents(int size) throws Exception
+	{
+		String studentsXML = FileReaderWriter.getFileContent(STUDENTS_FILE);
+		StudentCollectionType result = new StudentCollectionType();
+		while (result.getStudentPersonal().size() < size)
+		{
+			StudentCollectionType students = (StudentCollectionType) dmUnmarshaller.unmarshal(studentsXML, StudentCollectionType.class, MediaType.APPLICATION_XML_TYPE);
+			for (StudentPersonalType student : students.getStudentPersonal())
+			{
+				if (result.getStudentPersonal().size() == size)
+				{
+					break;
+				}
+				student.setRefId(UUIDGenerator.getUUIDWithoutDashes());
+				result.getStudentPersonal().add(student);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * ExecutorBenchmarks.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import sif3.common.utils.ExecutorStrategy;
+import sif3.common.utils.ExecutorStrategy.Mode;
+
+/**
+ * Benchmarks for the executor strategies (platform vs virtual threads). Each benchmark starts a number of long living loops the
+ * same way the framework starts message queue readers and local consumers. Each loop blocks on a local queue, takes a work item,
+ * simulates a blocking HTTP call (sleep of 1ms) and signals completion. One operation hands a batch of work items to the loops and
+ * waits until all of them are done, so the throughput is 'batch' items per operation.<br/><br/>
+ * 
+ * The number of live platform (OS) threads of the JVM after all loops have been started is reported as the 'platformThreads' 
+ * parameter of the result. For virtual threads this includes the carrier threads. The 'actualMode' parameter shows PLATFORM for VIRTUAL benchmarks if the JVM does not support virtual threads.
+ * 
+ * @author agent
+ *
+ */
+public class ExecutorBenchmarks
+{
+	private static final int[] NUM_LOOPS = {50, 500};
+	private static final int BATCH_SIZE = 1000;
+	private static final long SIMULATED_IO_MILLIS = 1;
+	
+	public static List<BenchmarkCase> getBenchmarks()
+	{
+		List<BenchmarkCase> benchmarks = new ArrayList<BenchmarkCase>();
+		for (Mode mode : Mode.values())
+		{
+			for (int numLoops : NUM_LOOPS)
+			{
+				benchmarks.add(new BlockingLoopBenchmark(mode, numLoops));
+			}
+		}
+		return benchmarks;
+	}
+	
+	private static class BlockingLoopBenchmark extends BenchmarkCase
+	{
+		private Mode mode;
+		private int numLoops;
+		private ExecutorService service = null;
+		private BlockingQueue<CountDownLatch> workQueue = new LinkedBlockingQueue<CountDownLatch>();
+		
+		private BlockingLoopBenchmark(Mode mode, int numLoops)
+		{
+			super("executor." + mode.name().toLowerCase() + ".blockingLoops");
+			this.mode = mode;
+			this.numLoops = numLoops;
+			addParam("loops", numLoops);
+			addParam("batch", BATCH_SIZE);
+		}
+
+		@Override
+		public void setup() throws Exception
+		{
+			ExecutorStrategy strategy = new ExecutorStrategy(mode);
+			service = strategy.newFixedThreadPool(numLoops, "BenchmarkLoop", true);
+			for (int i = 0; i < numLoops; i++)
+			{
+				service.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						try
+						{
+							while (true)
+							{
+								CountDownLatch done = workQueue.take();
+								Thread.sleep(SIMULATED_IO_MILLIS);
+								done.countDown();
+							}
+						}
+						catch (InterruptedException ex)
+						{
+							// benchmark finished
+						}
+					}
+				});
+			}
+			
+			// Ensure all loops have started and are blocked on the queue.
+			invoke();
+			addParam("actualMode", strategy.getMode());
+			addParam("platformThreads", ManagementFactory.getThreadMXBean().getThreadCount());
+			System.out.println("# Live platform threads: " + getParams().get("platformThreads") + " (" + strategy.getMode() + ")");
+		}
+
+		@Override
+		public Object invoke() throws Exception
+		{
+			CountDownLatch done = new CountDownLatch(BATCH_SIZE);
+			for (int i = 0; i < BATCH_SIZE; i++)
+			{
+				workQueue.put(done);
+			}
+			done.await();
+			return done;
+		}
+
+		@Override
+		public void tearDown() throws Exception
+		{
+			service.shutdownNow();
+			service.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+}
@@ -60,6 +60,9 @@ public class CommonConstants
 	
 	public static final int DEFAULT_LONGPOLL_WAIT = 120;
 	
+	/* Initial wait in seconds after an empty or failed queue poll. It doubles with each further empty poll up to the poll frequency. */
+	public static final int DEFAULT_POLL_MIN_WAIT = 1;
+	
 	/*-----------------------------------------------------------*/
 	/* Default values and other important constants.             */
 	/*-----------------------------------------------------------*/
@@ -124,5 +127,6 @@ public class CommonConstants
 	/* HTTP Status that are not listed in the Response.Status class --*/
 	/*----------------------------------------------------------------*/
 	public static final int RESPONSE_TOO_LARGE = 413;
+	public static final int GATEWAY_TIMEOUT = 504;
 	
 }
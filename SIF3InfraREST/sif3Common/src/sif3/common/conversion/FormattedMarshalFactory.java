@@ -0,0 +1,46 @@
+/*
+ * FormattedMarshalFactory.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.common.conversion;
+
+import javax.ws.rs.core.MediaType;
+
+import sif3.common.exception.MarshalException;
+import sif3.common.exception.UnsupportedMediaTypeExcpetion;
+
+/**
+ * Extension of the MarshalFactory for marshal factories that allow the caller to choose the output mode (pretty or compact) for each
+ * call. The methods of the MarshalFactory use the output mode configured for the adapter (see JAXBUtils.setDefaultOutputMode()).
+ * 
+ * @author agent
+ *
+ */
+public interface FormattedMarshalFactory extends MarshalFactory
+{
+	/**
+	 * Same as MarshalFactory.marshal(Object, MediaType) but the XML is laid out according to the given output mode rather than the
+	 * adapter's default. The output mode has no effect on JSON.
+	 * 
+	 * @param obj The object to be marshaled
+	 * @param mediaType Indicates what the object shall be marshaled into (JSON or XML).
+	 * @param outputMode PRETTY or COMPACT. If null then the adapter's default output mode is used.
+	 * 
+	 * @return The String representation of the object.
+	 * 
+	 * @throws MarshalException Failure to marshal the object.
+	 * @throws UnsupportedMediaTypeExcpetion If the media type requested is not a supported format.
+	 */
+	public String marshal(Object obj, MediaType mediaType, OutputMode outputMode) throws MarshalException, UnsupportedMediaTypeExcpetion;
+}
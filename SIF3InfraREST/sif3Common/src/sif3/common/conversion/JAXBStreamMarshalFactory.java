@@ -0,0 +1,352 @@
+/*
+ * JAXBStreamMarshalFactory.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.common.conversion;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.ws.rs.core.MediaType;
+import javax.xml.bind.JAXBElement;
+
+import org.apache.log4j.Logger;
+
+import sif3.common.exception.MarshalException;
+import sif3.common.exception.UnsupportedMediaTypeExcpetion;
+import sif3.common.utils.JAXBUtils;
+
+/**
+ * This class adds stream support to a marshal factory that doesn't implement the StreamMarshalFactory interface itself. This is the
+ * case for the data model marshal factories (i.e. DataModelMarshalFactory) that ship precompiled with the data model libraries. These
+ * factories wrap JAXB generated objects into a JAXBElement with the ObjectFactory of the data model and marshal it with JAXBUtils. This
+ * adapter does the same but writes straight to an output stream rather than building a String first.<br/><br/>
+ * 
+ * The adapter is only used for factories that support no other media types than XML and JSON (see getStreamMarshaller()). Custom
+ * marshallers such as a CSV marshaller are not affected. If an object is not a JAXB generated object (i.e. there is no ObjectFactory
+ * with a create method for it in its package) then the String based marshal method of the wrapped factory is used and the result is 
+ * written to the stream.<br/><br/>
+ * 
+ * The adapter bypasses the wrapped factory for JAXB generated objects, so anything special that factory does (i.e. namespace 
+ * prefixes or JSON conventions) is lost. Therefore it is off by default and must be turned on with the property 
+ * 'adapter.marshal.stream' in the consumer or provider property file, and only if the data model marshal factories are plain JAXB
+ * wrappers such as the DataModelMarshalFactory. See setEnabled().
+ * 
+ * @author agent
+ *
+ */
+public class JAXBStreamMarshalFactory implements StreamMarshalFactory
+{
+	protected static final Logger logger = Logger.getLogger(JAXBStreamMarshalFactory.class);
+
+	private static final String STREAM_ENCODING = "UTF-8";
+	private static final String OBJECT_FACTORY = "ObjectFactory";
+	
+	// Media types a JAXB based marshal factory supports.
+	private static final Set<MediaType> JAXB_MEDIA_TYPES = new HashSet<MediaType>(Arrays.asList(MediaType.APPLICATION_XML_TYPE, MediaType.TEXT_XML_TYPE, MediaType.APPLICATION_JSON_TYPE));
+
+	// ObjectFactory instance and create method for each class. Holds NO_CREATE_METHOD if the class has no create method.
+	private static final ConcurrentMap<Class<?>, CreateMethod> CREATE_METHODS = new ConcurrentHashMap<Class<?>, CreateMethod>();
+	private static final CreateMethod NO_CREATE_METHOD = new CreateMethod(null, null);
+	
+	private static volatile boolean enabled = false;
+	
+	private MarshalFactory marshaller;
+	
+	/**
+	 * Turns the use of this adapter on or off for the whole adapter. Default is off.
+	 * 
+	 * @param enabled TRUE: Marshal factories without stream support are wrapped with this adapter. FALSE: They are not.
+	 */
+	public static void setEnabled(boolean enabled)
+	{
+		JAXBStreamMarshalFactory.enabled = enabled;
+	}
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Returns a stream capable version of the given marshal factory. If the factory implements StreamMarshalFactory it is returned
+	 * as is. If it is a JAXB based factory (supports XML and/or JSON only) and this adapter is enabled then it is wrapped in this adapter.
+	 * In all other cases null is returned and the String based methods of the factory must be used.
+	 * 
+	 * @param marshaller The marshal factory. Can be null.
+	 * 
+	 * @return See desc.
+	 */
+	public static StreamMarshalFactory getStreamMarshaller(MarshalFactory marshaller)
+	{
+		if (marshaller instanceof StreamMarshalFactory)
+		{
+			return (StreamMarshalFactory)marshaller;
+		}
+		if (enabled && (marshaller != null) && isJAXBMediaTypes(marshaller.getSupportedMediaTypes()))
+		{
+			return new JAXBStreamMarshalFactory(marshaller);
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns TRUE if the given media types are not empty and none of them is anything other than XML or JSON.
+	 * 
+	 * @param mediaTypes The media types supported by a marshal or unmarshal factory.
+	 * 
+	 * @return See desc.
+	 */
+	public static boolean isJAXBMediaTypes(Set<MediaType> mediaTypes)
+	{
+		return (mediaTypes != null) && !mediaTypes.isEmpty() && JAXB_MEDIA_TYPES.containsAll(mediaTypes);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param marshaller The marshal factory this adapter adds stream support to. Its methods are used for all String based calls.
+	 */
+	public JAXBStreamMarshalFactory(MarshalFactory marshaller)
+	{
+		this.marshaller = marshaller;
+	}
+	
+	/**
+	 * Returns the marshal factory wrapped by this adapter.
+	 * 
+	 * @return See desc.
+	 */
+	public MarshalFactory getMarshaller()
+	{
+		return marshaller;
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.MarshalFactory#marshalToXML(java.lang.Object)
+	 */
+	@Override
+	public String marshalToXML(Object obj) throws MarshalException, UnsupportedMediaTypeExcpetion
+	{
+		return marshaller.marshalToXML(obj);
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.MarshalFactory#marshalToJSON(java.lang.Object)
+	 */
+	@Override
+	public String marshalToJSON(Object obj) throws MarshalException, UnsupportedMediaTypeExcpetion
+	{
+		return marshaller.marshalToJSON(obj);
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.MarshalFactory#marshal(java.lang.Object, javax.ws.rs.core.MediaType)
+	 */
+	@Override
+	public String marshal(Object obj, MediaType mediaType) throws MarshalException, UnsupportedMediaTypeExcpetion
+	{
+		return marshaller.marshal(obj, mediaType);
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.StreamMarshalFactory#marshalToXML(java.lang.Object, java.io.OutputStream)
+	 */
+	@Override
+	public void marshalToXML(Object obj, OutputStream out) throws MarshalException, UnsupportedMediaTypeExcpetion
+	{
+		JAXBElement<?> element = createElement(obj);
+		if (element != null)
+		{
+			JAXBUtils.marshalToXML(element, out);
+		}
+		else
+		{
+			write(marshaller.marshalToXML(obj), out);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.StreamMarshalFactory#marshalToJSON(java.lang.Object, java.io.OutputStream)
+	 */
+	@Override
+	public void marshalToJSON(Object obj, OutputStream out) throws MarshalException, UnsupportedMediaTypeExcpetion
+	{
+		JAXBElement<?> element = createElement(obj);
+		if (element != null)
+		{
+			JAXBUtils.marshalToJSON(element, out);
+		}
+		else
+		{
+			write(marshaller.marshalToJSON(obj), out);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.StreamMarshalFactory#marshal(java.lang.Object, javax.ws.rs.core.MediaType, java.io.OutputStream)
+	 */
+	@Override
+	public void marshal(Object obj, MediaType mediaType, OutputStream out) throws MarshalException, UnsupportedMediaTypeExcpetion
+	{
+		if ((mediaType != null) && marshaller.isSupported(mediaType))
+		{
+			if (MediaType.APPLICATION_XML_TYPE.isCompatible(mediaType) || MediaType.TEXT_XML_TYPE.isCompatible(mediaType))
+			{
+				marshalToXML(obj, out);
+				return;
+			}
+			else if (MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType))
+			{
+				marshalToJSON(obj, out);
+				return;
+			}
+		}
+		// If we get here then we deal with an unknown media type
+		throw new UnsupportedMediaTypeExcpetion("Unsupported media type: " + mediaType + ". Cannot marshal the given input to this media type.");
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.MediaTypeOperations#getDefault()
+	 */
+	@Override
+	public MediaType getDefault()
+	{
+		return marshaller.getDefault();
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.MediaTypeOperations#isSupported(javax.ws.rs.core.MediaType)
+	 */
+	@Override
+	public boolean isSupported(MediaType mediaType)
+	{
+		return marshaller.isSupported(mediaType);
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.MediaTypeOperations#getSupportedMediaTypes()
+	 */
+	@Override
+	public Set<MediaType> getSupportedMediaTypes()
+	{
+		return marshaller.getSupportedMediaTypes();
+	}
+
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	/*
+	 * Wraps the given object into a JAXBElement using the create method of the ObjectFactory in the package of the object's class. 
+	 * Returns null if there is no such create method.
+	 */
+	private JAXBElement<?> createElement(Object obj) throws MarshalException
+	{
+		if (obj == null)
+		{
+			return null;
+		}
+		CreateMethod createMethod = getCreateMethod(obj.getClass());
+		if (createMethod == NO_CREATE_METHOD)
+		{
+			return null;
+		}
+		try
+		{
+			return (JAXBElement<?>)createMethod.method.invoke(createMethod.objectFactory, obj);
+		}
+		catch (Exception ex)
+		{
+			throw new MarshalException("Failed to create JAXBElement for object of type "+obj.getClass().getSimpleName()+": "+ex.getMessage(), ex);
+		}
+	}
+	
+	private static CreateMethod getCreateMethod(Class<?> clazz)
+	{
+		CreateMethod createMethod = CREATE_METHODS.get(clazz);
+		if (createMethod == null)
+		{
+			createMethod = findCreateMethod(clazz);
+			CREATE_METHODS.putIfAbsent(clazz, createMethod);
+		}
+		return createMethod;
+	}
+	
+	/*
+	 * JAXB generates an ObjectFactory class in the package of the model classes. It has one create method per root element that takes
+	 * the object and returns a JAXBElement. If there is more than one for a class the last one is used like the data model marshal
+	 * factories do.
+	 */
+	private static CreateMethod findCreateMethod(Class<?> clazz)
+	{
+		if (clazz.getPackage() == null)
+		{
+			return NO_CREATE_METHOD;
+		}
+		try
+		{
+			Class<?> factoryClass = Class.forName(clazz.getPackage().getName() + "." + OBJECT_FACTORY, true, clazz.getClassLoader());
+			Method createMethod = null;
+			for (Method method : factoryClass.getMethods())
+			{
+				if ((method.getParameterTypes().length == 1) && method.getParameterTypes()[0].equals(clazz) && method.getReturnType().equals(JAXBElement.class))
+				{
+					createMethod = method;
+				}
+			}
+			if (createMethod != null)
+			{
+				return new CreateMethod(factoryClass.newInstance(), createMethod);
+			}
+		}
+		catch (Exception ex)
+		{
+			logger.debug("No JAXB ObjectFactory found for "+clazz.getName()+": "+ex.getMessage());
+		}
+		return NO_CREATE_METHOD;
+	}
+
+	private void write(String payload, OutputStream out) throws MarshalException
+	{
+		if (payload != null)
+		{
+			try
+			{
+				out.write(payload.getBytes(STREAM_ENCODING));
+			}
+			catch (IOException ex)
+			{
+				throw new MarshalException("Failed to write marshalled payload to stream: "+ex.getMessage(), ex);
+			}
+		}
+	}
+	
+	private static class CreateMethod
+	{
+		private Object objectFactory;
+		private Method method;
+		
+		CreateMethod(Object objectFactory, Method method)
+		{
+			this.objectFactory = objectFactory;
+			this.method = method;
+		}
+	}
+}
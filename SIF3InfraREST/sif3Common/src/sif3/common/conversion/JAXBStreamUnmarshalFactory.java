@@ -0,0 +1,222 @@
+/*
+ * JAXBStreamUnmarshalFactory.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.common.conversion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Set;
+
+import javax.ws.rs.core.MediaType;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+import sif3.common.exception.UnmarshalException;
+import sif3.common.exception.UnsupportedMediaTypeExcpetion;
+import sif3.common.utils.JAXBUtils;
+
+/**
+ * This class adds stream support to an unmarshal factory that doesn't implement the StreamUnmarshalFactory interface itself. This is
+ * the case for the data model unmarshal factories (i.e. DataModelUnmarshalFactory) that ship precompiled with the data model libraries.
+ * These factories unmarshal JAXB generated objects with JAXBUtils. This adapter does the same but reads straight from an input stream 
+ * rather than from a String that holds the full payload.<br/><br/>
+ * 
+ * The adapter is only used for factories that support no other media types than XML and JSON (see getStreamUnmarshaller()). If the
+ * target class is not a JAXB generated class then the stream is read into a String and the String based unmarshal method of the 
+ * wrapped factory is used. The adapter is turned on and off together with the JAXBStreamMarshalFactory.
+ * 
+ * @author agent
+ *
+ */
+public class JAXBStreamUnmarshalFactory implements StreamUnmarshalFactory
+{
+	private static final String STREAM_ENCODING = "UTF-8";
+	
+	private UnmarshalFactory unmarshaller;
+
+	/**
+	 * Returns a stream capable version of the given unmarshal factory. If the factory implements StreamUnmarshalFactory it is returned
+	 * as is. If it is a JAXB based factory (supports XML and/or JSON only) and the stream adapters are enabled (see 
+	 * JAXBStreamMarshalFactory.setEnabled()) then it is wrapped in this adapter. In all other cases null is returned and the String based
+	 * methods of the factory must be used.
+	 * 
+	 * @param unmarshaller The unmarshal factory. Can be null.
+	 * 
+	 * @return See desc.
+	 */
+	public static StreamUnmarshalFactory getStreamUnmarshaller(UnmarshalFactory unmarshaller)
+	{
+		if (unmarshaller instanceof StreamUnmarshalFactory)
+		{
+			return (StreamUnmarshalFactory)unmarshaller;
+		}
+		if (JAXBStreamMarshalFactory.isEnabled() && (unmarshaller != null) && JAXBStreamMarshalFactory.isJAXBMediaTypes(unmarshaller.getSupportedMediaTypes()))
+		{
+			return new JAXBStreamUnmarshalFactory(unmarshaller);
+		}
+		return null;
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param unmarshaller The unmarshal factory this adapter adds stream support to. Its methods are used for all String based calls.
+	 */
+	public JAXBStreamUnmarshalFactory(UnmarshalFactory unmarshaller)
+	{
+		this.unmarshaller = unmarshaller;
+	}
+	
+	/**
+	 * Returns the unmarshal factory wrapped by this adapter.
+	 * 
+	 * @return See desc.
+	 */
+	public UnmarshalFactory getUnmarshaller()
+	{
+		return unmarshaller;
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.UnmarshalFactory#unmarshalFromXML(java.lang.String, java.lang.Class)
+	 */
+	@Override
+	public Object unmarshalFromXML(String payload, Class<?> clazz) throws UnmarshalException, UnsupportedMediaTypeExcpetion
+	{
+		return unmarshaller.unmarshalFromXML(payload, clazz);
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.UnmarshalFactory#unmarshalFromJSON(java.lang.String, java.lang.Class)
+	 */
+	@Override
+	public Object unmarshalFromJSON(String payload, Class<?> clazz) throws UnmarshalException, UnsupportedMediaTypeExcpetion
+	{
+		return unmarshaller.unmarshalFromJSON(payload, clazz);
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.UnmarshalFactory#unmarshal(java.lang.String, java.lang.Class, javax.ws.rs.core.MediaType)
+	 */
+	@Override
+	public Object unmarshal(String payload, Class<?> clazz, MediaType mediaType) throws UnmarshalException, UnsupportedMediaTypeExcpetion
+	{
+		return unmarshaller.unmarshal(payload, clazz, mediaType);
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.StreamUnmarshalFactory#unmarshalFromXML(java.io.InputStream, java.lang.Class)
+	 */
+	@Override
+	public Object unmarshalFromXML(InputStream in, Class<?> clazz) throws UnmarshalException, UnsupportedMediaTypeExcpetion
+	{
+		if (isJAXBClass(clazz))
+		{
+			return JAXBUtils.unmarshalFromXMLIntoObject(in, clazz);
+		}
+		return unmarshaller.unmarshalFromXML(read(in), clazz);
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.StreamUnmarshalFactory#unmarshalFromJSON(java.io.InputStream, java.lang.Class)
+	 */
+	@Override
+	public Object unmarshalFromJSON(InputStream in, Class<?> clazz) throws UnmarshalException, UnsupportedMediaTypeExcpetion
+	{
+		if (isJAXBClass(clazz))
+		{
+			return JAXBUtils.unmarshalFromJSONIntoObject(in, clazz);
+		}
+		return unmarshaller.unmarshalFromJSON(read(in), clazz);
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.StreamUnmarshalFactory#unmarshal(java.io.InputStream, java.lang.Class, javax.ws.rs.core.MediaType)
+	 */
+	@Override
+	public Object unmarshal(InputStream in, Class<?> clazz, MediaType mediaType) throws UnmarshalException, UnsupportedMediaTypeExcpetion
+	{
+		if ((mediaType != null) && unmarshaller.isSupported(mediaType))
+		{
+			if (MediaType.APPLICATION_XML_TYPE.isCompatible(mediaType) || MediaType.TEXT_XML_TYPE.isCompatible(mediaType))
+			{
+				return unmarshalFromXML(in, clazz);
+			}
+			else if (MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType))
+			{
+				return unmarshalFromJSON(in, clazz);
+			}
+		}
+		// If we get here then we deal with an unknown media type
+		throw new UnsupportedMediaTypeExcpetion("Unsupported media type: " + mediaType + ". Cannot unmarshal the given input from this media type.");
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.MediaTypeOperations#getDefault()
+	 */
+	@Override
+	public MediaType getDefault()
+	{
+		return unmarshaller.getDefault();
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.MediaTypeOperations#isSupported(javax.ws.rs.core.MediaType)
+	 */
+	@Override
+	public boolean isSupported(MediaType mediaType)
+	{
+		return unmarshaller.isSupported(mediaType);
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.MediaTypeOperations#getSupportedMediaTypes()
+	 */
+	@Override
+	public Set<MediaType> getSupportedMediaTypes()
+	{
+		return unmarshaller.getSupportedMediaTypes();
+	}
+
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	private boolean isJAXBClass(Class<?> clazz)
+	{
+		return (clazz != null) && (clazz.isAnnotationPresent(XmlType.class) || clazz.isAnnotationPresent(XmlRootElement.class));
+	}
+	
+	private String read(InputStream in) throws UnmarshalException
+	{
+		try
+		{
+			StringBuilder buffer = new StringBuilder();
+			Reader reader = new InputStreamReader(in, STREAM_ENCODING);
+			char[] chars = new char[8192];
+			int len;
+			while ((len = reader.read(chars)) != -1)
+			{
+				buffer.append(chars, 0, len);
+			}
+			return buffer.toString();
+		}
+		catch (IOException ex)
+		{
+			throw new UnmarshalException("Failed to read payload from stream: "+ex.getMessage(), ex);
+		}
+	}
+}
@@ -0,0 +1,29 @@
+/*
+ * OutputMode.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.common.conversion;
+
+/**
+ * Indicates how marshalled XML shall be laid out. PRETTY indents the XML which is useful for debugging and reading payloads in logs.
+ * COMPACT writes the XML without any indentation or line breaks which results in considerably smaller payloads and should be 
+ * used in production.
+ * 
+ * @author agent
+ *
+ */
+public enum OutputMode
+{
+	PRETTY, COMPACT;
+}
@@ -0,0 +1,74 @@
+/*
+ * StreamMarshalFactory.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.common.conversion;
+
+import java.io.OutputStream;
+
+import javax.ws.rs.core.MediaType;
+
+import sif3.common.exception.MarshalException;
+import sif3.common.exception.UnsupportedMediaTypeExcpetion;
+
+/**
+ * Extension of the MarshalFactory for marshal factories that can write their result straight to an output stream rather than
+ * building the whole payload as a String first. This avoids holding several full copies of large payloads (i.e. paged collections)
+ * in memory. The framework checks if a marshaller implements this interface and uses the stream based methods where possible. If
+ * a marshaller only implements the MarshalFactory then the String based methods are used as before.<br/><br/>
+ * 
+ * Implementations must write the payload in UTF-8 and must not close the given output stream.
+ * 
+ * @author agent
+ *
+ */
+public interface StreamMarshalFactory extends MarshalFactory
+{
+	/**
+	 * Marshal the given object to XML and writes the resulting XML to the given output stream. If anything goes wrong with that 
+	 * marshal method then a MarshalException is returned.
+	 * 
+	 * @param obj The object to be marshaled to XML.
+	 * @param out The stream to write the XML to.
+	 * 
+	 * @throws MarshalException Failure to marshal the object to XML.
+	 * @throws UnsupportedMediaTypeExcpetion If XML is not a supported format.
+	 */
+	public void marshalToXML(Object obj, OutputStream out) throws MarshalException, UnsupportedMediaTypeExcpetion;
+	
+	/**
+	 * Marshal the given object to JSON and writes the resulting JSON to the given output stream. If anything goes wrong with that 
+	 * marshal method then a MarshalException is returned.
+	 * 
+	 * @param obj The object to be marshaled to JSON.
+	 * @param out The stream to write the JSON to.
+	 * 
+	 * @throws MarshalException Failure to marshal the object to JSON.
+	 * @throws UnsupportedMediaTypeExcpetion If JSON is not a supported format.
+	 */
+	public void marshalToJSON(Object obj, OutputStream out) throws MarshalException, UnsupportedMediaTypeExcpetion;
+	
+	/**
+	 * Wrapper Method for the above two methods. This method can be called if the MediaType is known and based on which either XML or
+	 * JSON is required. This marshal method must only support 'application/xml and application/json.
+	 * 
+	 * @param obj The object to be marshaled
+	 * @param mediaType Indicates what the object shall be marshaled into (JSON or XML).
+	 * @param out The stream to write the marshaled object to.
+	 * 
+	 * @throws MarshalException Failure to marshal the object.
+	 * @throws UnsupportedMediaTypeExcpetion If the media type requested is not a supported format.
+	 */
+	public void marshal(Object obj, MediaType mediaType, OutputStream out) throws MarshalException, UnsupportedMediaTypeExcpetion;
+}
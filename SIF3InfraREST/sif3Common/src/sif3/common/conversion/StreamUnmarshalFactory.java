@@ -0,0 +1,81 @@
+/*
+ * StreamUnmarshalFactory.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.common.conversion;
+
+import java.io.InputStream;
+
+import javax.ws.rs.core.MediaType;
+
+import sif3.common.exception.UnmarshalException;
+import sif3.common.exception.UnsupportedMediaTypeExcpetion;
+
+/**
+ * Extension of the UnmarshalFactory for unmarshal factories that can read the payload straight from an input stream rather than
+ * from a String that holds the full payload. This avoids holding several full copies of large payloads (i.e. paged collections)
+ * in memory. The framework checks if an unmarshaller implements this interface and uses the stream based methods where possible. If
+ * an unmarshaller only implements the UnmarshalFactory then the String based methods are used as before.<br/><br/>
+ * 
+ * The given input stream is expected to be UTF-8 encoded. It is not closed by the implementations of this interface. This is the
+ * responsibility of the caller.
+ * 
+ * @author agent
+ *
+ */
+public interface StreamUnmarshalFactory extends UnmarshalFactory
+{
+	/**
+	 * Unmarshal the XML read from the given input stream into an object of type Class<?>. If anything goes wrong with that unmarshal 
+	 * method then a UnmarshalException is returned.
+	 * 
+	 * @param in The stream holding the XML to be unmarshalled into an object. 
+	 * @param clazz The object type to unmarshal into.
+	 * 
+	 * @return See description.
+	 * 
+	 * @throws UnmarshalException Failure to unmarshal the given XML into an object.
+	 * @throws UnsupportedMediaTypeExcpetion If XML is not a supported format.
+	 */
+	public Object unmarshalFromXML(InputStream in, Class<?> clazz) throws UnmarshalException, UnsupportedMediaTypeExcpetion;
+	
+	/**
+	 * Unmarshal the JSON read from the given input stream into an object of type Class<?>. If anything goes wrong with that unmarshal 
+	 * method then a UnmarshalException is returned.
+	 * 
+	 * @param in The stream holding the JSON to be unmarshalled into an object. 
+	 * @param clazz The object type to unmarshal into.
+	 * 
+	 * @return See description.
+	 * 
+	 * @throws UnmarshalException Failure to unmarshal the given JSON into an object.
+	 * @throws UnsupportedMediaTypeExcpetion If JSON is not a supported format.
+	 */
+	public Object unmarshalFromJSON(InputStream in, Class<?> clazz) throws UnmarshalException, UnsupportedMediaTypeExcpetion;
+	
+	/**
+	 * Wrapper Method for the above two methods. This method can be called if the MediaType is known and based on what the input 
+	 * stream holds (XML or JSON). This unmarshal method must only support 'application/xml and application/json.
+	 * 
+	 * @param in The stream to unmarshal into an object.
+	 * @param clazz The object type to unmarshal into.
+	 * @param mediaType Indicates what the object shall be unmarshalled from (JSON or XML).
+	 * 
+	 * @return See description.
+	 * 
+	 * @throws UnmarshalException Failure to unmarshal the given stream into an object.
+	 * @throws UnsupportedMediaTypeExcpetion If the media type requested is not a supported format.
+	 */
+	public Object unmarshal(InputStream in, Class<?> clazz, MediaType mediaType) throws UnmarshalException, UnsupportedMediaTypeExcpetion;
+}
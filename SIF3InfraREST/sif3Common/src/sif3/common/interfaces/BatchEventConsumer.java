@@ -0,0 +1,50 @@
+/*
+ * BatchEventConsumer.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.common.interfaces;
+
+import sif3.common.model.SIFEventBatch;
+
+/**
+ * An event consumer can implement this interface in addition to the EventConsumer interface to receive events in batches rather
+ * than one by one. This allows the consumer to process many events at once (i.e. bulk insert them in one database transaction).
+ * Batch delivery must also be enabled in the consumer's property file (consumer.local.batch.size).<br/><br/>
+ * 
+ * Each batch holds only events of one zone, context and service. A batch is delivered once it holds the configured number of
+ * events or the first event in the batch has waited for the configured max time, whatever happens first.<br/><br/>
+ * 
+ * <b>Batch Semantics:</b><br/>
+ * A batch is either processed successfully as a whole or it failed as a whole. If processEvents() returns false or throws an 
+ * exception then the batch is considered failed. Depending on the consumer's configuration (consumer.local.batch.fallback) the events
+ * of a failed batch are then delivered one by one through the EventConsumer.onEvent() method (default) or the batch is discarded.
+ * Note that events are already acknowledged with the SIF queue when they are taken off it, so a failed batch is not re-delivered 
+ * by the SIF queue.
+ * 
+ * @author agent
+ */
+public interface BatchEventConsumer<L>
+{
+	/**
+	 * This method is called every time a batch of events is available for the given consumer.
+	 * 
+	 * @param batch The events to be processed, in the order they have been received. The zone, context and metadata of the events
+	 *              are available through the batch.
+	 * @param consumerID The consumer ID that has been used to receive the batch. It is informative only and is only of use where 
+	 *                   there are multiple event subscribers enabled.
+	 *                   
+	 * @return TRUE if the batch has been processed successfully. FALSE if the batch failed.
+	 */
+	public boolean processEvents(SIFEventBatch<L> batch, String consumerID);
+}
@@ -0,0 +1,46 @@
+/*
+ * DelayedResponseHandler.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.common.interfaces;
+
+import sif3.common.model.DelayedRequestReceipt;
+import sif3.common.ws.Response;
+
+/**
+ * Callback for DELAYED requests. Once the response of a DELAYED request has been received through the SIF queue or the request
+ * has not received a response within its timeout, the handler that was registered with the request is called. The methods of this
+ * interface are called on a callback thread and not on the thread that issued the request, so implementations must be thread safe.
+ * 
+ * @author agent
+ */
+public interface DelayedResponseHandler
+{
+	/**
+	 * Called when the response of a DELAYED request has been received.
+	 * 
+	 * @param response The response as received from the SIF queue. If the provider returned an error then response.hasError()
+	 *                 returns true.
+	 * @param receipt The receipt of the original request.
+	 */
+	public void onDelayedResponse(Response response, DelayedRequestReceipt receipt);
+
+	/**
+	 * Called when no response has been received for a DELAYED request within its timeout. A response that arrives after this
+	 * method has been called is discarded.
+	 * 
+	 * @param receipt The receipt of the original request.
+	 */
+	public void onDelayedTimeout(DelayedRequestReceipt receipt);
+}
@@ -107,6 +107,16 @@ public class BaseMetadata implements Serializable
 		this.authentictedUser = authentictedUser;
 	}
 
+    /**
+     * Returns all URL query parameters and HTTP header fields of this metadata.
+     * 
+     * @return See desc.
+     */
+    public RequestParameters getRequestParameters()
+    {
+    	return requestParameters;
+    }
+    
     /**
      * This method returns the value of the given URL query parameter as a string. If no URL query parameter with that name
      * exists then null is returned. The parameterName is case sensitive.
@@ -0,0 +1,158 @@
+/*
+ * DelayedRequestReceipt.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.common.model;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.concurrent.Future;
+
+import sif3.common.header.HeaderValues.ResponseAction;
+import sif3.common.header.HeaderValues.ServiceType;
+import sif3.common.ws.Response;
+
+/**
+ * This class holds the information about a DELAYED request that has been accepted by the provider. The actual response of such a 
+ * request is delivered at a later stage through the consumer's SIF queue. The request ID is the key that links the two.
+ * 
+ * @author agent
+ */
+public class DelayedRequestReceipt implements Serializable
+{
+	private static final long serialVersionUID = 4217640581530953387L;
+
+	private String requestID;
+	private String serviceName;
+	private ServiceType serviceType;
+	private ResponseAction requestedAction;
+	private SIFZone zone;
+	private SIFContext context;
+	private Date requestDate = new Date();
+	private transient Future<Response> responseFuture = null;
+
+	public DelayedRequestReceipt(String requestID, String serviceName, ServiceType serviceType, ResponseAction requestedAction, SIFZone zone, SIFContext context)
+	{
+		super();
+		setRequestID(requestID);
+		setServiceName(serviceName);
+		setServiceType(serviceType);
+		setRequestedAction(requestedAction);
+		setZone(zone);
+		setContext(context);
+	}
+
+	/**
+	 * The ID of the request. The delayed response will hold the same request ID.
+	 * 
+	 * @return See desc.
+	 */
+	public String getRequestID()
+	{
+		return this.requestID;
+	}
+
+	public void setRequestID(String requestID)
+	{
+		this.requestID = requestID;
+	}
+
+	public String getServiceName()
+	{
+		return this.serviceName;
+	}
+
+	public void setServiceName(String serviceName)
+	{
+		this.serviceName = serviceName;
+	}
+
+	public ServiceType getServiceType()
+	{
+		return this.serviceType;
+	}
+
+	public void setServiceType(ServiceType serviceType)
+	{
+		this.serviceType = serviceType;
+	}
+
+	/**
+	 * The type of operation that has been requested (CREATE, UPDATE, DELETE or QUERY).
+	 * 
+	 * @return See desc.
+	 */
+	public ResponseAction getRequestedAction()
+	{
+		return this.requestedAction;
+	}
+
+	public void setRequestedAction(ResponseAction requestedAction)
+	{
+		this.requestedAction = requestedAction;
+	}
+
+	public SIFZone getZone()
+	{
+		return this.zone;
+	}
+
+	public void setZone(SIFZone zone)
+	{
+		this.zone = zone;
+	}
+
+	public SIFContext getContext()
+	{
+		return this.context;
+	}
+
+	public void setContext(SIFContext context)
+	{
+		this.context = context;
+	}
+
+	public Date getRequestDate()
+	{
+		return this.requestDate;
+	}
+
+	public void setRequestDate(Date requestDate)
+	{
+		this.requestDate = requestDate;
+	}
+
+	/**
+	 * The handle of the pending request. get() on it blocks until the delayed response has been received. It returns null if the
+	 * request has timed out. Not available once the receipt has been serialised.
+	 * 
+	 * @return See desc.
+	 */
+	public Future<Response> getResponseFuture()
+	{
+		return this.responseFuture;
+	}
+
+	public void setResponseFuture(Future<Response> responseFuture)
+	{
+		this.responseFuture = responseFuture;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "DelayedRequestReceipt [requestID=" + this.requestID + ", serviceName=" + this.serviceName + ", serviceType=" + this.serviceType 
+				+ ", requestedAction=" + this.requestedAction + ", zone=" + this.zone + ", context=" + this.context + ", requestDate=" + this.requestDate + "]";
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * SIFEventBatch.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.common.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is a simple POJO that holds a number of events that have been received for the same zone, context and service. The events 
+ * are held in the order they have been received. The metadata of each event is held at the same position in the list returned by
+ * getEventMetadata().
+ * 
+ * @author agent
+ */
+public class SIFEventBatch<L>
+{
+	private SIFZone zone;
+	private SIFContext context;
+	private String serviceName;
+	private List<SIFEvent<L>> events = new ArrayList<SIFEvent<L>>();
+	private List<EventMetadata> eventMetadata = new ArrayList<EventMetadata>();
+	private List<String> msgReadIDs = new ArrayList<String>();
+	
+	public SIFEventBatch(SIFZone zone, SIFContext context, String serviceName)
+	{
+		super();
+		this.zone = zone;
+		this.context = context;
+		this.serviceName = serviceName;
+	}
+	
+	/**
+	 * Adds an event to the end of this batch.
+	 * 
+	 * @param event The event.
+	 * @param metadata The metadata of the event. Can be null.
+	 * @param msgReadID The ID of the SIF queue reader that has received the event. Can be null.
+	 */
+	public void addEvent(SIFEvent<L> event, EventMetadata metadata, String msgReadID)
+	{
+		events.add(event);
+		eventMetadata.add(metadata);
+		msgReadIDs.add(msgReadID);
+	}
+
+	public SIFZone getZone()
+	{
+		return zone;
+	}
+
+	public SIFContext getContext()
+	{
+		return context;
+	}
+
+	public String getServiceName()
+	{
+		return serviceName;
+	}
+
+	public List<SIFEvent<L>> getEvents()
+	{
+		return events;
+	}
+
+	public List<EventMetadata> getEventMetadata()
+	{
+		return eventMetadata;
+	}
+
+	public List<String> getMsgReadIDs()
+	{
+		return msgReadIDs;
+	}
+	
+	public int size()
+	{
+		return events.size();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SIFEventBatch [zone=" + ((zone != null) ? zone.getId() : null) + ", context=" + ((context != null) ? context.getId() : null) + ", serviceName=" + serviceName + ", size=" + size() + "]";
+	}
+}
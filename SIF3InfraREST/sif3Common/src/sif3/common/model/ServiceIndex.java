@@ -0,0 +1,267 @@
+/*
+ * ServiceIndex.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package sif3.common.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sif3.common.header.HeaderValues.ServiceType;
+import sif3.common.model.ServiceRights.AccessRight;
+import sif3.common.model.ServiceRights.AccessType;
+
+/**
+ * This class is an index over a list of services (ServiceInfo) of an environment. It allows ACL checks and service lookups without
+ * iterating through all services of an environment. The index is keyed by serviceName, zoneId and contextId, and the access rights of 
+ * each entry are held in a bitmap (one bit per access right and access type). The index is built once from a list of services and
+ * does not change afterwards. If the list of services or their access rights change then the index must be rebuilt.<br/><br/>
+ * 
+ * A service of the default zone and/or default context is also registered under a 'null' zone and/or context key. This allows
+ * lookups for the default zone and context without knowing their IDs.
+ * 
+ * @author agent
+ */
+public class ServiceIndex implements Serializable
+{
+	private static final long serialVersionUID = -2843164970372217506L;
+
+	private static final int NUM_ACCESS_TYPES = AccessType.values().length;
+
+	/* Key=serviceName, zoneId, contextId (zoneId & contextId can be null for default zone & context). */
+	private HashMap<String, HashMap<String, HashMap<String, IndexEntry>>> services = new HashMap<String, HashMap<String, HashMap<String, IndexEntry>>>();
+	
+	/* Key=serviceName, serviceType. All services in the order as given in the list used to build the index. */
+	private HashMap<String, EnumMap<ServiceType, List<ServiceInfo>>> servicesByType = new HashMap<String, EnumMap<ServiceType, List<ServiceInfo>>>();
+
+	/**
+	 * Builds the index for the given list of services.
+	 * 
+	 * @param serviceList The services to index. Can be null or empty in which case the index is empty.
+	 */
+	public ServiceIndex(List<ServiceInfo> serviceList)
+	{
+		super();
+		if (serviceList != null)
+		{
+			for (ServiceInfo serviceInfo : serviceList)
+			{
+				addService(serviceInfo);
+			}
+		}
+		
+		// Lists returned by getServices() must not be modified by the caller.
+		for (EnumMap<ServiceType, List<ServiceInfo>> byType : servicesByType.values())
+		{
+			for (Map.Entry<ServiceType, List<ServiceInfo>> entry : byType.entrySet())
+			{
+				entry.setValue(Collections.unmodifiableList(entry.getValue()));
+			}
+		}
+	}
+	
+	/**
+	 * Returns the bit used in the rights bitmap for the given access right and access type.
+	 * 
+	 * @param right The access right.
+	 * @param accessType The access type.
+	 * 
+	 * @return See desc.
+	 */
+	public static long getRightBit(AccessRight right, AccessType accessType)
+	{
+		return 1L << (right.ordinal() * NUM_ACCESS_TYPES + accessType.ordinal());
+	}
+	
+	/**
+	 * Converts the given service rights into a rights bitmap.
+	 * 
+	 * @param rights The rights to convert. Can be null.
+	 * 
+	 * @return See desc.
+	 */
+	public static long toRightsBitmap(ServiceRights rights)
+	{
+		long bitmap = 0;
+		if ((rights != null) && (rights.getRights() != null))
+		{
+			for (AccessRight right : rights.getRights().keySet())
+			{
+				AccessType accessType = rights.getAccessType(right);
+				if (accessType != null)
+				{
+					bitmap |= getRightBit(right, accessType);
+				}
+			}
+		}
+		return bitmap;
+	}
+	
+	/**
+	 * Returns true if the service with the given name has the given access right and access type in the given zone and context. 
+	 * If there is more than one service (of different service types) with the same name, zone and context then the last one in the 
+	 * original list of services is used.
+	 * 
+	 * @param right The access right (QUERY, UPDATE etc) that shall be checked for.
+	 * @param accessType The access level (SUPPORTED, APPROVED, etc) that must be met for the given service and right.
+	 * @param serviceName Service for which the access rights shall be checked.
+	 * @param zoneId The zone ID. Null indicates the default zone.
+	 * @param contextId The context ID. Null indicates the default context.
+	 * 
+	 * @return See desc.
+	 */
+	public boolean hasAccess(AccessRight right, AccessType accessType, String serviceName, String zoneId, String contextId)
+	{
+		IndexEntry entry = getEntry(serviceName, zoneId, contextId);
+		return (entry != null) && ((entry.rightsBitmap & getRightBit(right, accessType)) != 0);
+	}
+	
+	/**
+	 * Returns the service for the given criteria. If there is more than one then the first one in the original list of services is 
+	 * returned. If there is none then null is returned.
+	 * 
+	 * @param zoneId The zone ID. Null indicates the default zone.
+	 * @param contextId The context ID. Null indicates the default context.
+	 * @param serviceName The service name.
+	 * @param serviceType The service type.
+	 * 
+	 * @return See desc.
+	 */
+	public ServiceInfo getService(String zoneId, String contextId, String serviceName, ServiceType serviceType)
+	{
+		IndexEntry entry = getEntry(serviceName, zoneId, contextId);
+		return (entry != null) ? entry.servicesByType.get(serviceType) : null;
+	}
+	
+	/**
+	 * Returns all services for the given name and type in the order of the original list of services. The returned list cannot be 
+	 * modified. If there are no such services then an empty list is returned.
+	 * 
+	 * @param serviceName The service name.
+	 * @param serviceType The service type.
+	 * 
+	 * @return See desc.
+	 */
+	public List<ServiceInfo> getServices(String serviceName, ServiceType serviceType)
+	{
+		EnumMap<ServiceType, List<ServiceInfo>> byType = servicesByType.get(serviceName);
+		List<ServiceInfo> serviceList = (byType != null) ? byType.get(serviceType) : null;
+		return (serviceList != null) ? serviceList : Collections.<ServiceInfo>emptyList();
+	}
+	
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	private IndexEntry getEntry(String serviceName, String zoneId, String contextId)
+	{
+		HashMap<String, HashMap<String, IndexEntry>> zones = services.get(serviceName);
+		if (zones != null)
+		{
+			HashMap<String, IndexEntry> contexts = zones.get(zoneId);
+			if (contexts != null)
+			{
+				return contexts.get(contextId);
+			}
+		}
+		return null;
+	}
+	
+	private void addService(ServiceInfo serviceInfo)
+	{
+		if ((serviceInfo == null) || (serviceInfo.getServiceName() == null))
+		{
+			return;
+		}
+		
+		EnumMap<ServiceType, List<ServiceInfo>> byType = servicesByType.get(serviceInfo.getServiceName());
+		if (byType == null)
+		{
+			byType = new EnumMap<ServiceType, List<ServiceInfo>>(ServiceType.class);
+			servicesByType.put(serviceInfo.getServiceName(), byType);
+		}
+		List<ServiceInfo> serviceList = byType.get(serviceInfo.getServiceType());
+		if (serviceList == null)
+		{
+			serviceList = new ArrayList<ServiceInfo>();
+			byType.put(serviceInfo.getServiceType(), serviceList);
+		}
+		serviceList.add(serviceInfo);
+
+		if ((serviceInfo.getZone() == null) || (serviceInfo.getContext() == null))
+		{
+			return; // cannot be used for zone/context based lookups.
+		}
+		
+		long rightsBitmap = toRightsBitmap(serviceInfo.getRights());
+		String zoneId = serviceInfo.getZone().getId();
+		String contextId = serviceInfo.getContext().getId();
+		boolean isDefaultZone = serviceInfo.getZone().getIsDefault();
+		boolean isDefaultContext = serviceInfo.getContext().getIsDefault();
+		
+		addEntry(serviceInfo, rightsBitmap, zoneId, contextId);
+		if (isDefaultZone)
+		{
+			addEntry(serviceInfo, rightsBitmap, null, contextId);
+		}
+		if (isDefaultContext)
+		{
+			addEntry(serviceInfo, rightsBitmap, zoneId, null);
+		}
+		if (isDefaultZone && isDefaultContext)
+		{
+			addEntry(serviceInfo, rightsBitmap, null, null);
+		}
+	}
+	
+	private void addEntry(ServiceInfo serviceInfo, long rightsBitmap, String zoneId, String contextId)
+	{
+		HashMap<String, HashMap<String, IndexEntry>> zones = services.get(serviceInfo.getServiceName());
+		if (zones == null)
+		{
+			zones = new HashMap<String, HashMap<String, IndexEntry>>();
+			services.put(serviceInfo.getServiceName(), zones);
+		}
+		HashMap<String, IndexEntry> contexts = zones.get(zoneId);
+		if (contexts == null)
+		{
+			contexts = new HashMap<String, IndexEntry>();
+			zones.put(zoneId, contexts);
+		}
+		IndexEntry entry = contexts.get(contextId);
+		if (entry == null)
+		{
+			entry = new IndexEntry();
+			contexts.put(contextId, entry);
+		}
+		
+		// Last service wins for access rights, first service wins for the service lookup. Same as a scan of the list of services.
+		entry.rightsBitmap = rightsBitmap;
+		if (!entry.servicesByType.containsKey(serviceInfo.getServiceType()))
+		{
+			entry.servicesByType.put(serviceInfo.getServiceType(), serviceInfo);
+		}
+	}
+	
+	private static class IndexEntry implements Serializable
+	{
+		private static final long serialVersionUID = 7714390287435718834L;
+
+		private long rightsBitmap = 0;
+		private EnumMap<ServiceType, ServiceInfo> servicesByType = new EnumMap<ServiceType, ServiceInfo>(ServiceType.class);
+	}
+}
@@ -28,6 +28,7 @@ import sif3.common.header.HeaderValues.ServiceType;
 import sif3.common.model.EnvironmentKey;
 import sif3.common.model.SIFContext;
 import sif3.common.model.SIFZone;
+import sif3.common.model.ServiceIndex;
 import sif3.common.model.ServiceInfo;
 import sif3.common.model.ServiceRights.AccessRight;
 import sif3.common.model.ServiceRights.AccessType;
@@ -59,6 +60,7 @@ public class SIF3Session extends EnvironmentKey implements Serializable
 	// The properties below are runtime properties. They are not read or maintained in the DB!
 	private transient SIFZone defaultZone             = null;
 	private transient ArrayList<ServiceInfo> services = new ArrayList<ServiceInfo>();
+	private transient ServiceIndex serviceIndex       = null;
 
 	public SIF3Session() {}
 	
@@ -209,11 +211,38 @@ public class SIF3Session extends EnvironmentKey implements Serializable
     	return this.services;
     }
 
+	/**
+	 * Sets the list of services of this environment. This will remove the service index. To speed up ACL checks and service lookups
+	 * the buildServiceIndex() method should be called once the list of services is fully populated.
+	 * 
+	 * @param services The services of this environment.
+	 */
 	public void setServices(ArrayList<ServiceInfo> services)
     {
     	this.services = services;
+    	this.serviceIndex = null;
     }
 
+	/**
+	 * Builds the index over the current list of services. Once the index is built all ACL checks and service lookups use the index
+	 * rather than iterating through the list of services. If the list of services or their access rights are changed after this 
+	 * method has been called then this method must be called again.
+	 */
+	public void buildServiceIndex()
+	{
+		this.serviceIndex = new ServiceIndex(getServices());
+	}
+
+	/**
+	 * Returns the service index of this session. If the index has not been built then null is returned.
+	 * 
+	 * @return See desc.
+	 */
+	public ServiceIndex getServiceIndex()
+	{
+		return this.serviceIndex;
+	}
+
 	public SIFZone getDefaultZone()
 	{
 		return this.defaultZone;
@@ -252,6 +281,12 @@ public class SIF3Session extends EnvironmentKey implements Serializable
 	 */
 	public boolean hasAccess(AccessRight right, AccessType accessType, String serviceName, SIFZone zone, SIFContext context)
 	{
+		ServiceIndex index = getServiceIndex();
+		if (index != null)
+		{
+			return index.hasAccess(right, accessType, serviceName, (zone == null) ? null : zone.getId(), (context == null) ? null : context.getId());
+		}
+		
 		boolean accessApproved = false;
 		for (ServiceInfo serviceInfo : getServices())
 		{
@@ -285,6 +320,12 @@ public class SIF3Session extends EnvironmentKey implements Serializable
 	 */
 	public List<ServiceInfo> getServiceInfoForService(String serviceName, ServiceType serviceType)
 	{
+		ServiceIndex index = getServiceIndex();
+		if (index != null)
+		{
+			return new ArrayList<ServiceInfo>(index.getServices(serviceName, serviceType));
+		}
+		
 		ArrayList<ServiceInfo> validServices = new ArrayList<ServiceInfo>();
 		if (getServices() != null)
 		{
@@ -314,7 +355,18 @@ public class SIF3Session extends EnvironmentKey implements Serializable
 	 public List<ServiceInfo> getServiceInfoForService(String serviceName, ServiceType serviceType, AccessRight right, AccessType accessType)
    {
 	    ArrayList<ServiceInfo> validServices = new ArrayList<ServiceInfo>();
-	    if (getServices() != null)
+	    ServiceIndex index = getServiceIndex();
+	    if (index != null)
+	    {
+	      for (ServiceInfo serviceInfo : index.getServices(serviceName, serviceType))
+	      {
+	        if (serviceInfo.getRights().hasRight(right, accessType))
+	        {
+	          validServices.add(serviceInfo);
+	        }
+	      }
+	    }
+	    else if (getServices() != null)
 	    {
 	      for (ServiceInfo serviceInfo : getServices())
 	      {
@@ -343,6 +395,12 @@ public class SIF3Session extends EnvironmentKey implements Serializable
 	 */
 	public ServiceInfo getServiceInfoForService(SIFZone zone, SIFContext context, String serviceName, ServiceType serviceType)
 	{
+		ServiceIndex index = getServiceIndex();
+		if (index != null)
+		{
+			return index.getService(zone.getId(), context.getId(), serviceName, serviceType);
+		}
+		
 		List<ServiceInfo> validServices = getServiceInfoForService(serviceName, serviceType);
 		if ((validServices != null) && (validServices.size() > 0))
 		{
@@ -0,0 +1,234 @@
+/*
+ * ExecutorStrategy.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.common.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import au.com.systemic.framework.utils.StringUtils;
+
+/**
+ * This class creates the executor services that run the long living loops of the framework (i.e. message queue readers, local event
+ * consumers, multi zone requests). Most of these threads spend their time blocked on HTTP I/O or on a local queue. Two modes are
+ * supported:<br/>
+ * PLATFORM: A fixed pool of ordinary (platform) threads. This is the default and works with any JVM.<br/>
+ * VIRTUAL: Each task runs in its own virtual thread. Virtual threads only need an OS thread while they are not blocked, so hundreds
+ *          of mostly idle loops only require a handful of OS threads. This requires a JVM that supports virtual threads (Java 21+).
+ *          Since the framework is compiled for older Java versions virtual threads are created through reflection. If the JVM does 
+ *          not support them the PLATFORM mode is used.<br/><br/>
+ * 
+ * The mode is set once at startup with configure(), typically from the 'adapter.executor' property of the consumer's property file.
+ * 
+ * @author agent
+ */
+public class ExecutorStrategy
+{
+	private static final Logger logger = Logger.getLogger(ExecutorStrategy.class);
+	
+	public enum Mode {PLATFORM, VIRTUAL};
+	
+	private static ExecutorStrategy instance = new ExecutorStrategy(Mode.PLATFORM);
+	
+	private Mode mode;
+	
+	/* Only set for virtual mode. */
+	private Method ofVirtual = null;
+	private Method builderName = null;
+	private Method builderFactory = null;
+	private Method newThreadPerTaskExecutor = null;
+	
+	/**
+	 * Returns the executor strategy that has been configured with configure(). If configure() has not been called then the 
+	 * PLATFORM mode is used.
+	 * 
+	 * @return See desc.
+	 */
+	public static synchronized ExecutorStrategy getInstance()
+	{
+		return instance;
+	}
+	
+	/**
+	 * Sets the mode of the executor strategy returned by getInstance(). Executor services that have already been created are not
+	 * affected. If the mode is not valid or not supported by the JVM then an error is logged and the PLATFORM mode is used.
+	 * 
+	 * @param modeName PLATFORM or VIRTUAL (case insensitive). If null or empty then PLATFORM is used.
+	 * 
+	 * @return The executor strategy that is used from now on.
+	 */
+	public static synchronized ExecutorStrategy configure(String modeName)
+	{
+		Mode mode = Mode.PLATFORM;
+		if (StringUtils.notEmpty(modeName))
+		{
+			try
+			{
+				mode = Mode.valueOf(modeName.trim().toUpperCase());
+			}
+			catch (Exception ex)
+			{
+				logger.error("Invalid executor mode '"+modeName+"'. Valid values are PLATFORM and VIRTUAL. Use PLATFORM.");
+			}
+		}
+		instance = new ExecutorStrategy(mode);
+		logger.debug("Executor strategy set to "+instance.getMode()+".");
+		return instance;
+	}
+	
+	/**
+	 * Creates an executor strategy with the given mode. If the mode is VIRTUAL but the JVM doesn't support virtual threads then
+	 * the PLATFORM mode is used.
+	 * 
+	 * @param mode The mode to use.
+	 */
+	public ExecutorStrategy(Mode mode)
+	{
+		this.mode = (mode == null) ? Mode.PLATFORM : mode;
+		if (this.mode == Mode.VIRTUAL)
+		{
+			try
+			{
+				Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+				ofVirtual = Thread.class.getMethod("ofVirtual");
+				builderName = builderClass.getMethod("name", String.class, long.class);
+				builderFactory = builderClass.getMethod("factory");
+				newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			}
+			catch (Exception ex)
+			{
+				logger.warn("Virtual threads are not supported by this JVM (Java "+System.getProperty("java.version")+"). Use platform threads instead.");
+				this.mode = Mode.PLATFORM;
+			}
+		}
+	}
+	
+	public Mode getMode()
+	{
+		return mode;
+	}
+	
+	public boolean isVirtual()
+	{
+		return mode == Mode.VIRTUAL;
+	}
+	
+	/**
+	 * Creates an executor service for up to numThreads concurrent tasks. In PLATFORM mode this is a fixed thread pool with numThreads
+	 * threads. In VIRTUAL mode each task runs in its own virtual thread, so numThreads is not enforced. This is fine for the 
+	 * framework's use where exactly numThreads long living tasks are submitted. Threads are named threadName-1, threadName-2 etc.
+	 * 
+	 * @param numThreads The number of threads of a platform thread pool.
+	 * @param threadName The prefix of the thread names.
+	 * @param daemon TRUE: Platform threads are daemon threads. Virtual threads are always daemon threads.
+	 * 
+	 * @return See desc.
+	 */
+	public ExecutorService newFixedThreadPool(int numThreads, String threadName, boolean daemon)
+	{
+		if (mode == Mode.VIRTUAL)
+		{
+			try
+			{
+				Object builder = builderName.invoke(ofVirtual.invoke(null), threadName + "-", 1L);
+				return (ExecutorService)newThreadPerTaskExecutor.invoke(null, builderFactory.invoke(builder));
+			}
+			catch (Exception ex)
+			{
+				logger.error("Failed to create virtual thread executor for "+threadName+": "+ex.getMessage()+". Use platform threads instead.", ex);
+			}
+		}
+		return Executors.newFixedThreadPool(Math.max(numThreads, 1), new NamedThreadFactory(threadName, daemon));
+	}
+	
+	/**
+	 * Creates an executor service that runs at most numThreads tasks at a time and holds at most queueSize tasks that wait for a 
+	 * thread. If the queue is full then the task is run by the thread that submits it, which throttles the submitter. Unlike 
+	 * newFixedThreadPool() the number of threads is enforced in VIRTUAL mode as well. The threads are virtual threads in that case.
+	 * 
+	 * @param numThreads The max number of tasks that run at the same time.
+	 * @param queueSize The max number of tasks that wait for a thread.
+	 * @param threadName The prefix of the thread names.
+	 * @param daemon TRUE: Platform threads are daemon threads. Virtual threads are always daemon threads.
+	 * 
+	 * @return See desc.
+	 */
+	public ExecutorService newBoundedThreadPool(int numThreads, int queueSize, String threadName, boolean daemon)
+	{
+		ThreadFactory threadFactory = new NamedThreadFactory(threadName, daemon);
+		if (mode == Mode.VIRTUAL)
+		{
+			try
+			{
+				Object builder = builderName.invoke(ofVirtual.invoke(null), threadName + "-", 1L);
+				threadFactory = (ThreadFactory)builderFactory.invoke(builder);
+			}
+			catch (Exception ex)
+			{
+				logger.error("Failed to create virtual thread factory for "+threadName+": "+ex.getMessage()+". Use platform threads instead.", ex);
+			}
+		}
+		numThreads = Math.max(numThreads, 1);
+		return new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(Math.max(queueSize, 1)), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+	
+	/**
+	 * Creates a scheduled executor service with numThreads platform threads for timers and periodic tasks. Timer threads are
+	 * idle most of the time and only run short tasks, so they are always platform threads regardless of the mode.
+	 * 
+	 * @param numThreads The number of threads of the pool.
+	 * @param threadName The prefix of the thread names.
+	 * @param daemon TRUE: Threads are daemon threads.
+	 * 
+	 * @return See desc.
+	 */
+	public ScheduledExecutorService newScheduledThreadPool(int numThreads, String threadName, boolean daemon)
+	{
+		return Executors.newScheduledThreadPool(Math.max(numThreads, 1), new NamedThreadFactory(threadName, daemon));
+	}
+	
+	/*
+	 * Platform threads with a useful name so that they can be identified in thread dumps.
+	 */
+	private static class NamedThreadFactory implements ThreadFactory
+	{
+		private String threadName;
+		private boolean daemon;
+		private AtomicInteger threadNum = new AtomicInteger(1);
+		
+		private NamedThreadFactory(String threadName, boolean daemon)
+		{
+			this.threadName = threadName;
+			this.daemon = daemon;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, threadName + "-" + threadNum.getAndIncrement());
+			thread.setDaemon(daemon);
+			return thread;
+		}
+	}
+}
@@ -18,11 +18,19 @@
 
 package sif3.common.utils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -33,6 +41,7 @@ import javax.xml.bind.annotation.XmlType;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.log4j.Logger;
@@ -44,6 +53,7 @@ import org.codehaus.jettison.mapped.MappedXMLStreamReader;
 import org.codehaus.jettison.mapped.MappedXMLStreamWriter;
 import org.codehaus.jettison.mapped.SimpleConverter;
 
+import sif3.common.conversion.OutputMode;
 import sif3.common.exception.MarshalException;
 import sif3.common.exception.UnmarshalException;
 import au.com.systemic.framework.utils.Timer;
@@ -57,10 +67,93 @@ public class JAXBUtils
 	protected static final Logger logger = Logger.getLogger(JAXBUtils.class);
 
 	/* Make JAXBContext a singleton. Otherwise creating the JAXBContext every time is very slow! */
-	private static HashMap<String, JAXBContext> jaxbCtx = new HashMap<String, JAXBContext>();
+	/* JAXBContext is thread safe, so a concurrent map keyed by the actual class is all that is needed. */
+	private static final ConcurrentMap<Class<?>, JAXBContext> jaxbCtx = new ConcurrentHashMap<Class<?>, JAXBContext>();
+
+	/*
+	 * The JSON namespace convention only depends on the class, so it is built once per class. It is only read once it is
+	 * built (we don't configure 'suppress @ attributes' which is the only feature that changes it at runtime), so it can be 
+	 * shared between threads.
+	 */
+	private static final ConcurrentMap<Class<?>, MappedNamespaceConvention> jsonConventions = new ConcurrentHashMap<Class<?>, MappedNamespaceConvention>();
+
+	/*
+	 * Marshallers and Unmarshallers are not thread safe but they can be re-used for many calls on the same
+	 * thread. Keep one per class and thread with all properties already set so that no per call setup is
+	 * required.
+	 */
+	private static final ThreadLocal<Map<Class<?>, Marshaller>> prettyXMLMarshallers = new ThreadLocal<Map<Class<?>, Marshaller>>()
+	{
+		@Override
+		protected Map<Class<?>, Marshaller> initialValue()
+		{
+			return new HashMap<Class<?>, Marshaller>();
+		}
+	};
+
+	private static final ThreadLocal<Map<Class<?>, Marshaller>> compactXMLMarshallers = new ThreadLocal<Map<Class<?>, Marshaller>>()
+	{
+		@Override
+		protected Map<Class<?>, Marshaller> initialValue()
+		{
+			return new HashMap<Class<?>, Marshaller>();
+		}
+	};
+
+	private static final ThreadLocal<Map<Class<?>, Marshaller>> jsonMarshallers = new ThreadLocal<Map<Class<?>, Marshaller>>()
+	{
+		@Override
+		protected Map<Class<?>, Marshaller> initialValue()
+		{
+			return new HashMap<Class<?>, Marshaller>();
+		}
+	};
+
+	private static final ThreadLocal<Map<Class<?>, Unmarshaller>> unmarshallers = new ThreadLocal<Map<Class<?>, Unmarshaller>>()
+	{
+		@Override
+		protected Map<Class<?>, Unmarshaller> initialValue()
+		{
+			return new HashMap<Class<?>, Unmarshaller>();
+		}
+	};
 
 	private static String JSON_VALUE_KEY = "#text";
 	private static String JSON_ATTRIBUTE_KEY = "@";
+	
+	/* Encoding used for all stream based marshal and unmarshal operations */
+	private static final String STREAM_ENCODING = "UTF-8";
+	
+	/* Output mode for XML if none is given. Null means PRETTY if debug is enabled, COMPACT otherwise. */
+	private static volatile OutputMode defaultOutputMode = null;
+
+	/**
+	 * Sets the output mode that is used when XML is marshalled without an explicit output mode. This is typically set once at 
+	 * startup of an adapter from its 'adapter.marshal.outputMode' property.
+	 * 
+	 * @param outputMode PRETTY or COMPACT. If null then PRETTY is used when debug logging is enabled for this class and COMPACT 
+	 *                   otherwise.
+	 */
+	public static void setDefaultOutputMode(OutputMode outputMode)
+	{
+		defaultOutputMode = outputMode;
+	}
+	
+	/**
+	 * Returns the output mode that is used when XML is marshalled without an explicit output mode. See setDefaultOutputMode()
+	 * for details.
+	 * 
+	 * @return PRETTY or COMPACT. Never null.
+	 */
+	public static OutputMode getDefaultOutputMode()
+	{
+		OutputMode mode = defaultOutputMode;
+		if (mode == null)
+		{
+			mode = logger.isDebugEnabled() ? OutputMode.PRETTY : OutputMode.COMPACT;
+		}
+		return mode;
+	}
 
     /**
 	 * This method unmarshals the given XML String into an object of the class indicated with the 'clazz' parameter.
@@ -80,7 +173,7 @@ public class JAXBUtils
 			timer = new Timer();
 			timer.start();
 		}
-		JAXBElement<?> elem = unmarshalFromXML(xmlStr, clazz);
+		JAXBElement<?> elem = unmarshalFromXML(new StreamSource(new StringReader(xmlStr)), clazz);
 		if (logger.isDebugEnabled())
 		{
 			timer.finish();
@@ -100,6 +193,21 @@ public class JAXBUtils
 	 * @throws MarshalException Failure to marshal the given object to a XML string.
 	 */
     public static String marshalToXML(JAXBElement<?> object) throws MarshalException
+    {
+    	return marshalToXML(object, (OutputMode)null);
+    }
+
+	/**
+	 * Returns the string version of the XML presentation of the given JAXBElement laid out according to the given output mode.
+	 * 
+	 * @param object The object to be marshaled to a String.
+	 * @param outputMode PRETTY or COMPACT. If null then the default output mode is used (see setDefaultOutputMode()).
+	 * 
+	 * @return See desc.
+	 * 
+	 * @throws MarshalException Failure to marshal the given object to a XML string.
+	 */
+    public static String marshalToXML(JAXBElement<?> object, OutputMode outputMode) throws MarshalException
     {
 		Timer timer = null;	
 		if (logger.isDebugEnabled())
@@ -110,22 +218,12 @@ public class JAXBUtils
 		StringWriter sw = new StringWriter();
 		try
 		{
-			Marshaller marshaller = getContext(object.getValue().getClass()).createMarshaller();
-
-			// Don't generate <?xml version="1.0" encoding="UTF-8" standalone="yes"?> in output
-			marshaller.setProperty("com.sun.xml.bind.xmlDeclaration", Boolean.FALSE);
-
-			// Format output nicely
-			marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-
-			// marshaller.marshal(personInfo, sw);
-			synchronized(marshaller)
-			{
-				marshaller.marshal(object, sw);
-			}
+			getXMLMarshaller(object.getValue().getClass(), outputMode).marshal(object, sw);
 		}
 		catch (JAXBException e)
 		{
+			// Don't re-use a marshaller that failed. It may be left in an inconsistent state.
+			removeXMLMarshaller(object.getValue().getClass(), outputMode);
 			throw new MarshalException("Failed to marshal to XML: " + e.getMessage(), e);
 		}
 
@@ -187,15 +285,11 @@ public class JAXBUtils
 		try
 		{
 			Class<?> clazz = object.getValue().getClass();
-			Marshaller marshaller = getContext(clazz).createMarshaller();
-
-			synchronized (marshaller)
-			{
-				marshaller.marshal(object, getJSONStreamWriter(clazz, sw));
-			}
+			getJSONMarshaller(clazz).marshal(object, getJSONStreamWriter(clazz, sw));
 		}
 		catch (JAXBException ex)
 		{
+			jsonMarshallers.get().remove(object.getValue().getClass());
 			throw new MarshalException("Failed to marshal to XML: " + ex.getMessage(), ex);
 		}
 
@@ -208,18 +302,165 @@ public class JAXBUtils
 		return sw.toString();
 	}
     
+	/**
+	 * This method unmarshals the XML read from the given input stream into an object of the class indicated with the 'clazz' 
+	 * parameter. The stream is not closed by this method.
+	 *  
+	 * @param in The stream holding the XML to un-marshal. Expected to be UTF-8 unless the XML declaration states otherwise.
+	 * @param clazz Indicates the class of the object to un-marshal into.
+	 * 
+	 * @return If no exception is thrown then the  object of type 'clazz'  is returned.
+	 * 
+	 * @throws UnmarshalException Failed to unmarshal the stream. See message of exception for more details.
+	 */
+	public static Object unmarshalFromXMLIntoObject(InputStream in, Class<?> clazz) throws UnmarshalException
+	{
+		Timer timer = null;	
+		if (logger.isDebugEnabled())
+		{
+			timer = new Timer();
+			timer.start();
+		}
+		JAXBElement<?> elem = unmarshalFromXML(new StreamSource(in), clazz);
+		if (logger.isDebugEnabled())
+		{
+			timer.finish();
+			logger.debug("Time taken to unmarshal "+clazz.getSimpleName()+" from XML stream: "+timer.timeTaken()+"ms");
+		}
+		
+		return (elem != null) ? elem.getValue() : null;
+	}
+
+	/**
+	 * Writes the XML presentation of the given JAXBElement to the given output stream in UTF-8. The stream is not closed by this 
+	 * method.
+	 * 
+	 * @param object The object to be marshaled.
+	 * @param out The stream to write the XML to.
+	 * 
+	 * @throws MarshalException Failure to marshal the given object to XML.
+	 */
+	public static void marshalToXML(JAXBElement<?> object, OutputStream out) throws MarshalException
+	{
+		marshalToXML(object, out, null);
+	}
+
+	/**
+	 * Writes the XML presentation of the given JAXBElement to the given output stream in UTF-8, laid out according to the given 
+	 * output mode. The stream is not closed by this method.
+	 * 
+	 * @param object The object to be marshaled.
+	 * @param out The stream to write the XML to.
+	 * @param outputMode PRETTY or COMPACT. If null then the default output mode is used (see setDefaultOutputMode()).
+	 * 
+	 * @throws MarshalException Failure to marshal the given object to XML.
+	 */
+	public static void marshalToXML(JAXBElement<?> object, OutputStream out, OutputMode outputMode) throws MarshalException
+	{
+		Timer timer = null;	
+		if (logger.isDebugEnabled())
+		{
+			timer = new Timer();
+			timer.start();
+		}
+		try
+		{
+			getXMLMarshaller(object.getValue().getClass(), outputMode).marshal(object, out);
+		}
+		catch (JAXBException e)
+		{
+			removeXMLMarshaller(object.getValue().getClass(), outputMode);
+			throw new MarshalException("Failed to marshal to XML: " + e.getMessage(), e);
+		}
+
+		if (logger.isDebugEnabled())
+		{
+			timer.finish();
+			logger.debug("Time taken to marshal "+object.getValue().getClass().getSimpleName()+" to XML stream: "+timer.timeTaken()+"ms");
+		}
+	}
+
+	/**
+	 * Unmarshal the JSON read from the given input stream into a Model object. The stream is not closed by this method.<br/><br/>
+	 * 
+	 * Note: The JSON library in use (Jettison) can only parse a complete JSON document, so the stream is read in full before it 
+	 * is unmarshalled. It still saves the caller from holding a copy of the payload.
+	 * 
+	 * @param in The stream holding the UTF-8 encoded JSON to unmarshal.
+	 * @param clazz Indicates the class of the object to un-marshal into.
+	 * 
+	 * @return See desc.
+	 * 
+	 * @throws UnmarshalException Failed to unmarshal the stream. See message of exception for more details.
+	 */
+	public static <T> T unmarshalFromJSONIntoObject(InputStream in, Class<T> clazz) throws UnmarshalException
+	{
+		String jsonStr = null;
+		try
+		{
+			jsonStr = readFully(in);
+		}
+		catch (IOException ex)
+		{
+			throw new UnmarshalException("Failed to read JSON stream for a JAXB Object of type " + clazz.getSimpleName(), ex);
+		}
+		return unmarshalFromJSONIntoObject(jsonStr, clazz);
+	}
+
+	/**
+	 * Writes the JSON presentation of the given JAXBElement to the given output stream in UTF-8. The stream is not closed by this 
+	 * method.
+	 * 
+	 * @param object The object to be marshaled.
+	 * @param out The stream to write the JSON to.
+	 * 
+	 * @throws MarshalException Failure to marshal the given object to JSON.
+	 */
+	public static void marshalToJSON(JAXBElement<?> object, OutputStream out) throws MarshalException
+	{
+		Timer timer = null;
+		if (logger.isDebugEnabled())
+		{
+			timer = new Timer();
+			timer.start();
+		}
+		Class<?> clazz = object.getValue().getClass();
+		try
+		{
+			Writer writer = new OutputStreamWriter(out, STREAM_ENCODING);
+			getJSONMarshaller(clazz).marshal(object, getJSONStreamWriter(clazz, writer));
+			writer.flush();
+		}
+		catch (JAXBException ex)
+		{
+			jsonMarshallers.get().remove(clazz);
+			throw new MarshalException("Failed to marshal to JSON: " + ex.getMessage(), ex);
+		}
+		catch (IOException ex)
+		{
+			throw new MarshalException("Failed to write JSON to stream: " + ex.getMessage(), ex);
+		}
+
+		if (logger.isDebugEnabled())
+		{
+			timer.finish();
+			logger.debug("Time taken to marshal " + clazz.getSimpleName()+ " to JSON stream: " + timer.timeTaken() + "ms");
+		}
+	}
+    
     /**
      * This is a convenience method so that JAXB Contexts can be initialised at any time. This proves to be
      * particular useful to avoid lengthy startup times for some classes when they hit the marshaller and
      * unmarshaller methods for the first time.
      * 
-     * @param clazz The class for which the JAXBContext shall be configured.
+     * @param clazz The class for which the JAXBContext and the JSON convention shall be configured.
      */
-    public static synchronized void initCtx(Class<?> clazz)
+    public static void initCtx(Class<?> clazz)
     {
     	try
     	{
     		getContext(clazz);
+    		getJSONConvention(clazz);
     	}
     	catch (Exception ex)
     	{
@@ -235,27 +476,23 @@ public class JAXBUtils
 	 * This method un-marshals the given XML String into a JXABElement object with the content being of the class indicated with the 'clazz' parameter.
 	 * To retrieve the actual object of the JAXBElement simply use the getValue() method on the returned JAXBElement.
 	 *  
-	 * @param xmlStr The XML String to un-marshal.
+	 * @param xmlSource The XML source (String or Stream) to un-marshal.
 	 * @param clazz Indicates the class of the object to un-marshal into.
 	 * 
 	 * @return If no exception is thrown then the JAXBElement with an object of type 'clazz' as its value is returned.
 	 * 
-	 * @throws UnmarshalException Failed to unmarshal the string. See message of exception for more details.
+	 * @throws UnmarshalException Failed to unmarshal the source. See message of exception for more details.
 	 */
-    private static JAXBElement<?> unmarshalFromXML(String xmlStr, Class<?> clazz) throws UnmarshalException
+    private static JAXBElement<?> unmarshalFromXML(Source xmlSource, Class<?> clazz) throws UnmarshalException
 	{
 		JAXBElement<?> elem = null;
 		try
 		{
-			Unmarshaller unmarshaller = getContext(clazz).createUnmarshaller();
-			synchronized(unmarshaller)
-			{
-				elem = (JAXBElement<?>) unmarshaller.unmarshal(new StreamSource(new StringReader(xmlStr)), clazz);
-			}
-
+			elem = getUnmarshaller(clazz).unmarshal(xmlSource, clazz);
 		}
 		catch (JAXBException ex)
 		{
+			unmarshallers.get().remove(clazz);
 			throw new UnmarshalException("Failed to unmarshal the given XML string into a JAXB Object of type "+clazz.getSimpleName(), ex);
 		}
 
@@ -267,14 +504,11 @@ public class JAXBUtils
 		JAXBElement<T> elem = null;
 		try
 		{
-			Unmarshaller unmarshaller = getContext(clazz).createUnmarshaller();
-			synchronized (unmarshaller)
-			{
-				elem = (JAXBElement<T>) unmarshaller.unmarshal(getJSONStreamReader(jsonStr, clazz), clazz);
-			}
+			elem = getUnmarshaller(clazz).unmarshal(getJSONStreamReader(jsonStr, clazz), clazz);
 		}
 		catch (Exception ex)
 		{
+			unmarshallers.get().remove(clazz);
 			throw new UnmarshalException("Failed to unmarshal the given JSON string into a JAXB Object of type " + clazz.getSimpleName(), ex);
 		}
 
@@ -283,23 +517,37 @@ public class JAXBUtils
 
 	private static XMLStreamWriter getJSONStreamWriter(Class<?> clazz, Writer writer)
 	{
-		Configuration jsonConfiguration = getJSONConfiguration(clazz);
-		MappedNamespaceConvention jsonConvention = new MappedNamespaceConvention(jsonConfiguration);
-		MappedXMLStreamWriter result = new MappedXMLStreamWriter(jsonConvention, writer);
+		MappedXMLStreamWriter result = new MappedXMLStreamWriter(getJSONConvention(clazz), writer);
 		result.setValueKey(JSON_VALUE_KEY);
 		return result;
 	}
 
 	private static XMLStreamReader getJSONStreamReader(String jsonStr, Class<?> clazz) throws JSONException, XMLStreamException
 	{
-		Configuration jsonConfiguration = getJSONConfiguration(clazz);
-		MappedNamespaceConvention jsonConvention = new MappedNamespaceConvention(jsonConfiguration);
 		JSONObject jsonObject = new JSONObject(jsonStr);
-		MappedXMLStreamReader result = new MappedXMLStreamReader(jsonObject, jsonConvention);
+		MappedXMLStreamReader result = new MappedXMLStreamReader(jsonObject, getJSONConvention(clazz));
 		result.setValueKey(JSON_VALUE_KEY);
 		return result;
 	}
 
+	/*
+	 * Returns the cached JSON convention for the given class. It is created on first use.
+	 */
+	private static MappedNamespaceConvention getJSONConvention(Class<?> clazz)
+	{
+		MappedNamespaceConvention convention = jsonConventions.get(clazz);
+		if (convention == null)
+		{
+			convention = new MappedNamespaceConvention(getJSONConfiguration(clazz));
+			MappedNamespaceConvention existing = jsonConventions.putIfAbsent(clazz, convention);
+			if (existing != null)
+			{
+				convention = existing;
+			}
+		}
+		return convention;
+	}
+
 	private static Configuration getJSONConfiguration(Class<?> clazz)
 	{
 		Configuration result = new Configuration();
@@ -316,6 +564,22 @@ public class JAXBUtils
 		return result;
 	}
 
+	/*
+	 * Reads the given UTF-8 encoded stream into a String. The stream is not closed.
+	 */
+	private static String readFully(InputStream in) throws IOException
+	{
+		Reader reader = new InputStreamReader(in, STREAM_ENCODING);
+		StringBuilder result = new StringBuilder();
+		char[] buffer = new char[8192];
+		int read;
+		while ((read = reader.read(buffer)) != -1)
+		{
+			result.append(buffer, 0, read);
+		}
+		return result.toString();
+	}
+
 	private static String getObjectNamespace(Class<?> clazz)
 	{
 		String result = null;
@@ -327,16 +591,94 @@ public class JAXBUtils
 		return result;
 	}
 
-    private synchronized static JAXBContext getContext(Class<?> clazz) throws JAXBException
+    private static JAXBContext getContext(Class<?> clazz) throws JAXBException
     {
-    	JAXBContext ctx = jaxbCtx.get(clazz.getSimpleName());
+    	JAXBContext ctx = jaxbCtx.get(clazz);
 		if (ctx == null)
 		{
-			logger.debug("No context for "+clazz.getSimpleName()+" exists yet. Create and add it to context map.");
+			logger.debug("No context for "+clazz.getName()+" exists yet. Create and add it to context map.");
 			ctx = JAXBContext.newInstance(clazz);
-			jaxbCtx.put(clazz.getSimpleName(), ctx);
+			
+			// Another thread may have been quicker. Always use the context that made it into the map.
+			JAXBContext existing = jaxbCtx.putIfAbsent(clazz, ctx);
+			if (existing != null)
+			{
+				ctx = existing;
+			}
 		}
 		
 		return ctx;
     }
+
+    /*
+     * Returns the XML marshaller for the given class and output mode of the current thread. The marshaller is created 
+     * and configured on first use only.
+     */
+    private static Marshaller getXMLMarshaller(Class<?> clazz, OutputMode outputMode) throws JAXBException
+    {
+    	boolean pretty = isPretty(outputMode);
+    	Map<Class<?>, Marshaller> marshallers = pretty ? prettyXMLMarshallers.get() : compactXMLMarshallers.get();
+    	Marshaller marshaller = marshallers.get(clazz);
+    	if (marshaller == null)
+    	{
+			marshaller = getContext(clazz).createMarshaller();
+
+			// Don't generate <?xml version="1.0" encoding="UTF-8" standalone="yes"?> in output
+			marshaller.setProperty("com.sun.xml.bind.xmlDeclaration", Boolean.FALSE);
+
+			// Format output nicely if required
+			marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.valueOf(pretty));
+			
+			marshallers.put(clazz, marshaller);
+    	}
+    	return marshaller;
+    }
+
+    private static void removeXMLMarshaller(Class<?> clazz, OutputMode outputMode)
+    {
+    	if (isPretty(outputMode))
+    	{
+    		prettyXMLMarshallers.get().remove(clazz);
+    	}
+    	else
+    	{
+    		compactXMLMarshallers.get().remove(clazz);
+    	}
+    }
+    
+    private static boolean isPretty(OutputMode outputMode)
+    {
+    	return ((outputMode != null) ? outputMode : getDefaultOutputMode()) == OutputMode.PRETTY;
+    }
+
+    /*
+     * Returns the JSON marshaller for the given class of the current thread. This marshaller writes to a
+     * Jettison stream writer and therefore has none of the XML specific properties set.
+     */
+    private static Marshaller getJSONMarshaller(Class<?> clazz) throws JAXBException
+    {
+    	Map<Class<?>, Marshaller> marshallers = jsonMarshallers.get();
+    	Marshaller marshaller = marshallers.get(clazz);
+    	if (marshaller == null)
+    	{
+			marshaller = getContext(clazz).createMarshaller();
+			marshallers.put(clazz, marshaller);
+    	}
+    	return marshaller;
+    }
+
+    /*
+     * Returns the unmarshaller for the given class of the current thread. It is used for XML and JSON.
+     */
+    private static Unmarshaller getUnmarshaller(Class<?> clazz) throws JAXBException
+    {
+    	Map<Class<?>, Unmarshaller> unmarshallerMap = unmarshallers.get();
+    	Unmarshaller unmarshaller = unmarshallerMap.get(clazz);
+    	if (unmarshaller == null)
+    	{
+    		unmarshaller = getContext(clazz).createUnmarshaller();
+    		unmarshallerMap.put(clazz, unmarshaller);
+    	}
+    	return unmarshaller;
+    }
 }
@@ -21,6 +21,7 @@ import java.io.Serializable;
 import javax.ws.rs.core.MediaType;
 
 import sif3.common.header.HeaderProperties;
+import sif3.common.model.DelayedRequestReceipt;
 import sif3.common.model.SIFContext;
 import sif3.common.model.SIFZone;
 
@@ -45,6 +46,7 @@ public class BaseResponse implements Serializable
 	private int contentLength = -1;
 	private SIFZone zone;
 	private SIFContext context;
+	private DelayedRequestReceipt delayedReceipt = null;
 
 	/**
 	 * Get the HTTP status.
@@ -186,6 +188,22 @@ public class BaseResponse implements Serializable
 		this.context = context;
 	}
 
+	/**
+	 * Only set for DELAYED requests that have been accepted by the provider. The actual response will be delivered through the
+	 * consumer's SIF queue and can be matched with the request ID of the receipt. Null for IMMEDIATE requests.
+	 * 
+	 * @return See description.
+	 */
+	public DelayedRequestReceipt getDelayedReceipt()
+	{
+		return this.delayedReceipt;
+	}
+
+	public void setDelayedReceipt(DelayedRequestReceipt delayedReceipt)
+	{
+		this.delayedReceipt = delayedReceipt;
+	}
+
 	/**
 	 * Convenience method to check if the error details property is set.
 	 * 
@@ -202,6 +220,6 @@ public class BaseResponse implements Serializable
 	    return "BaseResponse [status=" + this.status + ", statusMessage=" + this.statusMessage
 	            + ", hasEntity=" + this.hasEntity + ", error=" + this.error + ", hdrProperties="
 	            + this.hdrProperties + ", mediaType=" + this.mediaType + ", contentLength="
-	            + this.contentLength + ", zone=" + this.zone + ", context=" + this.context + "]";
+	            + this.contentLength + ", zone=" + this.zone + ", context=" + this.context + ", delayedReceipt=" + this.delayedReceipt + "]";
     }
 }
@@ -18,6 +18,7 @@
 
 package sif3.infra.common.conversion;
 
+import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -30,7 +31,9 @@ import javax.xml.bind.JAXBElement;
 
 import org.apache.log4j.Logger;
 
-import sif3.common.conversion.MarshalFactory;
+import sif3.common.conversion.FormattedMarshalFactory;
+import sif3.common.conversion.OutputMode;
+import sif3.common.conversion.StreamMarshalFactory;
 import sif3.common.exception.MarshalException;
 import sif3.common.exception.UnsupportedMediaTypeExcpetion;
 import sif3.common.utils.JAXBUtils;
@@ -44,7 +47,7 @@ import sif3.infra.common.model.ObjectFactory;
  * @author Joerg Huber
  *
  */
-public class InfraMarshalFactory implements MarshalFactory
+public class InfraMarshalFactory implements StreamMarshalFactory, FormattedMarshalFactory
 {
 	protected final Logger logger = Logger.getLogger(getClass());
 	
@@ -76,18 +79,30 @@ public class InfraMarshalFactory implements MarshalFactory
 	 */
 	@Override
 	public String marshalToXML(Object obj) throws MarshalException, UnsupportedMediaTypeExcpetion
+	{
+		return marshalToXML(obj, (OutputMode)null);
+	}
+
+	/**
+	 * Marshal the given object to XML laid out according to the given output mode.
+	 * 
+	 * @param obj The object to be marshaled to XML.
+	 * @param outputMode PRETTY or COMPACT. If null then the adapter's default output mode is used.
+	 * 
+	 * @return See description.
+	 * 
+	 * @throws MarshalException Failure to marshal the object to XML.
+	 * @throws UnsupportedMediaTypeExcpetion If XML is not a supported format.
+	 */
+	public String marshalToXML(Object obj, OutputMode outputMode) throws MarshalException, UnsupportedMediaTypeExcpetion
 	{
 		String result = null;
 		try
 		{
-			Method method = findCreateMethod(obj);
-			if (method != null)
+			JAXBElement<?> element = createElement(obj);
+			if (element != null)
 			{
-				JAXBElement<?> element = (JAXBElement<?>) method.invoke(objFactory, obj);
-				if (element != null)
-				{
-					result = JAXBUtils.marshalToXML(element);
-				}
+				result = JAXBUtils.marshalToXML(element, outputMode);
 			}
 		}
 		catch (Exception e)
@@ -130,12 +145,21 @@ public class InfraMarshalFactory implements MarshalFactory
 	 */
 	@Override
 	public String marshal(Object obj, MediaType mediaType) throws MarshalException, UnsupportedMediaTypeExcpetion
+	{
+		return marshal(obj, mediaType, (OutputMode)null);
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.FormattedMarshalFactory#marshal(java.lang.Object, javax.ws.rs.core.MediaType, sif3.common.conversion.OutputMode)
+	 */
+	@Override
+	public String marshal(Object obj, MediaType mediaType, OutputMode outputMode) throws MarshalException, UnsupportedMediaTypeExcpetion
 	{
 		if (mediaType != null)
 		{
 			if (MediaType.APPLICATION_XML_TYPE.isCompatible(mediaType) ||	MediaType.TEXT_XML_TYPE.isCompatible(mediaType))
 			{
-				return marshalToXML(obj);
+				return marshalToXML(obj, outputMode);
 			}
 			else if (MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType))
 			{
@@ -146,6 +170,71 @@ public class InfraMarshalFactory implements MarshalFactory
 		throw new UnsupportedMediaTypeExcpetion("Unsupported media type: " + mediaType + ". Cannot marshal the given input to this media type.");
 	}
 	
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.StreamMarshalFactory#marshalToXML(java.lang.Object, java.io.OutputStream)
+	 */
+	@Override
+	public void marshalToXML(Object obj, OutputStream out) throws MarshalException, UnsupportedMediaTypeExcpetion
+	{
+		try
+		{
+			JAXBElement<?> element = createElement(obj);
+			if (element != null)
+			{
+				JAXBUtils.marshalToXML(element, out);
+			}
+		}
+		catch (Exception e)
+		{
+			logger.error("An error occurred marshalling object to XML", e);
+			throw new MarshalException("An error occurred marshalling object to XML", e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.StreamMarshalFactory#marshalToJSON(java.lang.Object, java.io.OutputStream)
+	 */
+	@Override
+	public void marshalToJSON(Object obj, OutputStream out) throws MarshalException, UnsupportedMediaTypeExcpetion
+	{
+		try
+		{
+			JAXBElement<?> element = createElement(obj);
+			if (element != null)
+			{
+				JAXBUtils.marshalToJSON(element, out);
+			}
+		}
+		catch (Exception e)
+		{
+			logger.error("An error occurred marshalling object to JSON", e);
+			throw new MarshalException("An error occurred marshalling object to JSON", e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.StreamMarshalFactory#marshal(java.lang.Object, javax.ws.rs.core.MediaType, java.io.OutputStream)
+	 */
+	@Override
+	public void marshal(Object obj, MediaType mediaType, OutputStream out) throws MarshalException, UnsupportedMediaTypeExcpetion
+	{
+		if (mediaType != null)
+		{
+			if (MediaType.APPLICATION_XML_TYPE.isCompatible(mediaType) ||	MediaType.TEXT_XML_TYPE.isCompatible(mediaType))
+			{
+				marshalToXML(obj, out);
+				return;
+			}
+			else if (MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType))
+			{
+				marshalToJSON(obj, out);
+				return;
+			}
+		}
+		// If we get here then we deal with an unknown media type
+		throw new UnsupportedMediaTypeExcpetion("Unsupported media type: " + mediaType + ". Cannot marshal the given input to this media type.");
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see sif3.common.conversion.MediaTypeOperations#getDefault()
@@ -197,6 +286,12 @@ public class InfraMarshalFactory implements MarshalFactory
      * @param obj object that needs to be marshaled.
      * @return method - method to invoke to convert object into a jaxb element.
     */
+	private JAXBElement<?> createElement(Object obj) throws Exception
+	{
+		Method method = findCreateMethod(obj);
+		return (method != null) ? (JAXBElement<?>) method.invoke(objFactory, obj) : null;
+	}
+	
 	private Method findCreateMethod(Object obj)
 	{
 		Method result = null;
@@ -18,6 +18,7 @@
 
 package sif3.infra.common.conversion;
 
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -27,7 +28,7 @@ import javax.ws.rs.core.MediaType;
 
 import org.apache.log4j.Logger;
 
-import sif3.common.conversion.UnmarshalFactory;
+import sif3.common.conversion.StreamUnmarshalFactory;
 import sif3.common.exception.UnmarshalException;
 import sif3.common.exception.UnsupportedMediaTypeExcpetion;
 import sif3.common.utils.JAXBUtils;
@@ -40,7 +41,7 @@ import sif3.common.utils.JAXBUtils;
  * @author Joerg Huber
  *
  */
-public class InfraUnmarshalFactory implements UnmarshalFactory
+public class InfraUnmarshalFactory implements StreamUnmarshalFactory
 {
 	protected final Logger logger = Logger.getLogger(getClass());
 
@@ -109,6 +110,66 @@ public class InfraUnmarshalFactory implements UnmarshalFactory
 		throw new UnsupportedMediaTypeExcpetion("Unsupported media type: " + mediaType + ". Cannot unmarshal the given input from this media type.");
 	}
 
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.StreamUnmarshalFactory#unmarshalFromXML(java.io.InputStream, java.lang.Class)
+	 */
+	@Override
+	public Object unmarshalFromXML(InputStream in, Class<?> clazz) throws UnmarshalException, UnsupportedMediaTypeExcpetion
+	{
+		Object result = null;
+		try
+		{
+			result = JAXBUtils.unmarshalFromXMLIntoObject(in, clazz);
+		}
+		catch (Exception e)
+		{
+			logger.error("An error occurred unmarshalling object from XML", e);
+			throw new UnmarshalException("An error occurred unmarshalling object from XML", e);
+		}
+		return result;
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.StreamUnmarshalFactory#unmarshalFromJSON(java.io.InputStream, java.lang.Class)
+	 */
+	@Override
+	public Object unmarshalFromJSON(InputStream in, Class<?> clazz) throws UnmarshalException, UnsupportedMediaTypeExcpetion
+	{
+		Object result = null;
+		try
+		{
+			result = JAXBUtils.unmarshalFromJSONIntoObject(in, clazz);
+		}
+		catch (Exception e)
+		{
+			logger.error("An error occurred unmarshalling object from JSON", e);
+			throw new UnmarshalException("An error occurred unmarshalling object from JSON", e);
+		}
+		return result;
+	}
+
+	/* (non-Javadoc)
+	 * @see sif3.common.conversion.StreamUnmarshalFactory#unmarshal(java.io.InputStream, java.lang.Class, javax.ws.rs.core.MediaType)
+	 */
+	@Override
+	public Object unmarshal(InputStream in, Class<?> clazz, MediaType mediaType) throws UnmarshalException, UnsupportedMediaTypeExcpetion
+	{
+		if (mediaType != null)
+		{
+			if (MediaType.APPLICATION_XML_TYPE.isCompatible(mediaType) || MediaType.TEXT_XML_TYPE.isCompatible(mediaType))
+			{
+				return unmarshalFromXML(in, clazz);
+			}
+			else if (MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType))
+			{
+				return unmarshalFromJSON(in, clazz);
+			}
+		}
+
+		// If we get here then we deal with an unknown media type
+		throw new UnsupportedMediaTypeExcpetion("Unsupported media type: " + mediaType + ". Cannot unmarshal the given input from this media type.");
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see sif3.common.conversion.MediaTypeOperations#getDefault()
@@ -17,7 +17,6 @@
 package sif3.infra.common.env.mgr;
 
 import java.util.Date;
-import java.util.HashMap;
 
 import org.apache.log4j.Logger;
 
@@ -32,7 +31,6 @@ import sif3.infra.common.interfaces.EnvironmentManager;
 import sif3.infra.common.model.EnvironmentType;
 import sif3.infra.common.utils.SIFSessionUtils;
 import au.com.systemic.framework.utils.AdvancedProperties;
-import au.com.systemic.framework.utils.StringUtils;
 
 /**
  * This class deals with the main functions relating to the environments that need to be managed by the environment provider. 
@@ -52,11 +50,11 @@ public class DirectProviderEnvironmentManager implements EnvironmentManager
 	/* The environment store operation class to be used with this manager. */
 	private DirectProviderEnvStoreOps envOps = null;
 	
-	/* Key=SessionToken for environment & consumer, Data: SIF3Session. Used for BASIC and SIF_HMACSHA256 security */
-	private HashMap<String, SIF3Session> sessions = new HashMap<String, SIF3Session>();
-
-	/* Key=SecurityToken for environment & consumer, Data: SessionToken relating to securityToken. Used for Bearer security tokens*/
-	private HashMap<String, String> secTokenSession = new HashMap<String, String>();
+	private static final int DEFAULT_CACHE_SIZE = 1000;
+	private static final int DEFAULT_CACHE_TTL = 3600; // seconds
+	
+	/* Session cache for all consumer sessions. Used for BASIC, SIF_HMACSHA256 and Bearer security */
+	private SessionCache sessions = null;
 
 	private static DirectProviderEnvironmentManager instance = null;
 
@@ -93,6 +91,16 @@ public class DirectProviderEnvironmentManager implements EnvironmentManager
 	    return adapterFileNameWithoutExt;
     }
 
+    /**
+     * Returns the session cache of this environment manager. It can be used to monitor the cache (size, hits, misses, evictions).
+     * 
+     * @return See desc.
+     */
+    public SessionCache getSessionCache()
+    {
+    	return sessions;
+    }
+
     /*-----------------------*/
 	/*-- Interface Methods --*/
 	/*-----------------------*/
@@ -122,11 +130,7 @@ public class DirectProviderEnvironmentManager implements EnvironmentManager
      */
 	public SIF3Session getSessionBySessionToken(String sessionToken)
 	{
-		if (sessionToken != null)
-		{
-			return sessions.get(sessionToken);
-		}
-		return null;
+		return sessions.getBySessionToken(sessionToken);
 	}
 
 	/*
@@ -137,11 +141,7 @@ public class DirectProviderEnvironmentManager implements EnvironmentManager
 	@Override
 	public SIF3Session getSessionBySecurityToken(String securityToken)
 	{
-		if (securityToken != null)
-		{
-			return getSessionBySessionToken(secTokenSession.get(securityToken));
-		}
-		return null; // no session or invalid securityToken
+		return sessions.getBySecurityToken(securityToken); // null if no session or invalid securityToken
 	}
 
 	/* 
@@ -162,20 +162,8 @@ public class DirectProviderEnvironmentManager implements EnvironmentManager
   				sif3Session.setSecurityToken(securityToken);
   				sif3Session.setSecurityTokenExpiry(securityExpiryDate);
   				
-  				// Refresh cache
-  				sessions.put(sessionToken, sif3Session);
-  				
-  				// Potentially we must remove old security token - session token association
-  				if (StringUtils.notEmpty(oldSecurityToken)) // should be in the security - session association cache
-  				{
-  					secTokenSession.remove(oldSecurityToken);
-  				}
-
-  				// Set new association
-				if (StringUtils.notEmpty(securityToken))
-  				{
-  					secTokenSession.put(securityToken, sessionToken);
-  				}
+  				// Replace old security token - session token association with new one.
+  				sessions.updateSecurityToken(sif3Session, oldSecurityToken);
 
   				return true;
   			}
@@ -224,7 +212,7 @@ public class DirectProviderEnvironmentManager implements EnvironmentManager
 	{
 		SIF3Session sif3Session = envOps.createSession(inputEnvironment, tokenInfo, useSecured);
 		
-		return updateSessionAndExtractEnvironment(sif3Session);
+		return updateSessionAndExtractEnvironment(sif3Session, useSecured);
 	}
 
 	/**
@@ -302,7 +290,7 @@ public class DirectProviderEnvironmentManager implements EnvironmentManager
 	{
 		SIF3Session sif3Session = envOps.loadSessionFromWorkstore(sessionToken, tokenInfo, useSecured);
 
-		return updateSessionAndExtractEnvironment(sif3Session);	
+		return updateSessionAndExtractEnvironment(sif3Session, useSecured);	
 	}
 
 	/**
@@ -323,7 +311,7 @@ public class DirectProviderEnvironmentManager implements EnvironmentManager
 	{
 		SIF3Session sif3Session = envOps.loadSessionFromWorkstore(tokenInfo, useSecured);
 
-		return updateSessionAndExtractEnvironment(sif3Session);	
+		return updateSessionAndExtractEnvironment(sif3Session, useSecured);	
 	}
 
 	/**
@@ -347,7 +335,7 @@ public class DirectProviderEnvironmentManager implements EnvironmentManager
 	{
 		SIF3Session sif3Session = envOps.loadAndUpdateSession(environmentKey, tokenInfo, useSecured);
 
-		return updateSessionAndExtractEnvironment(sif3Session);	
+		return updateSessionAndExtractEnvironment(sif3Session, useSecured);	
 	}
 
 	/**
@@ -371,7 +359,7 @@ public class DirectProviderEnvironmentManager implements EnvironmentManager
 	{
 		SIF3Session sif3Session = envOps.loadAndUpdateSession(environmentID, tokenInfo, useSecured);
 
-		return updateSessionAndExtractEnvironment(sif3Session);	
+		return updateSessionAndExtractEnvironment(sif3Session, useSecured);	
 	}
 
 	/**
@@ -399,15 +387,7 @@ public class DirectProviderEnvironmentManager implements EnvironmentManager
 				}
 			}
 
-			// At this point we only have to remove the session from the session cache.
-		
-			// Remove security token - session token link.
-			if (StringUtils.notEmpty(sif3Session.getSecurityToken()))
-			{
-				secTokenSession.remove(sif3Session.getSecurityToken());
-			}
-		  
-			// now remove it from the session store
+			// At this point we only have to remove the session (and its security token link) from the session cache.
 			sessions.remove(sessionToken);
 			return true;
 		}
@@ -432,6 +412,32 @@ public class DirectProviderEnvironmentManager implements EnvironmentManager
 		super();
 		this.adapterFileNameWithoutExt = adapterFileNameWithoutExt;
 		this.envOps = new DirectProviderEnvStoreOps(adapterFileNameWithoutExt);
+		
+		AdvancedProperties props = envOps.getServiceProperties();
+		int maxSize = (props != null) ? props.getPropertyAsInt("adapter.sessionCache.maxSize", DEFAULT_CACHE_SIZE) : DEFAULT_CACHE_SIZE;
+		int ttl = (props != null) ? props.getPropertyAsInt("adapter.sessionCache.ttl", DEFAULT_CACHE_TTL) : DEFAULT_CACHE_TTL;
+		this.sessions = new SessionCache(maxSize, ttl, new SessionCache.SessionLoader()
+		{
+			@Override
+			public SIF3Session reloadSession(String sessionToken, boolean useSecured)
+			{
+				try
+				{
+					SIF3Session sif3Session = envOps.loadSessionFromWorkstore(sessionToken, null, useSecured);
+					if (sif3Session != null)
+					{
+						extractEnvironment(sif3Session);
+					}
+					return sif3Session;
+				}
+				catch (Exception ex)
+				{
+					logger.error("Failed to reload expired session with session token "+sessionToken+" from workstore: "+ex.getMessage(), ex);
+					return null;
+				}
+			}
+		});
+		logger.debug("Session cache initialised: "+sessions);
 	}
 	
 	/*
@@ -439,29 +445,34 @@ public class DirectProviderEnvironmentManager implements EnvironmentManager
 	 * sif3session's services and store the updated the sif3session in the session store. The extracted environment is then 
 	 * returned.
 	 */
-	private EnvironmentType updateSessionAndExtractEnvironment(SIF3Session sif3Session)
+	private EnvironmentType updateSessionAndExtractEnvironment(SIF3Session sif3Session, boolean useSecured)
 	{
 		if (sif3Session != null) // we are good and have a session.
 		{
-			EnvironmentType newEnv = envOps.loadEnvironmentFromString(sif3Session.getEnvironmentXML());
-			
-			// Extract the service info and store it in an easy accessible way in the session.
-			SIFSessionUtils.loadServiceInfoForSession(sif3Session, newEnv);
-
-			// XML no longer needed.
-			sif3Session.setEnvironmentXML(null);
+			EnvironmentType newEnv = extractEnvironment(sif3Session);
 
-			// add to session Store
-			sessions.put(sif3Session.getSessionToken(), sif3Session);
-			
-			// link session to security token if it is available
-			if (StringUtils.notEmpty(sif3Session.getSecurityToken()))
-			{
-			  secTokenSession.put(sif3Session.getSecurityToken(), sif3Session.getSessionToken());
-			}
+			// add to session Store and link session to security token if it is available
+			sessions.put(sif3Session, useSecured);
 			
 			return newEnv;
 		}
 		return null;
 	}
+	
+	/*
+	 * Extracts the environment from the environmentXML of the given session and loads the service info of the session from it. The
+	 * environmentXML is no longer needed afterwards and is removed from the session.
+	 */
+	private EnvironmentType extractEnvironment(SIF3Session sif3Session)
+	{
+		EnvironmentType newEnv = envOps.loadEnvironmentFromString(sif3Session.getEnvironmentXML());
+		
+		// Extract the service info and store it in an easy accessible way in the session.
+		SIFSessionUtils.loadServiceInfoForSession(sif3Session, newEnv);
+
+		// XML no longer needed.
+		sif3Session.setEnvironmentXML(null);
+		
+		return newEnv;
+	}
 }
@@ -0,0 +1,318 @@
+/*
+ * SessionCache.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package sif3.infra.common.env.mgr;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import sif3.common.persist.model.SIF3Session;
+import au.com.systemic.framework.utils.StringUtils;
+
+/**
+ * This class is the session cache used by the DirectProviderEnvironmentManager. It is safe to be used by many request threads at the 
+ * same time. The cache is bounded by a maximum number of sessions and each session has a time to live (TTL). If the TTL of a session 
+ * has expired the session is reloaded through the SessionLoader given to this cache. If the cache is full then the least recently used 
+ * session is removed to make room for a new one. Sessions that are not in the cache are NOT loaded by this class. The callers of 
+ * the DirectProviderEnvironmentManager deal with that case already as they know if the session is accessed through a secure 
+ * connection or not.<br/><br/>
+ * 
+ * The number of hits, misses and evictions are counted and can be retrieved for monitoring purposes.
+ * 
+ * @author agent
+ */
+public class SessionCache
+{
+	protected final Logger logger = Logger.getLogger(getClass());
+
+	/**
+	 * Used by the session cache to reload a session from the workstore once its TTL has expired.
+	 */
+	public interface SessionLoader
+	{
+		/**
+		 * Reloads the session for the given session token. If no session exists then null must be returned.
+		 * 
+		 * @param sessionToken The session token of the session to reload.
+		 * @param useSecured The value that has been used when the session was added to the cache.
+		 * 
+		 * @return See desc.
+		 */
+		public SIF3Session reloadSession(String sessionToken, boolean useSecured);
+	}
+	
+	/* Key=SessionToken for environment & consumer, Data: SIF3Session. Used for BASIC and SIF_HMACSHA256 security */
+	private ConcurrentHashMap<String, CacheEntry> sessions = new ConcurrentHashMap<String, CacheEntry>();
+
+	/* Key=SecurityToken for environment & consumer, Data: SessionToken relating to securityToken. Used for Bearer security tokens*/
+	private ConcurrentHashMap<String, String> secTokenSession = new ConcurrentHashMap<String, String>();
+
+	private int maxSize;
+	private long ttlMillis;
+	private SessionLoader loader;
+	
+	private AtomicLong hits = new AtomicLong(0);
+	private AtomicLong misses = new AtomicLong(0);
+	private AtomicLong evictions = new AtomicLong(0);
+	
+	/**
+	 * Creates a session cache.
+	 * 
+	 * @param maxSize The maximum number of sessions in this cache. If 0 or negative then the cache is unbounded.
+	 * @param ttlSeconds The time to live of a session in the cache in seconds. If 0 or negative then sessions never expire.
+	 * @param loader Used to reload sessions that have expired. If null then expired sessions are simply removed.
+	 */
+	public SessionCache(int maxSize, int ttlSeconds, SessionLoader loader)
+	{
+		super();
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlSeconds * 1000L;
+		this.loader = loader;
+	}
+	
+	/**
+	 * Returns the number of lookups that have been served from the cache.
+	 * 
+	 * @return See desc.
+	 */
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups that could not be served from the cache. This includes lookups of expired sessions.
+	 * 
+	 * @return See desc.
+	 */
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of sessions that have been removed from the cache because the cache was full or the session has expired.
+	 * 
+	 * @return See desc.
+	 */
+	public long getEvictions()
+	{
+		return evictions.get();
+	}
+	
+	/**
+	 * Returns the number of sessions currently held in the cache.
+	 * 
+	 * @return See desc.
+	 */
+	public int size()
+	{
+		return sessions.size();
+	}
+	
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	public int getTtlSeconds()
+	{
+		return (int)(ttlMillis / 1000L);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SessionCache [size=" + size() + ", maxSize=" + maxSize + ", ttlSeconds=" + getTtlSeconds() + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+	}
+
+	/*----------------------------------------------------------------------*/
+	/*-- Package Methods: Only the environment managers modify the cache. --*/
+	/*----------------------------------------------------------------------*/
+
+	/*
+	 * Returns the session for the given session token or null if it is not in the cache. If the session has expired it is reloaded.
+	 */
+	SIF3Session getBySessionToken(String sessionToken)
+	{
+		if (sessionToken == null)
+		{
+			return null;
+		}
+		
+		CacheEntry entry = sessions.get(sessionToken);
+		if (entry == null)
+		{
+			misses.incrementAndGet();
+			return null;
+		}
+		
+		long now = System.currentTimeMillis();
+		if ((ttlMillis > 0) && (now - entry.loadedAt > ttlMillis))
+		{
+			misses.incrementAndGet();
+			evictions.incrementAndGet();
+			SIF3Session sif3Session = (loader != null) ? loader.reloadSession(sessionToken, entry.useSecured) : null;
+			if (sif3Session != null)
+			{
+				put(sif3Session, entry.useSecured);
+			}
+			else
+			{
+				remove(sessionToken);
+			}
+			return sif3Session;
+		}
+		
+		hits.incrementAndGet();
+		entry.lastAccess = now;
+		return entry.session;
+	}
+
+	/*
+	 * Returns the session for the given security token or null if it is not in the cache.
+	 */
+	SIF3Session getBySecurityToken(String securityToken)
+	{
+		if (securityToken == null)
+		{
+			return null;
+		}
+		String sessionToken = secTokenSession.get(securityToken);
+		if (sessionToken == null)
+		{
+			misses.incrementAndGet();
+			return null;
+		}
+		return getBySessionToken(sessionToken);
+	}
+
+	/*
+	 * Adds or replaces the given session and links it to its security token if it has one.
+	 */
+	void put(SIF3Session sif3Session, boolean useSecured)
+	{
+		CacheEntry old = sessions.put(sif3Session.getSessionToken(), new CacheEntry(sif3Session, useSecured));
+		if (old != null)
+		{
+			unlinkSecurityToken(old.securityToken, sif3Session.getSessionToken());
+		}
+		if (StringUtils.notEmpty(sif3Session.getSecurityToken()))
+		{
+			secTokenSession.put(sif3Session.getSecurityToken(), sif3Session.getSessionToken());
+		}
+		
+		if ((maxSize > 0) && (sessions.size() > maxSize))
+		{
+			evictLeastRecentlyUsed(sif3Session.getSessionToken());
+		}
+	}
+	
+	/*
+	 * Replaces the security token of an already cached session. The given session must already hold the new security token.
+	 */
+	void updateSecurityToken(SIF3Session sif3Session, String oldSecurityToken)
+	{
+		unlinkSecurityToken(oldSecurityToken, sif3Session.getSessionToken());
+		CacheEntry entry = sessions.get(sif3Session.getSessionToken());
+		if (entry != null)
+		{
+			entry.securityToken = sif3Session.getSecurityToken();
+		}
+		if (StringUtils.notEmpty(sif3Session.getSecurityToken()))
+		{
+			secTokenSession.put(sif3Session.getSecurityToken(), sif3Session.getSessionToken());
+		}
+	}
+	
+	/*
+	 * Removes the session for the given session token and its security token link. Returns the removed session or null if it
+	 * was not in the cache.
+	 */
+	SIF3Session remove(String sessionToken)
+	{
+		CacheEntry entry = sessions.remove(sessionToken);
+		if (entry != null)
+		{
+			unlinkSecurityToken(entry.securityToken, sessionToken);
+			return entry.session;
+		}
+		return null;
+	}
+	
+	/*---------------------*/
+	/*-- Private methods --*/
+	/*---------------------*/
+	private void unlinkSecurityToken(String securityToken, String sessionToken)
+	{
+		if (StringUtils.notEmpty(securityToken))
+		{
+			secTokenSession.remove(securityToken, sessionToken);
+		}
+	}
+	
+	/*
+	 * Removes the least recently used session, but never the one just added. Adding sessions is rare compared to reading them, so a
+	 * scan of the cache is acceptable here and keeps reads lock free.
+	 */
+	private void evictLeastRecentlyUsed(String keepSessionToken)
+	{
+		while (sessions.size() > maxSize)
+		{
+			String oldestToken = null;
+			long oldestAccess = Long.MAX_VALUE;
+			for (Map.Entry<String, CacheEntry> entry : sessions.entrySet())
+			{
+				if (!entry.getKey().equals(keepSessionToken) && (entry.getValue().lastAccess < oldestAccess))
+				{
+					oldestAccess = entry.getValue().lastAccess;
+					oldestToken = entry.getKey();
+				}
+			}
+			if (oldestToken == null)
+			{
+				return;
+			}
+			if (remove(oldestToken) != null)
+			{
+				evictions.incrementAndGet();
+				if (logger.isDebugEnabled())
+				{
+					logger.debug("Session cache full (max = "+maxSize+"). Evicted session with session token "+oldestToken);
+				}
+			}
+		}
+	}
+	
+	private static class CacheEntry
+	{
+		private final SIF3Session session;
+		private final boolean useSecured;
+		private final long loadedAt;
+		private volatile long lastAccess;
+		private volatile String securityToken;
+		
+		private CacheEntry(SIF3Session session, boolean useSecured)
+		{
+			this.session = session;
+			this.useSecured = useSecured;
+			this.loadedAt = System.currentTimeMillis();
+			this.lastAccess = loadedAt;
+			this.securityToken = session.getSecurityToken();
+		}
+	}
+}
@@ -29,6 +29,7 @@ import sif3.common.CommonConstants;
 import sif3.common.CommonConstants.AdapterType;
 import sif3.common.CommonConstants.QueuePollingType;
 import sif3.common.CommonConstants.QueueStrategy;
+import sif3.common.conversion.OutputMode;
 import sif3.common.header.HeaderValues.UpdateType;
 import sif3.common.model.AuthenticationInfo.AuthenticationMethod;
 import sif3.common.utils.FileAndFolderUtils;
@@ -199,6 +200,9 @@ public class AdapterEnvironmentStore implements Serializable
 
 			  		// Media Type
 			  		environment.setMediaType(convertMediaType(adapterProperties.getPropertyAsString("env.mediaType", null)));
+			  		
+			  		// XML Output Mode (pretty or compact)
+			  		environment.setOutputMode(getOutputMode(adapterProperties));
 
 			  		if (!loadExistingEnvInfo(adapterProperties))
 			  		{
@@ -326,6 +330,24 @@ public class AdapterEnvironmentStore implements Serializable
 		}	
 	}
 
+	private OutputMode getOutputMode(AdvancedProperties props)
+	{
+		String value = props.getPropertyAsString("adapter.marshal.outputMode", null);
+		if (StringUtils.isEmpty(value))
+		{
+			return null; // Framework decides based on log level.
+		}
+		try
+		{
+			return OutputMode.valueOf(value.trim().toUpperCase());
+		}
+		catch (Exception ex) // Invalid value has been provided.
+		{
+			logger.error("Invalid Output Mode provided in property adapter.marshal.outputMode in "+props.getPropFileNameFull()+". Default based on log level is used.");
+			return null;
+		}	
+	}
+
 	private boolean getSecureConnectionInfo(AdvancedProperties props)
     {
     	return props.getPropertyAsBool("adapter.use.https", false);
@@ -463,10 +485,18 @@ public class AdapterEnvironmentStore implements Serializable
 		// Get queue name. If not provided use adapterName but remove all white spaces.
 		envInfo.setQueueName(props.getPropertyAsString("events.queue.name", envInfo.getAdapterName().replaceAll("\\s+","")));
 		envInfo.setNumMsgQueueReaders(props.getPropertyAsInt("events.queue.subscribers", 1));
+		envInfo.setPrefetchSize(props.getPropertyAsInt("events.queue.prefetch", 0));
+		envInfo.setDedupCapacity(props.getPropertyAsInt("events.dedup.capacity", 0));
+		envInfo.setDedupWindow(props.getPropertyAsInt("events.dedup.window", 3600));
+		envInfo.setDedupDir(props.getPropertyAsString("events.dedup.dir", null));
+		envInfo.setDelayedEnabled(props.getPropertyAsBool("events.delayed.enabled", false));
+		envInfo.setDelayedTimeout(props.getPropertyAsInt("events.delayed.timeout", 3600));
+		envInfo.setDelayedCallbackThreads(props.getPropertyAsInt("events.delayed.callbackThreads", 2));
 		envInfo.setQueueStrategy(getQueueStrategy(adapterProperties));
 		envInfo.setQueueType(getQueueType(adapterProperties));
 		envInfo.setPollFrequency(props.getPropertyAsInt("events.polling.frequency", CommonConstants.DEFAULT_POLL_FREQ));
 		envInfo.setLongPollTimeOut(props.getPropertyAsInt("events.longPolling.timeout", CommonConstants.DEFAULT_LONGPOLL_WAIT));
+		envInfo.setPollMinWait(props.getPropertyAsInt("events.polling.minWait", CommonConstants.DEFAULT_POLL_MIN_WAIT));
 		envInfo.setRemoveSubscribersOnShutdown(adapterProperties.getPropertyAsBool("events.subscriptions.removeOnShutdown", false));
 		
 		if (errorsFound)
@@ -43,6 +43,14 @@ public class ConsumerEnvironment extends EnvironmentInfo
 	private QueuePollingType queueType = QueuePollingType.IMMEDIATE;
 	private int pollFrequency = CommonConstants.DEFAULT_POLL_FREQ;
 	private int longPollTimeOut = CommonConstants.DEFAULT_LONGPOLL_WAIT;
+	private int pollMinWait = CommonConstants.DEFAULT_POLL_MIN_WAIT;
+	private int prefetchSize = 0;
+	private int dedupCapacity = 0;
+	private int dedupWindow = 3600; // seconds
+	private String dedupDir = null;
+	private boolean delayedEnabled = false;
+	private int delayedTimeout = 3600; // seconds
+	private int delayedCallbackThreads = 2;
 	private String queueName = null;
 	private int numMsgQueueReaders = 1;
 	private boolean removeSubscribersOnShutdown = false;
@@ -165,6 +173,92 @@ public class ConsumerEnvironment extends EnvironmentInfo
     	this.longPollTimeOut = longPollTimeOut;
     }
 
+	public int getPollMinWait()
+    {
+    	return this.pollMinWait;
+    }
+
+	public void setPollMinWait(int pollMinWait)
+    {
+    	this.pollMinWait = pollMinWait;
+    }
+
+	public int getPrefetchSize()
+    {
+    	return this.prefetchSize;
+    }
+
+	public void setPrefetchSize(int prefetchSize)
+    {
+    	this.prefetchSize = prefetchSize;
+    }
+
+	public int getDedupCapacity()
+    {
+    	return this.dedupCapacity;
+    }
+
+	public void setDedupCapacity(int dedupCapacity)
+    {
+    	this.dedupCapacity = dedupCapacity;
+    }
+
+	public int getDedupWindow()
+    {
+    	return this.dedupWindow;
+    }
+
+	public void setDedupWindow(int dedupWindow)
+    {
+    	this.dedupWindow = dedupWindow;
+    }
+
+	public String getDedupDir()
+    {
+    	return this.dedupDir;
+    }
+
+	public void setDedupDir(String dedupDir)
+    {
+    	this.dedupDir = dedupDir;
+    }
+
+	/**
+	 * TRUE if DELAYED requests can be issued by consumers. Delayed responses are delivered through the consumer's SIF queue, so this
+	 * requires events to be enabled and supported.
+	 * 
+	 * @return See desc.
+	 */
+	public boolean getDelayedEnabled()
+    {
+    	return this.delayedEnabled;
+    }
+
+	public void setDelayedEnabled(boolean delayedEnabled)
+    {
+    	this.delayedEnabled = delayedEnabled;
+    }
+
+	public int getDelayedTimeout()
+    {
+    	return this.delayedTimeout;
+    }
+
+	public void setDelayedTimeout(int delayedTimeout)
+    {
+    	this.delayedTimeout = delayedTimeout;
+    }
+
+	public int getDelayedCallbackThreads()
+    {
+    	return this.delayedCallbackThreads;
+    }
+
+	public void setDelayedCallbackThreads(int delayedCallbackThreads)
+    {
+    	this.delayedCallbackThreads = delayedCallbackThreads;
+    }
+
 	public boolean getRemoveSubscribersOnShutdown()
     {
     	return this.removeSubscribersOnShutdown;
@@ -182,8 +276,8 @@ public class ConsumerEnvironment extends EnvironmentInfo
 	            + this.useAdvisory + ", templateXMLFileName=" + this.templateXMLFileName
 	            + ", eventsEnabled=" + this.eventsEnabled + ", queueStrategy=" + this.queueStrategy
 	            + ", queueType=" + this.queueType + ", pollFrequency=" + this.pollFrequency
-	            + ", longPollTimeOut=" + this.longPollTimeOut + ", queueName=" + this.queueName
-	            + ", numMsgQueueReaders=" + this.numMsgQueueReaders + ", removeSubscribersOnShutdown="
+	            + ", longPollTimeOut=" + this.longPollTimeOut + ", pollMinWait=" + this.pollMinWait + ", queueName=" + this.queueName
+	            + ", numMsgQueueReaders=" + this.numMsgQueueReaders + ", prefetchSize=" + this.prefetchSize + ", dedupCapacity=" + this.dedupCapacity + ", dedupWindow=" + this.dedupWindow + ", dedupDir=" + this.dedupDir + ", delayedEnabled=" + this.delayedEnabled + ", delayedTimeout=" + this.delayedTimeout + ", delayedCallbackThreads=" + this.delayedCallbackThreads + ", removeSubscribersOnShutdown="
 	            + this.removeSubscribersOnShutdown + ", toString()=" + super.toString() + "]";
     }
 }
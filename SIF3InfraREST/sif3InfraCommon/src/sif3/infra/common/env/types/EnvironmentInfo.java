@@ -25,6 +25,7 @@ import java.util.HashMap;
 import javax.ws.rs.core.MediaType;
 
 import sif3.common.CommonConstants.AdapterType;
+import sif3.common.conversion.OutputMode;
 import sif3.common.model.AuthenticationInfo.AuthenticationMethod;
 import sif3.common.model.EnvironmentKey;
 import sif3.infra.common.env.types.ConsumerEnvironment.ConnectorName;
@@ -49,6 +50,7 @@ public class EnvironmentInfo implements Serializable
     private URI       baseURI                = null; // URI to broker
     private boolean   secureConnection      = false;
    	private MediaType mediaType             = MediaType.APPLICATION_XML_TYPE;
+   	private OutputMode outputMode           = null; // null => PRETTY if debug is on, COMPACT otherwise
 	private AdapterType adapterType         = null;
     private boolean checkACL                = true;
     private EnvironmentType environmentType = null;
@@ -208,6 +210,16 @@ public class EnvironmentInfo implements Serializable
 		this.mediaType = mediaType;
 	}
 
+	public OutputMode getOutputMode()
+	{
+		return outputMode;
+	}
+
+	public void setOutputMode(OutputMode outputMode)
+	{
+		this.outputMode = outputMode;
+	}
+
 	public boolean getRemoveEnvOnShutdown()
 	{
 		return removeEnvOnShutdown;
@@ -324,7 +336,7 @@ public class EnvironmentInfo implements Serializable
 	            + ", eventsSupported=" + eventsSupported + ", existingEnvURI="
 	            + existingEnvURI + ", existingSessionToken="
 	            + existingSessionToken + ", generatorID=" + generatorID
-	            + ", mediaType=" + mediaType + ", password=" + password
+	            + ", mediaType=" + mediaType + ", outputMode=" + outputMode + ", password=" + password
 	            + ", removeEnvOnShutdown=" + removeEnvOnShutdown
 	            + ", secureConnection=" + secureConnection
 	            + ", useExistingEnv=" + useExistingEnv + "]";
@@ -47,6 +47,7 @@ public class SIFSessionUtils
 	/**
 	 * This method populates the SIF3Session.services property with the values of the given environment. If there are no services
 	 * defined in the environment or the environment is null then the "services" property in the sif3session remains untouched.
+	 * Once the services are populated the service index of the session is built.
 	 * 
 	 * @param sif3Session The session o be updated with the services from the environment.
 	 * @param environment The environment from where to extract the service information.
@@ -123,6 +124,9 @@ public class SIFSessionUtils
 						}
 					}
 				}
+				
+				// Index the services so that ACL checks don't need to iterate through all services on each request.
+				sif3Session.buildServiceIndex();
 			}
 		}
 		else
@@ -19,6 +19,7 @@
 package sif3.infra.rest.client;
 
 import java.awt.TrayIcon.MessageType;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.HashMap;
 
@@ -29,11 +30,14 @@ import javax.ws.rs.core.UriBuilder;
 
 import org.apache.log4j.Logger;
 
+import sif3.common.conversion.JAXBStreamUnmarshalFactory;
 import sif3.common.conversion.MarshalFactory;
+import sif3.common.conversion.StreamUnmarshalFactory;
 import sif3.common.conversion.UnmarshalFactory;
 import sif3.common.exception.UnmarshalException;
 import sif3.common.exception.UnsupportedMediaTypeExcpetion;
 import sif3.common.header.HeaderProperties;
+import sif3.common.header.HeaderValues;
 import sif3.common.header.RequestHeaderConstants;
 import sif3.common.header.ResponseHeaderConstants;
 import sif3.common.model.SIFContext;
@@ -302,8 +306,9 @@ public abstract class BaseClient
 		hdrProperties.setHeaderProperty(RequestHeaderConstants.HDR_MESSAGE_ID, UUIDGenerator.getUUID());
 		//builder = builder.header(RequestHeaderConstants.HDR_MESSAGE_ID, UUIDGenerator.getUUID());
 		
-		// Sometimes the request ID is not required (i.e. events)
-		if (includeRequestID)
+		// Sometimes the request ID is not required (i.e. events). DELAYED requests set their request ID before the request is sent
+		// because the ID is needed to match the delayed response. Keep it in that case.
+		if (includeRequestID && !isDelayedWithRequestID(hdrProperties))
 		{
 			hdrProperties.setHeaderProperty(RequestHeaderConstants.HDR_REQUEST_ID, UUIDGenerator.getUUID());
 			//builder = builder.header(RequestHeaderConstants.HDR_REQUEST_ID, UUIDGenerator.getUUID());
@@ -378,7 +383,13 @@ public abstract class BaseClient
 		
 		if (isSuccessStatusCode(clientResponse.getClientResponseStatus().getStatusCode(), successStatusCodes) && !isErrorMessageType)
 		{
-			if (response.getHasEntity())
+			// If the unmarshaller can read from a stream we unmarshal straight from the response stream. This avoids a full String copy
+			// of large payloads. When debug is on we want to log the payload, so the String is needed in that case.
+			if (response.getHasEntity() && isStreamUnmarshal(returnObjectClass))
+			{
+				setDataObjectFromStream(response, clientResponse, returnObjectClass);
+			}
+			else if (response.getHasEntity())
 			{
 				String payload = clientResponse.getEntity(String.class);
 				if (logger.isDebugEnabled())
@@ -435,6 +446,56 @@ public abstract class BaseClient
 	}
 
 	
+	private boolean isDelayedWithRequestID(HeaderProperties hdrProperties)
+	{
+		return HeaderValues.RequestType.DELAYED.name().equals(hdrProperties.getHeaderProperty(RequestHeaderConstants.HDR_REQUEST_TYPE)) && 
+		       StringUtils.notEmpty(hdrProperties.getHeaderProperty(RequestHeaderConstants.HDR_REQUEST_ID));
+	}
+	
+	/*
+	 * Returns true if the data model unmarshaller supports streams (directly or through the JAXB stream adapter) and the 
+	 * returnObjectClass requires an actual unmarshal.
+	 */
+	private boolean isStreamUnmarshal(Class<?> returnObjectClass)
+	{
+		return (returnObjectClass != null) &&
+		       !returnObjectClass.getSimpleName().equals(String.class.getSimpleName()) &&
+		       !logger.isDebugEnabled() &&
+		       (JAXBStreamUnmarshalFactory.getStreamUnmarshaller(getDataModelUnmarshaller()) != null);
+	}
+	
+	/*
+	 * Unmarshals the response entity directly from the response stream into the data object of the response. The payload
+	 * is not available as a String in this case, so error details can only hold the exception message.
+	 */
+	private void setDataObjectFromStream(Response response, ClientResponse clientResponse, Class<?> returnObjectClass)
+	{
+		InputStream in = clientResponse.getEntityInputStream();
+		try
+		{
+			// We must use the actual data model response type in the unmarshaller.
+			StreamUnmarshalFactory unmarshaller = JAXBStreamUnmarshalFactory.getStreamUnmarshaller(getDataModelUnmarshaller());
+			response.setDataObject(unmarshaller.unmarshal(in, returnObjectClass, getResponseMediaType()));
+			if (response.getDataObject() == null)// this is strange.
+			{
+				response.setError(new ErrorDetails(response.getStatus(), "Could not unmarshal payload. Payload was unmarshalled into a null object."));
+			}
+		}
+		catch (UnmarshalException ex)
+		{
+			response.setError(new ErrorDetails(response.getStatus(), "Could not unmarshal payload: "+ex.getMessage()+"."));
+		}
+		catch (UnsupportedMediaTypeExcpetion ex)
+		{
+			response.setError(new ErrorDetails(Status.UNSUPPORTED_MEDIA_TYPE.getStatusCode(), "Could not unmarshal payload (unsupported media type): "+ex.getMessage()+"."));
+		}
+		finally
+		{
+			// Release the underlying connection.
+			clientResponse.close();
+		}
+	}
+	
 	protected void setBaseResponseData(BaseResponse response, ClientResponse clientResponse, SIFZone zone, SIFContext context)
 	{
 		response.setStatus(clientResponse.getClientResponseStatus().getStatusCode());
@@ -556,19 +617,20 @@ public abstract class BaseClient
 	/*--------------------------------------------------------------------------------------------------------------*/
 	/*-- Private Setters, so that they can only be set at initialisation of constructor but not overridden later. --*/
 	/*--------------------------------------------------------------------------------------------------------------*/
+	/*
+	 * The Jersey Client and its configuration are expensive to create (specially for HTTPS). They are shared across all clients
+	 * of the same security mode through the ClientRegistry.
+	 */
 	private void createConfig(boolean secureConnection)
 	{
-		ClientConfigMgr cltCfgMgr = new ClientConfigMgr();		
-		this.config = cltCfgMgr.getClientConfig(secureConnection);
+		this.config = ClientRegistry.getInstance().getClientConfig(secureConnection);
+		this.client = ClientRegistry.getInstance().getJerseyClient(secureConnection);
 	}
 	
 	private void createServiceForURI(URI baseURI)
 	{
 		// This is also going to change the service.
 		this.baseURI = baseURI;
-		
-		// Create the Client Service
-		this.client = Client.create(config);
 
 		// Retrieve connector to resource
 		this.service = client.resource(getBaseURI());
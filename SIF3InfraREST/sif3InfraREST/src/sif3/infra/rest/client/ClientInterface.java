@@ -304,7 +304,7 @@ public class ClientInterface extends BaseClient
 			
 			ClientResponse response = setRequestHeaderAndMediaTypes(service, hdrProperties, true).get(ClientResponse.class);
 
-			return setResponse(service, response, returnObjectClass, zone, context, Status.OK, Status.NOT_MODIFIED, Status.NO_CONTENT);
+			return setResponse(service, response, returnObjectClass, zone, context, Status.OK, Status.NOT_MODIFIED, Status.NO_CONTENT, Status.ACCEPTED);
 		}
 		catch (Exception ex)
 		{
@@ -353,7 +353,7 @@ public class ClientInterface extends BaseClient
 			}
 			ClientResponse response = setRequestHeaderAndMediaTypes(service, hdrProperties, true).post(ClientResponse.class, payloadStr);
 
-			return setResponse(service, response, returnObjectClass, zone, context, Status.OK, Status.NOT_MODIFIED, Status.NO_CONTENT);
+			return setResponse(service, response, returnObjectClass, zone, context, Status.OK, Status.NOT_MODIFIED, Status.NO_CONTENT, Status.ACCEPTED);
 		}
 		catch (Exception ex)
 		{
@@ -562,6 +562,10 @@ public class ClientInterface extends BaseClient
 				}
 			}			
 		}
+		else if (clientResponse.getClientResponseStatus().getStatusCode() == Status.ACCEPTED.getStatusCode())
+		{
+			// DELAYED request accepted by the provider. The operation statuses are delivered later through the consumer's queue.
+		}
 		else// We are dealing with an error case.
 		{
 			setErrorResponse(response, clientResponse);
@@ -614,6 +618,10 @@ public class ClientInterface extends BaseClient
 				}
 			}			
 		}
+		else if (clientResponse.getClientResponseStatus().getStatusCode() == Status.ACCEPTED.getStatusCode())
+		{
+			// DELAYED request accepted by the provider. The operation statuses are delivered later through the consumer's queue.
+		}
 		else// We are dealing with an error case.
 		{
 			setErrorResponse(response, clientResponse);
@@ -666,6 +674,10 @@ public class ClientInterface extends BaseClient
 				}
 			}			
 		}
+		else if (clientResponse.getClientResponseStatus().getStatusCode() == Status.ACCEPTED.getStatusCode())
+		{
+			// DELAYED request accepted by the provider. The operation statuses are delivered later through the consumer's queue.
+		}
 		else// We are dealing with an error case.
 		{
 			setErrorResponse(response, clientResponse);
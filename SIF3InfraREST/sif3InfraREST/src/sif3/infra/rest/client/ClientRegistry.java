@@ -0,0 +1,534 @@
+/*
+ * ClientRegistry.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.rest.client;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.log4j.Logger;
+
+import sif3.common.CommonConstants;
+import sif3.common.conversion.MarshalFactory;
+import sif3.common.conversion.UnmarshalFactory;
+import au.com.systemic.framework.utils.AdvancedProperties;
+import au.com.systemic.framework.utils.PropertyManager;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+/**
+ * This class is a thread safe registry of REST clients. Creating a Jersey Client, its configuration and in case of HTTPS its SSL
+ * setup is expensive. Further each new client opens new connections to the remote end. This registry ensures that only one Jersey
+ * Client is created per security mode (HTTP or HTTPS) for the life time of the adapter and that ClientInterface instances are reused
+ * across calls and threads rather than being created for each call.<br/><br/>
+ *
+ * The Jersey Client uses the JDK HTTP connection handler which keeps persistent (keep-alive) connections in a pool per route
+ * (host and port). The maximum number of idle connections kept per route can be configured with the property 'client.pool.maxPerRoute'
+ * in the environment.properties file. It must be set before the first HTTP connection is made, which is the case if this registry is
+ * used for all client connections. ClientInterface instances that have not been used for 'client.pool.idleTimeout' seconds are evicted
+ * from the registry.<br/><br/>
+ *
+ * The registry keeps a few counters (hits, misses, evictions) as well as connection counters (connections leased, peak leased and
+ * max per route) that can be used to size the pool. See getStatistics(). The number of idle connections cannot be reported since the
+ * keep-alive cache of the JDK HTTP handler is internal to the JDK and has no public API.<br/><br/>
+ * 
+ * The registry is shared by the consumer and the provider side of an adapter. Each of them calls register() when it starts and
+ * release() when it shuts down. The Jersey Clients are only destroyed when the last one has released the registry, so that a consumer
+ * and a provider that run in the same JVM don't destroy each other's clients.
+ *
+ * @author agent
+ */
+public class ClientRegistry
+{
+	protected final Logger logger = Logger.getLogger(getClass());
+
+	/* Default values for properties in environment.properties */
+	private static final int DEFAULT_MAX_PER_ROUTE = 20;
+	private static final int DEFAULT_IDLE_TIMEOUT = 300; // seconds
+
+	private static ClientRegistry instance = null;
+	private static int users = 0;
+
+	/* One shared Jersey client for HTTP and one for HTTPS. Both are created when first needed. */
+	private Client httpClient = null;
+	private Client httpsClient = null;
+	private ClientConfig httpConfig = null;
+	private ClientConfig httpsConfig = null;
+
+	private ConcurrentMap<ClientKey, ClientEntry> clientInterfaces = new ConcurrentHashMap<ClientKey, ClientEntry>();
+
+	private int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+	private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT * CommonConstants.MILISEC;
+	private AtomicLong lastEvictionCheck = new AtomicLong(System.currentTimeMillis());
+
+	/* Statistics */
+	private AtomicLong hits = new AtomicLong(0);
+	private AtomicLong misses = new AtomicLong(0);
+	private AtomicLong evictions = new AtomicLong(0);
+	private AtomicLong jerseyClientsCreated = new AtomicLong(0);
+	private AtomicInteger leasedConnections = new AtomicInteger(0);
+	private AtomicInteger peakLeasedConnections = new AtomicInteger(0);
+	private AtomicLong requests = new AtomicLong(0);
+
+	/**
+	 * Returns the single instance of this registry. The registry is created the first time this method is called.
+	 *
+	 * @return See desc.
+	 */
+	public static synchronized ClientRegistry getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new ClientRegistry();
+		}
+		return instance;
+	}
+
+	/**
+	 * Registers a user (i.e. consumer or provider) of this registry. Each call must be matched by a call to release() when the
+	 * user shuts down.
+	 */
+	public static synchronized void register()
+	{
+		users++;
+	}
+
+	/**
+	 * Releases the registry for a user that has called register() before. If it is the last user then the registry is shut down.
+	 * See shutdown().
+	 */
+	public static synchronized void release()
+	{
+		if (users > 0)
+		{
+			users--;
+		}
+		if (users == 0)
+		{
+			shutdown();
+		}
+		else if (instance != null)
+		{
+			instance.logger.debug("Client Registry still used by "+users+" user(s). Jersey Clients are not destroyed.");
+		}
+	}
+
+	/**
+	 * This method will destroy all Jersey Clients managed by this registry and release all cached ClientInterfaces regardless of how
+	 * many users have registered. Adapters should use release() instead. A subsequent call to getInstance() will create a new registry.
+	 */
+	public static synchronized void shutdown()
+	{
+		if (instance != null)
+		{
+			instance.logger.debug("Shutdown Client Registry: "+instance.getStatistics());
+			instance.clientInterfaces.clear();
+			instance.destroyClients();
+			instance = null;
+		}
+		users = 0;
+	}
+
+	/**
+	 * Returns the shared Jersey Client for the given security mode. The Jersey Client is thread safe and should be reused.
+	 *
+	 * @param secureConnection TRUE: Returns the HTTPS client. FALSE returns the HTTP client.
+	 *
+	 * @return See desc.
+	 */
+	public synchronized Client getJerseyClient(boolean secureConnection)
+	{
+		if (secureConnection)
+		{
+			if (httpsClient == null)
+			{
+				httpsConfig = new ClientConfigMgr().getClientConfig(true);
+				httpsClient = Client.create(httpsConfig);
+				httpsClient.addFilter(new ConnectionCounter());
+				jerseyClientsCreated.incrementAndGet();
+			}
+			return httpsClient;
+		}
+		else
+		{
+			if (httpClient == null)
+			{
+				httpConfig = new ClientConfigMgr().getClientConfig(false);
+				httpClient = Client.create(httpConfig);
+				httpClient.addFilter(new ConnectionCounter());
+				jerseyClientsCreated.incrementAndGet();
+			}
+			return httpClient;
+		}
+	}
+
+	/**
+	 * Returns the client configuration used by the shared Jersey Client of the given security mode.
+	 *
+	 * @param secureConnection TRUE: Returns the HTTPS configuration. FALSE returns the HTTP configuration.
+	 *
+	 * @return See desc.
+	 */
+	public synchronized ClientConfig getClientConfig(boolean secureConnection)
+	{
+		getJerseyClient(secureConnection); // ensure config is initialised
+		return secureConnection ? httpsConfig : httpConfig;
+	}
+
+	/**
+	 * This method returns a ClientInterface for the given parameters. If one already exists for the given connector URI, media types,
+	 * security mode and marshaller/unmarshaller then the existing one is returned. Otherwise a new one is created and cached.
+	 * ClientInterface instances are thread safe and can be used by many threads concurrently.
+	 *
+	 * @param baseURI The base URI of the client (connector URI).
+	 * @param requestMediaType Media type of the request.
+	 * @param responseMediaType Media type of the response.
+	 * @param dmMarshaller Marshaller to marshal the payload.
+	 * @param dmUnmarshaller Unmarshaller to unmarshal the payload.
+	 * @param secureConnection TRUE: Use HTTPS, FALSE use HTTP.
+	 *
+	 * @return See desc.
+	 */
+	public ClientInterface getClientInterface(URI baseURI, MediaType requestMediaType, MediaType responseMediaType, MarshalFactory dmMarshaller, UnmarshalFactory dmUnmarshaller, boolean secureConnection)
+	{
+		evictIdleClients();
+
+		ClientKey key = new ClientKey(baseURI, requestMediaType, responseMediaType, dmMarshaller, dmUnmarshaller, secureConnection);
+		ClientEntry entry = clientInterfaces.get(key);
+		if (entry == null)
+		{
+			misses.incrementAndGet();
+			ClientEntry newEntry = new ClientEntry(new ClientInterface(baseURI, requestMediaType, responseMediaType, dmMarshaller, dmUnmarshaller, secureConnection));
+			entry = clientInterfaces.putIfAbsent(key, newEntry);
+			if (entry == null) // we won the race
+			{
+				entry = newEntry;
+			}
+		}
+		else
+		{
+			hits.incrementAndGet();
+		}
+
+		entry.touch();
+		return entry.getClientInterface();
+	}
+
+	/*----------------*/
+	/*-- Statistics --*/
+	/*----------------*/
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	public long getEvictionCount()
+	{
+		return evictions.get();
+	}
+
+	public int getCachedClientCount()
+	{
+		return clientInterfaces.size();
+	}
+
+	public long getJerseyClientCount()
+	{
+		return jerseyClientsCreated.get();
+	}
+
+	/**
+	 * Returns the number of connections currently in use by requests of the Jersey Clients of this registry.
+	 * 
+	 * @return See desc.
+	 */
+	public int getLeasedConnectionCount()
+	{
+		return leasedConnections.get();
+	}
+
+	/**
+	 * Returns the highest number of connections that have been in use at the same time since this registry was created. If this
+	 * value is consistently above getMaxPerRoute() then the 'client.pool.maxPerRoute' property should be increased.
+	 * 
+	 * @return See desc.
+	 */
+	public int getPeakLeasedConnectionCount()
+	{
+		return peakLeasedConnections.get();
+	}
+
+	public long getRequestCount()
+	{
+		return requests.get();
+	}
+
+	public int getMaxPerRoute()
+	{
+		return maxPerRoute;
+	}
+
+	public long getIdleTimeoutMillis()
+	{
+		return idleTimeoutMillis;
+	}
+
+	/**
+	 * Returns a summary of the registry statistics. Useful for logging.
+	 *
+	 * @return See desc.
+	 */
+	public String getStatistics()
+	{
+		return "ClientRegistry [cachedClients=" + getCachedClientCount() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+		        + ", evictions=" + getEvictionCount() + ", jerseyClients=" + getJerseyClientCount() + ", requests=" + getRequestCount()
+		        + ", leasedConnections=" + getLeasedConnectionCount() + ", peakLeasedConnections=" + getPeakLeasedConnectionCount()
+		        + ", maxPerRoute=" + getMaxPerRoute() + ", idleTimeout=" + getIdleTimeoutMillis() + "ms]";
+	}
+
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	private ClientRegistry()
+	{
+		super();
+		loadProperties();
+
+		// The JDK HTTP handler reads these when the first connection is made. Don't override values set on the command line.
+		if (System.getProperty("http.keepAlive") == null)
+		{
+			System.setProperty("http.keepAlive", "true");
+		}
+		if (System.getProperty("http.maxConnections") == null)
+		{
+			System.setProperty("http.maxConnections", String.valueOf(maxPerRoute));
+		}
+		logger.debug("Client Registry initialised with maxPerRoute = "+maxPerRoute+" and idleTimeout = "+idleTimeoutMillis+"ms.");
+	}
+
+	private void loadProperties()
+	{
+		PropertyManager propMgr = PropertyManager.getInstance();
+		if (!propMgr.isLoaded(CommonConstants.ENV_PROP_FILE_NAME))
+		{
+			propMgr.loadPropertyFile(CommonConstants.ENV_PROP_FILE_NAME);
+		}
+		if (propMgr.isLoaded(CommonConstants.ENV_PROP_FILE_NAME))
+		{
+			AdvancedProperties props = propMgr.getProperties(CommonConstants.ENV_PROP_FILE_NAME);
+			maxPerRoute = props.getPropertyAsInt("client.pool.maxPerRoute", DEFAULT_MAX_PER_ROUTE);
+			idleTimeoutMillis = props.getPropertyAsInt("client.pool.idleTimeout", DEFAULT_IDLE_TIMEOUT) * (long)CommonConstants.MILISEC;
+		}
+		else
+		{
+			logger.warn("Property file "+CommonConstants.ENV_PROP_FILE_NAME+".properies could not be loaded. Default values are used for Client Registry.");
+		}
+
+		if (maxPerRoute <= 0)
+		{
+			maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+		}
+	}
+
+	/*
+	 * Removes all client interfaces that have not been used within the idle timeout. To avoid scanning the registry on each call the
+	 * check is done at most once every half idle timeout period.
+	 */
+	private void evictIdleClients()
+	{
+		if (idleTimeoutMillis <= 0) // eviction turned off
+		{
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		long lastCheck = lastEvictionCheck.get();
+		if ((now - lastCheck < idleTimeoutMillis / 2) || !lastEvictionCheck.compareAndSet(lastCheck, now))
+		{
+			return; // not due yet or other thread is doing the check
+		}
+
+		for (Iterator<Map.Entry<ClientKey, ClientEntry>> iter = clientInterfaces.entrySet().iterator(); iter.hasNext();)
+		{
+			Map.Entry<ClientKey, ClientEntry> entry = iter.next();
+			if (now - entry.getValue().getLastUsed() > idleTimeoutMillis)
+			{
+				iter.remove();
+				evictions.incrementAndGet();
+				if (logger.isDebugEnabled())
+				{
+					logger.debug("Evicted idle client for "+entry.getKey());
+				}
+			}
+		}
+	}
+
+	private synchronized void destroyClients()
+	{
+		if (httpClient != null)
+		{
+			httpClient.destroy();
+			httpClient = null;
+		}
+		if (httpsClient != null)
+		{
+			httpsClient.destroy();
+			httpsClient = null;
+		}
+	}
+
+	/*--------------------*/
+	/*-- Helper classes --*/
+	/*--------------------*/
+	/*
+	 * Counts the connections in use by the shared Jersey Clients. A connection is leased from the time a request is sent until the
+	 * response has been received.
+	 */
+	private class ConnectionCounter extends ClientFilter
+	{
+		@Override
+		public ClientResponse handle(ClientRequest request) throws ClientHandlerException
+		{
+			requests.incrementAndGet();
+			int leased = leasedConnections.incrementAndGet();
+			int peak = peakLeasedConnections.get();
+			while ((leased > peak) && !peakLeasedConnections.compareAndSet(peak, leased))
+			{
+				peak = peakLeasedConnections.get();
+			}
+			try
+			{
+				return getNext().handle(request);
+			}
+			finally
+			{
+				leasedConnections.decrementAndGet();
+			}
+		}
+	}
+
+	private static class ClientEntry
+	{
+		private ClientInterface clientInterface;
+		private volatile long lastUsed = System.currentTimeMillis();
+
+		ClientEntry(ClientInterface clientInterface)
+		{
+			this.clientInterface = clientInterface;
+		}
+
+		ClientInterface getClientInterface()
+		{
+			return clientInterface;
+		}
+
+		long getLastUsed()
+		{
+			return lastUsed;
+		}
+
+		void touch()
+		{
+			lastUsed = System.currentTimeMillis();
+		}
+	}
+
+	/*
+	 * Key of a client interface. The marshaller and unmarshaller are identified by their class since they define the data model
+	 * the client interface works with.
+	 */
+	private static class ClientKey
+	{
+		private String baseURI;
+		private String requestMediaType;
+		private String responseMediaType;
+		private String marshallerClass;
+		private String unmarshallerClass;
+		private boolean secureConnection;
+
+		ClientKey(URI baseURI, MediaType requestMediaType, MediaType responseMediaType, MarshalFactory dmMarshaller, UnmarshalFactory dmUnmarshaller, boolean secureConnection)
+		{
+			this.baseURI = (baseURI == null) ? null : baseURI.toString();
+			this.requestMediaType = (requestMediaType == null) ? null : requestMediaType.toString();
+			this.responseMediaType = (responseMediaType == null) ? null : responseMediaType.toString();
+			this.marshallerClass = (dmMarshaller == null) ? null : dmMarshaller.getClass().getName();
+			this.unmarshallerClass = (dmUnmarshaller == null) ? null : dmUnmarshaller.getClass().getName();
+			this.secureConnection = secureConnection;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((baseURI == null) ? 0 : baseURI.hashCode());
+			result = prime * result + ((requestMediaType == null) ? 0 : requestMediaType.hashCode());
+			result = prime * result + ((responseMediaType == null) ? 0 : responseMediaType.hashCode());
+			result = prime * result + ((marshallerClass == null) ? 0 : marshallerClass.hashCode());
+			result = prime * result + ((unmarshallerClass == null) ? 0 : unmarshallerClass.hashCode());
+			result = prime * result + (secureConnection ? 1231 : 1237);
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+			if ((obj == null) || (getClass() != obj.getClass()))
+			{
+				return false;
+			}
+			ClientKey other = (ClientKey) obj;
+			return (secureConnection == other.secureConnection) &&
+			       equal(baseURI, other.baseURI) &&
+			       equal(requestMediaType, other.requestMediaType) &&
+			       equal(responseMediaType, other.responseMediaType) &&
+			       equal(marshallerClass, other.marshallerClass) &&
+			       equal(unmarshallerClass, other.unmarshallerClass);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "ClientKey [baseURI=" + baseURI + ", requestMediaType=" + requestMediaType + ", responseMediaType=" + responseMediaType
+			        + ", marshallerClass=" + marshallerClass + ", unmarshallerClass=" + unmarshallerClass + ", secureConnection=" + secureConnection + "]";
+		}
+
+		private static boolean equal(String s1, String s2)
+		{
+			return (s1 == null) ? (s2 == null) : s1.equals(s2);
+		}
+	}
+}
@@ -19,13 +19,16 @@
 package sif3.infra.rest.client;
 
 import java.net.URI;
+import java.nio.charset.Charset;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response.Status;
 
 import sif3.common.CommonConstants;
 import sif3.common.conversion.MarshalFactory;
+import sif3.common.exception.MarshalException;
 import sif3.common.exception.ServiceInvokationException;
+import sif3.common.exception.UnsupportedMediaTypeExcpetion;
 import sif3.common.header.HeaderProperties;
 import sif3.common.header.HeaderValues;
 import sif3.common.header.HeaderValues.EventAction;
@@ -120,6 +123,29 @@ public class EventClient extends BaseClient
 	 * @throws ServiceInvokationException Any underlying errors occurred such as failure to invoke actual web-service etc. 
      */
 	public BaseResponse sendEvents(SIFEvent<?> event, SIFZone zone, SIFContext context, HeaderProperties customHdrFields) throws ServiceInvokationException
+	{
+		return sendEvents(event, null, zone, context, customHdrFields);
+	}
+
+    /**
+     * This method does the same as sendEvents(event, zone, context, customHdrFields) but sends the given payload rather than marshalling
+     * the event's object list. This allows an event that is sent to many zones/contexts to be marshalled only once (see marshalEvents()).
+     * The event is still required for the event action, update type etc. It is the responsibility of the caller to ensure that the 
+     * payload is the marshalled form of the event's object list in the request media type of this client.
+     * 
+	 * @param event The event to be sent.
+	 * @param payload The marshalled object list of the event as returned by marshalEvents(). If null then the event's object list is 
+	 *                marshalled by this method.
+	 * @param zone The zone for which this operation shall be invoked. Can be null which indicates the DEFAULT zone.
+	 * @param context The context for which this operation shall be invoked. Can be null which indicates the DEFAULT context.
+	 * @param customHdrFields Custom HTTP header fields to be added to the request.
+	 *
+	 * @return BaseResponse Object holding appropriate values and results of the call. This call won't return any data model objects, just
+	 *                      status and/or an error message.
+	 * 
+	 * @throws ServiceInvokationException Any underlying errors occurred such as failure to invoke actual web-service etc. 
+     */
+	public BaseResponse sendEvents(SIFEvent<?> event, byte[] payload, SIFZone zone, SIFContext context, HeaderProperties customHdrFields) throws ServiceInvokationException
 	{
 		if (allOK) // Only send events if all is fine.
 		{
@@ -142,7 +168,7 @@ public class EventClient extends BaseClient
 			try
 			{
 				// Don't set zone & context here. They are header parameters in the case of events.
-			    String payloadStr = getDataModelMarshaller().marshal(event.getSIFObjectList(), getRequestMediaType());
+			    byte[] payloadBytes = (payload != null) ? payload : marshalEvents(event);
 	
 //				if (logger.isDebugEnabled())
 //				{
@@ -151,8 +177,8 @@ public class EventClient extends BaseClient
 				HeaderProperties headerProps = getEventHeaders(event.getEventAction(),	event.getUpdateType(), zone, context, customHdrFields);
 				
 				Builder builder = setRequestHeaderAndMediaTypes(service, headerProps, false);
-				logger.debug("Send Event with payload size: "+payloadStr.length());
-				ClientResponse response = builder.post(ClientResponse.class, payloadStr);
+				logger.debug("Send Event with payload size: "+payloadBytes.length);
+				ClientResponse response = builder.post(ClientResponse.class, payloadBytes);
 				logger.debug("Receive Event Response Status: "+response.getStatus());
 	
 				return setEventResponse(service, response, zone, context);
@@ -170,9 +196,36 @@ public class EventClient extends BaseClient
 		}
 	}
 
+	/**
+	 * Marshals the object list of the given event into the request media type of this client and returns it encoded in the charset
+	 * of that media type (UTF-8 if none is given). The result can be passed to sendEvents(event, payload, ...) for as many zones and 
+	 * contexts as required.
+	 * 
+	 * @param event The event to marshal. Must not be null.
+	 * 
+	 * @return See desc.
+	 * 
+	 * @throws MarshalException Failed to marshal the object list of the event.
+	 * @throws UnsupportedMediaTypeExcpetion The request media type is not supported by the marshaller.
+	 */
+	public byte[] marshalEvents(SIFEvent<?> event) throws MarshalException, UnsupportedMediaTypeExcpetion
+	{
+		String payloadStr = getDataModelMarshaller().marshal(event.getSIFObjectList(), getRequestMediaType());
+		return payloadStr.getBytes(getRequestCharset());
+	}
+
 	/*---------------------*/
 	/*-- Private Methods --*/
 	/*---------------------*/
+	
+	/*
+	 * Same charset as Jersey uses to write a String entity.
+	 */
+	private Charset getRequestCharset()
+	{
+		String charset = (getRequestMediaType() != null) ? getRequestMediaType().getParameters().get("charset") : null;
+		return Charset.forName((charset != null) ? charset : "UTF-8");
+	}
 
 	/*
 	 * This method sets all header properties for events as specified by the SIF3 Spec.
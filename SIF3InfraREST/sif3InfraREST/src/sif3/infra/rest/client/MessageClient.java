@@ -27,6 +27,7 @@ import au.com.systemic.framework.utils.StringUtils;
 
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.client.config.ClientConfig;
 
 import sif3.common.exception.ServiceInvokationException;
 import sif3.common.header.HeaderProperties;
@@ -59,11 +60,25 @@ public class MessageClient extends BaseClient
 	 * Get message and remove old one.
 	 */
 	public Response getMessage(String removeMsgID, String consumerInstanceID) throws ServiceInvokationException
+	{
+		return getMessage(removeMsgID, consumerInstanceID, 0);
+	}
+	
+	/*
+	 * Get message and remove old one. The readTimeout (milliseconds) applies to this call only. It is required for long polling 
+	 * queues where the call is held open by the queue until a message is available or the long polling timeout has expired. A 
+	 * readTimeout of 0 or less will use the timeout of the client configuration.
+	 */
+	public Response getMessage(String removeMsgID, String consumerInstanceID, int readTimeout) throws ServiceInvokationException
 	{
 		WebResource service = getService();
 		try
 		{
 			service = buildMessageURI(service, removeMsgID, true);
+			if (readTimeout > 0)
+			{
+				service.setProperty(ClientConfig.PROPERTY_READ_TIMEOUT, readTimeout);
+			}
 			HeaderProperties hdrProperties = getHeaderProperties(sif3Session, consumerInstanceID);
 			logger.debug("HTTP GET Next Message...");
 		    ClientResponse clientResponse = setRequestHeaderAndMediaTypes(service, hdrProperties, true).get(ClientResponse.class);
@@ -18,6 +18,12 @@ package sif3.infra.rest.consumer;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response.Status;
@@ -31,11 +37,14 @@ import sif3.common.exception.UnsupportedQueryException;
 import sif3.common.header.HeaderProperties;
 import sif3.common.header.HeaderValues;
 import sif3.common.header.HeaderValues.QueryIntention;
+import sif3.common.header.HeaderValues.ResponseAction;
 import sif3.common.header.HeaderValues.RequestType;
 import sif3.common.header.RequestHeaderConstants;
 import sif3.common.interfaces.Consumer;
+import sif3.common.interfaces.DelayedResponseHandler;
 import sif3.common.interfaces.QueryConsumer;
 import sif3.common.model.CustomParameters;
+import sif3.common.model.DelayedRequestReceipt;
 import sif3.common.model.PagingInfo;
 import sif3.common.model.QueryCriteria;
 import sif3.common.model.QueryPredicate;
@@ -46,16 +55,23 @@ import sif3.common.model.ServiceRights.AccessType;
 import sif3.common.model.URLQueryParameter;
 import sif3.common.model.ZoneContextInfo;
 import sif3.common.persist.model.SIF3Session;
+import sif3.common.utils.UUIDGenerator;
 import sif3.common.ws.BaseResponse;
 import sif3.common.ws.BulkOperationResponse;
 import sif3.common.ws.CreateOperationStatus;
 import sif3.common.ws.ErrorDetails;
 import sif3.common.ws.OperationStatus;
 import sif3.common.ws.Response;
+import sif3.infra.common.conversion.InfraUnmarshalFactory;
 import sif3.infra.common.env.mgr.ConsumerEnvironmentManager;
 import sif3.infra.common.env.types.ConsumerEnvironment;
+import sif3.infra.common.model.CreateResponseType;
+import sif3.infra.common.model.DeleteResponseType;
+import sif3.infra.common.model.UpdateResponseType;
 import sif3.infra.rest.client.ClientInterface;
+import sif3.infra.rest.client.ClientRegistry;
 import sif3.infra.rest.client.ClientUtils;
+import sif3.infra.rest.queue.DelayedResponseRegistry;
 import au.com.systemic.framework.utils.AdvancedProperties;
 import au.com.systemic.framework.utils.StringUtils;
 import au.com.systemic.framework.utils.Timer;
@@ -69,7 +85,12 @@ import au.com.systemic.framework.utils.Timer;
  * getSingleObjectClassInfo() and getMultiObjectClassInfo() are the key to link between data model and infrastructure.<br/>
  * It is assumed that the ConsumerLoader.initialise() method has been called before any methods of this class are called.If not then 
  * the behaviour of this class is not defined. In fact each call to any method of this class will first test if initialisation has 
- * succeeded and no action in any of the top level methods will be executed if the ConsumerLoader.initialise() hasn't been called before.
+ * succeeded and no action in any of the top level methods will be executed if the ConsumerLoader.initialise() hasn't been called before.<br/><br/>
+ * 
+ * The bulk operations (createMany, updateMany, deleteMany and the retrieve methods) can be issued as DELAYED requests if this is 
+ * enabled in the consumer's property file. The provider then only accepts the request and the returned response holds a receipt
+ * (see getDelayedReceipt()). The actual response is delivered later through the SIF queue and passed to processDelayedResponse(). It 
+ * is also available through the response future of the receipt.
  * 
  * @author Joerg Huber
  */
@@ -77,8 +98,29 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 {
 	protected final Logger logger = Logger.getLogger(getClass());
 
+	/* Default timeout in seconds for each zone/context if requests are issued concurrently */
+	private static final int DEFAULT_MULTI_ZONE_TIMEOUT = 120;
+
 	private boolean checkACL = true;
 	private boolean initOK = true;
+	private InfraUnmarshalFactory infraUnmarshaller = new InfraUnmarshalFactory();
+	
+	/* Called by the delayed response registry for DELAYED requests of this consumer */
+	private DelayedResponseHandler delayedResponseHandler = new DelayedResponseHandler()
+	{
+		@Override
+		public void onDelayedResponse(Response response, DelayedRequestReceipt receipt)
+		{
+			unmarshalDelayedResponse(response, receipt);
+			processDelayedResponse(response, receipt);
+		}
+
+		@Override
+		public void onDelayedTimeout(DelayedRequestReceipt receipt)
+		{
+			processDelayedTimeout(receipt);
+		}
+	};
 	
 	/**
 	 * This method is called when a consumer service is shut down. It can be used to free up internally allocated resources
@@ -249,6 +291,38 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
     	return getConsumerEnvironment().getAdapterName()+" - " + getConsumerName();
     }
 
+	/*-------------------------------------*/
+	/*-- DELAYED Request Related Methods --*/
+	/*-------------------------------------*/
+	
+	/**
+	 * This method is called when the response of a DELAYED request of this consumer has been received through the SIF queue. The
+	 * response of a query holds the unmarshalled multi object type of this consumer as data object. The response of a createMany,
+	 * updateMany or deleteMany holds the CreateResponseType, UpdateResponseType or DeleteResponseType of the infrastructure. If the
+	 * provider returned an error then response.hasError() is true.<br/>
+	 * The method is called on a callback thread. The default implementation only logs the response. Consumers that want to process
+	 * delayed responses this way must override it. Alternatively the response can be retrieved through the response future of the
+	 * receipt returned with the initial response of the request.
+	 * 
+	 * @param response The delayed response.
+	 * @param receipt The receipt of the original request.
+	 */
+	public void processDelayedResponse(Response response, DelayedRequestReceipt receipt)
+	{
+		logger.debug(getConsumerName()+" received delayed response for request "+receipt.getRequestID()+" ("+receipt.getRequestedAction()+" "+receipt.getServiceName()+"): Status = "+response.getStatus()+", hasError = "+response.hasError());
+	}
+	
+	/**
+	 * This method is called when no response has been received within the timeout for a DELAYED request of this consumer. The timeout
+	 * is set with the property events.delayed.timeout. It is called on a callback thread. The default implementation logs an error.
+	 * 
+	 * @param receipt The receipt of the request that has timed out.
+	 */
+	public void processDelayedTimeout(DelayedRequestReceipt receipt)
+	{
+		logger.error(getConsumerName()+" did not receive a response for DELAYED request "+receipt.getRequestID()+" ("+receipt.getRequestedAction()+" "+receipt.getServiceName()+") within "+getDelayedTimeout()+" seconds.");
+	}
+	
 	/*-----------------------*/
 	/*-- Create Operations --*/
 	/*-----------------------*/
@@ -258,7 +332,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 	 * @see sif3.common.consumer.Consumer#createMany(java.lang.Object, java.util.List)
 	 */
 	@Override
-	public List<BulkOperationResponse<CreateOperationStatus>> createMany(Object data, List<ZoneContextInfo> zoneCtxList, RequestType requestType, CustomParameters customParameters) throws IllegalArgumentException, PersistenceException, ServiceInvokationException
+	public List<BulkOperationResponse<CreateOperationStatus>> createMany(final Object data, List<ZoneContextInfo> zoneCtxList, final RequestType requestType, final CustomParameters customParameters) throws IllegalArgumentException, PersistenceException, ServiceInvokationException
 	{
 		if (!initOK)
 	  	{
@@ -268,7 +342,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 
 		Timer timer = new Timer();
 		timer.start();
-		URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
+		final URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
 		List<BulkOperationResponse<CreateOperationStatus>> responses = new ArrayList<BulkOperationResponse<CreateOperationStatus>>();
 		
 		if (!getConsumerEnvironment().getIsConnected())
@@ -280,18 +354,37 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 		List<ZoneContextInfo> finalZoneContextList = getFinalZoneCtxList(zoneCtxList, getSIF3Session());
 
 		// Request operation in all zone/contexts as listed.
-		for (ZoneContextInfo zoneCtx : finalZoneContextList)
+		responses = invokeForZones(finalZoneContextList, new ZoneOperation<BulkOperationResponse<CreateOperationStatus>>()
 		{
-			ErrorDetails error = allClientChecks(AccessRight.CREATE, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), requestType);
-			if (error == null) //all good => Send request.
+			@Override
+			public ErrorDetails check(ZoneContextInfo zoneCtx)
 			{
-				responses.add(getClient(getConsumerEnvironment()).createMany(getMultiObjectClassInfo().getObjectName(), data, getHeaderProperties(getConsumerEnvironment(), true, requestType, customParameters), urlQueryParameter, zoneCtx.getZone(), zoneCtx.getContext()));
+				return allClientChecks(AccessRight.CREATE, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), requestType);
 			}
-			else //pretend to have received a 'fake' error Response
+
+			@Override
+			public BulkOperationResponse<CreateOperationStatus> invoke(ZoneContextInfo zoneCtx) throws ServiceInvokationException
+			{
+				HeaderProperties hdrProps = getHeaderProperties(getConsumerEnvironment(), true, requestType, customParameters);
+				DelayedRequestReceipt receipt = registerDelayedRequest(hdrProps, requestType, ResponseAction.CREATE, HeaderValues.ServiceType.OBJECT, getServiceName(), zoneCtx);
+				BulkOperationResponse<CreateOperationStatus> response = null;
+				try
+				{
+					response = getClient(getConsumerEnvironment()).createMany(getMultiObjectClassInfo().getObjectName(), data, hdrProps, urlQueryParameter, zoneCtx.getZone(), zoneCtx.getContext());
+				}
+				finally
+				{
+					delayedRequestSent(response, receipt);
+				}
+				return response;
+			}
+
+			@Override
+			public BulkOperationResponse<CreateOperationStatus> makeErrorResponse(ErrorDetails error)
 			{
-				responses.add(makeBulkErrorResponseForCreates(error));
+				return makeBulkErrorResponseForCreates(error);
 			}
-		}					
+		});
 
 		timer.finish();
 		logger.debug("Time taken to call and process 'createMany' for "+getMultiObjectClassInfo().getObjectName()+": "+timer.timeTaken()+"ms");
@@ -311,7 +404,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 	 * @see sif3.common.consumer.Consumer#createSingle(java.lang.Object, java.util.List)
 	 */
 	@Override
-	public List<Response> createSingle(Object data, List<ZoneContextInfo> zoneCtxList, CustomParameters customParameters) throws IllegalArgumentException, PersistenceException, ServiceInvokationException
+	public List<Response> createSingle(final Object data, List<ZoneContextInfo> zoneCtxList, final CustomParameters customParameters) throws IllegalArgumentException, PersistenceException, ServiceInvokationException
 	{
 	    if (!initOK)
 	    {
@@ -321,7 +414,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 
 	    Timer timer = new Timer();
 		timer.start();
-		URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
+		final URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
 		List<Response> responses = new ArrayList<Response>();
 		
 		if (!getConsumerEnvironment().getIsConnected())
@@ -333,18 +426,20 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 		List<ZoneContextInfo> finalZoneContextList = getFinalZoneCtxList(zoneCtxList, getSIF3Session());
 
 		// Request operation in all zone/contexts as listed.
-		for (ZoneContextInfo zoneCtx : finalZoneContextList)
+		responses = invokeForZones(finalZoneContextList, new ResponseZoneOperation()
 		{
-			ErrorDetails error = allClientChecks(AccessRight.CREATE, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), null);
-			if (error == null) //all good
+			@Override
+			public ErrorDetails check(ZoneContextInfo zoneCtx)
 			{
-				responses.add(getClient(getConsumerEnvironment()).createSingle(getMultiObjectClassInfo().getObjectName()+"/"+getSingleObjectClassInfo().getObjectName(), data, getHeaderProperties(getConsumerEnvironment(), true, RequestType.IMMEDIATE, customParameters), urlQueryParameter, getSingleObjectClassInfo().getObjectType(), zoneCtx.getZone(), zoneCtx.getContext()));
+				return allClientChecks(AccessRight.CREATE, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), null);
 			}
-			else //pretend to have received a 'fake' error Response
+
+			@Override
+			public Response invoke(ZoneContextInfo zoneCtx) throws ServiceInvokationException
 			{
-				responses.add(createErrorResponse(error));
+				return getClient(getConsumerEnvironment()).createSingle(getMultiObjectClassInfo().getObjectName()+"/"+getSingleObjectClassInfo().getObjectName(), data, getHeaderProperties(getConsumerEnvironment(), true, RequestType.IMMEDIATE, customParameters), urlQueryParameter, getSingleObjectClassInfo().getObjectType(), zoneCtx.getZone(), zoneCtx.getContext());
 			}
-		}					
+		});
 
 		timer.finish();
 		logger.debug("Time taken to call and process 'createSingle' for "+getSingleObjectClassInfo().getObjectName()+": "+timer.timeTaken()+"ms");
@@ -368,7 +463,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 	 * @see sif3.common.consumer.Consumer#deleteMany(java.lang.Object, java.util.List)
 	 */
 	@Override
-	public List<BulkOperationResponse<OperationStatus>> deleteMany(List<String> resourceIDs, List<ZoneContextInfo> zoneCtxList, RequestType requestType, CustomParameters customParameters) throws IllegalArgumentException, PersistenceException, ServiceInvokationException
+	public List<BulkOperationResponse<OperationStatus>> deleteMany(final List<String> resourceIDs, List<ZoneContextInfo> zoneCtxList, final RequestType requestType, final CustomParameters customParameters) throws IllegalArgumentException, PersistenceException, ServiceInvokationException
 	{
 	    if (!initOK)
 	    {
@@ -378,7 +473,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 
 	    Timer timer = new Timer();
 		timer.start();
-		URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
+		final URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
 		List<BulkOperationResponse<OperationStatus>> responses = new ArrayList<BulkOperationResponse<OperationStatus>>();
 		
 		if (!getConsumerEnvironment().getIsConnected())
@@ -390,18 +485,31 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 		List<ZoneContextInfo> finalZoneContextList = getFinalZoneCtxList(zoneCtxList, getSIF3Session());
 
 		// Request operation in all zone/contexts as listed.
-		for (ZoneContextInfo zoneCtx : finalZoneContextList)
+		responses = invokeForZones(finalZoneContextList, new BulkZoneOperation()
 		{
-			ErrorDetails error = allClientChecks(AccessRight.DELETE, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), requestType);
-			if (error == null) //all good => Send request
+			@Override
+			public ErrorDetails check(ZoneContextInfo zoneCtx)
 			{
-				responses.add(getClient(getConsumerEnvironment()).removeMany(getMultiObjectClassInfo().getObjectName(), resourceIDs, getHeaderProperties(getConsumerEnvironment(), false, requestType, customParameters), urlQueryParameter, zoneCtx.getZone(), zoneCtx.getContext()));
+				return allClientChecks(AccessRight.DELETE, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), requestType);
 			}
-			else //pretend to have received a 'fake' error Response
+
+			@Override
+			public BulkOperationResponse<OperationStatus> invoke(ZoneContextInfo zoneCtx) throws ServiceInvokationException
 			{
-				responses.add(makeBulkErrorResponse(error));
+				HeaderProperties hdrProps = getHeaderProperties(getConsumerEnvironment(), false, requestType, customParameters);
+				DelayedRequestReceipt receipt = registerDelayedRequest(hdrProps, requestType, ResponseAction.DELETE, HeaderValues.ServiceType.OBJECT, getServiceName(), zoneCtx);
+				BulkOperationResponse<OperationStatus> response = null;
+				try
+				{
+					response = getClient(getConsumerEnvironment()).removeMany(getMultiObjectClassInfo().getObjectName(), resourceIDs, hdrProps, urlQueryParameter, zoneCtx.getZone(), zoneCtx.getContext());
+				}
+				finally
+				{
+					delayedRequestSent(response, receipt);
+				}
+				return response;
 			}
-		}
+		});
 
 		timer.finish();
 		logger.debug("Time taken to call and process 'removeMany' for "+getMultiObjectClassInfo().getObjectName()+": "+timer.timeTaken()+"ms");
@@ -421,7 +529,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 	 * @see sif3.common.consumer.Consumer#deleteSingle(java.lang.String, java.util.List)
 	 */
 	@Override
-	public List<Response> deleteSingle(String resourceID, List<ZoneContextInfo> zoneCtxList, CustomParameters customParameters) throws IllegalArgumentException, PersistenceException, ServiceInvokationException
+	public List<Response> deleteSingle(final String resourceID, List<ZoneContextInfo> zoneCtxList, final CustomParameters customParameters) throws IllegalArgumentException, PersistenceException, ServiceInvokationException
 	{
 	    if (!initOK)
 	    {
@@ -431,7 +539,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 
 	    Timer timer = new Timer();
 		timer.start();
-		URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
+		final URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
 		List<Response> responses = new ArrayList<Response>();
 		
 		if (!getConsumerEnvironment().getIsConnected())
@@ -443,18 +551,20 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 		List<ZoneContextInfo> finalZoneContextList = getFinalZoneCtxList(zoneCtxList, getSIF3Session());
 
 		// Request operation in all zone/contexts as listed.
-		for (ZoneContextInfo zoneCtx : finalZoneContextList)
+		responses = invokeForZones(finalZoneContextList, new ResponseZoneOperation()
 		{
-			ErrorDetails error = allClientChecks(AccessRight.DELETE, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), null);
-			if (error == null) //all good
+			@Override
+			public ErrorDetails check(ZoneContextInfo zoneCtx)
 			{
-				responses.add(getClient(getConsumerEnvironment()).removeSingle(getMultiObjectClassInfo().getObjectName(), resourceID, getHeaderProperties(getConsumerEnvironment(), false, RequestType.IMMEDIATE, customParameters), urlQueryParameter, zoneCtx.getZone(), zoneCtx.getContext()));
+				return allClientChecks(AccessRight.DELETE, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), null);
 			}
-			else //pretend to have received a 'fake' error Response
+
+			@Override
+			public Response invoke(ZoneContextInfo zoneCtx) throws ServiceInvokationException
 			{
-				responses.add(createErrorResponse(error));
+				return getClient(getConsumerEnvironment()).removeSingle(getMultiObjectClassInfo().getObjectName(), resourceID, getHeaderProperties(getConsumerEnvironment(), false, RequestType.IMMEDIATE, customParameters), urlQueryParameter, zoneCtx.getZone(), zoneCtx.getContext());
 			}
-		}					
+		});
 
 		timer.finish();
 		logger.debug("Time taken to call and process 'delete by primary key' for "+getMultiObjectClassInfo().getObjectName()+"/"+resourceID+": "+timer.timeTaken()+"ms");
@@ -478,7 +588,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 	 * @see sif3.common.consumer.Consumer#retrievByPrimaryKey(java.lang.String, java.util.List)
 	 */
 	@Override
-	public List<Response> retrievByPrimaryKey(String resourceID, List<ZoneContextInfo> zoneCtxList, CustomParameters customParameters) throws IllegalArgumentException, PersistenceException, ServiceInvokationException
+	public List<Response> retrievByPrimaryKey(final String resourceID, List<ZoneContextInfo> zoneCtxList, final CustomParameters customParameters) throws IllegalArgumentException, PersistenceException, ServiceInvokationException
 	{
 		if (!initOK)
 		{
@@ -488,7 +598,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 
 		Timer timer = new Timer();
 		timer.start();
-		URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
+		final URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
 		List<Response> responses = new ArrayList<Response>();
 		
 		if (!getConsumerEnvironment().getIsConnected())
@@ -500,18 +610,20 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 		List<ZoneContextInfo> finalZoneContextList = getFinalZoneCtxList(zoneCtxList, getSIF3Session());
 
 		// Request operation in all zone/contexts as listed.
-		for (ZoneContextInfo zoneCtx : finalZoneContextList)
+		responses = invokeForZones(finalZoneContextList, new ResponseZoneOperation()
 		{
-			ErrorDetails error = allClientChecks(AccessRight.QUERY, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), null);
-			if (error == null) //all good
+			@Override
+			public ErrorDetails check(ZoneContextInfo zoneCtx)
 			{
-				responses.add(getClient(getConsumerEnvironment()).getSingle(getMultiObjectClassInfo().getObjectName(), resourceID, getHeaderProperties(getConsumerEnvironment(), false, RequestType.IMMEDIATE, customParameters), urlQueryParameter, getSingleObjectClassInfo().getObjectType(), zoneCtx.getZone(), zoneCtx.getContext()));
+				return allClientChecks(AccessRight.QUERY, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), null);
 			}
-			else //pretend to have received a 'fake' error Response
+
+			@Override
+			public Response invoke(ZoneContextInfo zoneCtx) throws ServiceInvokationException
 			{
-				responses.add(createErrorResponse(error));
+				return getClient(getConsumerEnvironment()).getSingle(getMultiObjectClassInfo().getObjectName(), resourceID, getHeaderProperties(getConsumerEnvironment(), false, RequestType.IMMEDIATE, customParameters), urlQueryParameter, getSingleObjectClassInfo().getObjectType(), zoneCtx.getZone(), zoneCtx.getContext());
 			}
-		}					
+		});
 
 		timer.finish();
 		logger.debug("Time taken to call and process 'retrieve by primary key' for "+getSingleObjectClassInfo().getObjectName()+"/"+resourceID+": "+timer.timeTaken()+"ms");
@@ -531,7 +643,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 	 * @see sif3.common.consumer.Consumer#retrieve(sif3.common.model.PagingInfo, java.util.List)
 	 */
 	@Override
-	public List<Response> retrieve(PagingInfo pagingInfo, List<ZoneContextInfo> zoneCtxList, RequestType requestType, QueryIntention queryIntention, CustomParameters customParameters) throws PersistenceException, UnsupportedQueryException, ServiceInvokationException
+	public List<Response> retrieve(final PagingInfo pagingInfo, List<ZoneContextInfo> zoneCtxList, final RequestType requestType, QueryIntention queryIntention, CustomParameters customParameters) throws PersistenceException, UnsupportedQueryException, ServiceInvokationException
 	{
 		if (!initOK)
 		{
@@ -541,7 +653,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 
 		Timer timer = new Timer();
 		timer.start();
-		URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
+		final URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
 		List<Response> responses = new ArrayList<Response>();
 		
 		if (!getConsumerEnvironment().getIsConnected())
@@ -554,7 +666,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 		queryIntention = (queryIntention == null) ? QueryIntention.ONE_OFF : queryIntention;
 		
 		// Set default set of HTTP Header fields
-		HeaderProperties hdrProps = getHeaderProperties(getConsumerEnvironment(), false, requestType, customParameters);
+		final HeaderProperties hdrProps = getHeaderProperties(getConsumerEnvironment(), false, requestType, customParameters);
 		
 		// Add query intention to headers.
 		hdrProps.setHeaderProperty(RequestHeaderConstants.HDR_QUERY_INTENTION, queryIntention.getHTTPHeaderValue());
@@ -562,18 +674,32 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 		List<ZoneContextInfo> finalZoneContextList = getFinalZoneCtxList(zoneCtxList, getSIF3Session());
 
 		// Request operation in all zone/contexts as listed.
-		for (ZoneContextInfo zoneCtx : finalZoneContextList)
+		responses = invokeForZones(finalZoneContextList, new ResponseZoneOperation()
 		{
-			ErrorDetails error = allClientChecks(AccessRight.QUERY, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), requestType);
-			if (error == null) //all good => Send request
+			@Override
+			public ErrorDetails check(ZoneContextInfo zoneCtx)
 			{
-				responses.add(getClient(getConsumerEnvironment()).getMany(getMultiObjectClassInfo().getObjectName(), pagingInfo, hdrProps, urlQueryParameter, getMultiObjectClassInfo().getObjectType(), zoneCtx.getZone(), zoneCtx.getContext()));
+				return allClientChecks(AccessRight.QUERY, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), requestType);
 			}
-			else //pretend to have received a 'fake' error Response
+
+			@Override
+			public Response invoke(ZoneContextInfo zoneCtx) throws ServiceInvokationException
 			{
-				responses.add(createErrorResponse(error));
+				// Each request gets its own copy of the header properties as they are modified by the client.
+				HeaderProperties requestHdrProps = new HeaderProperties(hdrProps.getHeaderProperties());
+				DelayedRequestReceipt receipt = registerDelayedRequest(requestHdrProps, requestType, ResponseAction.QUERY, HeaderValues.ServiceType.OBJECT, getServiceName(), zoneCtx);
+				Response response = null;
+				try
+				{
+					response = getClient(getConsumerEnvironment()).getMany(getMultiObjectClassInfo().getObjectName(), pagingInfo, requestHdrProps, urlQueryParameter, getMultiObjectClassInfo().getObjectType(), zoneCtx.getZone(), zoneCtx.getContext());
+				}
+				finally
+				{
+					delayedRequestSent(response, receipt);
+				}
+				return response;
 			}
-		}					
+		});
 
 		timer.finish();
 		logger.debug("Time taken to call and process 'retrieve all' for "+getMultiObjectClassInfo().getObjectName()+": "+timer.timeTaken()+"ms");
@@ -594,7 +720,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 	 * (non-Javadoc)
 	 * @see sif3.common.interfaces.QueryConsumer#retrieveByServicePath(sif3.common.model.QueryCriteria, sif3.common.model.PagingInfo, java.util.List, sif3.common.header.HeaderValues.RequestType, sif3.common.header.HeaderValues.QueryIntention, sif3.common.model.CustomParameters)
 	 */
-	public List<Response> retrieveByServicePath(QueryCriteria queryCriteria, PagingInfo pagingInfo, List<ZoneContextInfo> zoneCtxList, RequestType requestType, QueryIntention queryIntention, CustomParameters customParameters) throws PersistenceException, UnsupportedQueryException, ServiceInvokationException
+	public List<Response> retrieveByServicePath(final QueryCriteria queryCriteria, final PagingInfo pagingInfo, List<ZoneContextInfo> zoneCtxList, final RequestType requestType, QueryIntention queryIntention, CustomParameters customParameters) throws PersistenceException, UnsupportedQueryException, ServiceInvokationException
 	{
 		if (!initOK)
 		{
@@ -604,7 +730,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 
 		Timer timer = new Timer();
 		timer.start();
-		URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
+		final URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
 		List<Response> responses = new ArrayList<Response>();
 
 		if (!getConsumerEnvironment().getIsConnected())
@@ -617,7 +743,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 		queryIntention = (queryIntention == null) ? QueryIntention.ONE_OFF : queryIntention;
 		
 		// Set default set of HTTP Header fields
-		HeaderProperties hdrProps = getHeaderProperties(getConsumerEnvironment(), false, requestType, HeaderValues.ServiceType.SERVICEPATH, customParameters);
+		final HeaderProperties hdrProps = getHeaderProperties(getConsumerEnvironment(), false, requestType, HeaderValues.ServiceType.SERVICEPATH, customParameters);
 		
 		// Add query intention to headers.
 		hdrProps.setHeaderProperty(RequestHeaderConstants.HDR_QUERY_INTENTION, queryIntention.getHTTPHeaderValue());
@@ -625,18 +751,32 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 		List<ZoneContextInfo> finalZoneContextList = getFinalZoneCtxList(zoneCtxList, getSIF3Session());
 
 		// Request operation in all zone/contexts as listed.
-		for (ZoneContextInfo zoneCtx : finalZoneContextList)
+		responses = invokeForZones(finalZoneContextList, new ResponseZoneOperation()
 		{
-			ErrorDetails error = allClientChecks(getServiceName(queryCriteria), AccessRight.QUERY, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), requestType);
-			if (error == null) //all good => Send request
+			@Override
+			public ErrorDetails check(ZoneContextInfo zoneCtx)
 			{
-				responses.add(getClient(getConsumerEnvironment()).getMany(getServicePath(queryCriteria), pagingInfo, hdrProps, urlQueryParameter, getMultiObjectClassInfo().getObjectType(), zoneCtx.getZone(), zoneCtx.getContext()));
+				return allClientChecks(getServiceName(queryCriteria), AccessRight.QUERY, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), requestType);
 			}
-			else // pretend to have received a 'fake' error Response
+
+			@Override
+			public Response invoke(ZoneContextInfo zoneCtx) throws ServiceInvokationException
 			{
-				responses.add(createErrorResponse(error));
+				// Each request gets its own copy of the header properties as they are modified by the client.
+				HeaderProperties requestHdrProps = new HeaderProperties(hdrProps.getHeaderProperties());
+				DelayedRequestReceipt receipt = registerDelayedRequest(requestHdrProps, requestType, ResponseAction.QUERY, HeaderValues.ServiceType.SERVICEPATH, getServicePath(queryCriteria), zoneCtx);
+				Response response = null;
+				try
+				{
+					response = getClient(getConsumerEnvironment()).getMany(getServicePath(queryCriteria), pagingInfo, requestHdrProps, urlQueryParameter, getMultiObjectClassInfo().getObjectType(), zoneCtx.getZone(), zoneCtx.getContext());
+				}
+				finally
+				{
+					delayedRequestSent(response, receipt);
+				}
+				return response;
 			}
-		}
+		});
 
 	    timer.finish();
 	    logger.debug("Time taken to call and process 'retrieve all' for "+getMultiObjectClassInfo().getObjectName()+": "+timer.timeTaken()+"ms");
@@ -657,10 +797,10 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 	 * (non-Javadoc)
 	 * @see sif3.common.interfaces.QueryConsumer#retrieveByQBE(java.lang.Object, sif3.common.model.PagingInfo, java.util.List, sif3.common.header.HeaderValues.RequestType, sif3.common.header.HeaderValues.QueryIntention, sif3.common.model.CustomParameters)
 	 */
-	public List<Response> retrieveByQBE(Object exampleObject, 
-								        PagingInfo pagingInfo, 
+	public List<Response> retrieveByQBE(final Object exampleObject, 
+								        final PagingInfo pagingInfo, 
 								        List<ZoneContextInfo> zoneCtxList, 
-								        RequestType requestType, 
+								        final RequestType requestType, 
 								        QueryIntention queryIntention, 
 								        CustomParameters customParameters) throws PersistenceException, UnsupportedQueryException, ServiceInvokationException
 	{
@@ -672,7 +812,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 
 		Timer timer = new Timer();
 		timer.start();
-		URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
+		final URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
 		List<Response> responses = new ArrayList<Response>();
 
 		if (!getConsumerEnvironment().getIsConnected())
@@ -685,7 +825,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 		queryIntention = (queryIntention == null) ? QueryIntention.ONE_OFF : queryIntention;
 		
 		// Set default set of HTTP Header fields
-		HeaderProperties hdrProps = getHeaderProperties(getConsumerEnvironment(), false, requestType, HeaderValues.ServiceType.OBJECT, customParameters);
+		final HeaderProperties hdrProps = getHeaderProperties(getConsumerEnvironment(), false, requestType, HeaderValues.ServiceType.OBJECT, customParameters);
 		
 		// Add query intention to headers.
 		hdrProps.setHeaderProperty(RequestHeaderConstants.HDR_QUERY_INTENTION, queryIntention.getHTTPHeaderValue());
@@ -693,18 +833,32 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 		List<ZoneContextInfo> finalZoneContextList = getFinalZoneCtxList(zoneCtxList, getSIF3Session());
 
 		// Request operation in all zone/contexts as listed.
-		for (ZoneContextInfo zoneCtx : finalZoneContextList)
+		responses = invokeForZones(finalZoneContextList, new ResponseZoneOperation()
 		{
-			ErrorDetails error = allClientChecks(AccessRight.QUERY, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), requestType);
-			if (error == null) //all good => Send request
+			@Override
+			public ErrorDetails check(ZoneContextInfo zoneCtx)
 			{
-				responses.add(getClient(getConsumerEnvironment()).getByQBE(getMultiObjectClassInfo().getObjectName(), exampleObject, pagingInfo, hdrProps, urlQueryParameter, getMultiObjectClassInfo().getObjectType(), zoneCtx.getZone(), zoneCtx.getContext()));
+				return allClientChecks(AccessRight.QUERY, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), requestType);
 			}
-			else // pretend to have received a 'fake' error Response
+
+			@Override
+			public Response invoke(ZoneContextInfo zoneCtx) throws ServiceInvokationException
 			{
-				responses.add(createErrorResponse(error));
+				// Each request gets its own copy of the header properties as they are modified by the client.
+				HeaderProperties requestHdrProps = new HeaderProperties(hdrProps.getHeaderProperties());
+				DelayedRequestReceipt receipt = registerDelayedRequest(requestHdrProps, requestType, ResponseAction.QUERY, HeaderValues.ServiceType.OBJECT, getServiceName(), zoneCtx);
+				Response response = null;
+				try
+				{
+					response = getClient(getConsumerEnvironment()).getByQBE(getMultiObjectClassInfo().getObjectName(), exampleObject, pagingInfo, requestHdrProps, urlQueryParameter, getMultiObjectClassInfo().getObjectType(), zoneCtx.getZone(), zoneCtx.getContext());
+				}
+				finally
+				{
+					delayedRequestSent(response, receipt);
+				}
+				return response;
 			}
-		}
+		});
 
 	    timer.finish();
 	    logger.debug("Time taken to call and process 'retrieve all' for "+getMultiObjectClassInfo().getObjectName()+": "+timer.timeTaken()+"ms");
@@ -733,7 +887,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 	 * @see sif3.common.consumer.Consumer#updateMany(java.lang.Object, java.util.List)
 	 */
 	@Override
-	public List<BulkOperationResponse<OperationStatus>> updateMany(Object data, List<ZoneContextInfo> zoneCtxList, RequestType requestType, CustomParameters customParameters) throws IllegalArgumentException, PersistenceException, ServiceInvokationException
+	public List<BulkOperationResponse<OperationStatus>> updateMany(final Object data, List<ZoneContextInfo> zoneCtxList, final RequestType requestType, final CustomParameters customParameters) throws IllegalArgumentException, PersistenceException, ServiceInvokationException
 	{
     if (!initOK)
     {
@@ -743,7 +897,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 
     	Timer timer = new Timer();
 		timer.start();
-		URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
+		final URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
 		List<BulkOperationResponse<OperationStatus>> responses = new ArrayList<BulkOperationResponse<OperationStatus>>();
 		
 		if (!getConsumerEnvironment().getIsConnected())
@@ -755,18 +909,31 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 		List<ZoneContextInfo> finalZoneContextList = getFinalZoneCtxList(zoneCtxList, getSIF3Session());
 
 		// Request operation in all zone/contexts as listed.
-		for (ZoneContextInfo zoneCtx : finalZoneContextList)
+		responses = invokeForZones(finalZoneContextList, new BulkZoneOperation()
 		{
-			ErrorDetails error = allClientChecks(AccessRight.UPDATE, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), requestType);
-			if (error == null) //all good => Send request
+			@Override
+			public ErrorDetails check(ZoneContextInfo zoneCtx)
 			{
-				responses.add(getClient(getConsumerEnvironment()).updateMany(getMultiObjectClassInfo().getObjectName(), data, getHeaderProperties(getConsumerEnvironment(), false, requestType, customParameters), urlQueryParameter, zoneCtx.getZone(), zoneCtx.getContext()));
+				return allClientChecks(AccessRight.UPDATE, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), requestType);
 			}
-			else //pretend to have received a 'fake' error Response
+
+			@Override
+			public BulkOperationResponse<OperationStatus> invoke(ZoneContextInfo zoneCtx) throws ServiceInvokationException
 			{
-				responses.add(makeBulkErrorResponse(error));
+				HeaderProperties hdrProps = getHeaderProperties(getConsumerEnvironment(), false, requestType, customParameters);
+				DelayedRequestReceipt receipt = registerDelayedRequest(hdrProps, requestType, ResponseAction.UPDATE, HeaderValues.ServiceType.OBJECT, getServiceName(), zoneCtx);
+				BulkOperationResponse<OperationStatus> response = null;
+				try
+				{
+					response = getClient(getConsumerEnvironment()).updateMany(getMultiObjectClassInfo().getObjectName(), data, hdrProps, urlQueryParameter, zoneCtx.getZone(), zoneCtx.getContext());
+				}
+				finally
+				{
+					delayedRequestSent(response, receipt);
+				}
+				return response;
 			}
-		}					
+		});
 
 		timer.finish();
 		logger.debug("Time taken to call and process 'updateMany' for "+getMultiObjectClassInfo().getObjectName()+": "+timer.timeTaken()+"ms");
@@ -786,7 +953,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 	 * @see sif3.common.consumer.Consumer#updateSingle(java.lang.Object, java.lang.String, java.util.List)
 	 */
 	@Override
-	public List<Response> updateSingle(Object data, String resourceID, List<ZoneContextInfo> zoneCtxList, CustomParameters customParameters) throws IllegalArgumentException, PersistenceException, ServiceInvokationException
+	public List<Response> updateSingle(final Object data, final String resourceID, List<ZoneContextInfo> zoneCtxList, final CustomParameters customParameters) throws IllegalArgumentException, PersistenceException, ServiceInvokationException
 	{
 		if (!initOK)
 		{
@@ -796,7 +963,7 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 
     	Timer timer = new Timer();
 		timer.start();
-		URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
+		final URLQueryParameter urlQueryParameter = customParameters != null ? customParameters.getQueryParams() : null;
 		List<Response> responses = new ArrayList<Response>();
 		
 		if (!getConsumerEnvironment().getIsConnected())
@@ -808,18 +975,20 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 		List<ZoneContextInfo> finalZoneContextList = getFinalZoneCtxList(zoneCtxList, getSIF3Session());
 
 		// Request operation in all zone/contexts as listed.
-		for (ZoneContextInfo zoneCtx : finalZoneContextList)
+		responses = invokeForZones(finalZoneContextList, new ResponseZoneOperation()
 		{
-			ErrorDetails error = allClientChecks(AccessRight.UPDATE, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), null);
-			if (error == null) //all good
+			@Override
+			public ErrorDetails check(ZoneContextInfo zoneCtx)
 			{
-				responses.add(getClient(getConsumerEnvironment()).updateSingle(getMultiObjectClassInfo().getObjectName(), resourceID, data, getHeaderProperties(getConsumerEnvironment(), false, RequestType.IMMEDIATE, customParameters), urlQueryParameter, zoneCtx.getZone(), zoneCtx.getContext()));
+				return allClientChecks(AccessRight.UPDATE, AccessType.APPROVED, zoneCtx.getZone(), zoneCtx.getContext(), null);
 			}
-			else //pretend to have received a 'fake' error Response
+
+			@Override
+			public Response invoke(ZoneContextInfo zoneCtx) throws ServiceInvokationException
 			{
-				responses.add(createErrorResponse(error));
+				return getClient(getConsumerEnvironment()).updateSingle(getMultiObjectClassInfo().getObjectName(), resourceID, data, getHeaderProperties(getConsumerEnvironment(), false, RequestType.IMMEDIATE, customParameters), urlQueryParameter, zoneCtx.getZone(), zoneCtx.getContext());
 			}
-		}					
+		});
 
 		timer.finish();
 		logger.debug("Time taken to call and process 'update by primary key' for "+getMultiObjectClassInfo().getObjectName()+"/"+resourceID+": "+timer.timeTaken()+"ms");
@@ -847,6 +1016,170 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 	/*---------------------*/
 	/*-- Private Methods --*/
 	/*---------------------*/
+	
+	/*
+	 * An operation that is issued for each zone/context of a request. The check() method is called first. If it returns an error then 
+	 * makeErrorResponse() is used to create a 'fake' error response for the zone/context, otherwise invoke() sends the actual request.
+	 */
+	private interface ZoneOperation<T>
+	{
+		public ErrorDetails check(ZoneContextInfo zoneCtx);
+		public T invoke(ZoneContextInfo zoneCtx) throws ServiceInvokationException;
+		public T makeErrorResponse(ErrorDetails error);
+	}
+	
+	private abstract class ResponseZoneOperation implements ZoneOperation<Response>
+	{
+		@Override
+		public Response makeErrorResponse(ErrorDetails error)
+		{
+			return createErrorResponse(error);
+		}
+	}
+
+	private abstract class BulkZoneOperation implements ZoneOperation<BulkOperationResponse<OperationStatus>>
+	{
+		@Override
+		public BulkOperationResponse<OperationStatus> makeErrorResponse(ErrorDetails error)
+		{
+			return makeBulkErrorResponse(error);
+		}
+	}
+
+	/*
+	 * Issues the given operation for each zone/context of the list. The responses are returned in the same order as the zone/context
+	 * list. If the consumer.multiZone.threads property is set to a value greater than 1 then the requests are issued concurrently on 
+	 * the shared multi zone thread pool and each zone/context has at most consumer.multiZone.timeout seconds to respond, counted from the
+	 * time its request has been submitted. If a zone/context does not respond in time a 'fake' error response is returned for it. 
+	 * Otherwise requests are issued one after the other.
+	 */
+	private <T> List<T> invokeForZones(List<ZoneContextInfo> zoneCtxList, final ZoneOperation<T> operation) throws ServiceInvokationException
+	{
+		List<T> responses = new ArrayList<T>();
+		int numThreads = getNumMultiZoneThreads();
+		
+		if ((numThreads <= 1) || (zoneCtxList.size() <= 1)) // Nothing to gain. Process one after the other.
+		{
+			for (ZoneContextInfo zoneCtx : zoneCtxList)
+			{
+				ErrorDetails error = operation.check(zoneCtx);
+				responses.add((error == null) ? operation.invoke(zoneCtx) : operation.makeErrorResponse(error));
+			}
+			return responses;
+		}
+		
+		// Send all requests that pass the client checks to the thread pool. Position of futures matches position in zone list.
+		ExecutorService service = MultiZoneExecutor.getExecutorService(numThreads, getMultiZoneQueueSize(numThreads));
+		long timeout = getMultiZoneTimeout();
+		List<Future<T>> futures = new ArrayList<Future<T>>();
+		List<Long> deadlines = new ArrayList<Long>();
+		for (final ZoneContextInfo zoneCtx : zoneCtxList)
+		{
+			ErrorDetails error = operation.check(zoneCtx);
+			if (error == null) //all good => Send request
+			{
+				// Each zone/context has its own timeout, counted from the time its request is submitted.
+				deadlines.add(System.currentTimeMillis() + timeout * CommonConstants.MILISEC);
+				futures.add(service.submit(new Callable<T>()
+				{
+					@Override
+					public T call() throws Exception
+					{
+						return operation.invoke(zoneCtx);
+					}
+				}));
+				responses.add(null); // placeholder for response
+			}
+			else //pretend to have received a 'fake' error Response
+			{
+				futures.add(null);
+				deadlines.add(null);
+				responses.add(operation.makeErrorResponse(error));
+			}
+		}
+		
+		// Collect the responses in the original order.
+		for (int i = 0; i < futures.size(); i++)
+		{
+			Future<T> future = futures.get(i);
+			if (future != null)
+			{
+				try
+				{
+					responses.set(i, future.get(Math.max(deadlines.get(i) - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS));
+				}
+				catch (TimeoutException ex)
+				{
+					future.cancel(true);
+					ZoneContextInfo zoneCtx = zoneCtxList.get(i);
+					logger.error("Request for "+getServiceName()+" in zone "+zoneCtx.getZone().getId()+" and context "+zoneCtx.getContext().getId()+" did not complete within "+timeout+" seconds.");
+					responses.set(i, operation.makeErrorResponse(new ErrorDetails(CommonConstants.GATEWAY_TIMEOUT, "Request timed out.", "No response received for zone ("+zoneCtx.getZone().getId()+") and context ("+zoneCtx.getContext().getId()+") within "+timeout+" seconds.", "Client side check.")));
+				}
+				catch (ExecutionException ex)
+				{
+					cancelAll(futures);
+					if (ex.getCause() instanceof ServiceInvokationException)
+					{
+						throw (ServiceInvokationException)ex.getCause();
+					}
+					throw new ServiceInvokationException("Failed to invoke request for "+getServiceName()+": "+ex.getCause().getMessage(), ex.getCause());
+				}
+				catch (InterruptedException ex)
+				{
+					cancelAll(futures);
+					Thread.currentThread().interrupt();
+					throw new ServiceInvokationException("Interrupted while waiting for responses of "+getServiceName(), ex);
+				}
+			}
+		}
+		
+		return responses;
+	}
+	
+	private <T> void cancelAll(List<Future<T>> futures)
+	{
+		for (Future<T> future : futures)
+		{
+			if (future != null)
+			{
+				future.cancel(true);
+			}
+		}
+	}
+	
+	/*
+	 * Number of threads used to issue requests to many zones/contexts concurrently. 0 or 1 means requests are issued one after the other.
+	 */
+	private int getNumMultiZoneThreads()
+	{
+		return getServiceProperties().getPropertyAsInt("consumer.multiZone.threads", 0);
+	}
+	
+	/*
+	 * Max number of requests that wait for a thread of the multi zone thread pool. If the queue is full the request is issued by the
+	 * calling thread. Default is 10 times the number of threads.
+	 */
+	private int getMultiZoneQueueSize(int numThreads)
+	{
+		return getServiceProperties().getPropertyAsInt("consumer.multiZone.queueSize", numThreads * 10);
+	}
+	
+	/*
+	 * Timeout in seconds for each zone/context if requests are issued concurrently. Can be set for each consumer.
+	 */
+	private int getMultiZoneTimeout()
+	{
+		return getServiceProperties().getPropertyAsInt("consumer.multiZone.timeout", getClass().getSimpleName(), DEFAULT_MULTI_ZONE_TIMEOUT);
+	}
+	
+	/*
+	 * Timeout in seconds for DELAYED requests. Can be set for each consumer.
+	 */
+	private int getDelayedTimeout()
+	{
+		return getServiceProperties().getPropertyAsInt("events.delayed.timeout", getClass().getSimpleName(), getConsumerEnvironment().getDelayedTimeout());
+	}
+	
 	private ClientInterface getClient(ConsumerEnvironment envInfo)
 	{
 		URI baseURI = envInfo.getConnectorBaseURI(ConsumerEnvironment.ConnectorName.requestsConnector);
@@ -857,12 +1190,13 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 		}
 		else
 		{
-			return new ClientInterface(envInfo.getConnectorBaseURI(ConsumerEnvironment.ConnectorName.requestsConnector), 
-	                   				   getRequestMediaType(),
-	                   				   getResponseMediaType(),
-	                   				   getMarshaller(), 
-	                   				   getUnmarshaller(),
-	                   				   envInfo.getSecureConnection());
+			// Client interfaces are thread safe and expensive to create. Reuse them through the client registry.
+			return ClientRegistry.getInstance().getClientInterface(baseURI, 
+	                   				                               getRequestMediaType(),
+	                   				                               getResponseMediaType(),
+	                   				                               getMarshaller(), 
+	                   				                               getUnmarshaller(),
+	                   				                               envInfo.getSecureConnection());
 		}
 	}
 		
@@ -879,7 +1213,8 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 	   // will override custom properties with SIF defined properties.
 	   if ((customParameters != null) && (customParameters.getHttpHeaderParams() != null))
 	   {
-		   hdrProps = customParameters.getHttpHeaderParams();
+		   // Use a copy. The same custom parameters may be used for many concurrent requests.
+		   hdrProps = new HeaderProperties(customParameters.getHttpHeaderParams().getHeaderProperties());
 	   }
 	    
 	   // Now we set SIF defined HTTP headers...
@@ -955,13 +1290,83 @@ public abstract class AbstractConsumer implements Consumer, QueryConsumer
 	private ErrorDetails requestTypeSupported(RequestType requestType)
 	{
 		ErrorDetails error = null;
-		if (requestType == RequestType.DELAYED)
+		if ((requestType == RequestType.DELAYED) && !DelayedResponseRegistry.getInstance().isStarted())
 		{
-			error = new ErrorDetails(Status.BAD_REQUEST.getStatusCode(), "Client side Check: DELAYED requests are not supported, yet.");
+			error = new ErrorDetails(Status.BAD_REQUEST.getStatusCode(), "Client side Check: DELAYED requests are not enabled. They require the properties events.enabled and events.delayed.enabled to be set to true.");
 		}
 		return error;
 	}
 
+	/*
+	 * DELAYED requests only: Creates the request ID and registers the request with the delayed response registry before the request is 
+	 * sent, so that a response that arrives quickly can still be matched. The queue to which the provider shall deliver the response is 
+	 * added to the headers as well. Returns null for IMMEDIATE requests.
+	 */
+	private DelayedRequestReceipt registerDelayedRequest(HeaderProperties hdrProps, RequestType requestType, ResponseAction action, HeaderValues.ServiceType serviceType, String serviceName, ZoneContextInfo zoneCtx)
+	{
+		if (requestType != RequestType.DELAYED)
+		{
+			return null;
+		}
+		DelayedResponseRegistry registry = DelayedResponseRegistry.getInstance();
+		DelayedRequestReceipt receipt = new DelayedRequestReceipt(UUIDGenerator.getUUID(), serviceName, serviceType, action, zoneCtx.getZone(), zoneCtx.getContext());
+		receipt.setResponseFuture(registry.register(receipt, delayedResponseHandler, getDelayedTimeout() * CommonConstants.MILISEC));
+		hdrProps.setHeaderProperty(RequestHeaderConstants.HDR_REQUEST_ID, receipt.getRequestID());
+		hdrProps.setHeaderProperty(RequestHeaderConstants.HDR_QUEUE_ID, registry.getQueueID());
+		return receipt;
+	}
+	
+	/*
+	 * DELAYED requests only: If the provider has accepted the request then the receipt is added to the response. Otherwise no response
+	 * will arrive on the queue and the request is removed from the delayed response registry. The response is null if the request failed.
+	 */
+	private void delayedRequestSent(BaseResponse response, DelayedRequestReceipt receipt)
+	{
+		if (receipt != null)
+		{
+			if ((response != null) && !response.hasError() && (response.getStatus() == Status.ACCEPTED.getStatusCode()))
+			{
+				response.setDelayedReceipt(receipt);
+			}
+			else
+			{
+				DelayedResponseRegistry.getInstance().cancel(receipt.getRequestID());
+			}
+		}
+	}
+	
+	/*
+	 * The payload of a delayed response is received as a string from the queue. Queries are unmarshalled into the multi object type of 
+	 * this consumer. Responses of bulk operations are unmarshalled into the infrastructure's create, update or delete response type.
+	 */
+	private void unmarshalDelayedResponse(Response response, DelayedRequestReceipt receipt)
+	{
+		if (response.hasError() || !(response.getDataObject() instanceof String))
+		{
+			return; // nothing to unmarshal
+		}
+		String payload = (String)response.getDataObject();
+		MediaType mediaType = (response.getMediaType() != null) ? response.getMediaType() : getResponseMediaType();
+		try
+		{
+			if (receipt.getRequestedAction() == ResponseAction.QUERY)
+			{
+				response.setDataObjectType(getMultiObjectClassInfo().getObjectType());
+				response.setDataObject(getUnmarshaller().unmarshal(payload, getMultiObjectClassInfo().getObjectType(), mediaType));
+			}
+			else
+			{
+				Class<?> responseType = (receipt.getRequestedAction() == ResponseAction.CREATE) ? CreateResponseType.class : ((receipt.getRequestedAction() == ResponseAction.UPDATE) ? UpdateResponseType.class : DeleteResponseType.class);
+				response.setDataObjectType(responseType);
+				response.setDataObject(infraUnmarshaller.unmarshal(payload, responseType, mediaType));
+			}
+		}
+		catch (Exception ex)
+		{
+			response.setError(new ErrorDetails(response.getStatus(), "Could not unmarshal delayed response: "+ex.getMessage()+". See error description for payload details.", payload));
+		}
+	}
+
 	private Response createErrorResponse(ErrorDetails error)
 	{
 		Response response = new Response();
@@ -18,11 +18,13 @@
 
 package sif3.infra.rest.consumer;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import sif3.common.header.HeaderValues.ServiceType;
+import sif3.common.interfaces.BatchEventConsumer;
 import sif3.common.interfaces.EventConsumer;
 import sif3.common.model.EventMetadata;
 import sif3.common.model.SIFContext;
@@ -32,9 +34,20 @@ import sif3.common.model.ServiceInfo;
 import sif3.common.model.ServiceRights;
 import sif3.common.model.ServiceRights.AccessRight;
 import sif3.common.persist.model.SIF3Session;
+import sif3.common.utils.ExecutorStrategy;
 import sif3.infra.common.env.mgr.ConsumerEnvironmentManager;
+import sif3.infra.rest.queue.EventBatcher;
+import sif3.infra.rest.queue.EventDecodeStage;
+import sif3.infra.rest.queue.EventRetryStage;
+import sif3.infra.rest.queue.LocalBatchConsumer;
 import sif3.infra.rest.queue.LocalConsumerQueue;
+import sif3.infra.rest.queue.LocalConsumerQueue.OverflowPolicy;
 import sif3.infra.rest.queue.LocalMessageConsumer;
+import sif3.infra.rest.queue.PartitionedEventDispatcher;
+import sif3.infra.rest.queue.persist.DeadLetterStore;
+import sif3.infra.rest.queue.persist.DeadLetterStore.DeadLetter;
+import sif3.infra.rest.queue.types.EventInfo;
+import sif3.infra.rest.queue.types.StageMetrics;
 
 /**
  * This is the core class that a developer will use to implement for a consumer that shall subscribe to events. Each consumer for each object 
@@ -50,6 +63,12 @@ public abstract class AbstractEventConsumer<L> extends AbstractConsumer implemen
 {
 	private LocalConsumerQueue localConsumerQueue = null;
 	private ExecutorService service = null;
+	private EventDecodeStage decodeStage = null;
+	private PartitionedEventDispatcher dispatcher = null;
+	private EventBatcher batcher = null;
+	private EventRetryStage retryStage = null;
+	private StageMetrics decodeMetrics = new StageMetrics("Decode");
+	private StageMetrics processMetrics = new StageMetrics("Process");
   
   	/**
   	 * This method is called when a consumer service has received an event. This class does implement the actual onEvent( method
@@ -97,11 +116,31 @@ public abstract class AbstractEventConsumer<L> extends AbstractConsumer implemen
 	@Override
 	public void finalise()
 	{
-		logger.debug("Shut down Event Consumer Thread Pool for "+getConsumerName());
+		logger.debug("Shut down Event Consumer Thread Pool for "+getConsumerName()+". "+getDecodeMetrics()+"; "+getProcessMetrics());
+		if (dispatcher != null)
+		{
+			dispatcher.shutdown();
+		}
+		if (batcher != null)
+		{
+			batcher.shutdown();
+		}
+		if (decodeStage != null)
+		{
+			decodeStage.shutdown();
+		}
 		if (service != null)
 		{
 			service.shutdown();
 		}
+		if (retryStage != null)
+		{
+			retryStage.shutdown();
+		}
+		if (getLocalConsumerQueue() != null)
+		{
+			getLocalConsumerQueue().flush();
+		}
 		
 		// Call user defined finalise of the subscriber.
 		super.finalise();
@@ -134,6 +173,75 @@ public abstract class AbstractEventConsumer<L> extends AbstractConsumer implemen
       this.localConsumerQueue = localConsumerQueue;
     }
     
+    /**
+     * Returns the timing metrics of unmarshalling events and creating the event objects. This is recorded regardless if a separate 
+     * decode stage is configured or not.
+     * 
+     * @return See desc.
+     */
+    public final StageMetrics getDecodeMetrics()
+    {
+    	return decodeMetrics;
+    }
+    
+    /**
+     * Returns the timing metrics of the onEvent() method of this consumer.
+     * 
+     * @return See desc.
+     */
+    public final StageMetrics getProcessMetrics()
+    {
+    	return processMetrics;
+    }
+    
+    /**
+     * Returns the retry stage of this consumer. Null is returned if neither retries (consumer.local.retry.maxAttempts > 1) nor the
+     * dead letter store (consumer.local.deadLetter.enabled) are enabled.
+     * 
+     * @return See desc.
+     */
+    public final EventRetryStage getRetryStage()
+    {
+    	return retryStage;
+    }
+    
+    /**
+     * This method takes all events from the dead letter store of this consumer and puts them back on the local consumer queue, so
+     * that they are processed again (i.e. after the cause of the failure has been fixed). Events that fail again are added to the
+     * dead letter store again. The events are only removed from the dead letter store once all of them have been put back on the
+     * local consumer queue. If the dead letter store is not enabled or the events cannot be read then an error is logged and 0 is 
+     * returned.
+     * 
+     * @return The number of events that have been put back on the local consumer queue.
+     */
+    public final int replayDeadLetters()
+    {
+    	if ((retryStage == null) || (retryStage.getDeadLetterStore() == null) || (getLocalConsumerQueue() == null))
+    	{
+    		logger.error("Dead letter store is not enabled for "+getConsumerName()+". No events to replay.");
+    		return 0;
+    	}
+    	
+    	DeadLetterStore deadLetterStore = retryStage.getDeadLetterStore();
+    	List<DeadLetter> deadLetters = deadLetterStore.takeAll();
+    	int numReplayed = 0;
+    	for (DeadLetter deadLetter : deadLetters)
+    	{
+    		if (getLocalConsumerQueue().blockingPush(deadLetter.getEventInfo()))
+    		{
+    			numReplayed++;
+    		}
+    		else
+    		{
+    			// Don't lose it. Put it back into the store.
+    			deadLetterStore.append(deadLetter.getEventInfo(), deadLetter.getAttempts(), deadLetter.getReason());
+    		}
+    	}
+    	deadLetterStore.removeTaken();
+    	logger.info("Replayed "+numReplayed+" of "+deadLetters.size()+" events from dead letter store for "+getConsumerName()+".");
+    	return numReplayed;
+    }
+    
     /*----------------------------*/
     /*-- Other required methods --*/
     /*----------------------------*/
@@ -156,11 +264,64 @@ public abstract class AbstractEventConsumer<L> extends AbstractConsumer implemen
     	return envEventServices;
     }
     
+    /**
+     * This method is only called if partitioned event dispatch is enabled (consumer.local.partitions > 0). It returns the key of an
+     * event that determines on which of the partitions (lanes) the event is processed. Events with the same key are processed one
+     * after the other in the order they have been received. Events with different keys may be processed in parallel. The default 
+     * key is zone, context and service name which means that all events of a zone/context are processed in order. If a finer 
+     * grained ordering is sufficient (i.e. by the refId of the object in the event) then the sub-class of this class should 
+     * override this method. If null is returned the event is processed on the first partition.
+     * 
+     * @param sifEvent The decoded event.
+     * @param zone The zone from which the event has been received.
+     * @param context The context for which the event is applicable for.
+     * @param metadata Additional metadata that is known for the event.
+     * 
+     * @return The partition key of the event.
+     */
+    public String getPartitionKey(SIFEvent<L> sifEvent, SIFZone zone, SIFContext context, EventMetadata metadata)
+    {
+    	return ((zone != null) ? zone.getId() : "") + "|" + ((context != null) ? context.getId() : "") + "|" + getMultiObjectClassInfo().getObjectName();
+    }
+    
 	public final int getNumOfConsumerThreads()
 	{
 		return getServiceProperties().getPropertyAsInt("consumer.local.workerThread", getClass().getSimpleName(), 1);
 	}
 
+	/**
+	 * Returns the number of threads that decode events ahead of the worker threads. If 0 then no separate decode stage is used and
+	 * each worker thread decodes the events itself.
+	 * 
+	 * @return See desc.
+	 */
+	public final int getNumOfDecoderThreads()
+	{
+		return getServiceProperties().getPropertyAsInt("consumer.local.decodeThreads", getClass().getSimpleName(), 0);
+	}
+
+	/**
+	 * Returns the number of partitions (lanes) for ordered event dispatch. If 0 then partitioned dispatch is not used and 
+	 * events are processed by consumer.local.workerThread threads in no particular order.
+	 * 
+	 * @return See desc.
+	 */
+	public final int getNumOfPartitions()
+	{
+		return getServiceProperties().getPropertyAsInt("consumer.local.partitions", getClass().getSimpleName(), 0);
+	}
+
+	/**
+	 * Returns the max number of events that are delivered in one batch. Batches are only delivered if this consumer implements the
+	 * BatchEventConsumer interface and this value is greater than 1. Otherwise events are delivered one by one.
+	 * 
+	 * @return See desc.
+	 */
+	public final int getBatchSize()
+	{
+		return (this instanceof BatchEventConsumer) ? getServiceProperties().getPropertyAsInt("consumer.local.batch.size", getClass().getSimpleName(), 0) : 0;
+	}
+
 	protected final List<ServiceInfo> getEventServices()
 	{
 		SIF3Session sif3Session = ConsumerEnvironmentManager.getInstance().getSIF3Session();
@@ -181,8 +342,41 @@ public abstract class AbstractEventConsumer<L> extends AbstractConsumer implemen
 			logger.debug("Create Local Queue for "+getConsumerName());
 //			setLocalConsumerQueue(new LocalConsumerQueue(getNumOfConsumerThreads(), getClass().getSimpleName() + "LocalQueue", getClass().getSimpleName()));
 
-			// Use the local queue as a trigger of threads rather than actual queueing of messages. Use 1 as the minimum
-			setLocalConsumerQueue(new LocalConsumerQueue(1, getClass().getSimpleName() + "LocalQueue", getClass().getSimpleName()));
+			String consumerName = getClass().getSimpleName();
+			LocalConsumerQueue localQueue = null;
+			if (getServiceProperties().getPropertyAsBool("consumer.local.queue.persistent", consumerName, false))
+			{
+				// Durable queue: events are written to disk before they are acknowledged with the broker.
+				String workingDir = getServiceProperties().getPropertyAsString("consumer.local.queue.dir", consumerName, "localQueues");
+				int capacity = getServiceProperties().getPropertyAsInt("consumer.local.queue.capacity", consumerName, 10000);
+				int bufferSize = getServiceProperties().getPropertyAsInt("consumer.local.queue.buffer", consumerName, 10);
+				int segmentSize = getServiceProperties().getPropertyAsInt("consumer.local.queue.segmentSize", consumerName, 16);
+				boolean syncWrites = getServiceProperties().getPropertyAsBool("consumer.local.queue.sync", consumerName, false);
+				logger.debug("Local Queue for "+getConsumerName()+" is persistent: dir = "+workingDir+", capacity = "+capacity+", buffer = "+bufferSize+", segmentSize = "+segmentSize+"MB, sync = "+syncWrites);
+				localQueue = new LocalConsumerQueue(capacity, consumerName + "LocalQueue", workingDir, bufferSize, segmentSize * 1024 * 1024, syncWrites);
+			}
+			else
+			{
+				// By default use the local queue as a trigger of threads rather than actual queueing of messages. Use 1 as the minimum.
+				// A larger capacity allows the consumer to absorb bursts of events.
+				int capacity = getServiceProperties().getPropertyAsInt("consumer.local.queue.capacity", consumerName, 1);
+				localQueue = new LocalConsumerQueue(capacity, consumerName + "LocalQueue", consumerName);
+			}
+			
+			// Behaviour if the queue is full and when the queue readers shall pause reading from the SIF queue.
+			String policy = getServiceProperties().getPropertyAsString("consumer.local.queue.policy", consumerName, OverflowPolicy.BLOCK.name());
+			try
+			{
+				localQueue.setOverflowPolicy(OverflowPolicy.valueOf(policy.trim().toUpperCase()), getServiceProperties().getPropertyAsInt("consumer.local.queue.pushTimeout", consumerName, 1000));
+			}
+			catch (Exception ex)
+			{
+				logger.error("Invalid value '"+policy+"' for property consumer.local.queue.policy for "+getConsumerName()+". Use "+OverflowPolicy.BLOCK.name()+" instead.");
+			}
+			localQueue.setHighWaterMark(getServiceProperties().getPropertyAsInt("consumer.local.queue.highWaterMark", consumerName, 0));
+			logger.debug("Local Queue for "+getConsumerName()+": capacity = "+localQueue.getCapacity()+", policy = "+localQueue.getOverflowPolicy()+", highWaterMark = "+localQueue.getHighWaterMark());
+			
+			setLocalConsumerQueue(localQueue);
 			startListenerThreads();
 		}
 		return getLocalConsumerQueue();
@@ -197,19 +391,149 @@ public abstract class AbstractEventConsumer<L> extends AbstractConsumer implemen
 	 */
 	private void startListenerThreads()
 	{
+		createRetryStage();
+		if (getBatchSize() > 1)
+		{
+			startBatchThreads(getBatchSize());
+			return;
+		}
+		if (getNumOfPartitions() > 0)
+		{
+			startPartitionThreads(getNumOfPartitions());
+			return;
+		}
+		
 		// Start up all consumers for this subscriber.
 		int numThreads = getNumOfConsumerThreads();
 		logger.debug("Start "+numThreads+" "+getConsumerName()+" threads.");
 		logger.debug("Total number of threads before starting Local Queue for "+getConsumerName()+" "+Thread.activeCount());
-		service = Executors.newFixedThreadPool(numThreads);
+		
+		// Optional decode stage with its own threads.
+		int numDecoders = getNumOfDecoderThreads();
+		if (numDecoders > 0)
+		{
+			int capacity = getServiceProperties().getPropertyAsInt("consumer.local.decodeQueue", getClass().getSimpleName(), numThreads * 2);
+			decodeStage = new EventDecodeStage(getLocalConsumerQueue(), this, getConsumerName(), numDecoders, capacity, decodeMetrics);
+			decodeStage.setRetryStage(retryStage);
+			decodeStage.start();
+		}
+		
+		service = ExecutorStrategy.getInstance().newFixedThreadPool(numThreads, getConsumerName(), false);
 		for (int i = 0; i < numThreads; i++)
 		{
 			String consumerID = getConsumerName()+" "+(i+1);
 			logger.debug("Start Consumer "+consumerID);
-			LocalMessageConsumer consumer = new LocalMessageConsumer(getLocalConsumerQueue(), consumerID, this);
+			LocalMessageConsumer consumer = new LocalMessageConsumer(getLocalConsumerQueue(), decodeStage, consumerID, this, decodeMetrics, processMetrics);
+			consumer.setRetryStage(retryStage);
 			service.execute(consumer);
 		}
 		logger.debug(numThreads+" "+getConsumerName()+" initilaised and started.");
 		logger.debug("Total number of threads after starting Local Queue for "+getConsumerName()+" "+Thread.activeCount());
 	}
+	
+	/*
+	 * Events that fail in onEvent() are retried with an exponential backoff on the threads of the retry stage. Events that still fail 
+	 * or cannot be decoded are added to the dead letter store (a file in the working directory of the local queues). Both are 
+	 * optional. If neither is enabled then no retry stage is created and failed events are logged and discarded.
+	 */
+	private void createRetryStage()
+	{
+		String consumerName = getClass().getSimpleName();
+		int maxAttempts = getServiceProperties().getPropertyAsInt("consumer.local.retry.maxAttempts", consumerName, 1);
+		boolean deadLetterEnabled = getServiceProperties().getPropertyAsBool("consumer.local.deadLetter.enabled", consumerName, false);
+		if ((maxAttempts <= 1) && !deadLetterEnabled)
+		{
+			return;
+		}
+		
+		DeadLetterStore deadLetterStore = null;
+		if (deadLetterEnabled)
+		{
+			String workingDir = getServiceProperties().getPropertyAsString("consumer.local.queue.dir", consumerName, "localQueues");
+			workingDir = getServiceProperties().getPropertyAsString("consumer.local.deadLetter.dir", consumerName, workingDir);
+			try
+			{
+				deadLetterStore = new DeadLetterStore(consumerName, new File(workingDir));
+				logger.debug("Dead letter store for "+getConsumerName()+": "+deadLetterStore.getFile().getAbsolutePath());
+			}
+			catch (IOException ex)
+			{
+				logger.error("Failed to open dead letter store for "+getConsumerName()+" in "+workingDir+": "+ex.getMessage()+". Failed events will be discarded.", ex);
+			}
+		}
+		
+		int initialDelay = getServiceProperties().getPropertyAsInt("consumer.local.retry.initialDelay", consumerName, 1000);
+		int maxDelay = getServiceProperties().getPropertyAsInt("consumer.local.retry.maxDelay", consumerName, 60000);
+		int numThreads = getServiceProperties().getPropertyAsInt("consumer.local.retry.threads", consumerName, 1);
+		if ((maxAttempts > 1) && (getNumOfPartitions() > 0) && (getBatchSize() <= 1))
+		{
+			logger.warn("Retries are enabled for "+getConsumerName()+" with partitioned event dispatch. Retried events are processed out of order.");
+		}
+		retryStage = new EventRetryStage(getConsumerName(), this, maxAttempts, initialDelay, maxDelay, numThreads, deadLetterStore);
+		retryStage.start();
+	}
+	
+	/*
+	 * Partitioned dispatch: One dispatcher thread decodes the events in order and puts them on a lane according to their partition
+	 * key. Each lane is processed by exactly one consumer thread.
+	 */
+	private void startPartitionThreads(int numPartitions)
+	{
+		if (getNumOfDecoderThreads() > 0)
+		{
+			logger.warn("Partitioned event dispatch is enabled for "+getConsumerName()+". Events must be decoded in order, so consumer.local.decodeThreads is ignored.");
+		}
+		logger.debug("Start "+numPartitions+" partitions for "+getConsumerName()+".");
+		int laneCapacity = getServiceProperties().getPropertyAsInt("consumer.local.partitionQueue", getClass().getSimpleName(), 10);
+		dispatcher = new PartitionedEventDispatcher(getLocalConsumerQueue(), this, new PartitionedEventDispatcher.KeyExtractor()
+		{
+			@SuppressWarnings("unchecked")
+			@Override
+			public String getPartitionKey(SIFEvent<?> event, EventInfo eventInfo)
+			{
+				return AbstractEventConsumer.this.getPartitionKey((SIFEvent<L>)event, eventInfo.getZone(), eventInfo.getContext(), eventInfo.getEventMetadata());
+			}
+		}, getConsumerName(), numPartitions, laneCapacity, decodeMetrics);
+		dispatcher.setRetryStage(retryStage);
+		
+		service = ExecutorStrategy.getInstance().newFixedThreadPool(numPartitions, getConsumerName()+" Partition", false);
+		for (int i = 0; i < numPartitions; i++)
+		{
+			String consumerID = getConsumerName()+" Partition "+(i+1);
+			logger.debug("Start Consumer "+consumerID);
+			LocalMessageConsumer consumer = new LocalMessageConsumer(getLocalConsumerQueue(), dispatcher.getLane(i), consumerID, this, null, processMetrics);
+			consumer.setRetryStage(retryStage);
+			service.execute(consumer);
+		}
+		dispatcher.start();
+	}
+	
+	/*
+	 * Batch delivery: One batcher thread decodes the events and gathers them into batches. The batches are processed by 
+	 * consumer.local.workerThread threads.
+	 */
+	private void startBatchThreads(int batchSize)
+	{
+		String consumerName = getClass().getSimpleName();
+		if ((getNumOfDecoderThreads() > 0) || (getNumOfPartitions() > 0))
+		{
+			logger.warn("Batch event delivery is enabled for "+getConsumerName()+". consumer.local.decodeThreads and consumer.local.partitions are ignored.");
+		}
+		int numThreads = getNumOfConsumerThreads();
+		long maxWait = getServiceProperties().getPropertyAsInt("consumer.local.batch.maxWait", consumerName, 1000);
+		int capacity = getServiceProperties().getPropertyAsInt("consumer.local.batch.queue", consumerName, numThreads * 2);
+		boolean fallback = getServiceProperties().getPropertyAsBool("consumer.local.batch.fallback", consumerName, true);
+		logger.debug("Start batch delivery for "+getConsumerName()+" with "+numThreads+" threads: batchSize = "+batchSize+", maxWait = "+maxWait+"ms, fallback = "+fallback);
+		
+		batcher = new EventBatcher(getLocalConsumerQueue(), this, getConsumerName(), getMultiObjectClassInfo().getObjectName(), batchSize, maxWait, capacity, decodeMetrics);
+		batcher.setRetryStage(retryStage);
+		service = ExecutorStrategy.getInstance().newFixedThreadPool(numThreads, getConsumerName(), false);
+		for (int i = 0; i < numThreads; i++)
+		{
+			String consumerID = getConsumerName()+" "+(i+1);
+			logger.debug("Start Batch Consumer "+consumerID);
+			service.execute(new LocalBatchConsumer(batcher, consumerID, this, fallback, processMetrics));
+		}
+		batcher.start();
+	}
 }
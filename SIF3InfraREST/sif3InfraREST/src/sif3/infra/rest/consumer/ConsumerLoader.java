@@ -15,26 +15,32 @@
  */
 package sif3.infra.rest.consumer;
 
+import java.io.File;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.apache.log4j.Logger;
 
+import sif3.common.conversion.JAXBStreamMarshalFactory;
 import sif3.common.model.ServiceInfo;
 import sif3.common.persist.common.HibernateUtil;
 import sif3.common.persist.model.SIF3Session;
+import sif3.common.utils.ExecutorStrategy;
+import sif3.common.utils.JAXBUtils;
 import sif3.infra.common.env.mgr.ConsumerEnvironmentManager;
 import sif3.infra.common.env.types.ConsumerEnvironment;
 import sif3.infra.common.interfaces.EnvironmentConnector;
+import sif3.infra.rest.client.ClientRegistry;
 import sif3.infra.rest.env.connectors.EnvironmentConnectorFactory;
+import sif3.infra.rest.queue.DelayedResponseRegistry;
 import sif3.infra.rest.queue.QueueListenerConfigurator;
 import sif3.infra.rest.queue.RemoteMessageQueueReader;
 import sif3.infra.rest.queue.connectors.ConsumerQueueConnector;
 import sif3.infra.rest.queue.connectors.ConsumerSubscriptionConnector;
+import sif3.infra.rest.queue.persist.MessageIdStore;
 import sif3.infra.rest.queue.types.QueueListenerInfo;
 import au.com.systemic.framework.utils.AdvancedProperties;
 import au.com.systemic.framework.utils.StringUtils;
@@ -66,6 +72,7 @@ public class ConsumerLoader
   private List<AbstractEventConsumer<?>> eventConsumers = new ArrayList<AbstractEventConsumer<?>>();
   private List<AbstractConsumer> crudConsumers = new ArrayList<AbstractConsumer>();
   private List<ExecutorService> msgReaderServices = new ArrayList<ExecutorService>();
+  private List<MessageIdStore> messageIdStores = new ArrayList<MessageIdStore>();
   
   /**
    * Initialises the consumer based on the given property file. If anything fails to initialise then an error is logged and this method
@@ -81,6 +88,7 @@ public class ConsumerLoader
       try
       {
         instance = new ConsumerLoader(consumerPropertyFileName);
+        ClientRegistry.register();
       }
       catch (Exception ex) // error already logged.
       {
@@ -137,6 +145,13 @@ public class ConsumerLoader
 		// Check if we need to initialise the consumer properties. This should only happens once.
 		logger.debug("Initialise Consumer Environment Manager and Session Store with property file " + consumerPropertyFileName + ".properties");
 		ConsumerEnvironmentManager envMgr = ConsumerEnvironmentManager.initialse(consumerPropertyFileName);
+		
+		// Set the XML output mode (pretty/compact) as configured for this adapter.
+		if (getConsumerEnvironment() != null)
+		{
+			JAXBUtils.setDefaultOutputMode(getConsumerEnvironment().getOutputMode());
+		}
+		JAXBStreamMarshalFactory.setEnabled(envMgr.getServiceProperties().getPropertyAsBool("adapter.marshal.stream", false));
 
 		logger.debug("Connect to environment provider...");
 		if (!getConsumerEnvironment().getIsConnected()) // connect to known environments if we are not yet connected
@@ -161,6 +176,9 @@ public class ConsumerLoader
 			}
 		}
     
+		// Threads of queue readers, local consumers and multi zone requests are created according to this strategy.
+		ExecutorStrategy.configure(ConsumerEnvironmentManager.getInstance().getServiceProperties().getPropertyAsString("adapter.executor", ExecutorStrategy.Mode.PLATFORM.name()));
+
 		logger.debug("Initialise consumers......");
 		initialiseConsumers(ConsumerEnvironmentManager.getInstance().getServiceProperties());
 
@@ -176,6 +194,10 @@ public class ConsumerLoader
 		else
 		{
 			logger.info("Events are not enabled and supported. No event processing has been started.");
+			if (getConsumerEnvironment().getDelayedEnabled())
+			{
+				logger.error("DELAYED requests are enabled but events are not enabled or supported. Delayed responses cannot be received, so DELAYED requests are not possible.");
+			}
 		}
 		logger.info("Initialse Consumer sucessful.");
 	}
@@ -190,6 +212,17 @@ public class ConsumerLoader
 		{
 			service.shutdown();
 		}
+		logger.debug("Stop delayed response registry...");
+		DelayedResponseRegistry.getInstance().shutdown();
+		
+		for (MessageIdStore store : messageIdStores)
+		{
+			logger.debug(store.toString());
+			store.flush();
+		}
+		
+		logger.debug("Shut down multi zone request thread pool...");
+		MultiZoneExecutor.shutdown();
 		
 		logger.debug("Shut down each consumer ...");
 		for (AbstractConsumer consumer : crudConsumers)
@@ -224,6 +257,9 @@ public class ConsumerLoader
 			logger.debug("Consumer disconnected from Environment provider successfully");
 		}
 
+		logger.debug("Release REST Clients....");
+		ClientRegistry.release();
+
 		logger.debug("Release DB Connections....");
 		HibernateUtil.shutdown();
 	}
@@ -270,6 +306,7 @@ public class ConsumerLoader
 		
 		// Initialise Queue Configuration
 		HashMap<String, QueueListenerInfo> queueConfiguration = null;
+		String delayedQueueID = null;
 		try
 		{
 			QueueListenerConfigurator queueConfigurator = new QueueListenerConfigurator(getSIF3Session().getEnvironmentID());
@@ -280,6 +317,10 @@ public class ConsumerLoader
 				logger.debug("Set Local Queue Configuration for "+consumer.getClass().getSimpleName());
 				queueConfigurator.joinListener(consumer.getLocalConsumerQueue(), consumer.getEventServices());
 			}
+			if (getConsumerEnvironment().getDelayedEnabled())
+			{
+				delayedQueueID = queueConfigurator.joinDelayedResponses();
+			}
 			queueConfiguration = queueConfigurator.finalise();
 		}
 		catch (Exception ex)
@@ -296,6 +337,11 @@ public class ConsumerLoader
 			{
 				return false;
 			}
+			
+			if (delayedQueueID != null)
+			{
+				DelayedResponseRegistry.getInstance().start(delayedQueueID, getConsumerEnvironment().getDelayedCallbackThreads());
+			}
 		}
 		else
 		{
@@ -312,10 +358,35 @@ public class ConsumerLoader
 		int numThreads = getNumMsgReaderThreads();
 		for (QueueListenerInfo queueListenerInfo : queueConfiguration.values())
 		{
+			createMessageIdStore(queueListenerInfo);
 			msgReaderServices.add(startRemoteMessageReaderThreads(queueListenerInfo, numThreads));
 		}
 		return true;
 	}
+	
+	/*
+	 * If duplicate detection is enabled a store of received message IDs is created for the given queue. If the store cannot be
+	 * created an error is logged and the queue is read without duplicate detection.
+	 */
+	private void createMessageIdStore(QueueListenerInfo queueListenerInfo)
+	{
+		ConsumerEnvironment env = getConsumerEnvironment();
+		if (env.getDedupCapacity() > 0)
+		{
+			String storeID = queueListenerInfo.getQueue().getName() + "-" + queueListenerInfo.getQueue().getQueueID();
+			try
+			{
+				MessageIdStore store = new MessageIdStore(storeID, env.getDedupCapacity(), env.getDedupWindow(), StringUtils.isEmpty(env.getDedupDir()) ? null : new File(env.getDedupDir()));
+				queueListenerInfo.setMessageIdStore(store);
+				messageIdStores.add(store);
+				logger.debug("Duplicate message detection enabled for queue "+getRemoteQueueName(queueListenerInfo)+": "+store);
+			}
+			catch (Exception ex)
+			{
+				logger.error("Failed to create message ID store for queue "+getRemoteQueueName(queueListenerInfo)+": "+ex.getMessage()+". Duplicate messages are not detected.", ex);
+			}
+		}
+	}
 
 	/*
 	 * Will initialise the threads and add them to the local consumer queue.
@@ -325,7 +396,7 @@ public class ConsumerLoader
 		String remoteQueueName = getRemoteQueueName(queueListenerInfo);
 		logger.debug("Start "+numThreads+" message readers for "+remoteQueueName);
 		logger.debug("Total number of threads before starting message readers for "+remoteQueueName+" "+Thread.activeCount());
-		ExecutorService service = Executors.newFixedThreadPool(numThreads);
+		ExecutorService service = ExecutorStrategy.getInstance().newFixedThreadPool(numThreads, remoteQueueName + " - Reader", false);
 		for (int i = 0; i < numThreads; i++)
 		{
 			String readerID = remoteQueueName+" - Reader "+(i+1);
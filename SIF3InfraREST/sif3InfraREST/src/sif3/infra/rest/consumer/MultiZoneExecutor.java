@@ -0,0 +1,75 @@
+/*
+ * MultiZoneExecutor.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.rest.consumer;
+
+import java.util.concurrent.ExecutorService;
+
+import org.apache.log4j.Logger;
+
+import sif3.common.utils.ExecutorStrategy;
+
+/**
+ * This class manages the thread pool that is used by consumers to issue requests to many zones/contexts concurrently. The thread
+ * pool is shared by all consumers of this adapter and has a fixed (bounded) number of threads. The size of the pool is set with the
+ * 'consumer.multiZone.threads' property of the consumer's property file. Requests that wait for a thread are held in a bounded 
+ * queue ('consumer.multiZone.queueSize'). If the queue is full then the request is issued by the consumer's thread itself. The pool
+ * is created the first time it is needed and shut down when the consumer shuts down (ConsumerLoader.shutdown()).<br/><br/>
+ * 
+ * The threads are created according to the ExecutorStrategy. If virtual threads are used then the requests run in virtual threads
+ * but the number of concurrent requests is still limited by the size of the pool.
+ *
+ * @author agent
+ */
+public class MultiZoneExecutor
+{
+	private static final Logger logger = Logger.getLogger(MultiZoneExecutor.class);
+
+	private static ExecutorService service = null;
+
+	/**
+	 * Returns the shared executor service. If it doesn't exist yet then it is created with the given number of threads and queue 
+	 * size. Subsequent calls will return the same executor service regardless of the parameters.
+	 *
+	 * @param numThreads The number of threads of the pool if it must be created.
+	 * @param queueSize The max number of requests that wait for a thread if the pool must be created.
+	 *
+	 * @return See desc.
+	 */
+	public static synchronized ExecutorService getExecutorService(int numThreads, int queueSize)
+	{
+		if (service == null)
+		{
+			logger.debug("Create multi zone request thread pool with "+numThreads+" threads and a queue of "+queueSize+" requests ("+ExecutorStrategy.getInstance().getMode()+").");
+			
+			// Daemon threads so that they don't block a JVM shutdown.
+			service = ExecutorStrategy.getInstance().newBoundedThreadPool(numThreads, queueSize, "MultiZoneRequest", true);
+		}
+		return service;
+	}
+
+	/**
+	 * Shuts down the executor service. Requests currently in progress are allowed to complete.
+	 */
+	public static synchronized void shutdown()
+	{
+		if (service != null)
+		{
+			logger.debug("Shut down multi zone request thread pool.");
+			service.shutdown();
+			service = null;
+		}
+	}
+}
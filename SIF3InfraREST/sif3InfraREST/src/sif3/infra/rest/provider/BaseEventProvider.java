@@ -18,7 +18,15 @@
 
 package sif3.infra.rest.provider;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.ws.rs.core.MediaType;
 
@@ -36,6 +44,7 @@ import sif3.common.model.ServiceInfo;
 import sif3.common.model.ServiceRights.AccessRight;
 import sif3.common.model.ServiceRights.AccessType;
 import sif3.common.persist.model.SIF3Session;
+import sif3.common.utils.ExecutorStrategy;
 import sif3.common.ws.BaseResponse;
 import sif3.infra.common.env.mgr.BrokeredProviderEnvironmentManager;
 import sif3.infra.common.env.mgr.ProviderManagerFactory;
@@ -47,13 +56,30 @@ import sif3.infra.rest.client.EventClient;
  * This is the main class each specific provider of a given SIF Object type must extends if it wants to publish events. With this class it
  * enforces implementation of all CRUD methods of the BaseProvider and additionally the methods for publishing events. The BaseEventProvider
  * will take care of all housekeeping things relating to the actual event publishing. Please refer to the Developer's Guide for some more
- * details about this class.
+ * details about this class.<br/><br/>
+ * 
+ * Events are either pulled at a given interval through getSIFEvents() or pushed by the provider with the publish() method as soon
+ * as they occur. Both can be used at the same time.
  * 
  * @author Joerg Huber
  *
  */
 public abstract class BaseEventProvider<L> extends BaseProvider implements EventProvider<L>
 {	
+	private static final int PUSH_SHUTDOWN_WAIT = 5; // seconds
+	
+	private ParallelEventPublisher publisher = null;
+	
+	/* Set by finalise(). Neither the publisher nor the push publishing are created again once it is set. */
+	private boolean closed = false;
+	
+	/* Push publishing: Events given to publish() are held in the buffer until the flusher thread sends them. */
+	private BlockingQueue<SIFEvent<L>> pushBuffer = null;
+	private ExecutorService pushService = null;
+	private AtomicLong numPushed = new AtomicLong(0);
+	private AtomicLong numPushRejected = new AtomicLong(0);
+	private AtomicLong numPushSent = new AtomicLong(0);
+	
 	/**
 	 */
     public BaseEventProvider()
@@ -73,6 +99,85 @@ public abstract class BaseEventProvider<L> extends BaseProvider implements Event
     	return getServiceProperties().getPropertyAsInt(CommonConstants.EVENT_MAX_OBJ, getProviderName(), 10);
     }
     
+    /**
+     * Attempts to read the number of threads that publish events to the zones/contexts of this provider concurrently from the adapter
+     * property file (event.publish.threads). If no value is found it will use a default of 0 which means that the events are sent 
+     * to one zone/context after the other. This property can be set at the provider level by adding ".<providerName>".
+     *  
+     * @return See desc.
+     */
+    public int getPublishThreads()
+    {
+    	return getServiceProperties().getPropertyAsInt("event.publish.threads", getProviderName(), 0);
+    }
+
+    /**
+     * Attempts to read the max number of events that are waiting to be sent or being sent if events are published concurrently 
+     * from the adapter property file (event.publish.maxInFlight). If no value is found it will use a default of twice the number of
+     * publish threads. This property can be set at the provider level by adding ".<providerName>".
+     *  
+     * @return See desc.
+     */
+    public int getPublishMaxInFlight()
+    {
+    	return getServiceProperties().getPropertyAsInt("event.publish.maxInFlight", getProviderName(), getPublishThreads() * 2);
+    }
+    
+    /**
+     * Attempts to read if an event that is sent to many zones/contexts shall only be marshalled once from the adapter property file
+     * (event.marshalOnce). If no value is found it will use a default of true. The marshalled event is only re-used for zones/contexts
+     * for which modifyBeforePublishing() returns the given event unchanged. This property can be set at the provider level by adding
+     * ".<providerName>".
+     *  
+     * @return See desc.
+     */
+    public boolean getMarshalOnce()
+    {
+    	return getServiceProperties().getPropertyAsBool("event.marshalOnce", getProviderName(), true);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see sif3.infra.rest.provider.BaseProvider#finalise()
+     */
+    @Override
+    public void finalise()
+    {
+    	super.finalise();
+    	ExecutorService flusher = null;
+    	ParallelEventPublisher parallelPublisher = null;
+    	synchronized (this)
+    	{
+    		closed = true;
+    		flusher = pushService;
+    		pushService = null;
+    		parallelPublisher = publisher;
+    		publisher = null;
+    	}
+    	
+    	// Stop the flusher before the publisher, so that it doesn't submit any more events to a publisher that is shut down.
+    	if (flusher != null)
+    	{
+    		flusher.shutdownNow();
+    		try
+    		{
+    			if (!flusher.awaitTermination(PUSH_SHUTDOWN_WAIT, TimeUnit.SECONDS))
+    			{
+    				logger.warn("Push publishing for "+getProviderName()+" has not stopped after "+PUSH_SHUTDOWN_WAIT+" seconds.");
+    			}
+    		}
+    		catch (InterruptedException ex)
+    		{
+    			Thread.currentThread().interrupt();
+    		}
+    		logger.debug("Shut down push publishing for "+getProviderName()+": published = "+numPushed.get()+", rejected = "+numPushRejected.get()+", sent = "+numPushSent.get());
+    	}
+    	if (parallelPublisher != null)
+    	{
+    		parallelPublisher.shutdown();
+    	}
+    }
+    
 	/*------------------------------------------------------------------------------------------------------------------------
 	 * Start of 'Dynamic' HTTP Header Field override section for Events
 	 * 
@@ -159,7 +264,12 @@ public abstract class BaseEventProvider<L> extends BaseProvider implements Event
     
     /**
      * This method retrieves all events to be published by calling the abstract method getSIFEvents(). The returned list
-     * is then broadcasted to all zones known to the implementing agent.
+     * is then broadcasted to all zones known to the implementing agent.<br/><br/>
+     * 
+     * If event.publish.threads is greater than 0 then the events are sent to the zones/contexts concurrently. The events of each
+     * zone/context are still sent in order. In this case the onEventError() method is called by one of the publish threads and 
+     * the next events may be retrieved from the iterator before the previous events have been sent to all zones/contexts. This
+     * method only returns once all events have been sent.
      * 
      * @see #getSIFEvents
      */
@@ -167,7 +277,7 @@ public abstract class BaseEventProvider<L> extends BaseProvider implements Event
     {
     	logger.debug("================================ broadcastEvents() called for provider "+getPrettyName());
 		int totalRecords = 0;
-		int failedRecords = 0;
+		final AtomicInteger failedRecords = new AtomicInteger(0);
 		int maxNumObjPerEvent = getMaxObjectsInEvent();
 		
 		SIF3Session sif3Session = getActiveSession();
@@ -187,7 +297,10 @@ public abstract class BaseEventProvider<L> extends BaseProvider implements Event
 		try
 		{
 			// Let's get the Event Client
-			EventClient evtClient = new EventClient(getProviderEnvironment(), getRequestMediaType(), getResponseMediaType(), sif3Session, getServiceName(), getMarshaller());
+			EventClient evtClient = getEventClient(sif3Session);
+			ParallelEventPublisher parallelPublisher = getPublisher();
+			ParallelEventPublisher.TaskGroup taskGroup = new ParallelEventPublisher.TaskGroup();
+			boolean marshalOnce = getMarshalOnce();
 			
 			SIFEventIterator<L> iterator = getSIFEvents();
 			if (iterator != null)
@@ -204,35 +317,7 @@ public abstract class BaseEventProvider<L> extends BaseProvider implements Event
 						if (sifEvents != null)
 						{
 							logger.debug("Number of "+getMultiObjectClassInfo().getObjectName()+" Objects in this Event: " + sifEvents.getListSize());
-							for (ServiceInfo service : servicesForProvider)
-							{
-								// keep event action. Just in case the developer changes it in modifyBeforePublishing() which would confuse
-								// everything.
-								EventAction eventAction = sifEvents.getEventAction();
-								if (hasAccess(service, eventAction))
-								{
-									HeaderProperties customHTTPHeaders = new HeaderProperties();
-									SIFEvent<L> modifiedEvents = modifyBeforePublishing(sifEvents, service.getZone(), service.getContext(), customHTTPHeaders);
-									if (modifiedEvents != null)
-									{
-										//Just in case the developer has changed it. Should not be allowed :-)
-										modifiedEvents.setEventAction(eventAction);
-										
-										if (!sendEvents(evtClient, modifiedEvents, service.getZone(), service.getContext(), customHTTPHeaders))
-										{
-											//Report back to the caller. This should also give the event back to the caller.
-											onEventError(modifiedEvents, service.getZone(), service.getContext());
-											failedRecords = failedRecords + ((modifiedEvents != null) ? modifiedEvents.getListSize() : 0);
-										}
-									}
-								}
-								else
-								{
-									logger.debug("The "+getProviderName()+" does not have the PROVIDE = APPROVED. No events are sent.");
-									failedRecords = failedRecords + ((sifEvents != null) ? sifEvents.getListSize() : 0);
-								}
-							}
-							
+							broadcastEvent(evtClient, new EventBroadcast(sifEvents, null, failedRecords), servicesForProvider, parallelPublisher, taskGroup, marshalOnce);
 				            totalRecords = totalRecords + sifEvents.getListSize();
 						}
 						else
@@ -244,7 +329,16 @@ public abstract class BaseEventProvider<L> extends BaseProvider implements Event
 					catch (Exception ex)
 					{
 						logger.error("Failed to retrieve next event for provider "+getPrettyName()+": "+ex.getMessage(), ex);					
-						failedRecords = failedRecords + ((sifEvents != null) ? sifEvents.getListSize() : 0);
+						failedRecords.addAndGet((sifEvents != null) ? sifEvents.getListSize() : 0);
+					}
+				}
+				if (parallelPublisher != null)
+				{
+					// Wait until all events are sent before the iterator is released and the totals are reported. Events pushed in 
+					// the meantime (see publish()) are not waited for.
+					if (!parallelPublisher.awaitCompletion(taskGroup))
+					{
+						logger.warn("Interrupted while waiting for events of provider "+getPrettyName()+" to be sent. "+taskGroup.getNumOutstanding()+" events to zones/contexts are not finished. Their failures are not in the totals below.");
 					}
 				}
 				iterator.releaseResources();
@@ -259,10 +353,157 @@ public abstract class BaseEventProvider<L> extends BaseProvider implements Event
 			logger.error("Failed to retrieve events for provider "+getPrettyName()+": "+ex.getMessage(), ex);								
 		}
 		logger.info("Total SIF Event Objects broadcasted: "+totalRecords);
-		logger.info("Total SIF Event Objects failed     : "+failedRecords);
+		logger.info("Total SIF Event Objects failed     : "+failedRecords.get());
     	logger.debug("================================ Finished broadcastEvents() for provider "+getPrettyName());
     }
 
+    /**
+     * This method allows a provider to publish events as soon as a change occurs rather than waiting for the next run of
+     * getSIFEvents(). The given event is put into an in-memory buffer and this method returns. A separate thread takes the events 
+     * from the buffer, waits up to event.push.linger milliseconds for more events and combines events with the same event action and
+     * update type into events of up to getMaxObjectsInEvent() objects (see mergeEvents()). These are then broadcasted to all zones 
+     * and contexts the same way as the events of getSIFEvents(), i.e. modifyBeforePublishing() and onEventError() are called as 
+     * usual.<br/><br/>
+     * 
+     * The buffer holds up to event.push.capacity events. If it is full this method waits up to event.push.timeout milliseconds for 
+     * space. If there is still no space then FALSE is returned and the event is not published. Events that are still in the buffer 
+     * when the provider is shut down are not sent. onEventError() is called for each of them with a null zone and context. The same 
+     * applies to the events that have not been sent to all zones/contexts when the shut down interrupts the sending. onEventError() 
+     * is always called with the event given to this method, also if it has been combined with other events.
+     * 
+     * @param sifEvent The event to publish. The event action must be set.
+     * 
+     * @return TRUE: The event is accepted and will be sent. FALSE: The event is not accepted. Error is logged.
+     */
+    public boolean publish(SIFEvent<L> sifEvent)
+    {
+    	if ((sifEvent == null) || (sifEvent.getEventAction() == null))
+    	{
+    		logger.error("Event or its event action is null for provider "+getPrettyName()+". Event is not published.");
+    		return false;
+    	}
+    	
+    	BlockingQueue<SIFEvent<L>> buffer = getPushBuffer();
+    	if (buffer == null)
+    	{
+    		logger.error("Push publishing has been shut down for provider "+getPrettyName()+". Event is not published.");
+    		numPushRejected.incrementAndGet();
+    		return false;
+    	}
+    	try
+    	{
+    		if (buffer.offer(sifEvent, getServiceProperties().getPropertyAsInt("event.push.timeout", getProviderName(), 1000), TimeUnit.MILLISECONDS))
+    		{
+    			numPushed.incrementAndGet();
+    			return true;
+    		}
+    		logger.error("Push buffer of provider "+getPrettyName()+" is full ("+buffer.size()+" events). Event is not published.");
+    	}
+    	catch (InterruptedException ex)
+    	{
+    		logger.error("Interrupted while waiting for space in push buffer of provider "+getPrettyName()+". Event is not published.");
+    		Thread.currentThread().interrupt();
+    	}
+		numPushRejected.incrementAndGet();
+    	return false;
+    }
+    
+    /**
+     * This method is called by the push publishing (see publish()) to combine events into one event. All given events have the same
+     * event action, update type and metadata and together hold no more than getMaxObjectsInEvent() objects. The default implementation
+     * works for object lists that have exactly one public getter returning a java.util.List such as the JAXB generated collection 
+     * classes (i.e. StudentCollectionType): A new object list is created and the entries of all events are added to it. For any 
+     * other type of object list null is returned and the events are sent one by one. A provider can override this method to combine
+     * its events differently.
+     * 
+     * @param sifEvents The events to combine. At least 2 events.
+     * 
+     * @return The combined event or null if the events cannot be combined.
+     */
+    @SuppressWarnings("unchecked")
+    protected SIFEvent<L> mergeEvents(List<SIFEvent<L>> sifEvents)
+    {
+    	SIFEvent<L> first = sifEvents.get(0);
+    	if (first.getSIFObjectList() == null)
+    	{
+    		return null;
+    	}
+    	try
+    	{
+    		Class<?> listClass = first.getSIFObjectList().getClass();
+    		Method listGetter = getListGetter(listClass);
+    		if (listGetter == null)
+    		{
+    			return null;
+    		}
+    		L mergedObjectList = (L)listClass.newInstance();
+    		List<Object> mergedList = (List<Object>)listGetter.invoke(mergedObjectList);
+    		if (mergedList == null)
+    		{
+    			return null;
+    		}
+    		int listSize = 0;
+    		for (SIFEvent<L> sifEvent : sifEvents)
+    		{
+    			if ((sifEvent.getSIFObjectList() == null) || (sifEvent.getSIFObjectList().getClass() != listClass))
+    			{
+    				return null;
+    			}
+    			mergedList.addAll((List<Object>)listGetter.invoke(sifEvent.getSIFObjectList()));
+    			listSize = listSize + sifEvent.getListSize();
+    		}
+    		SIFEvent<L> mergedEvent = new SIFEvent<L>(mergedObjectList, first.getEventAction(), first.getUpdateType(), listSize);
+    		mergedEvent.setMetadata(first.getMetadata());
+    		return mergedEvent;
+    	}
+    	catch (Exception ex)
+    	{
+    		logger.debug("Cannot combine events of provider "+getPrettyName()+": "+ex.getMessage()+". Events are sent one by one.");
+    		return null;
+    	}
+    }
+    
+    /**
+     * Returns the number of events that are in the push buffer and not yet sent.
+     * 
+     * @return See desc.
+     */
+    public int getPushBufferDepth()
+    {
+    	BlockingQueue<SIFEvent<L>> buffer = pushBuffer;
+    	return (buffer != null) ? buffer.size() : 0;
+    }
+    
+    /**
+     * Returns the number of events that have been accepted by publish().
+     * 
+     * @return See desc.
+     */
+    public long getNumPushed()
+    {
+    	return numPushed.get();
+    }
+
+    /**
+     * Returns the number of events that have been rejected by publish().
+     * 
+     * @return See desc.
+     */
+    public long getNumPushRejected()
+    {
+    	return numPushRejected.get();
+    }
+
+    /**
+     * Returns the number of (combined) events the push publishing has successfully sent to all zones/contexts.
+     * 
+     * @return See desc.
+     */
+    public long getNumPushSent()
+    {
+    	return numPushSent.get();
+    }
+    
     /**
      * If one doesn't want certain events to be published to a given zone then this method needs to be 
      * overridden. It allows to test for the event and zone and make the appropriate decision if the event
@@ -275,6 +516,22 @@ public abstract class BaseEventProvider<L> extends BaseProvider implements Event
      * @return TRUE: Event sent successfully. FALSE: Failed to send event. Error must be logged.
      */
     protected boolean sendEvents(EventClient evtClient, SIFEvent<?> sifEvents, SIFZone zone, SIFContext context, HeaderProperties customHTTPHeaders)
+    {
+    	return sendEvents(evtClient, sifEvents, null, zone, context, customHTTPHeaders);
+    }
+
+    /**
+     * Same as sendEvents(evtClient, sifEvents, zone, context, customHTTPHeaders) but the payload is taken from the given cache if 
+     * the event is unchanged by modifyBeforePublishing(). This method is used by broadcastEvents(), so it is the one to override.
+     * 
+     * @param event The event to be published to the zone.
+     * @param payloadCache The cache of the marshalled event. If null then the event is marshalled.
+     * @param zone The zone to which the event is published to.
+     * @param customHTTPHeaders Custom HTTP Headers to be added to the event. 
+     * 
+     * @return TRUE: Event sent successfully. FALSE: Failed to send event. Error must be logged.
+     */
+    protected boolean sendEvents(EventClient evtClient, SIFEvent<?> sifEvents, EventPayloadCache payloadCache, SIFZone zone, SIFContext context, HeaderProperties customHTTPHeaders)
     {
     	logger.debug(getPrettyName()+" sending a "+getServiceName()+" event with "+sifEvents.getListSize()+" sif objects.");
     	try
@@ -292,7 +549,8 @@ public abstract class BaseEventProvider<L> extends BaseProvider implements Event
     		// override custom HTTP Headers.
     		addSIF3OverrideHeaderProperties(customHTTPHeaders);
     		
-    		BaseResponse response = evtClient.sendEvents(sifEvents, zone, context, customHTTPHeaders);
+    		byte[] payload = (payloadCache != null) ? payloadCache.getPayload(sifEvents, evtClient) : null;
+    		BaseResponse response = evtClient.sendEvents(sifEvents, payload, zone, context, customHTTPHeaders);
     		if (response.hasError())
     		{
     			logger.error("Failed to send event: "+response.getError());
@@ -311,6 +569,326 @@ public abstract class BaseEventProvider<L> extends BaseProvider implements Event
     }
     
     
+    /*
+     * Sends the given events to all zones/contexts of this provider it has access to. If a parallel publisher is given then the
+     * events are submitted to it with the given task group and may not be sent yet when this method returns.
+     */
+    private void broadcastEvent(final EventClient evtClient, final EventBroadcast broadcast, List<ServiceInfo> servicesForProvider, ParallelEventPublisher parallelPublisher, ParallelEventPublisher.TaskGroup taskGroup, boolean marshalOnce)
+    {
+    	SIFEvent<L> sifEvents = broadcast.sifEvents;
+		final EventPayloadCache payloadCache = marshalOnce ? new EventPayloadCache(sifEvents) : null;
+		for (ServiceInfo service : servicesForProvider)
+		{
+			// keep event action. Just in case the developer changes it in modifyBeforePublishing() which would confuse
+			// everything.
+			EventAction eventAction = sifEvents.getEventAction();
+			if (hasAccess(service, eventAction))
+			{
+				final HeaderProperties customHTTPHeaders = new HeaderProperties();
+				final SIFEvent<L> modifiedEvents = modifyBeforePublishing(sifEvents, service.getZone(), service.getContext(), customHTTPHeaders);
+				if (modifiedEvents != null)
+				{
+					//Just in case the developer has changed it. Should not be allowed :-)
+					modifiedEvents.setEventAction(eventAction);
+					
+					if (parallelPublisher != null)
+					{
+						final ServiceInfo zoneService = service;
+						broadcast.numUnfinished.incrementAndGet();
+						if (!parallelPublisher.submit(getPublishKey(service), new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								try
+								{
+									if (!broadcast.abandoned)
+									{
+										publish(evtClient, broadcast, modifiedEvents, payloadCache, zoneService.getZone(), zoneService.getContext(), customHTTPHeaders);
+									}
+								}
+								finally
+								{
+									broadcast.numUnfinished.decrementAndGet();
+								}
+							}
+						}, taskGroup))
+						{
+							broadcast.numUnfinished.decrementAndGet();
+							logger.error("Event publisher for "+getPrettyName()+" has been interrupted. Event for zone|context "+getPublishKey(service)+" is not sent.");
+							broadcast.onError(modifiedEvents, service.getZone(), service.getContext());
+							broadcast.failedRecords.addAndGet(modifiedEvents.getListSize());
+							Thread.currentThread().interrupt(); // keep the interrupt for the caller
+						}
+					}
+					else
+					{
+						publish(evtClient, broadcast, modifiedEvents, payloadCache, service.getZone(), service.getContext(), customHTTPHeaders);
+					}
+				}
+			}
+			else
+			{
+				logger.debug("The "+getProviderName()+" does not have the PROVIDE = APPROVED. No events are sent.");
+				broadcast.failedRecords.addAndGet(sifEvents.getListSize());
+			}
+		}
+    }
+    
+    /*
+     * Sends the events to the given zone/context. If it fails the onEventError() method is called and the number of objects in the
+     * events is added to the failed records of the broadcast.
+     */
+    private void publish(EventClient evtClient, EventBroadcast broadcast, SIFEvent<L> modifiedEvents, EventPayloadCache payloadCache, SIFZone zone, SIFContext context, HeaderProperties customHTTPHeaders)
+    {
+		if (!sendEvents(evtClient, modifiedEvents, payloadCache, zone, context, customHTTPHeaders))
+		{
+			//Report back to the caller. This should also give the event back to the caller.
+			broadcast.onError(modifiedEvents, zone, context);
+			broadcast.failedRecords.addAndGet((modifiedEvents != null) ? modifiedEvents.getListSize() : 0);
+		}
+    }
+    
+    /*
+     * Returns the publisher for concurrent publishing. It is created the first time it is needed. Null is returned if events are
+     * sent to one zone/context after the other.
+     */
+    private synchronized ParallelEventPublisher getPublisher()
+    {
+    	if (!closed && (publisher == null))
+    	{
+    		int numThreads = getPublishThreads();
+    		if (numThreads > 0)
+    		{
+    			publisher = new ParallelEventPublisher(getProviderName(), numThreads, getPublishMaxInFlight());
+    			logger.info("Events of provider "+getPrettyName()+" are published concurrently with "+publisher.getNumThreads()+" threads and max "+publisher.getMaxInFlight()+" events in flight.");
+    		}
+    	}
+    	return publisher;
+    }
+    
+    /*
+     * Returns the push buffer. The buffer and the flusher thread are created the first time. Null is returned if push publishing 
+     * has been shut down.
+     */
+    private synchronized BlockingQueue<SIFEvent<L>> getPushBuffer()
+    {
+    	if (closed)
+    	{
+    		return null; // has been shut down
+    	}
+    	if (pushService == null)
+    	{
+    		int capacity = getServiceProperties().getPropertyAsInt("event.push.capacity", getProviderName(), 1000);
+    		final long linger = getServiceProperties().getPropertyAsInt("event.push.linger", getProviderName(), 200);
+    		logger.info("Start push publishing for provider "+getPrettyName()+": capacity = "+capacity+", linger = "+linger+"ms.");
+    		pushBuffer = new ArrayBlockingQueue<SIFEvent<L>>(Math.max(capacity, 1));
+    		pushService = ExecutorStrategy.getInstance().newFixedThreadPool(1, getProviderName()+" Push", true);
+    		pushService.execute(new Runnable()
+    		{
+    			@Override
+    			public void run()
+    			{
+    				flushPushedEvents(Math.max(linger, 0));
+    			}
+    		});
+    	}
+    	return pushBuffer;
+    }
+    
+    /*
+     * Runs on the flusher thread until it is interrupted. Takes the first event off the push buffer and waits up to 'linger' 
+     * milliseconds for more events until getMaxObjectsInEvent() objects are gathered. These events are then sent.
+     */
+    private void flushPushedEvents(long linger)
+    {
+    	List<SIFEvent<L>> pending = new ArrayList<SIFEvent<L>>();
+    	try
+    	{
+	    	while (!Thread.currentThread().isInterrupted())
+	    	{
+	    		SIFEvent<L> sifEvent = pushBuffer.take();
+	    		pending.add(sifEvent);
+	    		int numObjects = sifEvent.getListSize();
+	    		int maxObjects = getMaxObjectsInEvent();
+	    		long deadline = System.currentTimeMillis() + linger;
+	    		while (numObjects < maxObjects)
+	    		{
+	    			long wait = deadline - System.currentTimeMillis();
+	    			sifEvent = (wait > 0) ? pushBuffer.poll(wait, TimeUnit.MILLISECONDS) : pushBuffer.poll();
+	    			if (sifEvent == null)
+	    			{
+	    				break;
+	    			}
+	    			pending.add(sifEvent);
+	    			numObjects = numObjects + sifEvent.getListSize();
+	    		}
+	    		sendPushedEvents(pending, maxObjects);
+	    		pending.clear();
+	    	}
+    	}
+    	catch (InterruptedException ex)
+    	{
+    		// Nothing to do. We stop.
+    	}
+    	
+    	pushBuffer.drainTo(pending);
+    	if (pending.size() > 0)
+    	{
+    		logger.error("Push publishing for provider "+getPrettyName()+" has been shut down. "+pending.size()+" events are not sent.");
+    		for (SIFEvent<L> sifEvent : pending)
+    		{
+    			onEventError(sifEvent, null, null);
+    		}
+    	}
+    }
+    
+    /*
+     * Combines consecutive events with the same event action, update type and metadata into events of up to maxObjects objects and 
+     * broadcasts them. Returns once all of them have been sent or the sending has been interrupted.
+     */
+    private void sendPushedEvents(List<SIFEvent<L>> sifEvents, int maxObjects)
+    {
+    	List<EventBroadcast> combinedEvents = new ArrayList<EventBroadcast>();
+    	List<SIFEvent<L>> group = new ArrayList<SIFEvent<L>>();
+    	int groupSize = 0;
+    	for (SIFEvent<L> sifEvent : sifEvents)
+    	{
+    		if (!group.isEmpty() && (!isSameKind(group.get(0), sifEvent) || (groupSize + sifEvent.getListSize() > maxObjects)))
+    		{
+    			combine(group, combinedEvents);
+    			group.clear();
+    			groupSize = 0;
+    		}
+    		group.add(sifEvent);
+    		groupSize = groupSize + sifEvent.getListSize();
+    	}
+    	combine(group, combinedEvents);
+    	logger.debug("Push publishing for provider "+getPrettyName()+": "+sifEvents.size()+" events combined into "+combinedEvents.size()+" events.");
+    	
+		SIF3Session sif3Session = getActiveSession();
+		List<ServiceInfo> servicesForProvider = getServicesForProvider(sif3Session);
+		if ((servicesForProvider == null) || (servicesForProvider.size() == 0))
+		{
+			logger.error("No active session or no zones and contexts for the "+getServiceName()+" service. "+sifEvents.size()+" pushed events are not sent.");
+			for (SIFEvent<L> sifEvent : sifEvents)
+			{
+				onEventError(sifEvent, null, null);
+			}
+			return;
+		}
+		
+		EventClient evtClient = getEventClient(sif3Session);
+		ParallelEventPublisher parallelPublisher = getPublisher();
+		ParallelEventPublisher.TaskGroup taskGroup = new ParallelEventPublisher.TaskGroup();
+		boolean marshalOnce = getMarshalOnce();
+		int numStarted = 0;
+		while ((numStarted < combinedEvents.size()) && !Thread.currentThread().isInterrupted())
+		{
+			EventBroadcast broadcast = combinedEvents.get(numStarted++);
+			try
+			{
+				broadcastEvent(evtClient, broadcast, servicesForProvider, parallelPublisher, taskGroup, marshalOnce);
+			}
+			catch (Exception ex)
+			{
+				logger.error("Failed to broadcast pushed event for provider "+getPrettyName()+": "+ex.getMessage(), ex);
+				broadcast.onError(broadcast.sifEvents, null, null);
+				broadcast.failedRecords.incrementAndGet();
+			}
+		}
+		if (parallelPublisher != null)
+		{
+			// Only wait for the events of this push, not for the events of broadcastEvents() that use the same publisher.
+			parallelPublisher.awaitCompletion(taskGroup);
+		}
+		
+		// If the sending has been interrupted (shut down) then events that have not been sent to all zones/contexts are reported with
+		// a null zone and context. Their tasks that have not started yet won't send them any more. Only events that have been sent to
+		// all zones/contexts are counted as sent.
+		int numNotSent = 0;
+		for (int i = 0; i < combinedEvents.size(); i++)
+		{
+			EventBroadcast broadcast = combinedEvents.get(i);
+			broadcast.abandoned = true;
+			if ((i >= numStarted) || (broadcast.numUnfinished.get() > 0))
+			{
+				broadcast.onError(broadcast.sifEvents, null, null);
+				numNotSent++;
+			}
+			else if (broadcast.failedRecords.get() == 0)
+			{
+				numPushSent.incrementAndGet();
+			}
+		}
+		if (numNotSent > 0)
+		{
+			logger.error("Push publishing for provider "+getPrettyName()+" has been interrupted. "+numNotSent+" events are not sent to all zones/contexts.");
+		}
+    }
+    
+    /*
+     * Adds the given group of events to combinedEvents. If they can be merged then the merged event keeps the group as its source 
+     * events, so that errors are reported against them.
+     */
+    private void combine(List<SIFEvent<L>> group, List<EventBroadcast> combinedEvents)
+    {
+    	if (group.size() == 1)
+    	{
+    		combinedEvents.add(new EventBroadcast(group.get(0), null, new AtomicInteger(0)));
+    	}
+    	else if (group.size() > 1)
+    	{
+    		SIFEvent<L> mergedEvent = mergeEvents(new ArrayList<SIFEvent<L>>(group));
+    		if (mergedEvent != null)
+    		{
+    			combinedEvents.add(new EventBroadcast(mergedEvent, new ArrayList<SIFEvent<L>>(group), new AtomicInteger(0)));
+    		}
+    		else
+    		{
+    			for (SIFEvent<L> sifEvent : group)
+    			{
+    				combinedEvents.add(new EventBroadcast(sifEvent, null, new AtomicInteger(0)));
+    			}
+    		}
+    	}
+    }
+    
+    private boolean isSameKind(SIFEvent<L> event1, SIFEvent<L> event2)
+    {
+    	return (event1.getEventAction() == event2.getEventAction()) && 
+    	       (event1.getUpdateType() == event2.getUpdateType()) &&
+    	       ((event1.getMetadata() == null) ? (event2.getMetadata() == null) : event1.getMetadata().equals(event2.getMetadata()));
+    }
+    
+    /*
+     * Returns the only public getter of the given class that returns a java.util.List. Null if there is none or more than one.
+     */
+    private Method getListGetter(Class<?> listClass)
+    {
+    	Method listGetter = null;
+    	for (Method method : listClass.getMethods())
+    	{
+    		if (method.getName().startsWith("get") && (method.getParameterTypes().length == 0) && List.class.isAssignableFrom(method.getReturnType()))
+    		{
+    			if (listGetter != null)
+    			{
+    				return null;
+    			}
+    			listGetter = method;
+    		}
+    	}
+    	return listGetter;
+    }
+    
+    /*
+     * Events with the same key are sent in order.
+     */
+    private String getPublishKey(ServiceInfo service)
+    {
+    	return ((service.getZone() != null) ? service.getZone().getId() : "") + "|" + ((service.getContext() != null) ? service.getContext().getId() : "");
+    }
+    
     protected void addSIF3OverrideHeaderProperties(HeaderProperties hdrProps)
     {
     	//HeaderProperties hdrProps = new HeaderProperties();
@@ -331,7 +909,26 @@ public abstract class BaseEventProvider<L> extends BaseProvider implements Event
     	return null;
     }
     
-    private SIF3Session getActiveSession()
+    /**
+     * Returns the client that sends the events of this provider to the broker for the given session. A provider can override this
+     * method if its events need to be sent through a differently configured client.
+     * 
+     * @param sif3Session The session of the environment the events are sent to.
+     * 
+     * @return See desc.
+     */
+    protected EventClient getEventClient(SIF3Session sif3Session)
+    {
+    	return new EventClient(getProviderEnvironment(), getRequestMediaType(), getResponseMediaType(), sif3Session, getServiceName(), getMarshaller());
+    }
+    
+    /**
+     * Returns the session of the environment the events of this provider are sent to. Null is returned if the provider is not 
+     * connected to a BROKERED environment. An error is logged in this case.
+     * 
+     * @return See desc.
+     */
+    protected SIF3Session getActiveSession()
     {
     	EnvironmentManager envMgr = ProviderManagerFactory.getEnvironmentManager();
     	if (envMgr != null) // we have a proper setup and are initialised.
@@ -355,6 +952,47 @@ public abstract class BaseEventProvider<L> extends BaseProvider implements Event
     	return null;
     }
     
+    /*
+     * An event that is broadcasted to all zones/contexts. If it has been combined from pushed events (see sendPushedEvents()) then 
+     * errors are reported against these source events rather than against the combined event. It counts the objects that failed 
+     * and the zones/contexts for which it has been submitted to the publisher but not finished yet.
+     */
+    private class EventBroadcast
+    {
+    	private SIFEvent<L> sifEvents;
+    	private List<SIFEvent<L>> sourceEvents;
+    	private AtomicInteger failedRecords;
+    	private AtomicInteger numUnfinished = new AtomicInteger(0);
+    	
+    	/* Set once the caller doesn't wait for the event any more. Tasks that haven't started won't send it. */
+    	private volatile boolean abandoned = false;
+    	
+    	private EventBroadcast(SIFEvent<L> sifEvents, List<SIFEvent<L>> sourceEvents, AtomicInteger failedRecords)
+    	{
+    		this.sifEvents = sifEvents;
+    		this.sourceEvents = sourceEvents;
+    		this.failedRecords = failedRecords;
+    	}
+    	
+    	/*
+    	 * Calls onEventError() for the source events or for the given events if this event has not been combined.
+    	 */
+    	private void onError(SIFEvent<L> failedEvents, SIFZone zone, SIFContext context)
+    	{
+    		if (sourceEvents == null)
+    		{
+    			onEventError(failedEvents, zone, context);
+    		}
+    		else
+    		{
+    			for (SIFEvent<L> sourceEvent : sourceEvents)
+    			{
+    				onEventError(sourceEvent, zone, context);
+    			}
+    		}
+    	}
+    }
+    
     private boolean hasAccess(ServiceInfo service, EventAction eventAction)
     {
     	// All that is required is PROVIDE right to be set to APPROVED.
@@ -18,17 +18,20 @@
 
 package sif3.infra.rest.provider;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
 import sif3.common.CommonConstants;
 import sif3.common.interfaces.EventProvider;
 import sif3.common.interfaces.Provider;
+import sif3.common.utils.ExecutorStrategy;
 import sif3.infra.common.env.mgr.ProviderManagerFactory;
 import sif3.infra.common.env.types.EnvironmentInfo.EnvironmentType;
 import sif3.infra.common.env.types.ProviderEnvironment;
+import sif3.infra.rest.queue.types.StageMetrics;
 import au.com.systemic.framework.utils.AdvancedProperties;
 
 /**
@@ -43,14 +46,33 @@ public abstract class BaseProvider implements Provider, Runnable
 {
 	protected final Logger logger = Logger.getLogger(getClass());
 
-	private Timer eventTimer = null;
-	private TimerTask eventTimerTask = null;
+	/* Scheduler shared by all providers. Set by the ProviderFactory. */
+	private ScheduledExecutorService eventScheduler = null;
+	
+	/* Only used if no shared scheduler is set, i.e. the provider is not started by the ProviderFactory. */
+	private ScheduledExecutorService ownEventScheduler = null;
+	
+	private ScheduledFuture<?> eventTask = null;
+	private StageMetrics eventRunMetrics = new StageMetrics("Event Runs");
 	
 	/**
 	 * Shuts down the sub-class provider. This should release all associated resources with that provider.
 	 */
 	public abstract void shutdown();
 	
+	/**
+	 * This method indicates if a single instance of this provider can safely be used by many requests at the same time. It is used by
+	 * the ProviderFactory to determine if the SINGLETON lifecycle (property 'provider.lifecycle') can be applied to this provider.
+	 * The default is false. A provider that does not hold any request specific state in its instance variables can override this 
+	 * method and return true.
+	 * 
+	 * @return See desc.
+	 */
+	public boolean isThreadSafe()
+	{
+		return false;
+	}
+	
 	  /**
      */
     public BaseProvider()
@@ -127,29 +149,50 @@ public abstract class BaseProvider implements Provider, Runnable
     }
 
     
+    /**
+     * Returns the timing metrics of the event runs (broadcastEvents()) of this provider. Each run is recorded with its duration 
+     * and as failed if it has thrown an exception.
+     * 
+     * @return See desc.
+     */
+    public final StageMetrics getEventRunMetrics()
+    {
+    	return eventRunMetrics;
+    }
+
     /**
      * (non-Javadoc)
      * @see sif3.common.interfaces.Provider#finalise()
      */
     public void finalise()
     {
-    	// Shut down event timer & task - thread
-    	if (eventTimerTask != null)
-    	{
-    		logger.debug("Shut Down event task for: "+getProviderName());
-    		eventTimerTask.cancel();
-    		eventTimerTask = null;
-    	}
-    	if (eventTimer != null)
+    	// Cancel event task. The shared scheduler is shut down by the ProviderFactory.
+    	synchronized (eventRunMetrics)
     	{
-    		logger.debug("Shut Down event timer for: "+getProviderName());
-    		eventTimer.cancel();
-    		eventTimer.purge();
-    		eventTimer = null;
+	    	if (eventTask != null)
+	    	{
+	    		logger.debug("Shut Down event task for: "+getProviderName()+". "+eventRunMetrics);
+	    		eventTask.cancel(false);
+	    		eventTask = null;
+	    	}
+	    	if (ownEventScheduler != null)
+	    	{
+	    		logger.debug("Shut Down event scheduler for: "+getProviderName());
+	    		ownEventScheduler.shutdownNow();
+	    		ownEventScheduler = null;
+	    	}
     	}
     	
     	// Call finalise on sub-class.
     }
+    
+    /*
+     * Called by the ProviderFactory before the provider is started. Events are then scheduled on this shared scheduler.
+     */
+    final void setEventScheduler(ScheduledExecutorService eventScheduler)
+    {
+    	this.eventScheduler = eventScheduler;
+    }
 
     /*----------------------------------------*/
     /* Implemented Method for Multi-threading */
@@ -210,30 +253,62 @@ public abstract class BaseProvider implements Provider, Runnable
     /*---------------------*/
 
 	/**
-	 * This method initialises and schedules the event producer task.
+	 * This method initialises and schedules the event producer task. The task runs on the scheduler that is shared by all providers. 
+	 * The next run starts 'frequencyInSec' seconds after the previous run has finished (fixed delay), so runs don't pile up if 
+	 * broadcastEvents() is slow.
 	 */
-    //TODO: JH - Consider if I should use Executors.newSingleThreadScheduledExecutor style task/timers here.
 	private void startupEventManager(String providerName, int frequencyInSec)
 	{
-		int period = frequencyInSec * CommonConstants.MILISEC;  // repeat every so often (multiply with milliseconds).
 		int delayInSec = getEventDelay(providerName);
 		
 		logger.info(providerName+".startupEventManager: Event Frequency = " + frequencyInSec + " secs; Event Startup Delay = "+delayInSec+" secs.");
-		if (eventTimerTask == null) // not created started
+		synchronized (eventRunMetrics)
 		{
-			eventTimerTask = new TimerTask() 
+			if (eventTask == null) // not created started
 			{
-				public void run() 
+				Runnable task = new Runnable() 
 				{
-					logger.debug("Start Event Timer Task for "+getMultiObjectClassInfo().getObjectName()+".");
-					((BaseEventProvider<?>)BaseProvider.this).broadcastEvents();
+					public void run() 
+					{
+						runEvents();
+					}
+				};
+				
+				// Now start scheduling events
+				logger.debug("Start sending "+getMultiObjectClassInfo().getObjectName()+" events... (Total running threads = "+Thread.activeCount()+")");
+				ScheduledExecutorService scheduler = eventScheduler;
+				if (scheduler == null)
+				{
+					ownEventScheduler = ExecutorStrategy.getInstance().newScheduledThreadPool(1, providerName+" Events", true);
+					scheduler = ownEventScheduler;
 				}
-			};
-			
-			// Now start scheduling events
-			logger.debug("Start sending "+getMultiObjectClassInfo().getObjectName()+" events... (Total running threads = "+Thread.activeCount()+")");
-			eventTimer = new Timer(true);
-			eventTimer.scheduleAtFixedRate(eventTimerTask, delayInSec * CommonConstants.MILISEC, period);
+				eventTask = scheduler.scheduleWithFixedDelay(task, delayInSec * CommonConstants.MILISEC, frequencyInSec * CommonConstants.MILISEC, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+	
+	/*
+	 * One event run. Runs of a provider never overlap because the task is scheduled with a fixed delay. Exceptions are caught, 
+	 * otherwise the scheduler would not run the task again.
+	 */
+	private void runEvents()
+	{
+		long start = System.nanoTime();
+		boolean success = false;
+		try
+		{
+			logger.debug("Start Event Task for "+getMultiObjectClassInfo().getObjectName()+".");
+			((BaseEventProvider<?>)this).broadcastEvents();
+			success = true;
+		}
+		catch (Exception ex)
+		{
+			logger.error("Event run for "+getProviderName()+" has failed: "+ex.getMessage(), ex);
+		}
+		finally
+		{
+			eventRunMetrics.record(System.nanoTime() - start, success);
+			logger.debug("Event run for "+getProviderName()+" finished in "+((System.nanoTime() - start) / 1000000)+"ms. "+eventRunMetrics);
 		}
 	}
 	
@@ -0,0 +1,120 @@
+/*
+ * EventPayloadCache.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package sif3.infra.rest.provider;
+
+import java.util.HashMap;
+
+import javax.ws.rs.core.MediaType;
+
+import sif3.common.exception.MarshalException;
+import sif3.common.exception.UnsupportedMediaTypeExcpetion;
+import sif3.common.model.SIFEvent;
+import sif3.infra.rest.client.EventClient;
+
+/**
+ * This class holds the marshalled payload of an event as returned by the event iterator of a provider. The same event is usually 
+ * sent to many zones/contexts. If modifyBeforePublishing() returns the given event unchanged (same instance with the same object 
+ * list) then the payload is marshalled once per media type and re-used for all these zones/contexts. If a different event is 
+ * returned then no payload is returned by this class and that event is marshalled as usual.<p>
+ * 
+ * This relies on the contract of modifyBeforePublishing() that an event is not altered but re-created if it must be changed for a
+ * zone/context. This class is thread safe.
+ * 
+ * @author agent
+ */
+public class EventPayloadCache
+{
+	private SIFEvent<?> event;
+	private Object sifObjectList;
+	private HashMap<MediaType, byte[]> payloads = new HashMap<MediaType, byte[]>();
+	private int numMarshalled = 0;
+	private int numReused = 0;
+	
+	/**
+	 * Creates a cache for the given event.
+	 * 
+	 * @param event The event as returned by the event iterator.
+	 */
+	public EventPayloadCache(SIFEvent<?> event)
+	{
+		this.event = event;
+		this.sifObjectList = (event != null) ? event.getSIFObjectList() : null;
+	}
+	
+	/**
+	 * Returns TRUE if the given event is the event of this cache and its object list has not been replaced.
+	 * 
+	 * @param modifiedEvent The event as returned by modifyBeforePublishing().
+	 * 
+	 * @return See desc.
+	 */
+	public boolean isCacheable(SIFEvent<?> modifiedEvent)
+	{
+		return (modifiedEvent != null) && (modifiedEvent == event) && (sifObjectList != null) && (modifiedEvent.getSIFObjectList() == sifObjectList);
+	}
+	
+	/**
+	 * Returns the payload of the given event marshalled by the given event client. The payload is only marshalled the first time it
+	 * is requested for the request media type of the event client. If the given event is not cacheable (see isCacheable()) then null
+	 * is returned.
+	 * 
+	 * @param modifiedEvent The event as returned by modifyBeforePublishing().
+	 * @param evtClient The event client that sends the event.
+	 * 
+	 * @return See desc.
+	 * 
+	 * @throws MarshalException Failed to marshal the object list of the event.
+	 * @throws UnsupportedMediaTypeExcpetion The request media type is not supported by the marshaller of the event client.
+	 */
+	public synchronized byte[] getPayload(SIFEvent<?> modifiedEvent, EventClient evtClient) throws MarshalException, UnsupportedMediaTypeExcpetion
+	{
+		if (!isCacheable(modifiedEvent))
+		{
+			return null;
+		}
+		byte[] payload = payloads.get(evtClient.getRequestMediaType());
+		if (payload == null)
+		{
+			payload = evtClient.marshalEvents(modifiedEvent);
+			payloads.put(evtClient.getRequestMediaType(), payload);
+			numMarshalled++;
+		}
+		else
+		{
+			numReused++;
+		}
+		return payload;
+	}
+
+	/**
+	 * Returns the number of times the event has been marshalled by this cache.
+	 * 
+	 * @return See desc.
+	 */
+	public synchronized int getNumMarshalled()
+	{
+		return numMarshalled;
+	}
+
+	/**
+	 * Returns the number of times a marshalled payload has been re-used.
+	 * 
+	 * @return See desc.
+	 */
+	public synchronized int getNumReused()
+	{
+		return numReused;
+	}
+}
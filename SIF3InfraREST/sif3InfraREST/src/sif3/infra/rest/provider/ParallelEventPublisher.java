@@ -0,0 +1,367 @@
+/*
+ * ParallelEventPublisher.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package sif3.infra.rest.provider;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.log4j.Logger;
+
+import sif3.common.utils.ExecutorStrategy;
+
+/**
+ * This class runs the sending of events to many zones/contexts concurrently on a bounded pool of threads. Each task is submitted 
+ * with a key (i.e. zone and context). Tasks with the same key are run one after the other in the order they have been submitted,
+ * so the events of a zone/context are still published in order. Tasks with different keys run in parallel.<p>
+ * 
+ * The number of tasks that are submitted but not yet finished (in-flight) is limited. If the limit is reached then submit() blocks
+ * until a task has finished. This throttles the caller (i.e. the event iterator of a provider) to the speed of the broker.<p>
+ * 
+ * A publisher can be used by more than one caller (i.e. the event timer and the push publishing of a provider). The order of tasks 
+ * with the same key is then the order in which the callers have submitted them. Note that awaitCompletion() waits for the tasks of
+ * all callers that have been submitted before it is called. Tasks submitted later do not keep it waiting. A caller that only wants
+ * to wait for its own tasks submits them with a TaskGroup and waits with awaitCompletion(TaskGroup).
+ * 
+ * @author agent
+ */
+public class ParallelEventPublisher
+{
+	protected final Logger logger = Logger.getLogger(getClass());
+
+	private String publisherID;
+	private int numThreads;
+	private int maxInFlight;
+	private Semaphore inFlight;
+	private ExecutorService service;
+	
+	/* Lanes by key. Only lanes that have tasks are held. */
+	private HashMap<String, Lane> lanes = new HashMap<String, Lane>();
+	
+	/* Sequence numbers of the tasks that are submitted but not finished. Guarded by 'lanes'. */
+	private TreeSet<Long> outstanding = new TreeSet<Long>();
+	private long nextSeqNo = 0;
+
+	/**
+	 * Creates a publisher and its threads.
+	 * 
+	 * @param publisherID A name of the publisher. Mainly needed for nice debug and error reporting and the name of the threads.
+	 * @param numThreads The number of threads that run tasks.
+	 * @param maxInFlight The max number of tasks that are submitted but not finished. If less than numThreads then numThreads is used.
+	 */
+	public ParallelEventPublisher(String publisherID, int numThreads, int maxInFlight)
+	{
+		this.publisherID = publisherID;
+		this.numThreads = Math.max(numThreads, 1);
+		this.maxInFlight = Math.max(maxInFlight, this.numThreads);
+		this.inFlight = new Semaphore(this.maxInFlight);
+		this.service = ExecutorStrategy.getInstance().newFixedThreadPool(this.numThreads, publisherID+" Publisher", true);
+		logger.debug("Created publisher "+publisherID+" with "+this.numThreads+" threads and max "+this.maxInFlight+" tasks in flight.");
+	}
+	
+	/**
+	 * Submits a task to be run after all tasks that have been submitted with the same key before. If maxInFlight tasks are not 
+	 * finished yet then this method blocks until one is. If the publisher has been shut down then the task is run by the calling 
+	 * thread.
+	 * 
+	 * @param key The key that determines the order of tasks. Null is treated as a key as well.
+	 * @param task The task to run.
+	 * 
+	 * @return FALSE if the calling thread has been interrupted while waiting. The task is not submitted in this case.
+	 */
+	public boolean submit(String key, Runnable task)
+	{
+		return submit(key, task, null);
+	}
+	
+	/**
+	 * Same as submit(key, task) but the task is added to the given group. The group is told once the task has finished or if it is
+	 * not run because the publisher has been shut down.
+	 * 
+	 * @param key See submit(key, task).
+	 * @param task See submit(key, task).
+	 * @param group The group of the task. Can be null.
+	 * 
+	 * @return See submit(key, task).
+	 */
+	public boolean submit(String key, Runnable task, TaskGroup group)
+	{
+		try
+		{
+			inFlight.acquire();
+		}
+		catch (InterruptedException ex)
+		{
+			logger.debug(publisherID+" publisher has been interrupted. Task is not submitted.");
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		
+		boolean startLane = false;
+		Lane lane = null;
+		synchronized (lanes)
+		{
+			lane = lanes.get(key);
+			if (lane == null)
+			{
+				lane = new Lane(key);
+				lanes.put(key, lane);
+				startLane = true;
+			}
+			lane.tasks.add(new Task(nextSeqNo, task, group));
+			if (group != null)
+			{
+				group.taskSubmitted();
+			}
+			outstanding.add(nextSeqNo);
+			nextSeqNo++;
+		}
+		if (startLane)
+		{
+			try
+			{
+				service.execute(lane);
+			}
+			catch (RejectedExecutionException ex)
+			{
+				logger.warn(publisherID+" publisher has been shut down. Run tasks of "+key+" in calling thread.");
+				lane.run();
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Waits until all tasks that have been submitted before this method is called have finished. Tasks that are submitted while
+	 * waiting (i.e. by another caller) are not waited for.
+	 * 
+	 * @return FALSE if the calling thread has been interrupted while waiting. Some tasks may not be finished in this case.
+	 */
+	public boolean awaitCompletion()
+	{
+		try
+		{
+			synchronized (lanes)
+			{
+				long lastSeqNo = nextSeqNo - 1;
+				while (!outstanding.isEmpty() && (outstanding.first() <= lastSeqNo))
+				{
+					lanes.wait();
+				}
+			}
+			return true;
+		}
+		catch (InterruptedException ex)
+		{
+			logger.debug(publisherID+" publisher has been interrupted while waiting for tasks to finish.");
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	/**
+	 * Waits until all tasks of the given group have finished or have been dropped by shutdown(). Tasks of other groups or tasks 
+	 * without group are not waited for.
+	 * 
+	 * @param group The group to wait for.
+	 * 
+	 * @return FALSE if the calling thread has been interrupted while waiting. Some tasks of the group may not be finished in this case.
+	 */
+	public boolean awaitCompletion(TaskGroup group)
+	{
+		try
+		{
+			group.await();
+			return true;
+		}
+		catch (InterruptedException ex)
+		{
+			logger.debug(publisherID+" publisher has been interrupted while waiting for a group of tasks to finish.");
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	/**
+	 * Stops the threads of this publisher. Tasks that are running are interrupted. Tasks of keys that haven't started yet are not
+	 * run.
+	 */
+	public void shutdown()
+	{
+		logger.debug("Shut down publisher "+publisherID+".");
+		List<Runnable> notStarted = service.shutdownNow();
+		for (Runnable runnable : notStarted)
+		{
+			if (runnable instanceof Lane)
+			{
+				int numDropped = 0;
+				synchronized (lanes)
+				{
+					Lane lane = (Lane)runnable;
+					numDropped = lane.tasks.size();
+					for (Task task : lane.tasks)
+					{
+						outstanding.remove(task.seqNo);
+						task.finished();
+					}
+					lane.tasks.clear();
+					lanes.remove(lane.key);
+					lanes.notifyAll();
+				}
+				inFlight.release(numDropped);
+				logger.warn(publisherID+" publisher has been shut down. "+numDropped+" tasks are not run.");
+			}
+		}
+	}
+
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	public int getMaxInFlight()
+	{
+		return maxInFlight;
+	}
+	
+	/**
+	 * Returns the number of tasks that are submitted but not finished.
+	 * 
+	 * @return See desc.
+	 */
+	public int getNumInFlight()
+	{
+		synchronized (lanes)
+		{
+			return outstanding.size();
+		}
+	}
+	
+	/**
+	 * A group of tasks a caller can wait for with awaitCompletion(TaskGroup), i.e. the events of one push or one broadcast.
+	 */
+	public static class TaskGroup
+	{
+		private int numOutstanding = 0;
+		
+		/**
+		 * Returns the number of tasks of this group that have been submitted but have not finished and have not been dropped.
+		 * 
+		 * @return See desc.
+		 */
+		public synchronized int getNumOutstanding()
+		{
+			return numOutstanding;
+		}
+		
+		private synchronized void taskSubmitted()
+		{
+			numOutstanding++;
+		}
+		
+		private synchronized void taskFinished()
+		{
+			numOutstanding--;
+			notifyAll();
+		}
+		
+		private synchronized void await() throws InterruptedException
+		{
+			while (numOutstanding > 0)
+			{
+				wait();
+			}
+		}
+	}
+	
+	/*
+	 * A submitted task, its sequence number and its group.
+	 */
+	private static class Task
+	{
+		private long seqNo;
+		private Runnable runnable;
+		private TaskGroup group;
+		
+		private Task(long seqNo, Runnable runnable, TaskGroup group)
+		{
+			this.seqNo = seqNo;
+			this.runnable = runnable;
+			this.group = group;
+		}
+		
+		private void finished()
+		{
+			if (group != null)
+			{
+				group.taskFinished();
+			}
+		}
+	}
+
+	/*
+	 * The tasks of one key. A lane is run by one thread at a time until it has no more tasks, then it is removed.
+	 */
+	private class Lane implements Runnable
+	{
+		private String key;
+		private ArrayDeque<Task> tasks = new ArrayDeque<Task>();
+		
+		private Lane(String key)
+		{
+			this.key = key;
+		}
+		
+		@Override
+		public void run()
+		{
+			while (true)
+			{
+				Task task = null;
+				synchronized (lanes)
+				{
+					task = tasks.poll();
+					if (task == null)
+					{
+						lanes.remove(key);
+						return;
+					}
+				}
+				try
+				{
+					task.runnable.run();
+				}
+				catch (Exception ex)
+				{
+					logger.error(publisherID+" publisher: Task for "+key+" has failed: "+ex.getMessage(), ex);
+				}
+				finally
+				{
+					synchronized (lanes)
+					{
+						outstanding.remove(task.seqNo);
+						lanes.notifyAll();
+					}
+					task.finished();
+					inFlight.release();
+				}
+			}
+		}
+	}
+}
@@ -20,6 +20,7 @@ package sif3.infra.rest.provider;
 import java.io.Serializable;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ArrayBlockingQueue;
 
 /**
  * This is a small utility class to be used by the ProviderFactory. It is intended to be used as a container to maintain all
@@ -27,7 +28,11 @@ import java.lang.reflect.InvocationTargetException;
  * by the ProviderFactory.<br/><br/>
  * 
  * Note: At this point in time this is a very simple helper class which, in future, might be extended. But as of now (Oct. 2014) it is 
- * specifically geared to be used by the ProviderFactory.
+ * specifically geared to be used by the ProviderFactory.<br/><br/>
+ * 
+ * Since Oct. 2026 this class also manages the lifecycle of the provider instances handed out for request/response calls. Refer to the
+ * Lifecycle enum for details on the available options. The default is PER_REQUEST which is the behaviour of the framework prior to
+ * the introduction of lifecycles.
  * 
  * @author Joerg Huber
  *
@@ -36,7 +41,18 @@ public class ProviderClassInfo implements Serializable
 {
 	private static final long serialVersionUID = 4829550138088401431L;
 
+	/**
+	 * Determines how provider instances are managed for request/response calls:<br/>
+	 * PER_REQUEST: A new instance is created for each request (default).<br/>
+	 * SINGLETON: One instance is shared by all requests. Only valid for providers that declare themselves thread-safe.<br/>
+	 * POOLED: Instances are borrowed from and returned to a bounded pool. An instance is only used by one request at a time.
+	 */
+	public enum Lifecycle {PER_REQUEST, SINGLETON, POOLED};
+
 	private Constructor<?> constructor = null;
+	private Lifecycle lifecycle = Lifecycle.PER_REQUEST;
+	private transient volatile Object singleton = null;
+	private transient ArrayBlockingQueue<Object> pool = null;
 
 	/**
 	 * This will create the information for the constructor of the given 'clazz' and parameter
@@ -77,6 +93,75 @@ public class ProviderClassInfo implements Serializable
 		return getConstructor().newInstance(params);
 	}
 
+	/**
+	 * Returns an instance of the provider class according to the lifecycle of this ProviderClassInfo. For PER_REQUEST a new instance
+	 * is created, for SINGLETON the shared instance is returned and for POOLED an idle instance is taken from the pool. If the pool is
+	 * empty a new instance is created, so a caller never waits for an instance. Each instance returned by this method should be given
+	 * back through the releaseInstance() method once the caller is done with it.
+	 * 
+	 * @return See desc.
+	 * 
+	 * @throws IllegalArgumentException See getClassInstance().
+	 * @throws InstantiationException See getClassInstance().
+	 * @throws IllegalAccessException See getClassInstance().
+	 * @throws InvocationTargetException See getClassInstance().
+	 */
+	public Object acquireInstance() throws IllegalArgumentException, InstantiationException, IllegalAccessException, InvocationTargetException
+	{
+		switch (getLifecycle())
+		{
+			case SINGLETON:
+				if (singleton == null)
+				{
+					singleton = getClassInstance(null);
+				}
+				return singleton;
+			case POOLED:
+				Object instance = (pool != null) ? pool.poll() : null;
+				if (instance != null)
+				{
+					return instance;
+				}
+				break;
+			default:
+				break;
+		}
+		return getClassInstance(null);
+	}
+	
+	/**
+	 * Gives back an instance that has been returned by acquireInstance(). For POOLED instances the instance is returned to the pool
+	 * unless the pool is full in which case it is discarded. For all other lifecycles this method does nothing.
+	 * 
+	 * @param instance The instance to release. If null then nothing is done.
+	 */
+	public void releaseInstance(Object instance)
+	{
+		if ((instance != null) && (getLifecycle() == Lifecycle.POOLED) && (pool != null))
+		{
+			pool.offer(instance);
+		}
+	}
+
+	/**
+	 * Sets the lifecycle of this ProviderClassInfo.
+	 * 
+	 * @param lifecycle The lifecycle to use. If null then PER_REQUEST is assumed.
+	 * @param singleton The shared instance. Only used if lifecycle is SINGLETON. If null a new instance is created on first use.
+	 * @param poolSize The maximum number of idle instances kept in the pool. Only used if lifecycle is POOLED. Must be at least 1.
+	 */
+	public void setLifecycle(Lifecycle lifecycle, Object singleton, int poolSize)
+	{
+		this.lifecycle = (lifecycle == null) ? Lifecycle.PER_REQUEST : lifecycle;
+		this.singleton = (this.lifecycle == Lifecycle.SINGLETON) ? singleton : null;
+		this.pool = (this.lifecycle == Lifecycle.POOLED) ? new ArrayBlockingQueue<Object>(Math.max(1, poolSize)) : null;
+	}
+
+	public Lifecycle getLifecycle()
+	{
+		return lifecycle;
+	}
+
 	public Constructor<?> getConstructor()
 	{
 		return constructor;
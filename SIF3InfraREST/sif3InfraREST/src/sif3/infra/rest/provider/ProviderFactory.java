@@ -20,14 +20,16 @@ package sif3.infra.rest.provider;
 
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
 import sif3.common.conversion.ModelObjectInfo;
 import sif3.common.interfaces.Provider;
+import sif3.common.utils.ExecutorStrategy;
+import sif3.infra.rest.client.ClientRegistry;
 import au.com.systemic.framework.utils.AdvancedProperties;
 import au.com.systemic.framework.utils.StringUtils;
 
@@ -43,6 +45,12 @@ public class ProviderFactory
 {
 	private static final int DEFAULT_DELAY = 10;
 	private static final String DELAY_PROPERTY = "provider.startup.delay";
+	private static final String LIFECYCLE_PROPERTY = "provider.lifecycle";
+	private static final String POOL_SIZE_PROPERTY = "provider.lifecycle.poolSize";
+	private static final int DEFAULT_POOL_SIZE = 10;
+	private static final String SCHEDULER_THREADS_PROPERTY = "event.scheduler.threads";
+	private static final int DEFAULT_SCHEDULER_THREADS = 2;
+	private static final int SHUTDOWN_WAIT = 5; // seconds
 
 	private static final Logger logger = Logger.getLogger(ProviderFactory.class);
 
@@ -56,7 +64,11 @@ public class ProviderFactory
 	
 	private static Object locked = new Object();
   
+	// Starts the providers and runs the event tasks of all providers.
 	private ScheduledExecutorService providerService = null;
+	
+	// TRUE if this factory has registered with the ClientRegistry and has not yet released it.
+	private boolean clientRegistryUsed = false;
 
 	/**
 	 * This methods returns the ProviderFactory. Only used internally to initialise and access various components of the framework.
@@ -75,6 +87,8 @@ public class ProviderFactory
   	    	try
   	    	{
   	    		factory = new ProviderFactory(adapterProps);
+  	    		ClientRegistry.register();
+  	    		factory.clientRegistryUsed = true;
   	    	}
   			catch (Exception ex)
   			{
@@ -109,10 +123,37 @@ public class ProviderFactory
     	    	}
     		}
     		
-    		// Shut down provider threads.
-    		logger.debug("Shut Down Provider Thread Pool...");
-    		factory.providerService.shutdownNow();
-    		logger.debug("Shut Down Provider Thread Pool: Done");
+    		// Shut down provider threads. Give running event tasks a chance to finish.
+    		if (factory.providerService != null)
+    		{
+	    		logger.debug("Shut Down Provider Thread Pool...");
+	    		if (factory.providerService instanceof ScheduledThreadPoolExecutor)
+	    		{
+	    			// Delayed tasks (i.e. provider startups that are still waiting) must not start after shutdown. Only running tasks may finish.
+	    			((ScheduledThreadPoolExecutor)factory.providerService).setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	    		}
+	    		factory.providerService.shutdown();
+	    		try
+	    		{
+	    			if (!factory.providerService.awaitTermination(SHUTDOWN_WAIT, TimeUnit.SECONDS))
+	    			{
+	    				logger.debug("Event tasks still running after "+SHUTDOWN_WAIT+" seconds. Interrupt them.");
+	    				factory.providerService.shutdownNow();
+	    			}
+	    		}
+	    		catch (InterruptedException ex)
+	    		{
+	    			factory.providerService.shutdownNow();
+	    		}
+	    		logger.debug("Shut Down Provider Thread Pool: Done");
+    		}
+
+    		if (factory.clientRegistryUsed)
+    		{
+    			logger.debug("Release REST Clients...");
+    			ClientRegistry.release();
+    			factory.clientRegistryUsed = false;
+    		}
 	    }
       logger.info("All providers are shut down.");
 	  }
@@ -145,7 +186,7 @@ public class ProviderFactory
 		  {
 		    try
 		    {
-		      return (BaseProvider)providerClassInfo.getClassInstance(null);
+		      return (BaseProvider)providerClassInfo.acquireInstance();
 		    }
 		    catch (Exception ex)
 		    {
@@ -165,6 +206,25 @@ public class ProviderFactory
 		}
 	}
 	
+	/**
+	 * This method must be called once the caller of getProvider() no longer requires the provider. Depending on the lifecycle of
+	 * the provider (property 'provider.lifecycle') the provider is returned to its pool or simply left to the garbage collector.
+	 * 
+	 * @param objectInfo The same objectInfo that has been used to get the provider.
+	 * @param provider The provider returned by getProvider(). If null then nothing is done.
+	 */
+	public void releaseProvider(ModelObjectInfo objectInfo, Provider provider)
+	{
+		if ((objectInfo != null) && (provider != null))
+		{
+			ProviderClassInfo providerClassInfo = providerClasses.get(objectInfo);
+			if (providerClassInfo != null)
+			{
+				providerClassInfo.releaseInstance(provider);
+			}
+		}
+	}
+	
 	/*---------------------*/
 	/*-- Private Methods --*/
 	/*---------------------*/
@@ -199,6 +259,7 @@ public class ProviderFactory
               if ((objectInfo != null) && (StringUtils.notEmpty(objectInfo.getObjectName())))
               {
                 // First add it to the standard request/response hashmap
+                setLifecycle(adapterProps, className, providerClassInfo, provider);
                 providerClasses.put(objectInfo, providerClassInfo);
                 
                 // Add it to hasmap for background threads
@@ -221,6 +282,35 @@ public class ProviderFactory
 	    }
 	}
 	
+  /*
+   * Sets the lifecycle of request/response provider instances as configured in the property file. The SINGLETON lifecycle is only
+   * honoured if the provider declares itself thread-safe, otherwise POOLED is used. The instance created at startup is shared as the
+   * singleton since it is thread-safe by declaration.
+   */
+  private void setLifecycle(AdvancedProperties adapterProps, String className, ProviderClassInfo providerClassInfo, BaseProvider provider)
+  {
+    String lifecycleStr = adapterProps.getPropertyAsString(LIFECYCLE_PROPERTY, className, ProviderClassInfo.Lifecycle.PER_REQUEST.name());
+    ProviderClassInfo.Lifecycle lifecycle = ProviderClassInfo.Lifecycle.PER_REQUEST;
+    try
+    {
+      lifecycle = ProviderClassInfo.Lifecycle.valueOf(lifecycleStr.trim().toUpperCase());
+    }
+    catch (Exception ex)
+    {
+      logger.error("Invalid value for "+LIFECYCLE_PROPERTY+" of provider "+className+": "+lifecycleStr+". Use "+ProviderClassInfo.Lifecycle.PER_REQUEST.name()+".");
+    }
+    
+    if ((lifecycle == ProviderClassInfo.Lifecycle.SINGLETON) && !provider.isThreadSafe())
+    {
+      logger.warn("Provider "+className+" is configured as "+lifecycle.name()+" but is not thread-safe (see isThreadSafe()). Use "+ProviderClassInfo.Lifecycle.POOLED.name()+" instead.");
+      lifecycle = ProviderClassInfo.Lifecycle.POOLED;
+    }
+    
+    int poolSize = adapterProps.getPropertyAsInt(POOL_SIZE_PROPERTY, className, DEFAULT_POOL_SIZE);
+    providerClassInfo.setLifecycle(lifecycle, provider, poolSize);
+    logger.debug("Lifecycle of provider "+className+" is "+lifecycle.name()+((lifecycle == ProviderClassInfo.Lifecycle.POOLED) ? " (pool size = "+poolSize+")" : ""));
+  }
+  
     private String makePackageName(String packageName)
     {
     	return (StringUtils.isEmpty(packageName)) ? "" : packageName.trim() + ".";
@@ -230,12 +320,20 @@ public class ProviderFactory
 	{
 		int delay = adapterProps.getPropertyAsInt(DELAY_PROPERTY, DEFAULT_DELAY);  //delay between threads in seconds
 		logger.debug("Start up delay between providers is: "+delay+" seconds");
+		if (eventProviders.isEmpty())
+		{
+			return;
+		}
 
+		// One scheduler for all providers.
+		int numThreads = adapterProps.getPropertyAsInt(SCHEDULER_THREADS_PROPERTY, DEFAULT_SCHEDULER_THREADS);
+		logger.debug("Event scheduler for "+eventProviders.size()+" providers uses "+numThreads+" threads.");
+		providerService = ExecutorStrategy.getInstance().newScheduledThreadPool(Math.max(numThreads, 1), "Provider Events", false);
+		
 		int i = 0;
 		for (BaseProvider provider : eventProviders.values())
 		{	
-			// Create thread in thread pool
-			providerService = Executors.newSingleThreadScheduledExecutor();
+			provider.setEventScheduler(providerService);
 			
 			// Ensure there is 10 seconds between the start of each publisher so that they don't hammer
 			// the system at the same time during startup. Startup thread on thread pool.
@@ -0,0 +1,35 @@
+/*
+ * DecodedEventSource.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.rest.queue;
+
+import sif3.infra.rest.queue.EventDecodeStage.DecodedEvent;
+
+/**
+ * A source of already decoded events from which a LocalMessageConsumer can take its events instead of taking them from the
+ * LocalConsumerQueue (i.e. an EventDecodeStage or a lane of the PartitionedEventDispatcher).
+ * 
+ * @author agent
+ */
+public interface DecodedEventSource
+{
+	/**
+	 * Returns the next decoded event. If no event is available this method blocks until one is. Null is returned if the 
+	 * calling thread is interrupted.
+	 * 
+	 * @return See desc.
+	 */
+	public DecodedEvent blockingTake();
+}
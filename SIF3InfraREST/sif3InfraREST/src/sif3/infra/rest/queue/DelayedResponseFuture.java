@@ -0,0 +1,193 @@
+/*
+ * DelayedResponseFuture.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.rest.queue;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sif3.common.interfaces.DelayedResponseHandler;
+import sif3.common.model.DelayedRequestReceipt;
+import sif3.common.ws.Response;
+
+/**
+ * The handle of a pending DELAYED request. It is created by the DelayedResponseRegistry when the request is issued and completed 
+ * once the response for its request ID arrives on the SIF queue, the request times out or it is cancelled. Threads that need the 
+ * response can block on get(). Alternatively the handler given at registration is called when the request is done.<br/><br/>
+ * 
+ * If the response is paged then the request is done once all pages have been handled. get() returns the page that was handled last.
+ * It returns null if the request has timed out. It throws a CancellationException if the request has been cancelled.
+ * 
+ * @author agent
+ */
+public class DelayedResponseFuture implements Future<Response>
+{
+	public enum State {PENDING, COMPLETED, TIMED_OUT, CANCELLED};
+	
+	private DelayedRequestReceipt receipt;
+	private DelayedResponseHandler handler;
+	private long deadline;
+	private long startNanos = System.nanoTime();
+	private CountDownLatch done = new CountDownLatch(1);
+	private volatile State state = State.PENDING;
+	private volatile Response response = null;
+	private Set<String> receivedPages = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private AtomicInteger numPagesHandled = new AtomicInteger(0);
+
+	/*
+	 * Only the registry creates futures.
+	 */
+	DelayedResponseFuture(DelayedRequestReceipt receipt, DelayedResponseHandler handler, long deadline)
+	{
+		super();
+		this.receipt = receipt;
+		this.handler = handler;
+		this.deadline = deadline;
+	}
+
+	public DelayedRequestReceipt getReceipt()
+	{
+		return receipt;
+	}
+	
+	public String getRequestID()
+	{
+		return receipt.getRequestID();
+	}
+	
+	public State getState()
+	{
+		return state;
+	}
+
+	public boolean isTimedOut()
+	{
+		return state == State.TIMED_OUT;
+	}
+	
+	/**
+	 * Cancels the request if it is still pending. A response that arrives after this call is discarded. The provider is not 
+	 * informed.
+	 * 
+	 * @param mayInterruptIfRunning Ignored.
+	 * 
+	 * @return TRUE if the request was still pending and has been cancelled.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		return DelayedResponseRegistry.getInstance().cancel(getRequestID());
+	}
+
+	@Override
+	public boolean isCancelled()
+	{
+		return state == State.CANCELLED;
+	}
+
+	@Override
+	public boolean isDone()
+	{
+		return state != State.PENDING;
+	}
+
+	@Override
+	public Response get() throws InterruptedException
+	{
+		done.await();
+		return getResult();
+	}
+
+	@Override
+	public Response get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException
+	{
+		if (!done.await(timeout, unit))
+		{
+			throw new TimeoutException("No response for request "+getRequestID()+" received, yet.");
+		}
+		return getResult();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "DelayedResponseFuture [state=" + state + ", receipt=" + receipt + "]";
+	}
+
+	/*---------------------------------------------------------*/
+	/*-- Package Methods: Only called by the owning registry --*/
+	/*---------------------------------------------------------*/
+	DelayedResponseHandler getHandler()
+	{
+		return handler;
+	}
+
+	long getDeadline()
+	{
+		return deadline;
+	}
+	
+	long getElapsedNanos()
+	{
+		return System.nanoTime() - startNanos;
+	}
+	
+	/*
+	 * Records that the given page of the response has been received. Returns the number of different pages received so far or -1
+	 * if the page has been received before. A response without page number counts as one page.
+	 */
+	int pageReceived(String pageNo)
+	{
+		if (!receivedPages.add((pageNo == null) ? "" : pageNo))
+		{
+			return -1;
+		}
+		return receivedPages.size();
+	}
+	
+	/*
+	 * Records that the handler has been called for a page. Returns the number of pages handled so far.
+	 */
+	int pageHandled()
+	{
+		return numPagesHandled.incrementAndGet();
+	}
+	
+	void finish(State finalState, Response finalResponse)
+	{
+		response = finalResponse;
+		state = finalState;
+		done.countDown();
+	}
+	
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	private Response getResult()
+	{
+		if (state == State.CANCELLED)
+		{
+			throw new CancellationException("Request "+getRequestID()+" has been cancelled.");
+		}
+		return response;
+	}
+}
@@ -0,0 +1,404 @@
+/*
+ * DelayedResponseRegistry.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.rest.queue;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import sif3.common.header.ResponseHeaderConstants;
+import sif3.common.interfaces.DelayedResponseHandler;
+import sif3.common.model.DelayedRequestReceipt;
+import sif3.common.utils.ExecutorStrategy;
+import sif3.common.ws.Response;
+import sif3.infra.rest.queue.DelayedResponseFuture.State;
+import sif3.infra.rest.queue.types.StageMetrics;
+import au.com.systemic.framework.utils.StringUtils;
+
+/**
+ * This class correlates DELAYED requests with their responses. A consumer registers each DELAYED request with its request ID before 
+ * the request is sent. The provider accepts the request immediately and delivers the actual response later through the consumer's 
+ * SIF queue. The message queue readers pass each such response to onResponse() which matches it to the pending request with the same 
+ * request ID. The request's handler is then called and its future is completed on a callback thread, so that the message queue readers
+ * are never blocked by consumer code.<br/><br/>
+ * 
+ * A response to a DELAYED query can be paged. Each page arrives as its own message with the same request ID and the number of pages in
+ * its paging header (navigationLastPage). The handler is called for each page and the request stays pending until all pages have
+ * arrived. Pages may arrive in any order and their handler calls may run in parallel. A page that arrives twice is discarded.<br/><br/>
+ * 
+ * Each pending request has a deadline. A timer checks the pending requests once a second and times out the ones whose deadline has
+ * passed. Responses that arrive for unknown, timed out or cancelled requests are counted and discarded.<br/><br/>
+ * 
+ * There is one registry per consumer (adapter). It is started by the ConsumerLoader once the SIF queue is known and the message queue 
+ * readers are running. DELAYED requests can only be issued while the registry is started.
+ * 
+ * @author agent
+ */
+public class DelayedResponseRegistry
+{
+	protected final Logger logger = Logger.getLogger(getClass());
+	
+	/* Interval in milliseconds in which pending requests are checked for timeouts */
+	private static final long TIMEOUT_CHECK_INTERVAL = 1000;
+
+	private static DelayedResponseRegistry instance = null;
+	
+	private ConcurrentHashMap<String, DelayedResponseFuture> pendingRequests = new ConcurrentHashMap<String, DelayedResponseFuture>();
+	private volatile String queueID = null;
+	private ExecutorService callbackService = null;
+	private ScheduledExecutorService timerService = null;
+	
+	private StageMetrics responseMetrics = new StageMetrics("Delayed Responses");
+	private AtomicLong numRegistered = new AtomicLong(0);
+	private AtomicLong numCancelled = new AtomicLong(0);
+	private AtomicLong numUnmatched = new AtomicLong(0);
+
+	public static synchronized DelayedResponseRegistry getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new DelayedResponseRegistry();
+		}
+		return instance;
+	}
+	
+	/**
+	 * Starts the registry. After this call DELAYED requests can be registered.
+	 * 
+	 * @param queueID The ID of the SIF queue to which the provider shall deliver delayed responses.
+	 * @param numCallbackThreads The number of threads that call the handlers of completed requests.
+	 */
+	public synchronized void start(String queueID, int numCallbackThreads)
+	{
+		if (isStarted())
+		{
+			logger.error("Delayed response registry is already started for queue "+this.queueID+". Ignore start for queue "+queueID+".");
+			return;
+		}
+		if (StringUtils.isEmpty(queueID))
+		{
+			logger.error("No queue ID given. Delayed response registry is not started and DELAYED requests cannot be issued.");
+			return;
+		}
+		callbackService = ExecutorStrategy.getInstance().newFixedThreadPool(numCallbackThreads, "DelayedResponse - Callback", true);
+		timerService = ExecutorStrategy.getInstance().newScheduledThreadPool(1, "DelayedResponse - Timer", true);
+		timerService.scheduleWithFixedDelay(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				checkTimeouts();
+			}
+		}, TIMEOUT_CHECK_INTERVAL, TIMEOUT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+		this.queueID = queueID;
+		logger.debug("Delayed response registry started for queue "+queueID+" with "+numCallbackThreads+" callback threads.");
+	}
+
+	/**
+	 * Stops the registry. All requests that are still pending are cancelled. Their handlers are not called.
+	 */
+	public synchronized void shutdown()
+	{
+		if (!isStarted())
+		{
+			return;
+		}
+		queueID = null;
+		timerService.shutdownNow();
+		for (DelayedResponseFuture future : pendingRequests.values())
+		{
+			if (pendingRequests.remove(future.getRequestID(), future))
+			{
+				numCancelled.incrementAndGet();
+				future.finish(State.CANCELLED, null);
+			}
+		}
+		callbackService.shutdown();
+		logger.debug("Delayed response registry stopped. "+toString());
+	}
+
+	public boolean isStarted()
+	{
+		return queueID != null;
+	}
+	
+	/**
+	 * @return The ID of the SIF queue to which the provider shall deliver delayed responses. Null if the registry is not started.
+	 */
+	public String getQueueID()
+	{
+		return queueID;
+	}
+	
+	/**
+	 * Registers a DELAYED request. This must be done before the request is sent, otherwise a fast response might arrive before the 
+	 * request is known.
+	 * 
+	 * @param receipt The receipt of the request. It must hold a request ID that is unique.
+	 * @param handler The handler to be called when the request is done. Can be null.
+	 * @param timeoutMillis The time in milliseconds the request waits for its response.
+	 * 
+	 * @return The handle of the pending request. Null if the registry is not started or the request ID is already registered. An
+	 *         error is logged in this case.
+	 */
+	public DelayedResponseFuture register(DelayedRequestReceipt receipt, DelayedResponseHandler handler, long timeoutMillis)
+	{
+		if (!isStarted())
+		{
+			logger.error("Delayed response registry is not started. Cannot register request "+receipt.getRequestID()+".");
+			return null;
+		}
+		DelayedResponseFuture future = new DelayedResponseFuture(receipt, handler, System.currentTimeMillis() + timeoutMillis);
+		if (pendingRequests.putIfAbsent(receipt.getRequestID(), future) != null)
+		{
+			logger.error("A request with ID "+receipt.getRequestID()+" is already pending. Cannot register it again.");
+			return null;
+		}
+		numRegistered.incrementAndGet();
+		return future;
+	}
+	
+	/**
+	 * Returns the handle of the pending request with the given ID.
+	 * 
+	 * @param requestID The request ID.
+	 * 
+	 * @return See desc. Null if no request with the given ID is pending.
+	 */
+	public DelayedResponseFuture getPendingRequest(String requestID)
+	{
+		return (requestID == null) ? null : pendingRequests.get(requestID);
+	}
+
+	/**
+	 * Cancels the pending request with the given ID. Its handler is not called. This is also used if the provider did not accept 
+	 * the DELAYED request.
+	 * 
+	 * @param requestID The request ID.
+	 * 
+	 * @return TRUE if the request was pending and has been cancelled.
+	 */
+	public boolean cancel(String requestID)
+	{
+		DelayedResponseFuture future = (requestID == null) ? null : pendingRequests.remove(requestID);
+		if (future != null)
+		{
+			numCancelled.incrementAndGet();
+			future.finish(State.CANCELLED, null);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Matches a response received from the SIF queue to its pending request. If a pending request is found then its handler is
+	 * called on a callback thread. Its future is completed once the handler has been called for the last page of the response.
+	 * 
+	 * @param response The response (or a page of it) as received from the SIF queue.
+	 * 
+	 * @return TRUE if a pending request for the response has been found. FALSE if the response has no request ID or the request is
+	 *         not pending (i.e. it has timed out or is unknown).
+	 */
+	public boolean onResponse(final Response response)
+	{
+		String requestID = response.getHdrProperties().getHeaderProperty(ResponseHeaderConstants.HDR_REQUEST_ID);
+		final DelayedResponseFuture future = (requestID == null) ? null : pendingRequests.get(requestID);
+		if (future == null)
+		{
+			numUnmatched.incrementAndGet();
+			return false;
+		}
+		
+		final int numPages = getNumPages(response);
+		String pageNo = response.getHdrProperties().getHeaderProperty(ResponseHeaderConstants.HDR_PAGE_NO);
+		int numReceived = future.pageReceived(pageNo);
+		if (numReceived < 0)
+		{
+			logger.info("Page "+pageNo+" of the response to DELAYED request "+requestID+" has been received before. Duplicate is discarded.");
+			return true;
+		}
+		
+		// The request remains pending until the last page has arrived.
+		if ((numReceived >= numPages) && !pendingRequests.remove(requestID, future))
+		{
+			numUnmatched.incrementAndGet(); // timed out or cancelled in the meantime
+			return false;
+		}
+		
+		callback(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					if (future.getHandler() != null)
+					{
+						future.getHandler().onDelayedResponse(response, future.getReceipt());
+					}
+				}
+				catch (Exception ex)
+				{
+					logger.error("Handler failed to process delayed response for request "+future.getRequestID()+": "+ex.getMessage(), ex);
+				}
+				finally
+				{
+					if (future.pageHandled() >= numPages)
+					{
+						responseMetrics.record(future.getElapsedNanos(), true);
+						future.finish(State.COMPLETED, response);
+					}
+				}
+			}
+		});
+		return true;
+	}
+
+	public int getNumPending()
+	{
+		return pendingRequests.size();
+	}
+
+	public long getNumRegistered()
+	{
+		return numRegistered.get();
+	}
+
+	public long getNumCompleted()
+	{
+		return responseMetrics.getCount() - responseMetrics.getNumFailed();
+	}
+
+	public long getNumTimedOut()
+	{
+		return responseMetrics.getNumFailed();
+	}
+
+	public long getNumCancelled()
+	{
+		return numCancelled.get();
+	}
+
+	public long getNumUnmatched()
+	{
+		return numUnmatched.get();
+	}
+
+	/**
+	 * Time between registration and completion of requests. Timed out requests are counted as failed.
+	 * 
+	 * @return See desc.
+	 */
+	public StageMetrics getResponseMetrics()
+	{
+		return responseMetrics;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "DelayedResponseRegistry [queueID=" + queueID + ", pending=" + getNumPending() + ", registered=" + getNumRegistered() 
+				+ ", completed=" + getNumCompleted() + ", timedOut=" + getNumTimedOut() + ", cancelled=" + getNumCancelled() 
+				+ ", unmatched=" + getNumUnmatched() + ", " + responseMetrics + "]";
+	}
+
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	private DelayedResponseRegistry()
+	{
+		super();
+	}
+
+	/*
+	 * Called by the timer. Times out all pending requests whose deadline has passed.
+	 */
+	private void checkTimeouts()
+	{
+		long now = System.currentTimeMillis();
+		for (final DelayedResponseFuture future : pendingRequests.values())
+		{
+			if ((future.getDeadline() <= now) && pendingRequests.remove(future.getRequestID(), future))
+			{
+				logger.info("No response received for DELAYED request "+future.getRequestID()+" ("+future.getReceipt().getServiceName()+") in time. Request timed out.");
+				callback(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						try
+						{
+							if (future.getHandler() != null)
+							{
+								future.getHandler().onDelayedTimeout(future.getReceipt());
+							}
+						}
+						catch (Exception ex)
+						{
+							logger.error("Handler failed to process timeout of request "+future.getRequestID()+": "+ex.getMessage(), ex);
+						}
+						finally
+						{
+							responseMetrics.record(future.getElapsedNanos(), false);
+							future.finish(State.TIMED_OUT, null);
+						}
+					}
+				});
+			}
+		}
+	}
+	
+	/*
+	 * Returns the number of pages of the response as given in its paging header. A response without that header is not paged and
+	 * counts as one page.
+	 */
+	private int getNumPages(Response response)
+	{
+		String lastPage = response.getHdrProperties().getHeaderProperty(ResponseHeaderConstants.HDR_LAST_PAGE_NO);
+		if (StringUtils.notEmpty(lastPage))
+		{
+			try
+			{
+				return Math.max(Integer.parseInt(lastPage.trim()), 1);
+			}
+			catch (NumberFormatException ex)
+			{
+				logger.warn("Invalid "+ResponseHeaderConstants.HDR_LAST_PAGE_NO+" header '"+lastPage+"' in delayed response. Response is treated as not paged.");
+			}
+		}
+		return 1;
+	}
+	
+	/*
+	 * Runs the callback on a callback thread. If the registry is shut down in the meantime the callback runs on the calling thread.
+	 */
+	private void callback(Runnable task)
+	{
+		try
+		{
+			callbackService.execute(task);
+		}
+		catch (RejectedExecutionException ex)
+		{
+			task.run();
+		}
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * EventBatcher.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.rest.queue;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.log4j.Logger;
+
+import sif3.common.interfaces.EventConsumer;
+import sif3.common.model.SIFEvent;
+import sif3.common.model.SIFEventBatch;
+import sif3.common.utils.ExecutorStrategy;
+import sif3.infra.rest.queue.types.EventInfo;
+import sif3.infra.rest.queue.types.StageMetrics;
+
+/**
+ * This class gathers the events of a LocalConsumerQueue into batches. A single thread takes the events off the local queue, decodes 
+ * them and adds them to the open batch of their zone and context. A batch is closed once it holds batchSize events or its first
+ * event has waited for maxWait milliseconds. Closed batches are held in a bounded queue from where LocalBatchConsumer threads take
+ * them.<p>
+ * 
+ * <b>Note:</b><br />
+ * Events in open batches are not yet processed. If the batcher is shut down they are lost.<p>
+ * 
+ * @author agent
+ */
+public class EventBatcher
+{
+	protected final Logger logger = Logger.getLogger(getClass());
+	
+	private LocalConsumerQueue localQueue;
+	private EventConsumer<?> eventConsumer;
+	private String batcherID;
+	private String serviceName;
+	private int batchSize;
+	private long maxWait;
+	private BlockingQueue<SIFEventBatch<?>> batchQueue;
+	private StageMetrics decodeMetrics;
+	private ExecutorService service = null;
+	private EventRetryStage retryStage = null;
+	
+	/* Open batches by zone and context. Only accessed by the batcher thread. */
+	private Map<String, OpenBatch> openBatches = new LinkedHashMap<String, OpenBatch>();
+	
+	/**
+	 * Creates a batcher. The batcher thread is only started once start() is called.
+	 * 
+	 * @param localQueue The local queue from which the events are taken.
+	 * @param eventConsumer The event consumer which provides the unmarshaller and creates the event objects.
+	 * @param batcherID A name of this batcher. Mainly needed for nice debug and error reporting.
+	 * @param serviceName The name of the service of the events (i.e. StudentPersonals).
+	 * @param batchSize The max number of events in a batch.
+	 * @param maxWait The max time in milliseconds an event waits for its batch to fill up.
+	 * @param capacity The max number of closed batches waiting to be processed.
+	 * @param decodeMetrics The metrics to which the decoding time of each event is recorded.
+	 */
+	public EventBatcher(LocalConsumerQueue localQueue, EventConsumer<?> eventConsumer, String batcherID, String serviceName, int batchSize, long maxWait, int capacity, StageMetrics decodeMetrics)
+	{
+		this.localQueue = localQueue;
+		this.eventConsumer = eventConsumer;
+		this.batcherID = batcherID;
+		this.serviceName = serviceName;
+		this.batchSize = Math.max(batchSize, 1);
+		this.maxWait = Math.max(maxWait, 1);
+		this.batchQueue = new ArrayBlockingQueue<SIFEventBatch<?>>(Math.max(capacity, 1));
+		this.decodeMetrics = decodeMetrics;
+	}
+	
+	/**
+	 * Starts the batcher thread.
+	 */
+	public void start()
+	{
+		logger.debug("Start batcher for "+batcherID+": batchSize = "+batchSize+", maxWait = "+maxWait+"ms.");
+		service = ExecutorStrategy.getInstance().newFixedThreadPool(1, batcherID+" Batcher", false);
+		service.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				collect();
+			}
+		});
+	}
+	
+	/**
+	 * Stops the batcher thread. Events in batches that are not yet closed are lost.
+	 */
+	public void shutdown()
+	{
+		if (service != null)
+		{
+			logger.debug("Shut down batcher for "+batcherID+".");
+			service.shutdownNow();
+		}
+	}
+
+	/**
+	 * Sets the retry stage to which events are handed that cannot be decoded. If it is not set then such events are logged and 
+	 * discarded.
+	 * 
+	 * @param retryStage The retry stage. Can be null.
+	 */
+	public void setRetryStage(EventRetryStage retryStage)
+	{
+		this.retryStage = retryStage;
+	}
+	
+	/**
+	 * Returns the next closed batch. If no batch is available this method blocks until one is. Null is returned if the 
+	 * calling thread is interrupted.
+	 * 
+	 * @return See desc.
+	 */
+	public SIFEventBatch<?> blockingTake()
+	{
+		try
+		{
+			return batchQueue.take();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+	
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	private void collect()
+	{
+		try
+		{
+			while (!Thread.currentThread().isInterrupted())
+			{
+				EventInfo eventInfo = localQueue.pull(getTimeToNextDeadline());
+				if (eventInfo != null)
+				{
+					add(eventInfo);
+				}
+				closeExpiredBatches();
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			// Nothing to do. We stop.
+		}
+		logger.debug(batcherID + " batcher has been interrupted. "+openBatches.size()+" open batches are not processed.");
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void add(EventInfo eventInfo) throws InterruptedException
+	{
+		long start = System.nanoTime();
+		SIFEvent event = null;
+		try
+		{
+			event = EventDecodeStage.decodeEvent(eventInfo, eventConsumer);
+			decodeMetrics.record(System.nanoTime() - start, true);
+		}
+		catch (Exception ex)
+		{
+			decodeMetrics.record(System.nanoTime() - start, false);
+			logger.error(batcherID + " batcher failed to decode event for event consumer (" + eventConsumer.getClass().getSimpleName() + "): " + ex.getMessage());
+			failed(eventInfo, ex);
+			return;
+		}
+		
+		String key = ((eventInfo.getZone() != null) ? eventInfo.getZone().getId() : "") + "|" + ((eventInfo.getContext() != null) ? eventInfo.getContext().getId() : "");
+		OpenBatch openBatch = openBatches.get(key);
+		if (openBatch == null)
+		{
+			openBatch = new OpenBatch(new SIFEventBatch(eventInfo.getZone(), eventInfo.getContext(), serviceName), System.currentTimeMillis() + maxWait);
+			openBatches.put(key, openBatch);
+		}
+		openBatch.batch.addEvent(event, eventInfo.getEventMetadata(), eventInfo.getMessageQueueReaderID());
+		if (openBatch.batch.size() >= batchSize)
+		{
+			openBatches.remove(key);
+			batchQueue.put(openBatch.batch);
+		}
+	}
+	
+	private void closeExpiredBatches() throws InterruptedException
+	{
+		long now = System.currentTimeMillis();
+		for (Iterator<OpenBatch> iter = openBatches.values().iterator(); iter.hasNext();)
+		{
+			OpenBatch openBatch = iter.next();
+			if (openBatch.deadline <= now)
+			{
+				iter.remove();
+				batchQueue.put(openBatch.batch);
+			}
+		}
+	}
+	
+	/*
+	 * Returns the time in milliseconds until the first open batch must be closed. If there is no open batch then maxWait is returned.
+	 */
+	private long getTimeToNextDeadline()
+	{
+		long now = System.currentTimeMillis();
+		long wait = maxWait;
+		for (OpenBatch openBatch : openBatches.values())
+		{
+			wait = Math.min(wait, openBatch.deadline - now);
+		}
+		return Math.max(wait, 0);
+	}
+	
+	private void failed(EventInfo eventInfo, Exception ex)
+	{
+		if (retryStage != null)
+		{
+			retryStage.decodeFailed(eventInfo, ex);
+		}
+		else
+		{
+			logger.error("Event Data Info for failed event:\n" + eventInfo);
+		}
+	}
+	
+	private static class OpenBatch
+	{
+		private SIFEventBatch<?> batch;
+		private long deadline;
+		
+		private OpenBatch(SIFEventBatch<?> batch, long deadline)
+		{
+			this.batch = batch;
+			this.deadline = deadline;
+		}
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * EventDecodeStage.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.rest.queue;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.log4j.Logger;
+
+import sif3.common.interfaces.EventConsumer;
+import sif3.common.model.SIFEvent;
+import sif3.common.utils.ExecutorStrategy;
+import sif3.infra.rest.queue.types.EventInfo;
+import sif3.infra.rest.queue.types.StageMetrics;
+
+/**
+ * This class is an optional stage between the LocalConsumerQueue and the LocalMessageConsumer threads. It has its own thread pool
+ * that takes events off the LocalConsumerQueue, unmarshals the payload and creates the SIFEvent object. The decoded events are
+ * held in a bounded queue from where the LocalMessageConsumer threads take them to call the onEvent() method of the consumer. This 
+ * allows the number of threads decoding events and the number of threads processing them to be set independently.<p>
+ * 
+ * <b>Note:</b><br />
+ * Events are decoded concurrently which means the order in which they are passed to the LocalMessageConsumer threads may differ
+ * from the order in which they have been received.<p>
+ * 
+ * @author agent
+ */
+public class EventDecodeStage implements DecodedEventSource
+{
+	protected final Logger logger = Logger.getLogger(getClass());
+	
+	private LocalConsumerQueue localQueue;
+	private EventConsumer<?> eventConsumer;
+	private String stageID;
+	private int numThreads;
+	private BlockingQueue<DecodedEvent> decodedQueue;
+	private StageMetrics metrics;
+	private ExecutorService service = null;
+	private EventRetryStage retryStage = null;
+	
+	/**
+	 * Holds a decoded event together with the event information it has been created from.
+	 */
+	public static class DecodedEvent
+	{
+		private EventInfo eventInfo;
+		private SIFEvent<?> event;
+		
+		public DecodedEvent(EventInfo eventInfo, SIFEvent<?> event)
+		{
+			this.eventInfo = eventInfo;
+			this.event = event;
+		}
+
+		public EventInfo getEventInfo()
+		{
+			return eventInfo;
+		}
+
+		public SIFEvent<?> getEvent()
+		{
+			return event;
+		}
+	}
+
+	/**
+	 * Creates a decode stage. The threads are only started once start() is called.
+	 * 
+	 * @param localQueue The local queue from which the events are taken.
+	 * @param eventConsumer The event consumer which provides the unmarshaller and creates the event objects.
+	 * @param stageID A name of this stage. Mainly needed for nice debug and error reporting.
+	 * @param numThreads The number of threads decoding events.
+	 * @param capacity The max number of decoded events held for the LocalMessageConsumer threads.
+	 * @param metrics The metrics to which the decoding time of each event is recorded.
+	 */
+	public EventDecodeStage(LocalConsumerQueue localQueue, EventConsumer<?> eventConsumer, String stageID, int numThreads, int capacity, StageMetrics metrics)
+	{
+		this.localQueue = localQueue;
+		this.eventConsumer = eventConsumer;
+		this.stageID = stageID;
+		this.numThreads = Math.max(numThreads, 1);
+		this.decodedQueue = new ArrayBlockingQueue<DecodedEvent>(Math.max(capacity, 1));
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Starts the decoder threads.
+	 */
+	public void start()
+	{
+		logger.debug("Start "+numThreads+" decoder threads for "+stageID+".");
+		service = ExecutorStrategy.getInstance().newFixedThreadPool(numThreads, stageID+" Decoder", false);
+		for (int i = 0; i < numThreads; i++)
+		{
+			final String decoderID = stageID+" Decoder "+(i+1);
+			service.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					decode(decoderID);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Stops the decoder threads. Events that have already been decoded but not taken are lost.
+	 */
+	public void shutdown()
+	{
+		if (service != null)
+		{
+			logger.debug("Shut down decoder threads for "+stageID+". "+metrics);
+			service.shutdownNow();
+		}
+	}
+
+	/**
+	 * Sets the retry stage to which events are handed that cannot be decoded. If it is not set then such events are logged and 
+	 * discarded.
+	 * 
+	 * @param retryStage The retry stage. Can be null.
+	 */
+	public void setRetryStage(EventRetryStage retryStage)
+	{
+		this.retryStage = retryStage;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see sif3.infra.rest.queue.DecodedEventSource#blockingTake()
+	 */
+	@Override
+	public DecodedEvent blockingTake()
+	{
+		try
+		{
+			return decodedQueue.take();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the number of decoded events currently waiting to be processed.
+	 * 
+	 * @return See desc.
+	 */
+	public int getDepth()
+	{
+		return decodedQueue.size();
+	}
+	
+	public StageMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * Unmarshals the payload of the given event and creates the event object. Any error is thrown to the caller.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static SIFEvent<?> decodeEvent(EventInfo eventInfo, EventConsumer eventConsumer) throws Exception
+	{
+		Object eventPayload = eventConsumer.getUnmarshaller().unmarshal(eventInfo.getEventPayload(), eventConsumer.getMultiObjectClassInfo().getObjectType(), eventInfo.getMediaType());
+
+		// Create actual event Object
+		SIFEvent event = eventConsumer.createEventObject(eventPayload, eventInfo.getEventAction(), eventInfo.getUpdateType());
+		event.setMetadata(eventInfo.getMetadata());
+		return event;
+	}
+	
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	private void decode(String decoderID)
+	{
+		while (!Thread.currentThread().isInterrupted())
+		{
+			EventInfo eventInfo = localQueue.blockingPull();
+			if (eventInfo != null)
+			{
+				long start = System.nanoTime();
+				try
+				{
+					SIFEvent<?> event = decodeEvent(eventInfo, eventConsumer);
+					metrics.record(System.nanoTime() - start, true);
+					decodedQueue.put(new DecodedEvent(eventInfo, event));
+				}
+				catch (InterruptedException ex)
+				{
+					logger.debug(decoderID + " has been interrupted. Decoded event is lost.");
+					return;
+				}
+				catch (Exception ex)
+				{
+					metrics.record(System.nanoTime() - start, false);
+					logger.error(decoderID + " failed to decode event for event consumer (" + eventConsumer.getClass().getSimpleName() + "): " + ex.getMessage());
+					failed(eventInfo, ex);
+				}
+			}
+			else
+			{
+				logger.error(decoderID + " has encountered a problem receiving an event from its local consumer queue.");
+			}
+		}
+	}
+	
+	private void failed(EventInfo eventInfo, Exception ex)
+	{
+		if (retryStage != null)
+		{
+			retryStage.decodeFailed(eventInfo, ex);
+		}
+		else
+		{
+			logger.error("Event Data Info for failed event:\n" + eventInfo);
+		}
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ * EventRetryStage.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package sif3.infra.rest.queue;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import sif3.common.interfaces.EventConsumer;
+import sif3.common.model.SIFEvent;
+import sif3.common.utils.ExecutorStrategy;
+import sif3.infra.rest.queue.persist.DeadLetterStore;
+import sif3.infra.rest.queue.types.EventInfo;
+
+/**
+ * This class handles events that could not be processed by an event consumer. If the onEvent() method of the consumer fails then
+ * the event is retried with an exponential backoff: The n-th retry is done after initialDelay * 2^(n-1) milliseconds (at most 
+ * maxDelay) plus some random jitter, so that many failed events are not retried all at the same time. Retries run on the threads of
+ * this stage, so they never block the local consumer threads that process the healthy events. If the event still fails after 
+ * maxAttempts attempts (including the first one) then it is added to the dead letter store.<p>
+ * 
+ * Events that cannot be decoded are added to the dead letter store straight away as decoding the same payload again will fail 
+ * again.<p>
+ * 
+ * Note that a retried event is processed after events that have been received later. If events must be processed in order (i.e. 
+ * partitioned dispatch) then the consumer must be able to deal with that or retries should be disabled (maxAttempts = 1). If no
+ * dead letter store is given then events that failed for the last time are logged and discarded.
+ * 
+ * @author agent
+ */
+public class EventRetryStage
+{
+	protected final Logger logger = Logger.getLogger(getClass());
+	
+	private static final Random jitter = new Random();
+
+	private String stageID;
+	private EventConsumer<?> eventConsumer;
+	private int maxAttempts;
+	private long initialDelay;
+	private long maxDelay;
+	private int numThreads;
+	private DeadLetterStore deadLetterStore;
+	private ScheduledExecutorService service = null;
+	
+	/* Retries that are scheduled but have not run yet. They are dead-lettered if this stage is shut down. */
+	private ConcurrentHashMap<RetryTask, Boolean> pendingRetries = new ConcurrentHashMap<RetryTask, Boolean>();
+	
+	/* Metrics */
+	private AtomicLong numRetries = new AtomicLong(0);
+	private AtomicLong numRecovered = new AtomicLong(0);
+	private AtomicLong numDeadLettered = new AtomicLong(0);
+	private AtomicLong numDiscarded = new AtomicLong(0);
+
+	/**
+	 * Creates a retry stage. The stage must be started before it retries any events.
+	 * 
+	 * @param stageID A name of the stage. Mainly needed for nice debug and error reporting and the name of the retry threads.
+	 * @param eventConsumer The event consumer whose onEvent() method is called for each retry.
+	 * @param maxAttempts The max number of times onEvent() is called for an event, including the first attempt. If 1 or less then 
+	 *                    failed events are not retried.
+	 * @param initialDelay The delay in milliseconds before the first retry.
+	 * @param maxDelay The max delay in milliseconds between two retries.
+	 * @param numThreads The number of threads that run retries.
+	 * @param deadLetterStore The store for events that failed for the last time. Can be null in which case these events are discarded.
+	 */
+	public EventRetryStage(String stageID, EventConsumer<?> eventConsumer, int maxAttempts, long initialDelay, long maxDelay, int numThreads, DeadLetterStore deadLetterStore)
+	{
+		this.stageID = stageID;
+		this.eventConsumer = eventConsumer;
+		this.maxAttempts = Math.max(maxAttempts, 1);
+		this.initialDelay = Math.max(initialDelay, 0);
+		this.maxDelay = Math.max(maxDelay, this.initialDelay);
+		this.numThreads = Math.max(numThreads, 1);
+		this.deadLetterStore = deadLetterStore;
+	}
+	
+	public void start()
+	{
+		if ((service == null) && (maxAttempts > 1))
+		{
+			logger.debug("Start retry stage "+stageID+" with "+numThreads+" threads: maxAttempts = "+maxAttempts+", initialDelay = "+initialDelay+"ms, maxDelay = "+maxDelay+"ms");
+			service = ExecutorStrategy.getInstance().newScheduledThreadPool(numThreads, stageID+" Retry", true);
+		}
+	}
+	
+	/**
+	 * Stops the retry threads. Retries that have not run yet are added to the dead letter store, so they are not lost.
+	 */
+	public void shutdown()
+	{
+		if (service != null)
+		{
+			service.shutdownNow();
+			for (RetryTask task : pendingRetries.keySet())
+			{
+				if (task.claim())
+				{
+					deadLetter(task.eventInfo, task.attempt, "Retry stage has been shut down before retry "+task.attempt+": "+task.reason);
+				}
+			}
+			pendingRetries.clear();
+			service = null;
+		}
+		logger.debug("Retry stage "+stageID+" has been shut down. "+toString());
+	}
+
+	/**
+	 * This method is called if the onEvent() method of the event consumer has failed for the given event the first time. The 
+	 * event is retried later or added to the dead letter store if retries are disabled.
+	 * 
+	 * @param event The decoded event.
+	 * @param eventInfo The event as it has been received.
+	 * @param ex The exception that has been thrown by onEvent().
+	 */
+	public void processFailed(SIFEvent<?> event, EventInfo eventInfo, Exception ex)
+	{
+		retryOrDeadLetter(event, eventInfo, 1, getReason(ex));
+	}
+	
+	/**
+	 * This method is called if the given event could not be decoded. The event is added to the dead letter store straight away.
+	 * 
+	 * @param eventInfo The event as it has been received.
+	 * @param ex The exception that has been thrown when the event has been decoded.
+	 */
+	public void decodeFailed(EventInfo eventInfo, Exception ex)
+	{
+		deadLetter(eventInfo, 1, "Failed to decode event: "+getReason(ex));
+	}
+	
+	public DeadLetterStore getDeadLetterStore()
+	{
+		return deadLetterStore;
+	}
+
+	public int getMaxAttempts()
+	{
+		return maxAttempts;
+	}
+
+	/**
+	 * Returns the number of retries that are scheduled but have not run yet.
+	 * 
+	 * @return See desc.
+	 */
+	public int getNumPending()
+	{
+		return pendingRetries.size();
+	}
+
+	/**
+	 * Returns the number of retries that have been run.
+	 * 
+	 * @return See desc.
+	 */
+	public long getNumRetries()
+	{
+		return numRetries.get();
+	}
+
+	/**
+	 * Returns the number of events that have been processed successfully by a retry.
+	 * 
+	 * @return See desc.
+	 */
+	public long getNumRecovered()
+	{
+		return numRecovered.get();
+	}
+
+	/**
+	 * Returns the number of events that have been added to the dead letter store.
+	 * 
+	 * @return See desc.
+	 */
+	public long getNumDeadLettered()
+	{
+		return numDeadLettered.get();
+	}
+
+	/**
+	 * Returns the number of events that failed for the last time but could not be added to a dead letter store.
+	 * 
+	 * @return See desc.
+	 */
+	public long getNumDiscarded()
+	{
+		return numDiscarded.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "EventRetryStage [stageID=" + stageID + ", pending=" + getNumPending() + ", retries=" + getNumRetries() + ", recovered=" + getNumRecovered() + ", deadLettered=" + getNumDeadLettered() + ", discarded=" + getNumDiscarded() + "]";
+	}
+
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	/*
+	 * 'attempt' is the number of the attempt that has just failed.
+	 */
+	private void retryOrDeadLetter(SIFEvent<?> event, EventInfo eventInfo, int attempt, String reason)
+	{
+		ScheduledExecutorService retryService = service;
+		if ((attempt < maxAttempts) && (retryService != null))
+		{
+			RetryTask task = new RetryTask(event, eventInfo, attempt + 1, reason);
+			long delay = getDelay(attempt);
+			pendingRetries.put(task, Boolean.TRUE);
+			try
+			{
+				retryService.schedule(task, delay, TimeUnit.MILLISECONDS);
+				logger.info(stageID+": Event has failed "+attempt+" time(s) ("+reason+"). Retry in "+delay+"ms.");
+				return;
+			}
+			catch (RejectedExecutionException ex)
+			{
+				// Stage is shut down. The event is dead-lettered below, unless shutdown() has done that already.
+				pendingRetries.remove(task);
+				if (!task.claim())
+				{
+					return;
+				}
+			}
+		}
+		deadLetter(eventInfo, attempt, reason);
+	}
+	
+	private void deadLetter(EventInfo eventInfo, int attempts, String reason)
+	{
+		if ((deadLetterStore != null) && deadLetterStore.append(eventInfo, attempts, reason))
+		{
+			numDeadLettered.incrementAndGet();
+			logger.error(stageID+": Event has failed "+attempts+" time(s) ("+reason+"). It is added to the dead letter store "+deadLetterStore.getFile().getAbsolutePath());
+		}
+		else
+		{
+			numDiscarded.incrementAndGet();
+			logger.error(stageID+": Event has failed "+attempts+" time(s) ("+reason+"). Event is discarded. Event Data Info for failed event:\n" + eventInfo);
+		}
+	}
+	
+	/*
+	 * Delay before the retry that follows the given failed attempt: initialDelay * 2^(attempt-1), max maxDelay, plus up to 
+	 * 20% jitter.
+	 */
+	private long getDelay(int attempt)
+	{
+		long delay = initialDelay << Math.min(attempt - 1, 30);
+		if ((delay < 0) || (delay > maxDelay))
+		{
+			delay = maxDelay;
+		}
+		return delay + (long)(jitter.nextDouble() * delay * 0.2);
+	}
+	
+	private String getReason(Exception ex)
+	{
+		return (ex != null) ? ex.getClass().getSimpleName()+": "+ex.getMessage() : "Unknown error";
+	}
+	
+	/*
+	 * A retry of an event. A task is run by the retry threads or dead-lettered by shutdown(), whoever claims it first.
+	 */
+	private class RetryTask implements Runnable
+	{
+		private SIFEvent<?> event;
+		private EventInfo eventInfo;
+		private int attempt;
+		private String reason;
+		private AtomicBoolean claimed = new AtomicBoolean(false);
+		
+		private RetryTask(SIFEvent<?> event, EventInfo eventInfo, int attempt, String reason)
+		{
+			this.event = event;
+			this.eventInfo = eventInfo;
+			this.attempt = attempt;
+			this.reason = reason;
+		}
+		
+		private boolean claim()
+		{
+			return claimed.compareAndSet(false, true);
+		}
+		
+		@Override
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		public void run()
+		{
+			if (!claim())
+			{
+				return;
+			}
+			pendingRetries.remove(this);
+			numRetries.incrementAndGet();
+			try
+			{
+				((EventConsumer)eventConsumer).onEvent((SIFEvent)event, eventInfo.getZone(), eventInfo.getContext(), eventInfo.getEventMetadata(), eventInfo.getMessageQueueReaderID(), stageID+" Retry");
+				numRecovered.incrementAndGet();
+				logger.info(stageID+": Event has been processed successfully with attempt "+attempt+".");
+			}
+			catch (Exception ex)
+			{
+				retryOrDeadLetter(event, eventInfo, attempt, getReason(ex));
+			}
+		}
+	}
+}
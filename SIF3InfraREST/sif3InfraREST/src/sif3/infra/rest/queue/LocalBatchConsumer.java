@@ -0,0 +1,130 @@
+/*
+ * LocalBatchConsumer.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.rest.queue;
+
+import org.apache.log4j.Logger;
+
+import sif3.common.interfaces.BatchEventConsumer;
+import sif3.common.interfaces.EventConsumer;
+import sif3.common.model.EventMetadata;
+import sif3.common.model.SIFEvent;
+import sif3.common.model.SIFEventBatch;
+import sif3.infra.rest.queue.types.StageMetrics;
+
+
+/**
+ * This class allows the subscriber to consume batches of events in a multi-threaded manner. It takes closed batches from an
+ * EventBatcher and passes them to the processEvents() method of the batch event consumer. If the batch fails and fallback is
+ * enabled then each event of the batch is passed to the onEvent() method of the event consumer one by one.<p>
+ * 
+ * @author agent
+ *
+ */
+public class LocalBatchConsumer implements Runnable
+{
+	protected final Logger logger = Logger.getLogger(getClass());
+
+	private EventBatcher batcher;
+	private String consumerID;
+	private EventConsumer<?> eventConsumer;
+	private boolean fallback;
+	private StageMetrics processMetrics;
+	
+	/**
+	 * This method initialises a Consumer to be able to receive and process batches of events.
+	 * 
+	 * @param batcher The batcher from which batches are taken.
+	 * @param consumerID A name of the consumer. Mainly needed for nice debug and error reporting.
+	 * @param eventConsumer An instance of consumer that will process the batches. It must implement the BatchEventConsumer interface.
+	 * @param fallback TRUE: Events of a failed batch are passed to the consumer one by one. FALSE: A failed batch is discarded.
+	 * @param processMetrics The metrics to which the processing time of each batch is recorded. Can be null.
+	 */
+	public LocalBatchConsumer(EventBatcher batcher, String consumerID, EventConsumer<?> eventConsumer, boolean fallback, StageMetrics processMetrics)
+	{
+		this.batcher = batcher;
+		this.consumerID = consumerID;
+		this.eventConsumer = eventConsumer;
+		this.fallback = fallback;
+		this.processMetrics = processMetrics;
+	}
+	
+	/**
+	 * Required for this class to run in its own thread.
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run()
+	{
+		while (!Thread.currentThread().isInterrupted())
+		{
+			SIFEventBatch<?> batch = batcher.blockingTake();
+			if (batch != null)
+			{
+				logger.debug(consumerID + " has received a batch: " + batch);
+				if (!process(batch) && fallback)
+				{
+					logger.info(consumerID + ": Process " + batch.size() + " events of failed batch one by one.");
+					processOneByOne(batch);
+				}
+			}
+		}
+		logger.debug(consumerID + " has been interrupted. Stop consuming batches.");
+	}
+	
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private boolean process(SIFEventBatch batch)
+	{
+		long start = System.nanoTime();
+		boolean success = false;
+		try
+		{
+			success = ((BatchEventConsumer)eventConsumer).processEvents(batch, consumerID);
+			if (!success)
+			{
+				logger.error("Event consumer (" + eventConsumer.getClass().getSimpleName() + ") failed to process batch: " + batch);
+			}
+		}
+		catch (Exception ex)
+		{
+			logger.error("Failed to send batch to event consumer (" + eventConsumer.getClass().getSimpleName() + "): " + ex.getMessage() + ". Batch: " + batch, ex);
+		}
+		if (processMetrics != null)
+		{
+			processMetrics.record(System.nanoTime() - start, success);
+		}
+		return success;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void processOneByOne(SIFEventBatch batch)
+	{
+		for (int i = 0; i < batch.size(); i++)
+		{
+			try
+			{
+				((EventConsumer)eventConsumer).onEvent((SIFEvent)batch.getEvents().get(i), batch.getZone(), batch.getContext(), (EventMetadata)batch.getEventMetadata().get(i), (String)batch.getMsgReadIDs().get(i), consumerID);
+			}
+			catch (Exception ex)
+			{
+				logger.error("Failed to send event " + (i + 1) + " of failed batch to event consumer (" + eventConsumer.getClass().getSimpleName() + "): " + ex.getMessage() + ". Event is discarded.");
+			}
+		}
+	}
+}
@@ -17,11 +17,20 @@
 */
 package sif3.infra.rest.queue;
 
+import java.io.File;
+import java.util.LinkedList;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.log4j.Logger;
 
+import sif3.infra.rest.queue.persist.EventInfoCodec;
+import sif3.infra.rest.queue.persist.SegmentedEventLog;
 import sif3.infra.rest.queue.types.EventInfo;
 import au.com.systemic.framework.utils.StringUtils;
 
@@ -35,10 +44,24 @@ import au.com.systemic.framework.utils.StringUtils;
  * changes in the classes that use this LocalConsumerQueue class.<p>
  * 
  * <b>Note:</b><br />
- * At this point in time the persistence functionality is not yet implemented. This might be a future 
- * feature. This means if the system should go down, the messages currently held in the queue are lost. 
- * One needs to carefully analyse what capacity of the subscriber queue shall be as this is the maximum 
- * number of lost messages in case of a system failure.<p>
+ * By default the queue is held in memory only. This means if the system should go down, the messages currently 
+ * held in the queue are lost. One needs to carefully analyse what capacity of the subscriber queue shall be as 
+ * this is the maximum number of lost messages in case of a system failure.<p>
+ * 
+ * <b>Persistent Queue:</b><br />
+ * If the queue is created as persistent queue then each event is appended to a memory mapped segment log on disk
+ * (see SegmentedEventLog) in a sub-directory named after the localQueueID of the workingDir before blockingPush()
+ * returns. The capacity is then the maximum number of events held in the log that have not been taken off the queue.
+ * Events are read from the log into a small in-memory buffer from where they are taken by blockingPull(). An event 
+ * is only marked as consumed in the log once it has been taken off the queue. Events that have not been taken off 
+ * the queue are available again once the queue is re-created (i.e. after a restart).<p>
+ * 
+ * <b>Overflow Policy & High-Water Mark:</b><br />
+ * By default blockingPush() blocks while the queue is full (OverflowPolicy.BLOCK). Alternatively it can give up after a
+ * timeout (OverflowPolicy.TIMEOUT) or discard the oldest event on the queue to make room for the new one 
+ * (OverflowPolicy.DROP_OLDEST). A high-water mark can be set which readers of the SIF queue use to throttle their polling
+ * before the queue is full (see isAboveHighWaterMark()). The current depth of the queue as well as the peak depth and the 
+ * number of discarded events are available as metrics.<p>
  * 
  * @author Joerg Huber
  *
@@ -46,13 +69,38 @@ import au.com.systemic.framework.utils.StringUtils;
 public class LocalConsumerQueue
 {	
 	protected final Logger logger = Logger.getLogger(getClass());
+	
+	/**
+	 * Defines what blockingPush() does if the queue is full.<br/>
+	 * BLOCK: Wait until space becomes available.<br/>
+	 * TIMEOUT: Wait up to a given timeout. If no space became available then the event is discarded.<br/>
+	 * DROP_OLDEST: Discard the oldest event on the queue and add the new event without waiting.
+	 */
+	public enum OverflowPolicy {BLOCK, TIMEOUT, DROP_OLDEST};
 
 	private BlockingQueue<EventInfo> queue = null;
+	private int capacity;
+	
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+	private long pushTimeout = 0; // milliseconds
+	private int highWaterMark = 0; // 0 = not set
+	
+	/* Metrics */
+	private AtomicInteger maxDepth = new AtomicInteger(0);
+	private AtomicLong numDropped = new AtomicLong(0);
 	
-	/* Properties used in future development once persistence will be implemented. */
     private String localQueueID;
-	@SuppressWarnings("unused")
     private String workingDir;
+    
+    /* Persistent queue only. */
+    private SegmentedEventLog log = null;
+    private EventInfoCodec codec = null;
+    private int bufferSize;
+    private LinkedList<BufferedEvent> buffer = null;
+    private ReentrantLock lock = null;
+    private Condition notEmpty = null;
+    private Condition notFull = null;
+    private volatile int persistentDepth = 0;
 	
 	/**
 	 * This initialises the Local Queue for use in multi-threaded environment.<p>
@@ -70,7 +118,153 @@ public class LocalConsumerQueue
 	{
 		this.localQueueID = StringUtils.isEmpty(localQueueID) ? "LocalConsumerQueue" : localQueueID.replaceAll("\\s+","");
 		this.workingDir = StringUtils.isEmpty(workingDir) ? "" : workingDir.replaceAll("\\s+","");;
-		this.queue = new ArrayBlockingQueue<EventInfo>(capacity);
+		this.capacity = Math.max(capacity, 1);
+		this.queue = new ArrayBlockingQueue<EventInfo>(this.capacity);
+	}
+	
+	/**
+	 * This initialises a persistent Local Queue for use in multi-threaded environment. If the persistent store cannot be opened
+	 * then an error is logged and the queue falls back to an in-memory queue of the given capacity.<p>
+	 * 
+	 * @param capacity The max number of events held in the persistent store that have not yet been taken off the queue.
+	 * @param localQueueID A unique name representing this queue. This ID should not contain any white spaces. In
+	 *                fact all white spaces will be removed from this value. It is used as the name of the directory of the
+	 *                persistent store.
+	 * @param workingDir This is the directory in which the persistent store is created. It will be created if it doesn't exist.
+	 * @param bufferSize The number of events read in one go from the persistent store and held in memory.
+	 * @param segmentSize The size of each segment file of the persistent store in bytes.
+	 * @param syncWrites TRUE: Force each write to the persistent store to disk. This survives an operating system crash but is slow.
+	 *                   FALSE: Leave it to the operating system to write changes to disk. This survives a crash of the JVM.
+	 */
+	public LocalConsumerQueue(int capacity, String localQueueID, String workingDir, int bufferSize, int segmentSize, boolean syncWrites)
+	{
+		this(capacity, localQueueID, workingDir);
+		try
+		{
+			this.log = new SegmentedEventLog(new File(this.workingDir, this.localQueueID), segmentSize, syncWrites);
+			this.codec = new EventInfoCodec();
+			this.bufferSize = Math.max(bufferSize, 1);
+			this.buffer = new LinkedList<BufferedEvent>();
+			this.lock = new ReentrantLock();
+			this.notEmpty = lock.newCondition();
+			this.notFull = lock.newCondition();
+			this.queue = null;
+			this.persistentDepth = (int)Math.min(log.getNumUnread(), Integer.MAX_VALUE);
+			logger.debug("Persistent local queue "+getLocalQueueID()+" created in "+log.getDir().getAbsolutePath()+" with capacity = "+capacity+". It holds "+log.getNumUnread()+" events from a previous run.");
+		}
+		catch (Exception ex)
+		{
+			logger.error("Failed to create persistent local queue "+getLocalQueueID()+" in "+this.workingDir+": "+ex.getMessage()+". Use in-memory queue instead.", ex);
+			this.log = null;
+		}
+	}
+	
+	/**
+	 * Returns TRUE if this queue is backed by a persistent store.
+	 * 
+	 * @return See desc.
+	 */
+	public boolean isPersistent()
+	{
+		return log != null;
+	}
+	
+	/**
+	 * Writes all pending changes of a persistent queue to disk. This should be called when the consumer shuts down. For an
+	 * in-memory queue this method does nothing.
+	 */
+	public void flush()
+	{
+		if (log != null)
+		{
+			log.flush();
+		}
+	}
+	
+	/**
+	 * Sets what blockingPush() shall do if the queue is full.
+	 * 
+	 * @param overflowPolicy The policy to apply. If null then OverflowPolicy.BLOCK is used.
+	 * @param pushTimeout The max time in milliseconds blockingPush() waits for space if the policy is OverflowPolicy.TIMEOUT. 
+	 *                    Ignored for all other policies.
+	 */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy, long pushTimeout)
+	{
+		this.overflowPolicy = (overflowPolicy == null) ? OverflowPolicy.BLOCK : overflowPolicy;
+		this.pushTimeout = Math.max(pushTimeout, 0);
+	}
+	
+	public OverflowPolicy getOverflowPolicy()
+	{
+		return overflowPolicy;
+	}
+	
+	public long getPushTimeout()
+	{
+		return pushTimeout;
+	}
+	
+	/**
+	 * Sets the number of events on the queue at which isAboveHighWaterMark() returns TRUE. A value of 0 or less means that
+	 * no high-water mark is set. A value larger than the capacity is treated as the capacity of the queue.
+	 * 
+	 * @param highWaterMark See desc.
+	 */
+	public void setHighWaterMark(int highWaterMark)
+	{
+		this.highWaterMark = highWaterMark;
+	}
+	
+	public int getHighWaterMark()
+	{
+		return Math.min(highWaterMark, capacity);
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+	
+	/**
+	 * Returns the number of events currently held by this queue that have not yet been taken off the queue.
+	 * 
+	 * @return See desc.
+	 */
+	public int getDepth()
+	{
+		return (log != null) ? persistentDepth : queue.size();
+	}
+	
+	/**
+	 * Returns the max number of events that were held by this queue at any time since it has been created.
+	 * 
+	 * @return See desc.
+	 */
+	public int getMaxDepth()
+	{
+		return maxDepth.get();
+	}
+	
+	/**
+	 * Returns the number of events that have been discarded because the queue was full (OverflowPolicy.TIMEOUT or 
+	 * OverflowPolicy.DROP_OLDEST).
+	 * 
+	 * @return See desc.
+	 */
+	public long getNumDropped()
+	{
+		return numDropped.get();
+	}
+	
+	/**
+	 * Returns TRUE if the number of events on this queue has reached the high-water mark. Readers of a SIF queue should 
+	 * not get any further messages until this method returns FALSE. If no high-water mark is set then FALSE is returned.
+	 * 
+	 * @return See desc.
+	 */
+	public boolean isAboveHighWaterMark()
+	{
+		return (highWaterMark > 0) && (getDepth() >= getHighWaterMark());
 	}
 	
 	public String getLocalQueueID()
@@ -86,21 +280,35 @@ public class LocalConsumerQueue
 	/**
 	 * This method attempts to put an event from a SIF Message Queue on to the LocalConsumerQueue. If the capacity of 
 	 * the queue is below the threshold defined in the constructor then the messageResponse is put on the queue 
-	 * immediately. If the queue is full this method blocks indefinitely until a 'slot' becomes available 
-	 * (ie. the size of the queue falls below the capacity defined in the constructor). This means a 
-	 * consumer has taken a element off the queue.<p>
+	 * immediately. If the queue is full then the behaviour depends on the overflow policy (see setOverflowPolicy()). With
+	 * the default policy this method blocks indefinitely until a 'slot' becomes available (ie. the size of the queue falls
+	 * below the capacity defined in the constructor). This means a consumer has taken a element off the queue.<p>
 	 * 
 	 * @param event The element to be put on the queue.
+	 * 
+	 * @return TRUE if the event has been put on the queue. FALSE if the event has been discarded because the queue remained
+	 *         full for the push timeout or an error occurred.
 	 */
-	public void blockingPush(EventInfo event)
+	public boolean blockingPush(EventInfo event)
 	{
 		try
 		{
-			queue.put(event);
+			boolean pushed = (log != null) ? persistentPush(event) : memoryPush(event);
+			if (pushed)
+			{
+				updateMaxDepth();
+			}
+			else
+			{
+				numDropped.incrementAndGet();
+				logger.warn("LocalConsumerQueue "+getLocalQueueID()+" remained full for "+pushTimeout+" milliseconds. Event is discarded.");
+			}
+			return pushed;
 		}
 		catch (Exception ex)
 		{
 			logger.error("Failed to push the 'event' on to the LocalConsumerQueue: "+ex.getMessage(),ex);
+			return false;
 		}
 	}
 	
@@ -115,7 +323,13 @@ public class LocalConsumerQueue
 	{
 		try
 		{
-			return queue.take();
+			return (log != null) ? persistentPull(-1) : queue.take();
+		}
+		catch (InterruptedException ex)
+		{
+			logger.debug("Pulling an event off the LocalConsumerQueue "+getLocalQueueID()+" has been interrupted.");
+			Thread.currentThread().interrupt(); // let the caller know
+			return null;
 		}
 		catch (Exception ex)
 		{
@@ -123,4 +337,199 @@ public class LocalConsumerQueue
 			return null;
 		}
 	}
+	
+	/**
+	 * This method returns the next available message from the local queue. If a message is available this method
+	 * returns immediately with the message. If no message is available then this method will wait up to the given
+	 * timeout for a message to become available. If there is still no message null is returned.
+	 * 
+	 * @param timeoutMillis Max time in milliseconds to wait for a message.
+	 * 
+	 * @return A message of the defined type or null if none became available within the timeout, the calling thread has
+	 *         been interrupted or an error occurred.
+	 */
+	public EventInfo pull(long timeoutMillis)
+	{
+		try
+		{
+			return (log != null) ? persistentPull(TimeUnit.MILLISECONDS.toNanos(Math.max(timeoutMillis, 0))) : queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException ex)
+		{
+			logger.debug("Pulling an event off the LocalConsumerQueue "+getLocalQueueID()+" has been interrupted.");
+			Thread.currentThread().interrupt(); // let the caller know
+			return null;
+		}
+		catch (Exception ex)
+		{
+			logger.error("Failed to pull a event off the the LocalConsumerQueue: "+ex.getMessage(),ex);
+			return null;
+		}
+	}
+	
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	private void updateMaxDepth()
+	{
+		int depth = getDepth();
+		int max = maxDepth.get();
+		while ((depth > max) && !maxDepth.compareAndSet(max, depth))
+		{
+			max = maxDepth.get();
+		}
+	}
+	
+	private void dropped()
+	{
+		long dropped = numDropped.incrementAndGet();
+		if ((dropped == 1) || (dropped % 1000 == 0))
+		{
+			logger.warn("LocalConsumerQueue "+getLocalQueueID()+" is full. Oldest event discarded ("+dropped+" events discarded so far).");
+		}
+	}
+	
+	private boolean memoryPush(EventInfo event) throws InterruptedException
+	{
+		switch (overflowPolicy)
+		{
+			case TIMEOUT:
+				return queue.offer(event, pushTimeout, TimeUnit.MILLISECONDS);
+			case DROP_OLDEST:
+				while (!queue.offer(event))
+				{
+					if (queue.poll() != null)
+					{
+						dropped();
+					}
+				}
+				return true;
+			default:
+				queue.put(event);
+				return true;
+		}
+	}
+	
+	private boolean persistentPush(EventInfo event) throws Exception
+	{
+		byte[] record = codec.encode(event); // encode outside the lock
+		lock.lockInterruptibly();
+		try
+		{
+			long nanos = TimeUnit.MILLISECONDS.toNanos(pushTimeout);
+			while (persistentDepth >= capacity)
+			{
+				if (overflowPolicy == OverflowPolicy.DROP_OLDEST)
+				{
+					dropOldestPersistent();
+				}
+				else if (overflowPolicy == OverflowPolicy.TIMEOUT)
+				{
+					if (nanos <= 0)
+					{
+						return false;
+					}
+					nanos = notFull.awaitNanos(nanos);
+				}
+				else
+				{
+					notFull.await();
+				}
+			}
+			log.append(record);
+			persistentDepth++;
+			notEmpty.signal();
+			return true;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	/*
+	 * If timeoutNanos is negative then this method waits until an event is available. Otherwise null is returned if no event
+	 * became available within the timeout.
+	 */
+	private EventInfo persistentPull(long timeoutNanos) throws Exception
+	{
+		lock.lockInterruptibly();
+		try
+		{
+			long nanos = timeoutNanos;
+			while (true)
+			{
+				while (buffer.isEmpty() && (log.getNumUnread() == 0))
+				{
+					if (timeoutNanos < 0)
+					{
+						notEmpty.await();
+					}
+					else if (nanos <= 0)
+					{
+						return null;
+					}
+					else
+					{
+						nanos = notEmpty.awaitNanos(nanos);
+					}
+				}
+				
+				// Fill buffer from log
+				byte[] record = null;
+				while ((buffer.size() < bufferSize) && ((record = log.read()) != null))
+				{
+					buffer.add(new BufferedEvent(record, log.getReadPosition()));
+				}
+				
+				BufferedEvent next = buffer.removeFirst();
+				log.commit(next.position);
+				persistentDepth--;
+				notFull.signal();
+				try
+				{
+					return codec.decode(next.record);
+				}
+				catch (Exception ex)
+				{
+					logger.error("Failed to decode event from persistent local queue "+getLocalQueueID()+". Event is discarded: "+ex.getMessage(), ex);
+				}
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	/*
+	 * Must be called while holding the lock.
+	 */
+	private void dropOldestPersistent() throws Exception
+	{
+		if (buffer.isEmpty())
+		{
+			byte[] record = log.read();
+			if (record == null)
+			{
+				return;
+			}
+			buffer.add(new BufferedEvent(record, log.getReadPosition()));
+		}
+		log.commit(buffer.removeFirst().position);
+		persistentDepth--;
+		dropped();
+	}
+	
+	private static class BufferedEvent
+	{
+		private byte[] record;
+		private long position; // position in log after this event
+		
+		private BufferedEvent(byte[] record, long position)
+		{
+			this.record = record;
+			this.position = position;
+		}
+	}
 }
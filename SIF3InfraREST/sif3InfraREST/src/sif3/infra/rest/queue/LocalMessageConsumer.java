@@ -21,13 +21,23 @@ import org.apache.log4j.Logger;
 
 import sif3.common.interfaces.EventConsumer;
 import sif3.common.model.SIFEvent;
+import sif3.infra.rest.queue.EventDecodeStage.DecodedEvent;
 import sif3.infra.rest.queue.types.EventInfo;
+import sif3.infra.rest.queue.types.StageMetrics;
 
 
 /**
  * This class allows the subscriber to consume messages in a multi-threaded manner according to the
  * producer-consumer design pattern.<p>
  * 
+ * If a DecodedEventSource (i.e. EventDecodeStage or a lane of a PartitionedEventDispatcher) is given then the events are taken
+ * already decoded from that source. Otherwise this consumer takes the
+ * events from the local queue and decodes them itself before they are passed to the event consumer.<p>
+ * 
+ * If a EventRetryStage is set then events that fail in the onEvent() method of the event consumer are handed to that stage to be
+ * retried later and events that cannot be decoded are added to its dead letter store. Otherwise such events are logged and 
+ * discarded.<p>
+ * 
  * @author Joerg Huber
  *
  */
@@ -38,6 +48,10 @@ public class LocalMessageConsumer implements Runnable
 	private LocalConsumerQueue localQueue;
 	private String consumerID;
 	private EventConsumer<?> eventConsumer;
+	private DecodedEventSource decodeStage = null;
+	private StageMetrics decodeMetrics = null;
+	private StageMetrics processMetrics = null;
+	private EventRetryStage retryStage = null;
 	
 	/**
 	 * This method initialises a Consumer to be able to receive and process events from the local event queue. The 'eventConsumer' parameter is 
@@ -53,6 +67,37 @@ public class LocalMessageConsumer implements Runnable
 		this.consumerID = consumerID;
 		this.eventConsumer = eventConsumer;
 	}
+
+	/**
+	 * This method initialises a Consumer to be able to receive and process events from the local event queue or a source of decoded
+	 * events.
+	 * 
+	 * @param localQueue The local queue on which this consumer will be listening on if no decodeStage is given.
+	 * @param decodeStage The source from which decoded events are taken. If null then events are taken from the localQueue and 
+	 *                    decoded by this consumer.
+	 * @param consumerID A name of the consumer. Mainly needed for nice debug and error reporting.
+	 * @param eventConsumer An instance of consumer that will process the event.
+	 * @param decodeMetrics The metrics to which the decoding time is recorded if this consumer decodes events. Can be null.
+	 * @param processMetrics The metrics to which the processing time of the event consumer is recorded. Can be null.
+	 */
+	public LocalMessageConsumer(LocalConsumerQueue localQueue, DecodedEventSource decodeStage, String consumerID, EventConsumer<?> eventConsumer, StageMetrics decodeMetrics, StageMetrics processMetrics)
+	{
+		this(localQueue, consumerID, eventConsumer);
+		this.decodeStage = decodeStage;
+		this.decodeMetrics = decodeMetrics;
+		this.processMetrics = processMetrics;
+	}
+	
+	/**
+	 * Sets the retry stage to which events are handed that cannot be decoded or fail in the onEvent() method of the event consumer.
+	 * If it is not set then such events are logged and discarded.
+	 * 
+	 * @param retryStage The retry stage. Can be null.
+	 */
+	public void setRetryStage(EventRetryStage retryStage)
+	{
+		this.retryStage = retryStage;
+	}
 	
 	/**
 	 * Required for this class to run in its own thread.
@@ -72,31 +117,56 @@ public class LocalMessageConsumer implements Runnable
 	 * This method will run in an infinite loop and try to retrieve messages from the local queue. Once
 	 * a message is retrieved it will determine if it will be sent to appropriate consumer thread for it to be processed.
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private void consume()
 	{
 		while (true)
 		{
+			if (decodeStage != null)
+			{
+				DecodedEvent decodedEvent = decodeStage.blockingTake();
+				if (decodedEvent != null)
+				{
+					process(decodedEvent.getEvent(), decodedEvent.getEventInfo());
+				}
+				else if (Thread.currentThread().isInterrupted())
+				{
+					logger.debug(consumerID + " has been interrupted. Stop consuming events.");
+					return;
+				}
+				continue;
+			}
+			
 			EventInfo eventInfo = localQueue.blockingPull();
 			if (eventInfo != null)
 			{
 				logger.debug(consumerID + " has receive an event from its local consumer queue ID: "  + eventInfo.getMessageQueueReaderID());
+				long start = System.nanoTime();
+				SIFEvent<?> event = null;
 				try
 				{
-					Object eventPayload = eventConsumer.getUnmarshaller().unmarshal(eventInfo.getEventPayload(), eventConsumer.getMultiObjectClassInfo().getObjectType(), eventInfo.getMediaType());
-
-					// Create actual event Object
-					SIFEvent event = eventConsumer.createEventObject(eventPayload, eventInfo.getEventAction(), eventInfo.getUpdateType());
-					event.setMetadata(eventInfo.getMetadata());
-
-					// Send event to actual event consumer.
-					eventConsumer.onEvent(event, eventInfo.getZone(), eventInfo.getContext(), eventInfo.getEventMetadata(), eventInfo.getMessageQueueReaderID(), consumerID);
+					event = EventDecodeStage.decodeEvent(eventInfo, eventConsumer);
+					record(decodeMetrics, start, true);
 				}
 				catch (Exception ex)
 				{
-					logger.error("Failed to create and send actual event to event consumer (" + eventConsumer.getClass().getSimpleName() + "): " + ex.getMessage());
-					logger.error("Event Data Info for failed event:\n" + eventInfo);
+					record(decodeMetrics, start, false);
+					logger.error("Failed to create actual event for event consumer (" + eventConsumer.getClass().getSimpleName() + "): " + ex.getMessage());
+					if (retryStage != null)
+					{
+						retryStage.decodeFailed(eventInfo, ex);
+					}
+					else
+					{
+						logger.error("Event Data Info for failed event:\n" + eventInfo);
+					}
+					continue;
 				}
+				process(event, eventInfo);
+			}
+			else if (Thread.currentThread().isInterrupted())
+			{
+				logger.debug(consumerID + " has been interrupted. Stop consuming events.");
+				return;
 			}
 			else
 			{
@@ -108,4 +178,38 @@ public class LocalMessageConsumer implements Runnable
 	/*---------------------*/
 	/*-- Private Methods --*/
 	/*---------------------*/
+	/*
+	 * Send event to actual event consumer.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void process(SIFEvent event, EventInfo eventInfo)
+	{
+		long start = System.nanoTime();
+		try
+		{
+			((EventConsumer)eventConsumer).onEvent(event, eventInfo.getZone(), eventInfo.getContext(), eventInfo.getEventMetadata(), eventInfo.getMessageQueueReaderID(), consumerID);
+			record(processMetrics, start, true);
+		}
+		catch (Exception ex)
+		{
+			record(processMetrics, start, false);
+			logger.error("Failed to send actual event to event consumer (" + eventConsumer.getClass().getSimpleName() + "): " + ex.getMessage());
+			if (retryStage != null)
+			{
+				retryStage.processFailed(event, eventInfo, ex);
+			}
+			else
+			{
+				logger.error("Event Data Info for failed event:\n" + eventInfo);
+			}
+		}
+	}
+	
+	private void record(StageMetrics metrics, long start, boolean success)
+	{
+		if (metrics != null)
+		{
+			metrics.record(System.nanoTime() - start, success);
+		}
+	}
 }
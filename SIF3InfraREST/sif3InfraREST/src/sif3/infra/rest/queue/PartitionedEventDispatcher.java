@@ -0,0 +1,272 @@
+/*
+ * PartitionedEventDispatcher.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.rest.queue;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.log4j.Logger;
+
+import sif3.common.interfaces.EventConsumer;
+import sif3.common.model.SIFEvent;
+import sif3.common.utils.ExecutorStrategy;
+import sif3.infra.rest.queue.EventDecodeStage.DecodedEvent;
+import sif3.infra.rest.queue.types.EventInfo;
+import sif3.infra.rest.queue.types.StageMetrics;
+
+/**
+ * This class distributes the events of a LocalConsumerQueue onto a fixed number of lanes. A single dispatcher thread takes the 
+ * events off the local queue in the order they have been received, decodes them and determines a partition key for each event
+ * through a KeyExtractor. The hash of the key determines the lane. Each lane is a DecodedEventSource that is meant to be consumed
+ * by exactly one LocalMessageConsumer thread. This means that events with the same key are processed one after the other in the
+ * order they have been received while events with different keys can be processed in parallel.<p>
+ * 
+ * <b>Note:</b><br />
+ * The order is only guaranteed from the point where events are put on the LocalConsumerQueue. If multiple message queue readers
+ * read from the same SIF queue the order in which events are put on the local queue may already differ from the order of the
+ * SIF queue.<p>
+ * 
+ * @author agent
+ */
+public class PartitionedEventDispatcher
+{
+	protected final Logger logger = Logger.getLogger(getClass());
+	
+	/**
+	 * Returns the partition key of an event. Events with the same key are processed in order.
+	 */
+	public interface KeyExtractor
+	{
+		/**
+		 * Returns the partition key for the given event. If null is returned the event is put on the first lane.
+		 * 
+		 * @param event The decoded event.
+		 * @param eventInfo The information of the event such as zone, context and metadata.
+		 * 
+		 * @return See desc.
+		 */
+		public String getPartitionKey(SIFEvent<?> event, EventInfo eventInfo);
+	}
+	
+	private LocalConsumerQueue localQueue;
+	private EventConsumer<?> eventConsumer;
+	private KeyExtractor keyExtractor;
+	private String dispatcherID;
+	private Lane[] lanes;
+	private StageMetrics decodeMetrics;
+	private ExecutorService service = null;
+	private EventRetryStage retryStage = null;
+	
+	/**
+	 * Creates a dispatcher. The dispatcher thread is only started once start() is called.
+	 * 
+	 * @param localQueue The local queue from which the events are taken.
+	 * @param eventConsumer The event consumer which provides the unmarshaller and creates the event objects.
+	 * @param keyExtractor Determines the partition key of each event.
+	 * @param dispatcherID A name of this dispatcher. Mainly needed for nice debug and error reporting.
+	 * @param numLanes The number of lanes.
+	 * @param laneCapacity The max number of events each lane holds. If the lane of an event is full the dispatcher waits.
+	 * @param decodeMetrics The metrics to which the decoding time of each event is recorded.
+	 */
+	public PartitionedEventDispatcher(LocalConsumerQueue localQueue, EventConsumer<?> eventConsumer, KeyExtractor keyExtractor, String dispatcherID, int numLanes, int laneCapacity, StageMetrics decodeMetrics)
+	{
+		this.localQueue = localQueue;
+		this.eventConsumer = eventConsumer;
+		this.keyExtractor = keyExtractor;
+		this.dispatcherID = dispatcherID;
+		this.decodeMetrics = decodeMetrics;
+		this.lanes = new Lane[Math.max(numLanes, 1)];
+		for (int i = 0; i < lanes.length; i++)
+		{
+			lanes[i] = new Lane(Math.max(laneCapacity, 1));
+		}
+	}
+	
+	/**
+	 * Starts the dispatcher thread.
+	 */
+	public void start()
+	{
+		logger.debug("Start dispatcher for "+dispatcherID+" with "+lanes.length+" lanes.");
+		service = ExecutorStrategy.getInstance().newFixedThreadPool(1, dispatcherID+" Dispatcher", false);
+		service.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				dispatch();
+			}
+		});
+	}
+	
+	/**
+	 * Stops the dispatcher thread. Events that are already on a lane are still available to the lane consumers.
+	 */
+	public void shutdown()
+	{
+		if (service != null)
+		{
+			logger.debug("Shut down dispatcher for "+dispatcherID+".");
+			service.shutdownNow();
+		}
+	}
+
+	/**
+	 * Sets the retry stage to which events are handed that cannot be decoded. If it is not set then such events are logged and 
+	 * discarded.
+	 * 
+	 * @param retryStage The retry stage. Can be null.
+	 */
+	public void setRetryStage(EventRetryStage retryStage)
+	{
+		this.retryStage = retryStage;
+	}
+
+	public int getNumLanes()
+	{
+		return lanes.length;
+	}
+	
+	/**
+	 * Returns the lane with the given index (0..getNumLanes()-1).
+	 * 
+	 * @param index The index of the lane.
+	 * 
+	 * @return See desc.
+	 */
+	public DecodedEventSource getLane(int index)
+	{
+		return lanes[index];
+	}
+	
+	/**
+	 * Returns the number of events waiting on the lane with the given index.
+	 * 
+	 * @param index The index of the lane.
+	 * 
+	 * @return See desc.
+	 */
+	public int getLaneDepth(int index)
+	{
+		return lanes[index].queue.size();
+	}
+	
+	/**
+	 * Returns the lane index for the given partition key.
+	 * 
+	 * @param key The partition key. Can be null.
+	 * 
+	 * @return See desc.
+	 */
+	public int getLaneIndex(String key)
+	{
+		return (key == null) ? 0 : (key.hashCode() & Integer.MAX_VALUE) % lanes.length;
+	}
+	
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	private void dispatch()
+	{
+		while (!Thread.currentThread().isInterrupted())
+		{
+			EventInfo eventInfo = localQueue.blockingPull();
+			if (eventInfo == null)
+			{
+				if (!Thread.currentThread().isInterrupted())
+				{
+					logger.error(dispatcherID + " dispatcher has encountered a problem receiving an event from its local consumer queue.");
+				}
+				continue;
+			}
+
+			long start = System.nanoTime();
+			SIFEvent<?> event = null;
+			try
+			{
+				event = EventDecodeStage.decodeEvent(eventInfo, eventConsumer);
+				decodeMetrics.record(System.nanoTime() - start, true);
+			}
+			catch (Exception ex)
+			{
+				decodeMetrics.record(System.nanoTime() - start, false);
+				logger.error(dispatcherID + " dispatcher failed to decode event for event consumer (" + eventConsumer.getClass().getSimpleName() + "): " + ex.getMessage());
+				failed(eventInfo, ex);
+				continue;
+			}
+			
+			String key = null;
+			try
+			{
+				key = keyExtractor.getPartitionKey(event, eventInfo);
+			}
+			catch (Exception ex)
+			{
+				logger.error(dispatcherID + " dispatcher failed to determine partition key. Event is put on first lane: " + ex.getMessage(), ex);
+			}
+			
+			try
+			{
+				lanes[getLaneIndex(key)].queue.put(new DecodedEvent(eventInfo, event));
+			}
+			catch (InterruptedException ex)
+			{
+				logger.debug(dispatcherID + " dispatcher has been interrupted. Decoded event is lost.");
+				return;
+			}
+		}
+	}
+	
+	private void failed(EventInfo eventInfo, Exception ex)
+	{
+		if (retryStage != null)
+		{
+			retryStage.decodeFailed(eventInfo, ex);
+		}
+		else
+		{
+			logger.error("Event Data Info for failed event:\n" + eventInfo);
+		}
+	}
+	
+	/*
+	 * A single lane. Must only be consumed by one thread to ensure ordering.
+	 */
+	private static class Lane implements DecodedEventSource
+	{
+		private BlockingQueue<DecodedEvent> queue;
+		
+		private Lane(int capacity)
+		{
+			queue = new ArrayBlockingQueue<DecodedEvent>(capacity);
+		}
+
+		@Override
+		public DecodedEvent blockingTake()
+		{
+			try
+			{
+				return queue.take();
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+	}
+}
@@ -152,6 +152,35 @@ public class QueueListenerConfigurator
 		}
 	}
 	
+	/**
+	 * Responses of DELAYED requests are delivered to the consumer's queue. This method ensures that this queue is read even if no event
+	 * consumer has a subscription on it. Since only the ADAPTER_LEVEL queue strategy is supported this is the one and only queue of the
+	 * consumer.
+	 * 
+	 * @return The ID of the queue to which delayed responses shall be delivered. Null if there is no queue. An error is logged in this
+	 *         case.
+	 */
+	public String joinDelayedResponses()
+	{
+		if (isFinalised)
+		{
+			logger.error("Already finalised. Cannot take any actions any longer. All operations to this class are ignored.");
+			return null;
+		}
+		if ((getDbQueues() == null) || getDbQueues().isEmpty())
+		{
+			logger.error("No queue available for environment "+getEnvironmentID()+". Delayed responses cannot be received.");
+			return null;
+		}
+		SIF3Queue queue = getDbQueues().get(0);
+		if (!listeners.containsKey(queue.getQueueID()))
+		{
+			logger.debug("Add QueueListener configuration for delayed responses to map of listeners.");
+			listeners.put(queue.getQueueID(), new QueueListenerInfo(queue));
+		}
+		return queue.getQueueID();
+	}
+	
 	/** 
 	 * This method must be called once all event consumers have joint the queue listener configuration. It will do what is required to finalise
 	 * the configuration. The final configuration is then returned as a hashmap where the key=queueID (remote message queue ID) and value=listener
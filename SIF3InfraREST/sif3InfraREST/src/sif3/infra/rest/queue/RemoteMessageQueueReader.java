@@ -18,12 +18,23 @@
 package sif3.infra.rest.queue;
 
 import java.net.URI;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.ws.rs.core.Response.Status;
 
 import org.apache.log4j.Logger;
 
 import sif3.common.CommonConstants;
+import sif3.common.CommonConstants.QueuePollingType;
 import sif3.common.exception.ServiceInvokationException;
 import sif3.common.header.HeaderValues.EventAction;
 import sif3.common.header.HeaderValues.MessageType;
@@ -33,9 +44,11 @@ import sif3.common.model.EventMetadata;
 import sif3.common.model.SIFContext;
 import sif3.common.model.SIFZone;
 import sif3.common.persist.model.SIF3Session;
+import sif3.common.utils.ExecutorStrategy;
 import sif3.common.ws.Response;
 import sif3.infra.common.env.types.ConsumerEnvironment;
 import sif3.infra.rest.client.MessageClient;
+import sif3.infra.rest.queue.persist.MessageIdStore;
 import sif3.infra.rest.queue.types.EventInfo;
 import sif3.infra.rest.queue.types.QueueListenerInfo;
 import au.com.systemic.framework.utils.StringUtils;
@@ -48,6 +61,31 @@ import au.com.systemic.framework.utils.StringUtils;
  * actual consumers to be either single threads or multi-threads with out this class needing the knowledge how consumer are
  * implemented.<br/><br/>
  * 
+ * The reader supports both queue types of the SIF3 Specification. For LONG polling queues the GET is held open by the queue until a message
+ * is available or the long polling timeout expires, after which the next GET is issued straight away. For IMMEDIATE queues the reader
+ * backs off after an empty or failed poll. The wait starts at the configured minimum wait time and doubles with each further empty poll
+ * up to the poll frequency. Some random jitter is added so that many readers don't poll the queue at the same time. As soon as a message 
+ * is received the next poll is immediate again.<br/><br/>
+ * 
+ * If a prefetch size is configured (property 'events.queue.prefetch') the reader fetches further messages while the previous ones 
+ * are still being pushed to the local queue. Received messages are held in a bounded prefetch window that is processed by a separate
+ * thread of this reader. If the window is full the reader stops fetching until there is room again. A prefetched message is not removed
+ * from the SIF queue by the GET that follows it. Once the processing thread has pushed it to the local queue its ID is handed back to
+ * the reader, which removes it with the next GET (deleteMessageId), the same way as without prefetching. So a message that has not
+ * been pushed is re-delivered by the SIF queue rather than lost. While prefetched messages are still being processed the reader does
+ * not back off after an empty poll or a re-delivered message, it waits for the next processed message instead. Only if the reader is 
+ * paused or stops, processed messages are removed with a separate DELETE. When the reader stops it first processes all messages that 
+ * are left in the prefetch window. The number of received and processed messages as well as the drain rate of this 
+ * reader are available through the getter methods of this class.<br/><br/>
+ * 
+ * If the queue listener has a message ID store (property 'events.dedup.capacity') then events with a message ID that has already been
+ * pushed to a local queue are dropped. Such messages are re-delivered by the SIF queue if the delete of a message failed or a reader 
+ * stopped before the message was deleted.<br/><br/>
+ * 
+ * Messages of type RESPONSE are the responses of DELAYED requests. They are not pushed to a local queue but passed to the
+ * DelayedResponseRegistry which matches them to the pending request with the same request ID. The same applies to error messages
+ * that hold the request ID of a pending DELAYED request.<br/><br/>
+ * 
  * Note: It doesn't implement the full queue connector, just the "getMessage" part of the queue connector.
  * 
  * @author Joerg Huber
@@ -63,12 +101,42 @@ public class RemoteMessageQueueReader implements Runnable
 	private String readerID = null;
 	private String lastMsgeID = null;
 	private int waitTime = 0; // milliseconds
+	private int minWaitTime = 0; // milliseconds
+	private boolean longPolling = false;
+	private int longPollTimeout = 0; // milliseconds
+	private int numEmptyPolls = 0;
+	private Random random = new Random();
+
+	private BlockingQueue<Response> prefetchWindow = null;
+	
+	/* IDs of prefetched messages that are not removed from the SIF queue yet. */
+	private Set<String> prefetchedMsgeIDs = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
+	/* IDs of prefetched messages that have been processed. They are removed from the SIF queue with the next GET. */
+	private BlockingQueue<String> pendingAcks = new LinkedBlockingQueue<String>();
+	private volatile boolean readingStopped = false;
+	private AtomicLong numReceived = new AtomicLong(0);
+	private AtomicLong numProcessed = new AtomicLong(0);
+	private volatile long firstMessageTime = 0;
+	private AtomicLong throttledTime = new AtomicLong(0);
+
+	/* Log the drain rate of this reader after each this number of processed messages. */
+	private static final int STATS_LOG_INTERVAL = 1000;
+
+	/* Additional time given to the read timeout of a long polling GET on top of the long polling timeout of the queue. */
+	private static final int LONG_POLL_READ_MARGIN = 10 * CommonConstants.MILISEC;
+
+	/* Time in milliseconds the reader waits before it checks again if the local queues have fallen below their high-water mark. */
+	private static final int THROTTLE_WAIT = 100;
+
+	/* Max time in milliseconds a stopped reader waits for the messages left in the prefetch window to be processed. */
+	private static final int PREFETCH_DRAIN_WAIT = 30 * CommonConstants.MILISEC;
 
 	private MessageClient client = null;
 
 	/**
 	 * Constructs a RemoteMessageQueueReader for the queue identified through the queueListenerInfo parameter for the given session and consumer 
-	 * configuration.
+	 * configuration. The message client for the queue is created from the message URI of the queue.
 	 * 
 	 * @param queueListenerInfo
 	 *            Holds all the information for this reader to identify what SIF queue to read from and where to distribute messages to.
@@ -82,6 +150,20 @@ public class RemoteMessageQueueReader implements Runnable
 	 *            reader should have its own id to identify it for logging purpose.
 	 */
 	public RemoteMessageQueueReader(QueueListenerInfo queueListenerInfo, ConsumerEnvironment consumerEnvInfo, SIF3Session sif3Session, String readerID) throws ServiceInvokationException
+	{
+		this(queueListenerInfo, consumerEnvInfo, sif3Session, readerID, null);
+	}
+
+	/**
+	 * Same as the constructor above but the given message client is used to access the queue.
+	 * 
+	 * @param queueListenerInfo See constructor above.
+	 * @param consumerEnvInfo See constructor above.
+	 * @param sif3Session See constructor above.
+	 * @param readerID See constructor above.
+	 * @param client The message client to read messages with. If null then it is created from the message URI of the queue.
+	 */
+	public RemoteMessageQueueReader(QueueListenerInfo queueListenerInfo, ConsumerEnvironment consumerEnvInfo, SIF3Session sif3Session, String readerID, MessageClient client) throws ServiceInvokationException
 	{
 		super();
 		try
@@ -94,14 +176,29 @@ public class RemoteMessageQueueReader implements Runnable
 			// Get the wait time between get message calls once a no message is returned. Timeout is  the max from what the queue indicates
 			// and what the configuration states.
 			waitTime = Math.max(longToInt(getQueueListenerInfo().getQueue().getWaitTime()), getConsumerEnvInfo().getPollFrequency()) * CommonConstants.MILISEC;
+			
+			// The backoff starts with this wait time but it must never be less than what the queue indicates.
+			minWaitTime = Math.max(longToInt(getQueueListenerInfo().getQueue().getWaitTime()), getConsumerEnvInfo().getPollMinWait()) * CommonConstants.MILISEC;
+			minWaitTime = Math.min(Math.max(minWaitTime, 1), waitTime);
+			
+			// Use the polling type and timeout of the queue if known. Otherwise use what the configuration states.
+			String queueType = getQueueListenerInfo().getQueue().getQueueType();
+			longPolling = StringUtils.notEmpty(queueType) ? QueuePollingType.LONG.name().equalsIgnoreCase(queueType.trim()) : (getConsumerEnvInfo().getQueueType() == QueuePollingType.LONG);
+			int timeout = longToInt(getQueueListenerInfo().getQueue().getLongPollingTimeout());
+			longPollTimeout = ((timeout > 0) ? timeout : getConsumerEnvInfo().getLongPollTimeOut()) * CommonConstants.MILISEC;
+			
+			if (getConsumerEnvInfo().getPrefetchSize() > 0)
+			{
+				prefetchWindow = new ArrayBlockingQueue<Response>(getConsumerEnvInfo().getPrefetchSize());
+			}
 
 			// Initialise message client. Only needs to be done once, so we do this here.
-			client = new MessageClient(new URI(queueListenerInfo.getQueue().getMessageURI()), getConsumerEnvInfo(), getSif3Session());
+			this.client = (client != null) ? client : new MessageClient(new URI(queueListenerInfo.getQueue().getMessageURI()), getConsumerEnvInfo(), getSif3Session());
 		}
 		catch (Exception ex)
 		{
 			logger.error("Failed do create a QueueReader: " + ex.getMessage(), ex);
-			client = null;
+			this.client = null;
 			throw new ServiceInvokationException(ex);
 		}
 	}
@@ -112,14 +209,82 @@ public class RemoteMessageQueueReader implements Runnable
 		logger.debug("Shutdown Message Reader wit ID = " + getReaderID() + " for queue = " + getQueueListenerInfo().getQueue().getName());
 	}
 	
+	/**
+	 * Returns the number of messages this reader has received from the remote queue.
+	 * 
+	 * @return See desc.
+	 */
+	public long getNumMessagesReceived()
+	{
+		return numReceived.get();
+	}
+	
+	/**
+	 * Returns the number of messages this reader has processed (i.e. pushed to the local consumer queues or discarded).
+	 * 
+	 * @return See desc.
+	 */
+	public long getNumMessagesProcessed()
+	{
+		return numProcessed.get();
+	}
+	
+	/**
+	 * Returns the average number of messages per second this reader has processed since it received its first message. If no 
+	 * message has been received so far then 0 is returned.
+	 * 
+	 * @return See desc.
+	 */
+	public double getDrainRate()
+	{
+		long start = firstMessageTime;
+		if (start == 0)
+		{
+			return 0;
+		}
+		long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+		return numProcessed.get() * (double)CommonConstants.MILISEC / elapsed;
+	}
+	
+	/**
+	 * Returns the total time in milliseconds this reader has paused reading from the SIF queue because a local consumer queue 
+	 * was at or above its high-water mark.
+	 * 
+	 * @return See desc.
+	 */
+	public long getThrottledTime()
+	{
+		return throttledTime.get();
+	}
+	
 	/* (non-Javadoc)
      * @see java.lang.Runnable#run()
      */
     @Override
     public void run()
     {
-    	logger.debug("Message Queue Reader "+getReaderID()+" starts reading messages...");
+    	logger.debug("Message Queue Reader "+getReaderID()+" starts reading messages"+(longPolling ? " (long polling, timeout = "+longPollTimeout/CommonConstants.MILISEC+" seconds)" : "")+((prefetchWindow != null) ? " with a prefetch window of "+prefetchWindow.remainingCapacity()+" messages..." : "..."));
+    	ExecutorService processor = null;
+    	if (prefetchWindow != null)
+    	{
+    		processor = ExecutorStrategy.getInstance().newFixedThreadPool(1, getReaderID()+" - Processor", true);
+    		processor.execute(new Runnable()
+    		{
+				@Override
+				public void run()
+				{
+					processPrefetchedMessages();
+				}
+			});
+    	}
+    	
     	startReading();
+    	
+    	if (processor != null)
+    	{
+    		drainPrefetchWindow(processor);
+    	}
+		logger.debug("Message Queue Reader "+getReaderID()+" received "+getNumMessagesReceived()+" and processed "+getNumMessagesProcessed()+" messages ("+String.format("%.1f", getDrainRate())+" msg/sec). Throttled for "+getThrottledTime()+" milliseconds.");
     }
 
 	/*---------------------*/
@@ -132,16 +297,45 @@ public class RemoteMessageQueueReader implements Runnable
 	{
 		if (client != null) // indicating all good
 		{
-			while (true)
+			while (!Thread.currentThread().isInterrupted())
 			{
 				try
 				{
-					Response response = getClient().getMessage(getLastMsgeID(), getReaderID());
+					if (getQueueListenerInfo().isAboveHighWaterMark())
+					{
+						throttle();
+						continue;
+					}
+					
+					if ((prefetchWindow != null) && (getLastMsgeID() == null))
+					{
+						setLastMsgeID(pendingAcks.poll()); // remove a processed prefetched message with this GET
+					}
+					String removedMsgeID = getLastMsgeID();
+					long startTime = System.currentTimeMillis();
+					Response response = longPolling ? getClient().getMessage(getLastMsgeID(), getReaderID(), longPollTimeout + LONG_POLL_READ_MARGIN) : getClient().getMessage(getLastMsgeID(), getReaderID());
+					if (removedMsgeID != null)
+					{
+						prefetchedMsgeIDs.remove(removedMsgeID);
+					}
 					setLastMsgeID(response); // ensure that the next loop iteration we will remove the current message
 
 					if (isNoMessageResponse(response)) // no more messages available
 					{
-						waitBeforeGetNext(); // Wait until query the queue next time.
+						// A long poll that was held open by the queue can be re-issued straight away. If the queue returned early then
+						// it didn't really hold the call and we back off to not hammer the queue.
+						if (longPolling && (System.currentTimeMillis() - startTime >= longPollTimeout / 2))
+						{
+							numEmptyPolls = 0;
+						}
+						else if (!waitForPrefetchedMessage()) // no need to back off while prefetched messages are processed
+						{
+							waitBeforeGetNext(); // Wait until query the queue next time.
+						}
+					}
+					else if (isDelayedErrorResponse(response))
+					{
+						numEmptyPolls = 0; // the error has been passed to its DELAYED request. Get the next message straight away.
 					}
 					else if (isErrorResponse(response))
 					{
@@ -149,8 +343,36 @@ public class RemoteMessageQueueReader implements Runnable
 					}
 					else
 					{
+						numEmptyPolls = 0; // there might be more messages, so get the next one straight away.
 						logger.debug("Message Reader '" + getReaderID() + "' (ThreadID:"+Thread.currentThread().getId()+") has receive a message from queue: " + getQueueListenerInfo().getQueue().getName() + ". Message ID = " + getLastMsgeID());
-						processMessage(response);
+						if (numReceived.incrementAndGet() == 1)
+						{
+							firstMessageTime = System.currentTimeMillis();
+						}
+						if (prefetchWindow != null)
+						{
+							// The message is removed from the SIF queue once the processor has pushed it to the local queue.
+							String msgID = getLastMsgeID();
+							setMsgIDToNull();
+							if ((msgID != null) && !prefetchedMsgeIDs.add(msgID))
+							{
+								// The SIF queue returned a message again that hasn't been removed, yet. It is already in the window.
+								logger.debug(getReaderID()+": Message with ID = "+msgID+" is still in the prefetch window. Re-delivered message is ignored.");
+								if (!waitForPrefetchedMessage())
+								{
+									waitBeforeGetNext();
+								}
+							}
+							else
+							{
+								prefetchWindow.put(response); // blocks while the window is full
+							}
+						}
+						else
+						{
+							processMessage(response);
+							messageProcessed();
+						}
 					}
 				}
 				catch (ServiceInvokationException ex)
@@ -158,7 +380,145 @@ public class RemoteMessageQueueReader implements Runnable
 					// Error should already have been logged. Just wait and try again
 					waitBeforeGetNext();	  
 				}
+				catch (InterruptedException ex)
+				{
+					Thread.currentThread().interrupt(); // ends the reading loop
+				}
 			}
+			logger.debug("Message Queue Reader "+getReaderID()+" has been interrupted. Stop reading messages.");
+		}
+	}
+
+	/*
+	 * Processes the messages of the prefetch window and hands their IDs back to the reader to be removed from the SIF queue. Runs in its
+	 * own thread until the reader has stopped and the window is empty or until it is interrupted.
+	 */
+	private void processPrefetchedMessages()
+	{
+		try
+		{
+			while (true)
+			{
+				Response response = prefetchWindow.poll(THROTTLE_WAIT, TimeUnit.MILLISECONDS);
+				if (response != null)
+				{
+					processMessage(response);
+					if (Thread.currentThread().isInterrupted()) // push to local queue may not have completed. Leave message on SIF queue.
+					{
+						throw new InterruptedException();
+					}
+					String msgID = response.getHdrProperties().getHeaderProperty(ResponseHeaderConstants.HDR_MESSAGE_ID);
+					if (StringUtils.notEmpty(msgID))
+					{
+						pendingAcks.add(msgID);
+					}
+					messageProcessed();
+				}
+				else if (readingStopped)
+				{
+					logger.debug("Message processor of reader "+getReaderID()+" has processed all prefetched messages.");
+					return;
+				}
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			logger.warn("Message processor of reader "+getReaderID()+" has been interrupted. "+prefetchWindow.size()+" prefetched messages not processed. They remain on the SIF queue and will be re-delivered.");
+		}
+	}
+	
+	/*
+	 * Called by the reader after an empty poll or a re-delivered message. If there are prefetched messages that are not removed from
+	 * the SIF queue yet then the reader waits up to THROTTLE_WAIT milliseconds for the next one to be processed, so that it is removed 
+	 * with the next GET. Returns false if there are no such messages, so the reader backs off as usual.
+	 */
+	private boolean waitForPrefetchedMessage()
+	{
+		if ((prefetchWindow == null) || prefetchedMsgeIDs.isEmpty())
+		{
+			return false;
+		}
+		try
+		{
+			if (getLastMsgeID() == null)
+			{
+				setLastMsgeID(pendingAcks.poll(THROTTLE_WAIT, TimeUnit.MILLISECONDS));
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt(); // ends the reading loop
+		}
+		return true;
+	}
+	
+	/*
+	 * Removes all processed prefetched messages that have not been removed by a GET with a separate DELETE each. This is done if the
+	 * reader doesn't issue a GET for a while (paused or stopped). If a DELETE fails the SIF queue will re-deliver the message.
+	 */
+	private void removeProcessedMessages()
+	{
+		String msgID = getLastMsgeID();
+		setMsgIDToNull();
+		if (msgID == null)
+		{
+			msgID = pendingAcks.poll();
+		}
+		while (msgID != null)
+		{
+			try
+			{
+				Response removeResponse = getClient().removeMessage(msgID, getReaderID());
+				if (removeResponse.hasError())
+				{
+					logger.error(getReaderID()+": Failed to remove message with ID = "+msgID+" from queue "+getQueueListenerInfo().getQueue().getName()+". It will be re-delivered:\n"+removeResponse.getError());
+				}
+			}
+			catch (ServiceInvokationException ex)
+			{
+				// Error should already have been logged. The message will be re-delivered.
+			}
+			prefetchedMsgeIDs.remove(msgID);
+			msgID = pendingAcks.poll();
+		}
+	}
+	
+	/*
+	 * Called once the reader has stopped reading. Waits until the processor has pushed all messages left in the prefetch window to the 
+	 * local queues and removes them from the SIF queue. If that takes too long the processor is interrupted. Messages not pushed by then
+	 * remain on the SIF queue.
+	 */
+	private void drainPrefetchWindow(ExecutorService processor)
+	{
+		readingStopped = true;
+		boolean interrupted = Thread.interrupted(); // we must be able to wait for the processor.
+		logger.debug("Message Queue Reader "+getReaderID()+" waits for "+prefetchWindow.size()+" prefetched messages to be processed...");
+		processor.shutdown();
+		try
+		{
+			if (!processor.awaitTermination(PREFETCH_DRAIN_WAIT, TimeUnit.MILLISECONDS))
+			{
+				processor.shutdownNow();
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			processor.shutdownNow();
+			interrupted = true;
+		}
+		removeProcessedMessages();
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void messageProcessed()
+	{
+		long processed = numProcessed.incrementAndGet();
+		if ((processed % STATS_LOG_INTERVAL == 0) && logger.isDebugEnabled())
+		{
+			logger.debug("Message Queue Reader "+getReaderID()+" has processed "+processed+" messages ("+String.format("%.1f", getDrainRate())+" msg/sec).");
 		}
 	}
 
@@ -173,6 +533,24 @@ public class RemoteMessageQueueReader implements Runnable
 		return false;
 	}
 
+	/*
+	 * A DELAYED request that failed on the provider is delivered as an error message with the request ID of the request. Such an error
+	 * is passed to the pending request rather than treated as an error of the queue. Returns true if the response was such an error.
+	 */
+	private boolean isDelayedErrorResponse(Response response)
+	{
+		if (response.hasError() && MessageType.ERROR.name().equals(response.getHdrProperties().getHeaderProperty(ResponseHeaderConstants.HDR_MESSAGE_TYPE)))
+		{
+			String requestID = response.getHdrProperties().getHeaderProperty(ResponseHeaderConstants.HDR_REQUEST_ID);
+			if (DelayedResponseRegistry.getInstance().getPendingRequest(requestID) != null)
+			{
+				processDelayedResponse(response);
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/*
 	 * CHecks if an error is returned. If so it will log it, remove the lastMsg id and return true. Otherwise flase is returned.
 	 */
@@ -191,20 +569,51 @@ public class RemoteMessageQueueReader implements Runnable
 
 	private void waitBeforeGetNext()
 	{
-		logger.debug("\n==========================\n"+getReaderID()+ " will wait for "+getWaitTime()/CommonConstants.MILISEC+" seconds before attempting to get next message."+"\n==========================");
+		int wait = getNextWaitTime();
+		numEmptyPolls++;
+		logger.debug("\n==========================\n"+getReaderID()+ " will wait for "+wait+" milliseconds before attempting to get next message."+"\n==========================");
 		try
 		{
-			Object semaphore = new Object();
-			synchronized (semaphore)
-			{
-				semaphore.wait(getWaitTime());
-			}
+			Thread.sleep(wait);
 		}
-		catch (Exception ex)
+		catch (InterruptedException ex)
 		{
-			logger.error("Blocking wait in Message Reader '" + getReaderID() + "' for queue: " + getQueueListenerInfo().getQueue().getName() + " interrupted: " + ex.getMessage(), ex);
+			logger.debug("Blocking wait in Message Reader '" + getReaderID() + "' for queue: " + getQueueListenerInfo().getQueue().getName() + " interrupted.");
+			Thread.currentThread().interrupt(); // ends the reading loop
 		}
 	}
+	
+	/*
+	 * Pauses reading from the SIF queue until all local consumer queues have fallen below their high-water mark.
+	 */
+	private void throttle() throws InterruptedException
+	{
+		logger.debug(getReaderID()+": Local consumer queue reached its high-water mark. Pause reading from queue "+getQueueListenerInfo().getQueue().getName()+".");
+		long start = System.currentTimeMillis();
+		while (getQueueListenerInfo().isAboveHighWaterMark())
+		{
+			if (prefetchWindow != null)
+			{
+				removeProcessedMessages(); // no GET is issued while paused
+			}
+			Thread.sleep(THROTTLE_WAIT);
+		}
+		long throttled = System.currentTimeMillis() - start;
+		throttledTime.addAndGet(throttled);
+		logger.debug(getReaderID()+": Resume reading from queue "+getQueueListenerInfo().getQueue().getName()+" after "+throttled+" milliseconds.");
+	}
+	
+	/*
+	 * Exponential backoff: minWaitTime * 2^numEmptyPolls but never more than waitTime. The result is randomised between half and the 
+	 * full value (jitter), but it is never less than minWaitTime.
+	 */
+	private int getNextWaitTime()
+	{
+		long wait = (long)minWaitTime << Math.min(numEmptyPolls, 30);
+		int maxWait = (int)Math.min(wait, getWaitTime());
+		int jitteredWait = maxWait / 2 + random.nextInt(maxWait / 2 + 1);
+		return Math.max(jitteredWait, minWaitTime);
+	}
 
 	/*
 	 * This is the main method that deals with processing a message that has been received.
@@ -235,9 +644,7 @@ public class RemoteMessageQueueReader implements Runnable
 		}
 		else if (messageType == MessageType.RESPONSE)
 		{
-			// TODO: JH - Implement Delayed Responses.
-			logger.info("Delayed Responses not yet supported. Response ignored.:\n" + response);
-			return; // attempt to process next message
+			processDelayedResponse(response);
 		}
 		else
 		// we should not get there because ERROR is the only one left and that has already been handled.
@@ -247,8 +654,29 @@ public class RemoteMessageQueueReader implements Runnable
 		}
 	}
 
+	/*
+	 * Passes the response of a DELAYED request to the delayed response registry.
+	 */
+	private void processDelayedResponse(Response response)
+	{
+		if (logger.isDebugEnabled())
+		{
+			logger.debug("Delayed Response Message Received:\n"+response);
+		}
+		response.setZone(getZone(response));
+		response.setContext(getContext(response));
+		if (!DelayedResponseRegistry.getInstance().onResponse(response))
+		{
+			logger.info(getReaderID()+": Received a delayed response for which there is no pending request (unknown request ID or request timed out). Discard the following Response:\n" + response);
+		}
+	}
+
 	private void processEvent(Response response)
 	{
+		MessageIdStore messageIdStore = queueListenerInfo.getMessageIdStore();
+		String messageID = response.getHdrProperties().getHeaderProperty(ResponseHeaderConstants.HDR_MESSAGE_ID);
+		boolean added = false;
+		boolean pushed = false;
 		try
 		{
 			if (logger.isDebugEnabled())
@@ -256,6 +684,18 @@ public class RemoteMessageQueueReader implements Runnable
 				//logger.debug("Header Properties for Event Response:\n"+response.getHdrProperties());
 				logger.debug("Event Message Received:\n"+response);
 			}
+			// Drop messages that have already been received. The ID is added straight away, so that a duplicate that is read by 
+			// another reader at the same time is dropped as well. If the event is not pushed the ID is removed again below.
+			if (messageIdStore != null)
+			{
+				if (!messageIdStore.addIfAbsent(messageID))
+				{
+					logger.info(getReaderID()+": Message with ID = "+messageID+" has already been received. Duplicate is discarded.");
+					return;
+				}
+				added = true;
+			}
+			
 			SIFZone zone = getZone(response);
 			SIFContext context = getContext(response);
 			String serviceName = response.getHdrProperties().getHeaderProperty(ResponseHeaderConstants.HDR_SERVICE_NAME);
@@ -286,14 +726,24 @@ public class RemoteMessageQueueReader implements Runnable
 				
 				EventInfo eventInfo = new EventInfo(eventPayload, response.getMediaType(), eventAction, updateType, zone, context, metadata, getReaderID());
 				logger.debug(getReaderID()+": Attempts to push Event to local queue...");
-				localQueue.blockingPush(eventInfo);
-				logger.debug(getReaderID()+": Event successfully pushed to local queue");
+				pushed = localQueue.blockingPush(eventInfo);
+				if (pushed)
+				{
+					logger.debug(getReaderID()+": Event successfully pushed to local queue");
+				}
 			}
 		}
 		catch (Exception ex)
 		{
 			logger.error("Error occured during the processing of a message from the queue: " + getQueueListenerInfo().getQueue().getName() + ". See previous error log entries for details: " + ex.getMessage(), ex);
 		}
+		finally
+		{
+			if (added && !pushed)
+			{
+				messageIdStore.remove(messageID); // accept the message again if it is re-delivered
+			}
+		}
 	}
 
 	private EventAction getEventAction(Response response)
@@ -420,6 +870,11 @@ public class RemoteMessageQueueReader implements Runnable
 		this.lastMsgeID = response.getHdrProperties().getHeaderProperty(ResponseHeaderConstants.HDR_MESSAGE_ID);
 	}
 	
+	private void setLastMsgeID(String msgID)
+	{
+		this.lastMsgeID = msgID;
+	}
+	
 	private void setMsgIDToNull()
 	{
 		this.lastMsgeID =  null;
@@ -0,0 +1,464 @@
+/*
+ * DeadLetterStore.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package sif3.infra.rest.queue.persist;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import sif3.infra.rest.queue.types.EventInfo;
+
+/**
+ * This class implements an append-only file of events that could not be processed by an event consumer (dead letters). Each 
+ * dead letter holds the event as it has been received (see EventInfoCodec), the time it failed, the number of attempts and the
+ * error message of the last attempt. The dead letters can be read for inspection or taken from the store to be replayed.<p>
+ * 
+ * Each record is written and forced to disk in one go. If the JVM crashes while a record is written then the file is truncated to
+ * the last complete record when the store is opened, so that new records are not appended after the incomplete one. A record that
+ * cannot be decoded is logged and skipped. The format of a record is: [int length][long timestamp][int attempts][UTF reason]
+ * [int dataLength][byte[dataLength] event].<p>
+ * 
+ * Dead letters that are taken from the store for a replay (see takeAll()) are moved to a separate file that is only removed once 
+ * the replay is complete (see removeTaken()). If the JVM stops during a replay then these dead letters are still in the store when 
+ * it is opened again. This class is thread safe.
+ * 
+ * @author agent
+ */
+public class DeadLetterStore
+{
+	protected final Logger logger = Logger.getLogger(getClass());
+
+	private static final String FILE_EXT = ".dlq";
+	private static final String TAKEN_FILE_EXT = ".taken";
+	private static final int MAX_REASON_LENGTH = 1000;
+	
+	private File file;
+	private File takenFile;
+	private EventInfoCodec codec = new EventInfoCodec();
+	private int numRecords = 0;
+	private boolean replaying = false; // TRUE between takeAll() and removeTaken()
+
+	/**
+	 * A dead letter as it is held in the store.
+	 */
+	public static class DeadLetter
+	{
+		private Date failedDate;
+		private int attempts;
+		private String reason;
+		private EventInfo eventInfo;
+		
+		public DeadLetter(Date failedDate, int attempts, String reason, EventInfo eventInfo)
+		{
+			this.failedDate = failedDate;
+			this.attempts = attempts;
+			this.reason = reason;
+			this.eventInfo = eventInfo;
+		}
+
+		public Date getFailedDate()
+		{
+			return failedDate;
+		}
+
+		public int getAttempts()
+		{
+			return attempts;
+		}
+
+		public String getReason()
+		{
+			return reason;
+		}
+
+		public EventInfo getEventInfo()
+		{
+			return eventInfo;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "DeadLetter [failedDate=" + failedDate + ", attempts=" + attempts + ", reason=" + reason + ", eventInfo=" + eventInfo + "]";
+		}
+	}
+	
+	/**
+	 * Opens the dead letter store with the given name in the given directory. If the directory doesn't exist it is created. Dead
+	 * letters that are already in the store file are kept. This includes dead letters of a replay that has not completed. If the 
+	 * store file ends with an incomplete record then it is truncated to the last complete record.
+	 * 
+	 * @param storeID A name of the store. It is used as the file name (white spaces removed).
+	 * @param dir The directory of the store file.
+	 * 
+	 * @throws IOException The directory could not be created or the existing store file could not be read.
+	 */
+	public DeadLetterStore(String storeID, File dir) throws IOException
+	{
+		if (!dir.exists() && !dir.mkdirs())
+		{
+			throw new IOException("Failed to create directory "+dir.getAbsolutePath()+" for dead letter store.");
+		}
+		file = new File(dir, storeID.replaceAll("\\s+", "") + FILE_EXT);
+		takenFile = new File(dir, file.getName() + TAKEN_FILE_EXT);
+		if (takenFile.exists())
+		{
+			logger.warn("Dead letter store "+file.getAbsolutePath()+" has events of a replay that has not completed. They are kept in the store and will be replayed again.");
+		}
+		
+		numRecords = open(file) + open(takenFile);
+		if (numRecords > 0)
+		{
+			logger.info("Dead letter store "+file.getAbsolutePath()+" holds "+numRecords+" events.");
+		}
+	}
+	
+	/**
+	 * Appends the given event to the store. If it fails an error is logged and FALSE is returned.
+	 * 
+	 * @param eventInfo The event that failed.
+	 * @param attempts The number of times the event consumer has tried to process the event.
+	 * @param reason The error message of the last attempt. Can be null.
+	 * 
+	 * @return TRUE if the event is stored.
+	 */
+	public synchronized boolean append(EventInfo eventInfo, int attempts, String reason)
+	{
+		FileOutputStream out = null;
+		try
+		{
+			byte[] data = codec.encode(eventInfo);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length + 128);
+			DataOutputStream record = new DataOutputStream(bytes);
+			record.writeInt(0); // length, set below.
+			record.writeLong(System.currentTimeMillis());
+			record.writeInt(attempts);
+			record.writeUTF(truncate(reason));
+			record.writeInt(data.length);
+			record.write(data);
+			record.flush();
+			
+			byte[] buffer = bytes.toByteArray();
+			int length = buffer.length - 4;
+			buffer[0] = (byte)(length >>> 24);
+			buffer[1] = (byte)(length >>> 16);
+			buffer[2] = (byte)(length >>> 8);
+			buffer[3] = (byte)length;
+			
+			out = new FileOutputStream(file, true);
+			out.write(buffer);
+			out.getChannel().force(false);
+			numRecords++;
+			return true;
+		}
+		catch (Exception ex)
+		{
+			logger.error("Failed to write event to dead letter store "+file.getAbsolutePath()+": "+ex.getMessage()+". Event is lost:\n"+eventInfo, ex);
+			return false;
+		}
+		finally
+		{
+			close(out);
+		}
+	}
+	
+	/**
+	 * Returns all dead letters in the order they have been added. The dead letters remain in the store. If the store cannot be read
+	 * an error is logged and the dead letters read so far are returned.
+	 * 
+	 * @return See desc.
+	 */
+	public synchronized List<DeadLetter> readAll()
+	{
+		List<DeadLetter> deadLetters = new ArrayList<DeadLetter>();
+		try
+		{
+			if (!replaying)
+			{
+				read(takenFile, deadLetters);
+			}
+			read(file, deadLetters);
+		}
+		catch (IOException ex)
+		{
+			logger.error("Failed to read dead letter store "+file.getAbsolutePath()+": "+ex.getMessage(), ex);
+		}
+		return deadLetters;
+	}
+
+	/**
+	 * Returns all dead letters in the order they have been added and takes them from the store. This is used to replay the dead
+	 * letters. The dead letters are not removed from disk until removeTaken() is called, which must be done once all of them have 
+	 * been replayed and before this method is called again. If the store is opened again before that (i.e. after a crash) then they
+	 * are still in the store. Dead letters appended after this call are not affected by removeTaken(). If the store cannot be read 
+	 * then an error is logged, nothing is taken and an empty list is returned.
+	 * 
+	 * @return See desc.
+	 */
+	public synchronized List<DeadLetter> takeAll()
+	{
+		if (file.exists())
+		{
+			if (takenFile.exists())
+			{
+				// Previous replay did not complete. Add its dead letters to the new ones.
+				if (!appendFile(file, takenFile) || !file.delete())
+				{
+					logger.error("Failed to move dead letters of "+file.getAbsolutePath()+" to "+takenFile.getAbsolutePath()+". No events are taken from the store.");
+					return new ArrayList<DeadLetter>();
+				}
+			}
+			else if (!file.renameTo(takenFile))
+			{
+				logger.error("Failed to move dead letters of "+file.getAbsolutePath()+" to "+takenFile.getAbsolutePath()+". No events are taken from the store.");
+				return new ArrayList<DeadLetter>();
+			}
+		}
+		
+		List<DeadLetter> deadLetters = new ArrayList<DeadLetter>();
+		try
+		{
+			read(takenFile, deadLetters);
+		}
+		catch (IOException ex)
+		{
+			logger.error("Failed to read dead letter store "+takenFile.getAbsolutePath()+": "+ex.getMessage()+". No events are taken from the store.", ex);
+			return new ArrayList<DeadLetter>();
+		}
+		numRecords = 0;
+		replaying = true;
+		return deadLetters;
+	}
+	
+	/**
+	 * Removes the dead letters returned by the last call of takeAll() from disk. This must be called once all of them have been 
+	 * replayed (or put back into this store with append()).
+	 */
+	public synchronized void removeTaken()
+	{
+		if (takenFile.exists() && !takenFile.delete())
+		{
+			logger.error("Failed to remove replayed dead letters "+takenFile.getAbsolutePath()+". They will be replayed again.");
+		}
+		replaying = false;
+	}
+	
+	/**
+	 * Returns the number of dead letters in the store.
+	 * 
+	 * @return See desc.
+	 */
+	public synchronized int size()
+	{
+		return numRecords;
+	}
+	
+	public File getFile()
+	{
+		return file;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "DeadLetterStore [file=" + file + ", size=" + size() + "]";
+	}
+
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	/*
+	 * Counts the records of the given file. If it ends with an incomplete record then it is truncated to the last complete record.
+	 */
+	private int open(File storeFile) throws IOException
+	{
+		ReadResult result = read(storeFile, null);
+		if (result.validLength < storeFile.length())
+		{
+			logger.warn("Dead letter store "+storeFile.getAbsolutePath()+" ends with an incomplete record. It is truncated from "+storeFile.length()+" to "+result.validLength+" bytes.");
+			truncate(storeFile, result.validLength);
+		}
+		return result.count;
+	}
+	
+	/*
+	 * Reads all complete records of the given file. If deadLetters is not null the records are decoded and added to that list. A 
+	 * record that cannot be decoded is skipped. Returns the number of complete records and the length of the file up to the end of
+	 * the last complete record.
+	 */
+	private ReadResult read(File storeFile, List<DeadLetter> deadLetters) throws IOException
+	{
+		ReadResult result = new ReadResult();
+		if (!storeFile.exists())
+		{
+			return result;
+		}
+		long fileLength = storeFile.length();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(storeFile)));
+		try
+		{
+			while (true)
+			{
+				byte[] record = null;
+				try
+				{
+					int length = in.readInt();
+					if ((length <= 0) || (length > fileLength - result.validLength - 4))
+					{
+						logger.warn("Dead letter store "+storeFile.getAbsolutePath()+" has an invalid record length after "+result.count+" records. Remaining bytes are ignored.");
+						break;
+					}
+					record = new byte[length];
+					in.readFully(record);
+				}
+				catch (EOFException ex)
+				{
+					break; // end of file or incomplete record.
+				}
+				result.count++;
+				result.validLength += 4 + record.length;
+				if (deadLetters != null)
+				{
+					try
+					{
+						deadLetters.add(decode(record));
+					}
+					catch (Exception ex)
+					{
+						logger.error("Dead letter "+result.count+" in "+storeFile.getAbsolutePath()+" cannot be decoded and is skipped: "+ex.getMessage());
+					}
+				}
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return result;
+	}
+	
+	private DeadLetter decode(byte[] record) throws IOException
+	{
+		DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+		long timestamp = recordIn.readLong();
+		int attempts = recordIn.readInt();
+		String reason = recordIn.readUTF();
+		byte[] data = new byte[recordIn.readInt()];
+		recordIn.readFully(data);
+		return new DeadLetter(new Date(timestamp), attempts, reason, codec.decode(data));
+	}
+	
+	/*
+	 * Cuts the given store file to the given length. Removes an incomplete record at the end of the file.
+	 */
+	private void truncate(File storeFile, long length) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(storeFile, "rw");
+		try
+		{
+			raf.setLength(length);
+			raf.getChannel().force(true);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+	
+	/*
+	 * Appends the content of the source file to the target file and forces it to disk.
+	 */
+	private boolean appendFile(File source, File target)
+	{
+		FileInputStream in = null;
+		FileOutputStream out = null;
+		try
+		{
+			in = new FileInputStream(source);
+			out = new FileOutputStream(target, true);
+			byte[] buffer = new byte[8192];
+			int len;
+			while ((len = in.read(buffer)) != -1)
+			{
+				out.write(buffer, 0, len);
+			}
+			out.getChannel().force(false);
+			return true;
+		}
+		catch (IOException ex)
+		{
+			logger.error("Failed to append "+source.getAbsolutePath()+" to "+target.getAbsolutePath()+": "+ex.getMessage(), ex);
+			return false;
+		}
+		finally
+		{
+			close(out);
+			if (in != null)
+			{
+				try
+				{
+					in.close();
+				}
+				catch (IOException ex)
+				{
+					// nothing we can do
+				}
+			}
+		}
+	}
+	
+	private String truncate(String reason)
+	{
+		if (reason == null)
+		{
+			return "";
+		}
+		return (reason.length() > MAX_REASON_LENGTH) ? reason.substring(0, MAX_REASON_LENGTH) : reason;
+	}
+	
+	private static class ReadResult
+	{
+		private int count = 0;
+		private long validLength = 0;
+	}
+	
+	private void close(FileOutputStream out)
+	{
+		if (out != null)
+		{
+			try
+			{
+				out.close();
+			}
+			catch (IOException ex)
+			{
+				logger.error("Failed to close dead letter store "+file.getAbsolutePath()+": "+ex.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * EventInfoCodec.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package sif3.infra.rest.queue.persist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+
+import sif3.common.header.HeaderProperties;
+import sif3.common.header.HeaderValues.EventAction;
+import sif3.common.header.HeaderValues.UpdateType;
+import sif3.common.model.EventMetadata;
+import sif3.common.model.SIFContext;
+import sif3.common.model.SIFZone;
+import sif3.common.model.URLQueryParameter;
+import sif3.infra.rest.queue.types.EventInfo;
+
+/**
+ * Converts an EventInfo to and from a byte array so that it can be stored in a SegmentedEventLog. Java serialisation cannot be used as
+ * some of the classes referenced by the EventInfo are not serialisable (i.e. MediaType).
+ * 
+ * @author agent
+ */
+public class EventInfoCodec
+{
+	private static final int VERSION = 1;
+	private static final String CHARSET = "UTF-8";
+	
+	/**
+	 * Encodes the given event.
+	 * 
+	 * @param event The event to encode. Must not be null.
+	 * 
+	 * @return See desc.
+	 * 
+	 * @throws IOException Failed to encode the event.
+	 */
+	public byte[] encode(EventInfo event) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + ((event.getEventPayload() != null) ? event.getEventPayload().length() : 0));
+		DataOutputStream out = new DataOutputStream(bytes);
+		
+		out.writeByte(VERSION);
+		writeString(out, event.getEventPayload());
+		writeString(out, (event.getMediaType() != null) ? event.getMediaType().toString() : null);
+		writeString(out, (event.getEventAction() != null) ? event.getEventAction().name() : null);
+		writeString(out, (event.getUpdateType() != null) ? event.getUpdateType().name() : null);
+		writeString(out, (event.getZone() != null) ? event.getZone().getId() : null);
+		out.writeBoolean((event.getZone() != null) && event.getZone().getIsDefault());
+		writeString(out, (event.getContext() != null) ? event.getContext().getId() : null);
+		out.writeBoolean((event.getContext() != null) && event.getContext().getIsDefault());
+		writeString(out, event.getMessageQueueReaderID());
+		writeMap(out, event.getMetadata());
+		
+		EventMetadata metadata = event.getEventMetadata();
+		out.writeBoolean(metadata != null);
+		if (metadata != null)
+		{
+			writeString(out, metadata.getGeneratorID());
+			writeString(out, metadata.getApplicationKey());
+			writeString(out, metadata.getAuthentictedUser());
+			HeaderProperties hdrProperties = metadata.getRequestParameters().getHttpHeaderParams();
+			writeMap(out, (hdrProperties != null) ? hdrProperties.getHeaderProperties() : null);
+			URLQueryParameter queryParams = metadata.getRequestParameters().getQueryParams();
+			writeMap(out, (queryParams != null) ? queryParams.getQueryParams() : null);
+		}
+		
+		out.flush();
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Decodes an event that has been encoded with the encode() method.
+	 * 
+	 * @param data The encoded event.
+	 * 
+	 * @return See desc.
+	 * 
+	 * @throws IOException The data is not a valid encoded event.
+	 */
+	public EventInfo decode(byte[] data) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		int version = in.readByte();
+		if (version != VERSION)
+		{
+			throw new IOException("Unknown version of encoded event: "+version);
+		}
+		
+		EventInfo event = new EventInfo();
+		event.setEventPayload(readString(in));
+		String value = readString(in);
+		event.setMediaType((value != null) ? MediaType.valueOf(value) : null);
+		value = readString(in);
+		event.setEventAction((value != null) ? EventAction.valueOf(value) : null);
+		value = readString(in);
+		event.setUpdateType((value != null) ? UpdateType.valueOf(value) : null);
+		value = readString(in);
+		boolean isDefault = in.readBoolean();
+		event.setZone((value != null) ? new SIFZone(value, isDefault) : null);
+		value = readString(in);
+		isDefault = in.readBoolean();
+		event.setContext((value != null) ? new SIFContext(value, isDefault) : null);
+		event.setMessageQueueReaderID(readString(in));
+		HashMap<String, String> map = readMap(in);
+		event.setMetadata((map != null) ? map : new HashMap<String, String>());
+		
+		if (in.readBoolean()) // has event metadata
+		{
+			String generatorID = readString(in);
+			String applicationKey = readString(in);
+			String authenticatedUser = readString(in);
+			map = readMap(in);
+			EventMetadata metadata = new EventMetadata((map != null) ? new HeaderProperties(map) : null);
+			metadata.setGeneratorID(generatorID);
+			metadata.setApplicationKey(applicationKey);
+			metadata.setAuthentictedUser(authenticatedUser);
+			map = readMap(in);
+			if (map != null)
+			{
+				metadata.getRequestParameters().setQueryParams(new URLQueryParameter(map));
+			}
+			event.setEventMetadata(metadata);
+		}
+		
+		return event;
+	}
+	
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	private void writeString(DataOutputStream out, String value) throws IOException
+	{
+		if (value == null)
+		{
+			out.writeInt(-1);
+		}
+		else
+		{
+			byte[] bytes = value.getBytes(CHARSET);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+	
+	private String readString(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if (length < 0)
+		{
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, CHARSET);
+	}
+	
+	private void writeMap(DataOutputStream out, Map<String, String> map) throws IOException
+	{
+		if (map == null)
+		{
+			out.writeInt(-1);
+		}
+		else
+		{
+			out.writeInt(map.size());
+			for (Map.Entry<String, String> entry : map.entrySet())
+			{
+				writeString(out, entry.getKey());
+				writeString(out, entry.getValue());
+			}
+		}
+	}
+	
+	private HashMap<String, String> readMap(DataInputStream in) throws IOException
+	{
+		int size = in.readInt();
+		if (size < 0)
+		{
+			return null;
+		}
+		HashMap<String, String> map = new HashMap<String, String>();
+		for (int i = 0; i < size; i++)
+		{
+			map.put(readString(in), readString(in));
+		}
+		return map;
+	}
+}
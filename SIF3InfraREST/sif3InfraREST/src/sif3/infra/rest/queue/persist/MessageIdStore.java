@@ -0,0 +1,490 @@
+/*
+ * MessageIdStore.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.rest.queue.persist;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class holds the IDs of recently received queue messages so that messages that are re-delivered by a SIF queue can be
+ * detected and dropped. The store is bounded by a max number of IDs and a time window. If it is full the oldest ID is removed.
+ * IDs older than the time window are removed as well.<p>
+ * 
+ * To keep the heap small for millions of IDs, each message ID is reduced to 128 bits (SIF message IDs are UUIDs) and held off-heap
+ * in a ring buffer of fixed size entries (id high bits, id low bits, timestamp). An open addressing hash table of int values, also
+ * held off-heap, refers to the entries of the ring buffer. This requires 24 bytes per entry plus 8 to 16 bytes per entry for the hash 
+ * table.<p>
+ * 
+ * If a directory is given then the ring buffer is a memory mapped file in that directory, so the IDs survive a restart. The hash 
+ * table is re-built from the ring buffer when the store is opened.<p>
+ * 
+ * All public methods are thread safe.
+ * 
+ * @author agent
+ */
+public class MessageIdStore
+{
+	protected final Logger logger = Logger.getLogger(getClass());
+	
+	private static final int MAGIC = 0x53494649; // 'SIFI'
+	private static final int HEADER_SIZE = 32;
+	private static final int ENTRY_SIZE = 24;
+	
+	/* Header: int magic, int capacity, long head */
+	private static final int HEAD_POS = 8;
+	
+	private String storeID;
+	private int capacity;
+	private long window; // milliseconds
+	private File file = null;
+	private ByteBuffer ring;
+	private IntBuffer table;
+	private int tableMask;
+	
+	/* Entries between tail (inclusive) and head (exclusive) are live. Both count entries since the store has been created. */
+	private long head = 0;
+	private long tail = 0;
+	
+	/* Number of entries between tail and head that have been removed with remove(). */
+	private long numCleared = 0;
+	
+	/* Metrics */
+	private long numChecks = 0;
+	private long numHits = 0;
+	
+	/**
+	 * Creates a message ID store.
+	 * 
+	 * @param storeID A name of the store. If a directory is given it is also used as the file name (white spaces removed).
+	 * @param capacity The max number of IDs held by this store.
+	 * @param windowSeconds The max age in seconds of IDs held in the store. If 0 or less then IDs are only removed when the store is full.
+	 * @param dir The directory in which the store is persisted. If null then the store is held in memory only.
+	 * 
+	 * @throws IOException The store file could not be opened or created.
+	 */
+	public MessageIdStore(String storeID, int capacity, int windowSeconds, File dir) throws IOException
+	{
+		this.storeID = storeID;
+		this.capacity = Math.max(capacity, 1);
+		this.window = (windowSeconds > 0) ? windowSeconds * 1000L : Long.MAX_VALUE;
+		
+		int tableSize = Integer.highestOneBit(this.capacity) << 2; // at least twice the capacity, power of 2.
+		tableMask = tableSize - 1;
+		table = ByteBuffer.allocateDirect(tableSize * 4).asIntBuffer();
+
+		long ringSize = HEADER_SIZE + (long)this.capacity * ENTRY_SIZE;
+		if (dir != null)
+		{
+			if (!dir.exists() && !dir.mkdirs())
+			{
+				throw new IOException("Failed to create directory "+dir.getAbsolutePath()+" for message ID store.");
+			}
+			file = new File(dir, storeID.replaceAll("\\s+", "") + ".ids");
+			open(ringSize);
+		}
+		else
+		{
+			ring = ByteBuffer.allocateDirect((int)ringSize);
+			ring.putInt(0, MAGIC);
+			ring.putInt(4, this.capacity);
+		}
+	}
+	
+	/**
+	 * Returns TRUE if the given message ID is held by this store. This is recorded as a check for the hit rate. If the 
+	 * message ID is null then FALSE is returned.
+	 * 
+	 * @param messageID The ID of the message.
+	 * 
+	 * @return See desc.
+	 */
+	public synchronized boolean contains(String messageID)
+	{
+		if (messageID == null)
+		{
+			return false;
+		}
+		removeExpired(System.currentTimeMillis());
+		numChecks++;
+		if (find(toHigh(messageID), toLow(messageID)) >= 0)
+		{
+			numHits++;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Adds the given message ID to this store. If the ID is already in the store this method does nothing. If the store 
+	 * is full the oldest ID is removed.
+	 * 
+	 * @param messageID The ID of the message. If null this method does nothing.
+	 */
+	public synchronized void add(String messageID)
+	{
+		if (messageID == null)
+		{
+			return;
+		}
+		long now = System.currentTimeMillis();
+		removeExpired(now);
+		long high = toHigh(messageID);
+		long low = toLow(messageID);
+		if (find(high, low) < 0)
+		{
+			insert(high, low, now);
+		}
+	}
+	
+	/**
+	 * Adds the given message ID to this store if it is not held by the store already. Checking and adding is done in one step, so
+	 * if two threads call this method with the same ID only one of them gets TRUE. This is recorded as a check for the hit rate.
+	 * 
+	 * @param messageID The ID of the message. If null nothing is added and TRUE is returned.
+	 * 
+	 * @return TRUE if the ID has been added. FALSE if the ID is already held by this store (duplicate).
+	 */
+	public synchronized boolean addIfAbsent(String messageID)
+	{
+		if (messageID == null)
+		{
+			return true;
+		}
+		long now = System.currentTimeMillis();
+		removeExpired(now);
+		numChecks++;
+		long high = toHigh(messageID);
+		long low = toLow(messageID);
+		if (find(high, low) >= 0)
+		{
+			numHits++;
+			return false;
+		}
+		insert(high, low, now);
+		return true;
+	}
+	
+	/**
+	 * Removes the given message ID from this store. This is used if a message that has been added with addIfAbsent() could not be
+	 * processed, so that it is accepted when it is re-delivered. If the ID is not held by this store this method does nothing.
+	 * 
+	 * @param messageID The ID of the message. If null this method does nothing.
+	 */
+	public synchronized void remove(String messageID)
+	{
+		if (messageID == null)
+		{
+			return;
+		}
+		int slot = find(toHigh(messageID), toLow(messageID));
+		if (slot >= 0)
+		{
+			removeIndex(slot);
+			
+			// Clear the entry so that it is not indexed again when a persisted store is re-opened. The slot remains in the ring until
+			// it is the oldest.
+			int pos = HEADER_SIZE + slot * ENTRY_SIZE;
+			ring.putLong(pos, 0);
+			ring.putLong(pos + 8, 0);
+			numCleared++;
+		}
+	}
+	
+	/**
+	 * Returns the number of IDs currently held by this store.
+	 * 
+	 * @return See desc.
+	 */
+	public synchronized int size()
+	{
+		return (int)(head - tail - numCleared);
+	}
+	
+	public int getCapacity()
+	{
+		return capacity;
+	}
+	
+	/**
+	 * Returns the number of calls to contains().
+	 * 
+	 * @return See desc.
+	 */
+	public synchronized long getNumChecks()
+	{
+		return numChecks;
+	}
+
+	/**
+	 * Returns the number of calls to contains() that returned TRUE, i.e. the number of duplicate messages detected.
+	 * 
+	 * @return See desc.
+	 */
+	public synchronized long getNumHits()
+	{
+		return numHits;
+	}
+	
+	/**
+	 * Returns the ratio of getNumHits() to getNumChecks(). 0 if there have not been any checks.
+	 * 
+	 * @return See desc.
+	 */
+	public synchronized double getHitRate()
+	{
+		return (numChecks == 0) ? 0 : (double)numHits / numChecks;
+	}
+	
+	/**
+	 * Writes all changes of a persisted store to disk. For a store that is held in memory only this method does nothing.
+	 */
+	public synchronized void flush()
+	{
+		if (ring instanceof MappedByteBuffer)
+		{
+			((MappedByteBuffer)ring).force();
+		}
+	}
+	
+	@Override
+	public synchronized String toString()
+	{
+		return "MessageIdStore " + storeID + ": size = " + size() + ", capacity = " + capacity + ", checks = " + numChecks + ", duplicates = " + numHits + String.format(", hitRate = %.4f", getHitRate());
+	}
+	
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	private void open(long ringSize) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			boolean valid = (raf.length() == ringSize) && (raf.readInt() == MAGIC) && (raf.readInt() == capacity);
+			if (!valid)
+			{
+				if (raf.length() > 0)
+				{
+					logger.warn("Message ID store "+file.getAbsolutePath()+" is invalid or has a different capacity. It is re-created.");
+				}
+				raf.setLength(0);
+				raf.setLength(ringSize);
+			}
+			ring = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, ringSize);
+		}
+		finally
+		{
+			raf.close(); // mapping remains valid
+		}
+		ring.putInt(0, MAGIC);
+		ring.putInt(4, capacity);
+		
+		// Re-build index
+		head = ring.getLong(HEAD_POS);
+		tail = Math.max(0, head - capacity);
+		for (long i = tail; i < head; i++)
+		{
+			int slot = (int)(i % capacity);
+			int pos = HEADER_SIZE + slot * ENTRY_SIZE;
+			if (isCleared(pos))
+			{
+				numCleared++;
+			}
+			else
+			{
+				insertIndex(slot, ring.getLong(pos), ring.getLong(pos + 8));
+			}
+		}
+		removeExpired(System.currentTimeMillis());
+		logger.debug("Message ID store "+file.getAbsolutePath()+" opened with "+size()+" message IDs.");
+	}
+	
+	private void insert(long high, long low, long now)
+	{
+		if (head - tail >= capacity)
+		{
+			removeOldest();
+		}
+		
+		int slot = (int)(head % capacity);
+		int pos = HEADER_SIZE + slot * ENTRY_SIZE;
+		ring.putLong(pos, high);
+		ring.putLong(pos + 8, low);
+		ring.putLong(pos + 16, now);
+		insertIndex(slot, high, low);
+		head++;
+		ring.putLong(HEAD_POS, head);
+	}
+	
+	private void removeExpired(long now)
+	{
+		if (window == Long.MAX_VALUE)
+		{
+			return;
+		}
+		while ((tail < head) && (ring.getLong(HEADER_SIZE + (int)(tail % capacity) * ENTRY_SIZE + 16) < now - window))
+		{
+			removeOldest();
+		}
+	}
+	
+	private void removeOldest()
+	{
+		int slot = (int)(tail % capacity);
+		if (isCleared(HEADER_SIZE + slot * ENTRY_SIZE))
+		{
+			numCleared--;
+		}
+		else
+		{
+			removeIndex(slot);
+		}
+		tail++;
+	}
+	
+	/*
+	 * Entries removed with remove() are cleared (both id values are 0).
+	 */
+	private boolean isCleared(int pos)
+	{
+		return (ring.getLong(pos) == 0) && (ring.getLong(pos + 8) == 0);
+	}
+	
+	/*
+	 * Returns the ring slot of the given ID or -1 if it is not in the store.
+	 */
+	private int find(long high, long low)
+	{
+		for (int i = hash(high, low) & tableMask; ; i = (i + 1) & tableMask)
+		{
+			int value = table.get(i);
+			if (value == 0)
+			{
+				return -1;
+			}
+			int pos = HEADER_SIZE + (value - 1) * ENTRY_SIZE;
+			if ((ring.getLong(pos) == high) && (ring.getLong(pos + 8) == low))
+			{
+				return value - 1;
+			}
+		}
+	}
+	
+	private void insertIndex(int slot, long high, long low)
+	{
+		int i = hash(high, low) & tableMask;
+		while (table.get(i) != 0)
+		{
+			i = (i + 1) & tableMask;
+		}
+		table.put(i, slot + 1);
+	}
+	
+	/*
+	 * Removes the given ring slot from the hash table. Uses backward shift deletion so that no tombstones are needed.
+	 */
+	private void removeIndex(int slot)
+	{
+		int pos = HEADER_SIZE + slot * ENTRY_SIZE;
+		int i = hash(ring.getLong(pos), ring.getLong(pos + 8)) & tableMask;
+		while (table.get(i) != slot + 1)
+		{
+			if (table.get(i) == 0)
+			{
+				return; // not indexed
+			}
+			i = (i + 1) & tableMask;
+		}
+		
+		table.put(i, 0);
+		int j = i;
+		while (true)
+		{
+			j = (j + 1) & tableMask;
+			int value = table.get(j);
+			if (value == 0)
+			{
+				return;
+			}
+			int entryPos = HEADER_SIZE + (value - 1) * ENTRY_SIZE;
+			int k = hash(ring.getLong(entryPos), ring.getLong(entryPos + 8)) & tableMask;
+			
+			// Entry at j can be moved to the gap at i if its home slot k is not cyclically in (i, j].
+			boolean stays = (i <= j) ? ((i < k) && (k <= j)) : ((i < k) || (k <= j));
+			if (!stays)
+			{
+				table.put(i, value);
+				table.put(j, 0);
+				i = j;
+			}
+		}
+	}
+	
+	private static int hash(long high, long low)
+	{
+		long h = high * 0x9E3779B97F4A7C15L ^ low;
+		h ^= (h >>> 33);
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= (h >>> 33);
+		return (int)h;
+	}
+	
+	/*
+	 * SIF message IDs are UUIDs. For any other ID two different 64 bit hashes of the ID are used.
+	 */
+	private static long toHigh(String messageID)
+	{
+		try
+		{
+			return UUID.fromString(messageID).getMostSignificantBits();
+		}
+		catch (IllegalArgumentException ex)
+		{
+			return fnv64(messageID, 0xCBF29CE484222325L);
+		}
+	}
+	
+	private static long toLow(String messageID)
+	{
+		try
+		{
+			return UUID.fromString(messageID).getLeastSignificantBits();
+		}
+		catch (IllegalArgumentException ex)
+		{
+			return fnv64(messageID, 0x84222325CBF29CE4L) ^ messageID.length();
+		}
+	}
+	
+	private static long fnv64(String value, long seed)
+	{
+		long h = seed;
+		for (int i = 0; i < value.length(); i++)
+		{
+			h ^= value.charAt(i);
+			h *= 0x100000001B3L;
+		}
+		return h;
+	}
+}
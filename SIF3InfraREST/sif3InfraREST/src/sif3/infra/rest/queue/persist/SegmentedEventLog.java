@@ -0,0 +1,456 @@
+/*
+ * SegmentedEventLog.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package sif3.infra.rest.queue.persist;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class implements a simple append-only log of records (byte arrays) on disk. The log is made up of segment files that are memory 
+ * mapped. Records are appended to the last segment. Once a segment is full a new segment is created. Records are read in the order they
+ * have been appended. The position up to which records have been consumed is stored in a checkpoint file through the commit() method. 
+ * Segments that have been fully consumed are removed at that point. When the log is opened again (i.e. after a restart) reading 
+ * continues at the last committed position.<br/><br/>
+ * 
+ * Records are written to the memory mapped segments, so they survive a crash of the JVM. They only survive a crash of the operating system
+ * if 'syncWrites' is set to TRUE in which case each append and commit is forced to disk. This is considerably slower.<br/><br/>
+ * 
+ * The format of a record is: [int length][byte[length] data]. A length of 0 marks the end of the records in a segment. The checkpoint
+ * holds the segment number and offset as one long value that is written in a single write, so a crash can't leave a checkpoint with
+ * the segment of one commit and the offset of another.<br/><br/>
+ * 
+ * The mapping of a segment is released before the segment is deleted, since a file that is still mapped can't be deleted on some 
+ * platforms (i.e. Windows). If a segment can't be deleted anyway it is tried again with the next commit. This class is thread safe.
+ * 
+ * @author agent
+ */
+public class SegmentedEventLog
+{
+	protected final Logger logger = Logger.getLogger(getClass());
+
+	private static final String SEGMENT_EXT = ".seg";
+	private static final String CHECKPOINT_FILE = "checkpoint";
+	private static final int HEADER_SIZE = 4; // length of record
+	private static final int CHECKPOINT_SIZE = 8; // segment number (high int) and offset (low int) as one long
+
+	private File dir = null;
+	private int segmentSize;
+	private boolean syncWrites;
+	
+	/* Key = Segment number. Only segments that have not been removed. */
+	private TreeMap<Integer, File> segments = new TreeMap<Integer, File>();
+
+	private int writeSegment = 0;
+	private int writeOffset = 0;
+	private MappedByteBuffer writeBuffer = null;
+	
+	private int readSegment = 0;
+	private int readOffset = 0;
+	private MappedByteBuffer readBuffer = null;
+	
+	private int committedSegment = 0;
+	private MappedByteBuffer checkpoint = null;
+	
+	private long numUnread = 0;
+	
+	/* Consumed segments that could not be deleted. Deleting them is tried again with the next commit. */
+	private List<File> undeletedSegments = new ArrayList<File>();
+	
+	/**
+	 * Opens the log in the given directory. If the directory doesn't exist it is created. If there are already segments in the 
+	 * directory then reading will start at the last committed position and all records that have not been committed are available
+	 * again.
+	 * 
+	 * @param dir The directory of the log. Each log must have its own directory.
+	 * @param segmentSize The size of a segment in bytes. If a record is larger than this size then its segment will be larger.
+	 * @param syncWrites TRUE: Force each append and commit to disk. FALSE: Leave it to the operating system.
+	 * 
+	 * @throws IOException The log could not be opened or created.
+	 */
+	public SegmentedEventLog(File dir, int segmentSize, boolean syncWrites) throws IOException
+	{
+		super();
+		this.dir = dir;
+		this.segmentSize = Math.max(segmentSize, 1024);
+		this.syncWrites = syncWrites;
+		
+		if (!dir.exists() && !dir.mkdirs())
+		{
+			throw new IOException("Cannot create directory "+dir.getAbsolutePath()+" for local queue.");
+		}
+		open();
+	}
+	
+	/**
+	 * Appends the given record to the end of the log.
+	 * 
+	 * @param record The record to append. Must not be null or empty.
+	 * 
+	 * @throws IOException Failed to write the record (i.e. disk full).
+	 */
+	public synchronized void append(byte[] record) throws IOException
+	{
+		if (writeOffset + HEADER_SIZE + record.length + HEADER_SIZE > writeBuffer.capacity()) // no room for record and end marker
+		{
+			MappedByteBuffer fullBuffer = writeBuffer;
+			writeSegment++;
+			writeOffset = 0;
+			writeBuffer = mapSegment(writeSegment, Math.max(segmentSize, record.length + 2 * HEADER_SIZE));
+			if (fullBuffer != readBuffer) // still needed if the reader hasn't reached the end of it
+			{
+				unmap(fullBuffer);
+			}
+		}
+		
+		// Write data before length so that a partially written record is never seen as a valid record.
+		writeBuffer.position(writeOffset + HEADER_SIZE);
+		writeBuffer.put(record);
+		writeBuffer.putInt(writeOffset, record.length);
+		writeOffset += HEADER_SIZE + record.length;
+		numUnread++;
+		
+		if (syncWrites)
+		{
+			writeBuffer.force();
+		}
+	}
+
+	/**
+	 * Returns the next record that has not yet been read or null if there is none. Reading a record does not commit it. If the log is 
+	 * re-opened before the record has been committed it will be returned again.
+	 * 
+	 * @return See desc.
+	 * 
+	 * @throws IOException Failed to open the next segment.
+	 */
+	public synchronized byte[] read() throws IOException
+	{
+		while (true)
+		{
+			int length = ((readOffset + HEADER_SIZE) <= readBuffer.capacity()) ? readBuffer.getInt(readOffset) : 0;
+			if (length > 0)
+			{
+				byte[] record = new byte[length];
+				readBuffer.position(readOffset + HEADER_SIZE);
+				readBuffer.get(record);
+				readOffset += HEADER_SIZE + length;
+				numUnread--;
+				return record;
+			}
+			
+			if (readSegment >= writeSegment) // no more records
+			{
+				return null;
+			}
+			
+			// End of segment. Move to next one.
+			MappedByteBuffer consumedBuffer = readBuffer;
+			readSegment = nextSegment(readSegment);
+			readOffset = 0;
+			readBuffer = (readSegment == writeSegment) ? writeBuffer : openSegment(readSegment);
+			if (consumedBuffer != writeBuffer)
+			{
+				unmap(consumedBuffer);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the position right after the last record returned by read(). It can be given to commit() once that record has been consumed.
+	 * 
+	 * @return See desc.
+	 */
+	public synchronized long getReadPosition()
+	{
+		return toPosition(readSegment, readOffset);
+	}
+	
+	/**
+	 * Marks all records up to the given position as consumed. They won't be returned again once the log is re-opened. Segments that 
+	 * only hold consumed records are removed.
+	 * 
+	 * @param position A value returned by getReadPosition().
+	 */
+	public synchronized void commit(long position)
+	{
+		int segment = (int)(position >>> 32);
+		checkpoint.putLong(0, position); // one write for segment and offset
+		if (syncWrites)
+		{
+			checkpoint.force();
+		}
+		
+		// Segments before the committed one are no longer mapped (see read()).
+		for (Iterator<File> iter = undeletedSegments.iterator(); iter.hasNext();)
+		{
+			if (iter.next().delete())
+			{
+				iter.remove();
+			}
+		}
+		while (committedSegment < segment)
+		{
+			File file = segments.remove(committedSegment);
+			if ((file != null) && !file.delete())
+			{
+				logger.warn("Could not delete consumed segment "+file.getAbsolutePath()+". Try again with the next commit.");
+				undeletedSegments.add(file);
+			}
+			committedSegment = segments.isEmpty() ? segment : Math.min(segments.firstKey(), segment);
+		}
+	}
+
+	/**
+	 * Returns the number of records that have been appended but not yet been read.
+	 * 
+	 * @return See desc.
+	 */
+	public synchronized long getNumUnread()
+	{
+		return numUnread;
+	}
+	
+	/**
+	 * Forces all changes to disk. Should be called before the application shuts down if syncWrites is FALSE.
+	 */
+	public synchronized void flush()
+	{
+		writeBuffer.force();
+		checkpoint.force();
+	}
+	
+	public File getDir()
+	{
+		return dir;
+	}
+
+	/*---------------------*/
+	/*-- Private Methods --*/
+	/*---------------------*/
+	private void open() throws IOException
+	{
+		// Find existing segments
+		File[] files = dir.listFiles(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(File directory, String name)
+			{
+				return name.endsWith(SEGMENT_EXT);
+			}
+		});
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				try
+				{
+					segments.put(Integer.valueOf(file.getName().substring(0, file.getName().length() - SEGMENT_EXT.length())), file);
+				}
+				catch (NumberFormatException ex)
+				{
+					logger.warn("Ignore unknown file "+file.getAbsolutePath()+" in local queue directory.");
+				}
+			}
+		}
+		
+		// Read checkpoint
+		checkpoint = mapFile(new File(dir, CHECKPOINT_FILE), CHECKPOINT_SIZE);
+		long position = checkpoint.getLong(0);
+		readSegment = (int)(position >>> 32);
+		readOffset = (int)position;
+		
+		if (segments.isEmpty())
+		{
+			readSegment = Math.max(readSegment, 0);
+			readOffset = 0;
+			writeSegment = readSegment;
+			writeBuffer = mapSegment(writeSegment, segmentSize);
+			readBuffer = writeBuffer;
+		}
+		else
+		{
+			// Remove segments that have been consumed fully.
+			while (!segments.isEmpty() && (segments.firstKey() < readSegment))
+			{
+				File file = segments.remove(segments.firstKey());
+				if (!file.delete())
+				{
+					logger.warn("Could not delete consumed segment "+file.getAbsolutePath());
+				}
+			}
+			if (segments.isEmpty() || (segments.firstKey() > readSegment)) // checkpoint points to a segment that no longer exists.
+			{
+				readSegment = segments.isEmpty() ? readSegment : segments.firstKey();
+				readOffset = 0;
+			}
+			
+			writeSegment = segments.isEmpty() ? readSegment : segments.lastKey();
+			writeBuffer = segments.containsKey(writeSegment) ? openSegment(writeSegment) : mapSegment(writeSegment, segmentSize);
+			writeOffset = findEnd(writeBuffer, (readSegment == writeSegment) ? readOffset : 0);
+			readBuffer = (readSegment == writeSegment) ? writeBuffer : openSegment(readSegment);
+			
+			// Count records that haven't been consumed.
+			numUnread = countRecords();
+		}
+		committedSegment = readSegment;
+		
+		logger.debug("Local queue log "+dir.getAbsolutePath()+" opened. "+numUnread+" unconsumed records found.");
+	}
+	
+	private long countRecords() throws IOException
+	{
+		long count = 0;
+		int segment = readSegment;
+		int offset = readOffset;
+		MappedByteBuffer buffer = readBuffer;
+		while (true)
+		{
+			int length = ((offset + HEADER_SIZE) <= buffer.capacity()) ? buffer.getInt(offset) : 0;
+			if (length > 0)
+			{
+				count++;
+				offset += HEADER_SIZE + length;
+			}
+			else if (segment >= writeSegment)
+			{
+				return count;
+			}
+			else
+			{
+				MappedByteBuffer countedBuffer = buffer;
+				segment = nextSegment(segment);
+				offset = 0;
+				buffer = (segment == writeSegment) ? writeBuffer : openSegment(segment);
+				if ((countedBuffer != readBuffer) && (countedBuffer != writeBuffer))
+				{
+					unmap(countedBuffer);
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Returns the offset after the last valid record in the given segment starting at the given offset. 
+	 */
+	private int findEnd(MappedByteBuffer buffer, int offset)
+	{
+		while ((offset + HEADER_SIZE) <= buffer.capacity())
+		{
+			int length = buffer.getInt(offset);
+			if ((length <= 0) || (offset + HEADER_SIZE + length > buffer.capacity()))
+			{
+				break;
+			}
+			offset += HEADER_SIZE + length;
+		}
+		return offset;
+	}
+	
+	private int nextSegment(int segment)
+	{
+		Integer next = segments.higherKey(segment);
+		return (next != null) ? next : segment + 1;
+	}
+	
+	private MappedByteBuffer openSegment(int segment) throws IOException
+	{
+		File file = segments.get(segment);
+		return mapFile(file, (int)file.length());
+	}
+	
+	private MappedByteBuffer mapSegment(int segment, int size) throws IOException
+	{
+		File file = new File(dir, String.format("%010d", segment) + SEGMENT_EXT);
+		segments.put(segment, file);
+		return mapFile(file, size);
+	}
+	
+	private MappedByteBuffer mapFile(File file, int size) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			if (raf.length() < size)
+			{
+				raf.setLength(size);
+			}
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+	
+	private long toPosition(int segment, int offset)
+	{
+		return ((long)segment << 32) | (offset & 0xFFFFFFFFL);
+	}
+	
+	/*
+	 * Releases the mapping of the given buffer straight away rather than when the buffer is garbage collected. The buffer must not be
+	 * used afterwards. There is no public API for this before Java 9 (and none after), so it is done through reflection: 
+	 * Unsafe.invokeCleaner() from Java 9 and DirectBuffer.cleaner().clean() before. If neither works the mapping is released by the 
+	 * garbage collector.
+	 */
+	private void unmap(MappedByteBuffer buffer)
+	{
+		if (buffer == null)
+		{
+			return;
+		}
+		try
+		{
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = null;
+			try
+			{
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			}
+			catch (NoSuchMethodException ex)
+			{
+				// Java 8 or older
+				Method cleaner = buffer.getClass().getMethod("cleaner");
+				cleaner.setAccessible(true);
+				Object bufferCleaner = cleaner.invoke(buffer);
+				if (bufferCleaner != null)
+				{
+					bufferCleaner.getClass().getMethod("clean").invoke(bufferCleaner);
+				}
+				return;
+			}
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+		}
+		catch (Exception ex)
+		{
+			logger.debug("Could not release mapped segment buffer: "+ex.getMessage()+". It is released by the garbage collector.");
+		}
+	}
+}
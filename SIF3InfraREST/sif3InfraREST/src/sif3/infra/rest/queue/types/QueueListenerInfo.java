@@ -23,6 +23,7 @@ import java.util.HashMap;
 
 import sif3.common.persist.model.SIF3Queue;
 import sif3.infra.rest.queue.LocalConsumerQueue;
+import sif3.infra.rest.queue.persist.MessageIdStore;
 
 /**
  * This is a utility class only used at the low level within the framework. It is not intended to be used at any higher levels.
@@ -39,6 +40,9 @@ public class QueueListenerInfo implements Serializable
 	//private HashMap<SubscriptionKey, EventConsumer<?>> consumers = new HashMap<SubscriptionKey, EventConsumer<?>>();
 
 	private HashMap<SubscriptionKey, LocalConsumerQueue> consumerQueues = new HashMap<SubscriptionKey, LocalConsumerQueue>();
+	
+	/* IDs of messages received from this queue. Null if duplicate detection is not enabled. */
+	private transient MessageIdStore messageIdStore = null;
 
 	
 	public QueueListenerInfo(SIF3Queue queue)
@@ -84,6 +88,33 @@ public class QueueListenerInfo implements Serializable
 		return getConsumerQueues().get(new SubscriptionKey(zoneID, contextID, serviceName, serviceType));
 	}
 	
+	/**
+	 * Returns TRUE if any of the local consumer queues of this listener is at or above its high-water mark.
+	 * 
+	 * @return See desc.
+	 */
+	public boolean isAboveHighWaterMark()
+	{
+		for (LocalConsumerQueue consumerQueue : consumerQueues.values())
+		{
+			if (consumerQueue.isAboveHighWaterMark())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public MessageIdStore getMessageIdStore()
+	{
+		return messageIdStore;
+	}
+
+	public void setMessageIdStore(MessageIdStore messageIdStore)
+	{
+		this.messageIdStore = messageIdStore;
+	}
+
 	public HashMap<SubscriptionKey, LocalConsumerQueue> getConsumerQueues()
     {
     	return this.consumerQueues;
@@ -0,0 +1,96 @@
+/*
+ * StageMetrics.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.rest.queue.types;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simple timing metrics of a processing stage of the event pipeline (i.e. decoding or processing of events). It records how
+ * many events have passed through the stage and how long they took. This class is thread safe.
+ * 
+ * @author agent
+ */
+public class StageMetrics
+{
+	private String stageName;
+	private AtomicLong count = new AtomicLong(0);
+	private AtomicLong numFailed = new AtomicLong(0);
+	private AtomicLong totalNanos = new AtomicLong(0);
+	private AtomicLong maxNanos = new AtomicLong(0);
+	
+	public StageMetrics(String stageName)
+	{
+		this.stageName = stageName;
+	}
+	
+	/**
+	 * Records the time an event took in this stage.
+	 * 
+	 * @param nanos The elapsed time in nanoseconds.
+	 * @param success TRUE if the stage completed successfully for the event.
+	 */
+	public void record(long nanos, boolean success)
+	{
+		count.incrementAndGet();
+		if (!success)
+		{
+			numFailed.incrementAndGet();
+		}
+		totalNanos.addAndGet(nanos);
+		long max = maxNanos.get();
+		while ((nanos > max) && !maxNanos.compareAndSet(max, nanos))
+		{
+			max = maxNanos.get();
+		}
+	}
+
+	public String getStageName()
+	{
+		return stageName;
+	}
+
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	public long getNumFailed()
+	{
+		return numFailed.get();
+	}
+
+	public double getTotalMillis()
+	{
+		return totalNanos.get() / 1000000.0;
+	}
+	
+	public double getAverageMillis()
+	{
+		long num = count.get();
+		return (num == 0) ? 0 : getTotalMillis() / num;
+	}
+
+	public double getMaxMillis()
+	{
+		return maxNanos.get() / 1000000.0;
+	}
+
+	@Override
+	public String toString()
+	{
+		return stageName + ": count = " + getCount() + ", failed = " + getNumFailed() + String.format(", avg = %.3fms, max = %.3fms, total = %.1fms", getAverageMillis(), getMaxMillis(), getTotalMillis());
+	}
+}
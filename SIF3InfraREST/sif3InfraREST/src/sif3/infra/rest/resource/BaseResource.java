@@ -17,6 +17,8 @@
  */
 package sif3.infra.rest.resource;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -31,13 +33,16 @@ import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.log4j.Logger;
 
 import sif3.common.CommonConstants;
+import sif3.common.conversion.JAXBStreamMarshalFactory;
 import sif3.common.conversion.MarshalFactory;
 import sif3.common.conversion.MediaTypeOperations;
+import sif3.common.conversion.StreamMarshalFactory;
 import sif3.common.conversion.UnmarshalFactory;
 import sif3.common.exception.MarshalException;
 import sif3.common.exception.UnmarshalException;
@@ -1329,9 +1334,26 @@ public abstract class BaseResource
 						// and hope the client can recover, is to use the marshaller's default media type.
 						finalMediaType = (marshaller.isSupported(finalMediaType)) ?  finalMediaType : marshaller.getDefault();
 					}
-					String payload = marshaller.marshal(data, finalMediaType);
-					response = Response.status(status).entity(payload);
-					response = response.header(ResponseHeaderConstants.HDR_CONTENT_LENGTH, payload.length());
+					// Data model marshallers don't support streams themselves. They are wrapped in a JAXB stream adapter if it is turned on.
+					StreamMarshalFactory streamMarshaller = JAXBStreamMarshalFactory.getStreamMarshaller(marshaller);
+					if (streamMarshaller != null)
+					{
+						// Marshal straight into the response stream rather than building the full payload as a String first. 
+						// Once the stream is written it is too late to send an error response, so check the media type now.
+						// There is intentionally no Content-Length header: The length is only known once the payload is written, so
+						// the response is sent with chunked transfer encoding, which HTTP/1.1 clients must support.
+						if (!marshaller.isSupported(finalMediaType))
+						{
+							throw new UnsupportedMediaTypeExcpetion("Unsupported media type: " + finalMediaType + ". Cannot marshal the given input to this media type.");
+						}
+						response = Response.status(status).entity(new MarshalStreamingOutput(streamMarshaller, data, finalMediaType));
+					}
+					else
+					{
+						String payload = marshaller.marshal(data, finalMediaType);
+						response = Response.status(status).entity(payload);
+						response = response.header(ResponseHeaderConstants.HDR_CONTENT_LENGTH, payload.length());
+					}
 					response = response.header(HttpHeaders.CONTENT_TYPE, finalMediaType);
 				}
 				else
@@ -1859,4 +1881,40 @@ public abstract class BaseResource
 	{
 		return (getEnvironmentManager().getEnvironmentType() == sif3.infra.common.env.types.EnvironmentInfo.EnvironmentType.DIRECT);
 	}
+	
+	/*
+	 * Writes the response object directly to the HTTP response stream using a stream capable marshaller. Jersey calls the
+	 * write() method when it writes the response entity.
+	 */
+	private static class MarshalStreamingOutput implements StreamingOutput
+	{
+		private StreamMarshalFactory marshaller;
+		private Object data;
+		private MediaType mediaType;
+		
+		MarshalStreamingOutput(StreamMarshalFactory marshaller, Object data, MediaType mediaType)
+		{
+			this.marshaller = marshaller;
+			this.data = data;
+			this.mediaType = mediaType;
+		}
+
+		@Override
+		public void write(OutputStream out) throws IOException
+		{
+			try
+			{
+				marshaller.marshal(data, mediaType, out);
+				out.flush();
+			}
+			catch (MarshalException ex)
+			{
+				throw new IOException("Failed to marshal "+data.getClass().getSimpleName()+" to response stream: "+ex.getMessage(), ex);
+			}
+			catch (UnsupportedMediaTypeExcpetion ex)
+			{
+				throw new IOException("Failed to marshal "+data.getClass().getSimpleName()+" into unsupported media type '"+mediaType+"'.", ex);
+			}
+		}
+	}
 }
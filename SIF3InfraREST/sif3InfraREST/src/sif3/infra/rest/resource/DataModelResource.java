@@ -20,6 +20,7 @@ package sif3.infra.rest.resource;
 
 import java.util.List;
 
+import javax.annotation.PreDestroy;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.MatrixParam;
@@ -140,6 +141,20 @@ public class DataModelResource extends BaseResource
 		}
     }
     
+    /**
+     * Called by the Jersey Framework once the request has been processed. It gives the provider back to the ProviderFactory so that
+     * it can be re-used by subsequent requests if the provider lifecycle allows for it.
+     */
+    @PreDestroy
+    public void releaseProvider()
+    {
+    	if (provider != null)
+    	{
+    		ProviderFactory.getInstance().releaseProvider(new ModelObjectInfo(this.dmObjectNamePlural, null), provider);
+    		provider = null;
+    	}
+    }
+    
 	/*----------------------*/
 	/*-- Abstract Methods --*/
 	/*----------------------*/
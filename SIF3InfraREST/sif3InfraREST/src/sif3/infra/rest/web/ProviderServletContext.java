@@ -27,7 +27,9 @@ import javax.servlet.ServletContextListener;
 
 import org.apache.log4j.Logger;
 
+import sif3.common.conversion.JAXBStreamMarshalFactory;
 import sif3.common.persist.common.HibernateUtil;
+import sif3.common.utils.JAXBUtils;
 import sif3.infra.common.env.mgr.ProviderManagerFactory;
 import sif3.infra.common.interfaces.EnvironmentConnector;
 import sif3.infra.common.interfaces.EnvironmentManager;
@@ -76,6 +78,16 @@ public class ProviderServletContext implements ServletContextListener
 				logger.debug("Initialise Provider Environment Manager and Session Store...");
 				EnvironmentManager envMgr = ProviderManagerFactory.initialse(propertyFileName);
 				
+				// Set the XML output mode (pretty/compact) as configured for this adapter.
+				if ((envMgr != null) && (envMgr.getEnvironmentInfo() != null))
+				{
+					JAXBUtils.setDefaultOutputMode(envMgr.getEnvironmentInfo().getOutputMode());
+				}
+				if (envMgr != null)
+				{
+					JAXBStreamMarshalFactory.setEnabled(envMgr.getServiceProperties().getPropertyAsBool("adapter.marshal.stream", false));
+				}
+				
 				logger.debug("Attempt to connect to Environment Provider...");
 				connector = EnvironmentConnectorFactory.getEnvironmentConnector(envMgr);
 				if (connector != null)
@@ -0,0 +1,94 @@
+/*
+ * TestJAXBStreamAdapter.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.test.common.conversion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.ws.rs.core.MediaType;
+
+import sif.dd.au30.conversion.DataModelMarshalFactory;
+import sif.dd.au30.conversion.DataModelUnmarshalFactory;
+import sif.dd.au30.model.StudentCollectionType;
+import sif3.common.conversion.JAXBStreamMarshalFactory;
+import sif3.common.conversion.JAXBStreamUnmarshalFactory;
+import sif3.common.conversion.StreamMarshalFactory;
+import sif3.common.conversion.StreamUnmarshalFactory;
+import systemic.sif3.demo.rest.conversion.CSVMarshaller;
+import au.com.systemic.framework.utils.FileReaderWriter;
+
+/**
+ * Checks that the JAXB stream adapters produce the same result as the String based methods of the data model factories.
+ * 
+ * @author agent
+ *
+ */
+public class TestJAXBStreamAdapter
+{
+	private final static String STUDENTS_FILE_NAME = "C:/Development/GitHubRepositories/SIF3InfraRest/SIF3InfraREST/TestData/xml/input/StudentPersonals.xml";
+
+	private DataModelMarshalFactory dmMarshaller = new DataModelMarshalFactory();
+	private DataModelUnmarshalFactory dmUnmarshaller = new DataModelUnmarshalFactory();
+
+	private void testRoundTrip(MediaType mediaType)
+	{
+		try
+		{
+			StreamMarshalFactory marshaller = JAXBStreamMarshalFactory.getStreamMarshaller(dmMarshaller);
+			StreamUnmarshalFactory unmarshaller = JAXBStreamUnmarshalFactory.getStreamUnmarshaller(dmUnmarshaller);
+			System.out.println("Data model factories adapted: "+((marshaller != null) && (unmarshaller != null)));
+
+			String inputXML = FileReaderWriter.getFileContent(STUDENTS_FILE_NAME);
+			StudentCollectionType students = (StudentCollectionType)unmarshaller.unmarshal(new ByteArrayInputStream(inputXML.getBytes("UTF-8")), StudentCollectionType.class, MediaType.APPLICATION_XML_TYPE);
+			System.out.println("Students unmarshalled from XML stream: "+students.getStudentPersonal().size());
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			marshaller.marshal(students, mediaType, out);
+			String streamed = out.toString("UTF-8");
+			// The JAXB stream writer may add leading white space where the (suppressed) XML declaration would be.
+			System.out.println("Stream marshal to "+mediaType+" same as data model String marshal: "+streamed.trim().equals(dmMarshaller.marshal(students, mediaType).trim()));
+
+			students = (StudentCollectionType)unmarshaller.unmarshal(new ByteArrayInputStream(out.toByteArray()), StudentCollectionType.class, mediaType);
+			System.out.println("Students unmarshalled from "+mediaType+" stream: "+students.getStudentPersonal().size());
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+		}
+	}
+
+	private void testNotAdapted()
+	{
+		System.out.println("CSV marshaller adapted: "+(JAXBStreamMarshalFactory.getStreamMarshaller(new CSVMarshaller()) != null));
+		JAXBStreamMarshalFactory.setEnabled(false);
+		System.out.println("Data model marshaller adapted when turned off: "+(JAXBStreamMarshalFactory.getStreamMarshaller(dmMarshaller) != null));
+	}
+
+	public static void main(String[] args)
+	{
+		TestJAXBStreamAdapter tester = new TestJAXBStreamAdapter();
+
+		System.out.println("Start Testing JAXB Stream Adapter...");
+		System.out.println("Adapter enabled by default: "+JAXBStreamMarshalFactory.isEnabled());
+		JAXBStreamMarshalFactory.setEnabled(true);
+
+		tester.testRoundTrip(MediaType.APPLICATION_XML_TYPE);
+		tester.testRoundTrip(MediaType.APPLICATION_JSON_TYPE);
+		tester.testNotAdapted();
+
+		System.out.println("End Testing JAXB Stream Adapter.");
+	}
+}
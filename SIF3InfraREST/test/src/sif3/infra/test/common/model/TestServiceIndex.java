@@ -0,0 +1,162 @@
+/*
+ * TestServiceIndex.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package sif3.infra.test.common.model;
+
+import java.util.ArrayList;
+
+import sif3.common.CommonConstants;
+import sif3.common.header.HeaderValues.ServiceType;
+import sif3.common.model.SIFContext;
+import sif3.common.model.SIFZone;
+import sif3.common.model.ServiceInfo;
+import sif3.common.model.ServiceRights.AccessRight;
+import sif3.common.model.ServiceRights.AccessType;
+import sif3.common.persist.model.SIF3Session;
+
+/**
+ * Checks that the ACL checks and service lookups of a SIF3Session with a service index return the same results as the same session 
+ * without an index (list scan), and compares the time of both variants.
+ * 
+ * @author agent
+ *
+ */
+public class TestServiceIndex
+{
+	private static final int NUM_SERVICES = 100;
+	private static final String[] ZONES = {"ZoneA", "ZoneB", "ZoneC"};
+	private static final String[] CONTEXTS = {CommonConstants.DEFAULT_CONTEXT_NAME, "ContextB"};
+	private static final int MEASURE_ITERATIONS = 20;
+
+	private SIF3Session scanSession = new SIF3Session();
+	private SIF3Session indexSession = new SIF3Session();
+	
+	public TestServiceIndex()
+	{
+		SIFZone defaultZone = new SIFZone(ZONES[0], true);
+		scanSession.setDefaultZone(defaultZone);
+		indexSession.setDefaultZone(defaultZone);
+		
+		ArrayList<ServiceInfo> services = new ArrayList<ServiceInfo>();
+		for (int i = 0; i < NUM_SERVICES; i++)
+		{
+			for (String zoneID : ZONES)
+			{
+				for (String contextID : CONTEXTS)
+				{
+					ServiceInfo service = new ServiceInfo("Service"+i, ServiceType.OBJECT);
+					service.setZone(new SIFZone(zoneID, zoneID.equals(defaultZone.getId())));
+					service.setContext(new SIFContext(contextID, CommonConstants.DEFAULT_CONTEXT_NAME.equals(contextID)));
+					service.setRight(AccessRight.QUERY, AccessType.APPROVED);
+					service.setRight(AccessRight.CREATE, ((i + zoneID.length()) % 2 == 0) ? AccessType.APPROVED : AccessType.REJECTED);
+					service.setRight(AccessRight.SUBSCRIBE, (i % 3 == 0) ? AccessType.APPROVED : AccessType.SUPPORTED);
+					services.add(service);
+				}
+			}
+		}
+		scanSession.setServices(services);
+		indexSession.setServices(services);
+		indexSession.buildServiceIndex();
+	}
+	
+	private int checkAll(SIF3Session session)
+	{
+		int approved = 0;
+		for (int i = 0; i < NUM_SERVICES + 1; i++) // one unknown service
+		{
+			String serviceName = "Service"+i;
+			for (AccessRight right : AccessRight.values())
+			{
+				for (AccessType accessType : AccessType.values())
+				{
+					if (session.hasAccess(right, accessType, serviceName, null, null))
+					{
+						approved++;
+					}
+					for (String zoneID : ZONES)
+					{
+						for (String contextID : CONTEXTS)
+						{
+							if (session.hasAccess(right, accessType, serviceName, new SIFZone(zoneID), new SIFContext(contextID)))
+							{
+								approved++;
+							}
+						}
+					}
+				}
+			}
+		}
+		return approved;
+	}
+	
+	private void testSameResults()
+	{
+		System.out.println("Scan  hasAccess() count: "+checkAll(scanSession));
+		System.out.println("Index hasAccess() count: "+checkAll(indexSession));
+		
+		boolean same = true;
+		for (int i = 0; i < NUM_SERVICES + 1; i++)
+		{
+			String serviceName = "Service"+i;
+			same = same && scanSession.getServiceInfoForService(serviceName, ServiceType.OBJECT).equals(indexSession.getServiceInfoForService(serviceName, ServiceType.OBJECT));
+			same = same && scanSession.getServiceInfoForService(serviceName, ServiceType.OBJECT, AccessRight.SUBSCRIBE, AccessType.APPROVED).equals(indexSession.getServiceInfoForService(serviceName, ServiceType.OBJECT, AccessRight.SUBSCRIBE, AccessType.APPROVED));
+			for (String zoneID : ZONES)
+			{
+				for (String contextID : CONTEXTS)
+				{
+					same = same && (scanSession.getServiceInfoForService(new SIFZone(zoneID), new SIFContext(contextID), serviceName, ServiceType.OBJECT) == indexSession.getServiceInfoForService(new SIFZone(zoneID), new SIFContext(contextID), serviceName, ServiceType.OBJECT));
+				}
+			}
+		}
+		System.out.println("getServiceInfoForService() results identical: "+same);
+	}
+	
+	private void testTiming()
+	{
+		// warm up
+		for (int i = 0; i < MEASURE_ITERATIONS / 10; i++)
+		{
+			checkAll(scanSession);
+			checkAll(indexSession);
+		}
+		
+		long start = System.nanoTime();
+		for (int i = 0; i < MEASURE_ITERATIONS; i++)
+		{
+			checkAll(scanSession);
+		}
+		long scanTime = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		for (int i = 0; i < MEASURE_ITERATIONS; i++)
+		{
+			checkAll(indexSession);
+		}
+		long indexTime = System.nanoTime() - start;
+		
+		System.out.println("Scan : "+(scanTime / 1000000)+" ms for "+MEASURE_ITERATIONS+" iterations.");
+		System.out.println("Index: "+(indexTime / 1000000)+" ms for "+MEASURE_ITERATIONS+" iterations.");
+	}
+	
+	public static void main(String[] args)
+	{
+		TestServiceIndex tester = new TestServiceIndex();
+		System.out.println("Start Testing ServiceIndex...");
+		
+		tester.testSameResults();
+		tester.testTiming();
+		
+		System.out.println("End Testing ServiceIndex.");
+	}
+}
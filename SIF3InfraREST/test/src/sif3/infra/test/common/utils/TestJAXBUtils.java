@@ -142,7 +142,7 @@ public class TestJAXBUtils
 
   private EnvironmentType getEnvironmentFromJSONFile() throws UnmarshalException
   {
-    return (EnvironmentType) JAXBUtils.unmarshalFromJSONIntoObject(getEnvironmentJSONFile(), EnvironmentType.class);
+    return JAXBUtils.unmarshalFromJSONIntoObject(getEnvironmentJSONFile(), EnvironmentType.class);
   }
 
   private void writeEnvironmentToJSONFile(EnvironmentType environment) throws MarshalException
@@ -241,6 +241,54 @@ public class TestJAXBUtils
     EnvironmentType env = getEnvironmentFromJSONFile(); // get environment from file and converts it to object
     writeEnvironmentToXMLFile(env); // converts environment object to XML and writes it to a file.
 	}
+  
+  /*
+   * Marshals and unmarshals the same environment on a number of threads at the same time. Each thread must get
+   * back exactly what it marshalled.
+   */
+	private void testConcurrentRoundTrip(int numThreads, final int numIterations) throws Exception
+	{
+		final String expectedXML = testToXML();
+		final String expectedJSON = testToJSON();
+		final int[] failures = new int[1];
+		Thread[] threads = new Thread[numThreads];
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < numThreads; i++)
+		{
+			threads[i] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						for (int j = 0; j < numIterations; j++)
+						{
+							EnvironmentType env = (EnvironmentType) JAXBUtils.unmarshalFromXMLIntoObject(expectedXML, EnvironmentType.class);
+							boolean xmlOK = expectedXML.equals(JAXBUtils.marshalToXML(objFactory.createEnvironment(env)));
+							env = JAXBUtils.unmarshalFromJSONIntoObject(expectedJSON, EnvironmentType.class);
+							boolean jsonOK = expectedJSON.equals(JAXBUtils.marshalToJSON(objFactory.createEnvironment(env)));
+							if (!xmlOK || !jsonOK)
+							{
+								synchronized (failures) { failures[0]++; }
+							}
+						}
+					}
+					catch (Exception ex)
+					{
+						ex.printStackTrace();
+						synchronized (failures) { failures[0]++; }
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (int i = 0; i < numThreads; i++)
+		{
+			threads[i].join();
+		}
+		System.out.println("Concurrent round trip with "+numThreads+" threads x "+numIterations+" iterations took "+(System.currentTimeMillis()-start)+"ms. Failures: "+failures[0]);
+	}
 	
 	public static void main(String[] args)
 	{
@@ -265,6 +313,8 @@ public class TestJAXBUtils
 		  tester.testXMLToObjectToJSON();
 //			tester.testJSONToObjectToJSON();
 			tester.testJSONToObjectToXML();
+			
+			tester.testConcurrentRoundTrip(8, 500);
 		}
 		catch (Exception ex)
 		{
@@ -0,0 +1,158 @@
+/*
+ * TestJSONConventionCache.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.test.common.utils;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlType;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.codehaus.jettison.mapped.Configuration;
+import org.codehaus.jettison.mapped.MappedNamespaceConvention;
+import org.codehaus.jettison.mapped.MappedXMLStreamReader;
+import org.codehaus.jettison.mapped.MappedXMLStreamWriter;
+import org.codehaus.jettison.mapped.SimpleConverter;
+
+import sif3.common.utils.JAXBUtils;
+import sif3.infra.common.model.EnvironmentType;
+import sif3.infra.common.model.ObjectFactory;
+import au.com.systemic.framework.utils.FileReaderWriter;
+
+/**
+ * Compares the JSON marshal/unmarshal path of JAXBUtils (cached namespace convention per class) with the previous path that built
+ * the Jettison Configuration and MappedNamespaceConvention for every call. Both variants use the same marshaller and unmarshaller
+ * so the difference is the per call JSON setup only.
+ * 
+ * @author agent
+ *
+ */
+public class TestJSONConventionCache
+{
+	private final static String INPUT_ENV_FILE_NAME_XML = "TestData/xml/input/environment_large.xml";
+	
+	private static final int WARMUP_ITERATIONS = 2000;
+	private static final int MEASURE_ITERATIONS = 20000;
+
+	private ObjectFactory objFactory = new ObjectFactory();
+	private JAXBElement<EnvironmentType> envElement = null;
+	private String envJSON = null;
+	private Marshaller marshaller = null;
+	private Unmarshaller unmarshaller = null;
+	
+	public TestJSONConventionCache() throws Exception
+	{
+		EnvironmentType env = (EnvironmentType) JAXBUtils.unmarshalFromXMLIntoObject(FileReaderWriter.getFileContent(INPUT_ENV_FILE_NAME_XML), EnvironmentType.class);
+		envElement = objFactory.createEnvironment(env);
+		envJSON = JAXBUtils.marshalToJSON(envElement);
+		
+		JAXBContext ctx = JAXBContext.newInstance(EnvironmentType.class);
+		marshaller = ctx.createMarshaller();
+		unmarshaller = ctx.createUnmarshaller();
+	}
+	
+	/*
+	 * This is how JAXBUtils built the JSON convention before it was cached.
+	 */
+	private MappedNamespaceConvention getUncachedConvention(Class<?> clazz)
+	{
+		Configuration config = new Configuration();
+		Map<String, String> namespaceMapping = new HashMap<String, String>();
+		XmlType typeAnnotation = clazz.getAnnotation(XmlType.class);
+		if (typeAnnotation != null)
+		{
+			namespaceMapping.put(typeAnnotation.namespace(), "");
+		}
+		namespaceMapping.put("http://www.w3.org/2001/XMLSchema-instance", "xsi");
+		config.setXmlToJsonNamespaces(namespaceMapping);
+		config.setAttributeKey("@");
+		config.setTypeConverter(new SimpleConverter());
+		return new MappedNamespaceConvention(config);
+	}
+	
+	private String marshalUncached() throws Exception
+	{
+		StringWriter sw = new StringWriter();
+		MappedXMLStreamWriter writer = new MappedXMLStreamWriter(getUncachedConvention(EnvironmentType.class), sw);
+		writer.setValueKey("#text");
+		marshaller.marshal(envElement, writer);
+		return sw.toString();
+	}
+	
+	private Object unmarshalUncached() throws Exception
+	{
+		MappedXMLStreamReader reader = new MappedXMLStreamReader(new JSONObject(envJSON), getUncachedConvention(EnvironmentType.class));
+		reader.setValueKey("#text");
+		return unmarshaller.unmarshal(reader, EnvironmentType.class).getValue();
+	}
+	
+	private long runUncached(int iterations) throws Exception
+	{
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+		{
+			marshalUncached();
+			unmarshalUncached();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private long runCached(int iterations) throws Exception
+	{
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+		{
+			JAXBUtils.marshalToJSON(envElement);
+			JAXBUtils.unmarshalFromJSONIntoObject(envJSON, EnvironmentType.class);
+		}
+		return System.nanoTime() - start;
+	}
+	
+	private void report(String name, long nanos, int iterations)
+	{
+		System.out.println(name + ": " + (nanos / iterations / 1000) + " us per marshal+unmarshal (" + iterations + " iterations)");
+	}
+	
+	public void compare() throws Exception
+	{
+		System.out.println("Both paths produce the same JSON: " + marshalUncached().equals(JAXBUtils.marshalToJSON(envElement)));
+		
+		runUncached(WARMUP_ITERATIONS);
+		runCached(WARMUP_ITERATIONS);
+		
+		report("Convention per call", runUncached(MEASURE_ITERATIONS), MEASURE_ITERATIONS);
+		report("Cached convention  ", runCached(MEASURE_ITERATIONS), MEASURE_ITERATIONS);
+	}
+
+	public static void main(String[] args)
+	{
+		System.out.println("Start Testing JSON Convention Cache...");
+		try
+		{
+			new TestJSONConventionCache().compare();
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+		}
+		System.out.println("End Testing JSON Convention Cache.");
+	}
+}
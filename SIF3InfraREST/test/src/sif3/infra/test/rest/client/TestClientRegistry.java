@@ -0,0 +1,137 @@
+/*
+ * TestClientRegistry.java
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License 
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.test.rest.client;
+
+import java.net.URI;
+
+import javax.ws.rs.core.MediaType;
+
+import sif3.common.conversion.MarshalFactory;
+import sif3.common.conversion.UnmarshalFactory;
+import sif3.infra.common.conversion.InfraMarshalFactory;
+import sif3.infra.common.conversion.InfraUnmarshalFactory;
+import sif3.infra.rest.client.ClientInterface;
+import sif3.infra.rest.client.ClientRegistry;
+
+/**
+ * @author agent
+ *
+ */
+public class TestClientRegistry
+{
+	private static final String BASE_URL = "http://localhost:9080/SIF3InfraREST/sif3/requests";
+
+	private MarshalFactory marshaller = new InfraMarshalFactory();
+	private UnmarshalFactory unmarshaller = new InfraUnmarshalFactory();
+
+	private void testReuse() throws Exception
+	{
+		ClientRegistry registry = ClientRegistry.getInstance();
+		URI uri = new URI(BASE_URL);
+		
+		ClientInterface client1 = registry.getClientInterface(uri, MediaType.APPLICATION_XML_TYPE, MediaType.APPLICATION_XML_TYPE, marshaller, unmarshaller, false);
+		ClientInterface client2 = registry.getClientInterface(uri, MediaType.APPLICATION_XML_TYPE, MediaType.APPLICATION_XML_TYPE, new InfraMarshalFactory(), new InfraUnmarshalFactory(), false);
+		ClientInterface client3 = registry.getClientInterface(uri, MediaType.APPLICATION_JSON_TYPE, MediaType.APPLICATION_JSON_TYPE, marshaller, unmarshaller, false);
+		
+		System.out.println("Same client for same key: "+(client1 == client2));
+		System.out.println("Different client for different media type: "+(client1 != client3));
+		System.out.println("Shared Jersey client: "+(client1.getClient() == client3.getClient()));
+		System.out.println(registry.getStatistics());
+	}
+
+	private void testConcurrentAccess() throws Exception
+	{
+		final ClientRegistry registry = ClientRegistry.getInstance();
+		final URI uri = new URI(BASE_URL);
+		Thread[] threads = new Thread[20];
+		for (int i = 0; i < threads.length; i++)
+		{
+			threads[i] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for (int j = 0; j < 1000; j++)
+					{
+						registry.getClientInterface(uri, MediaType.APPLICATION_XML_TYPE, MediaType.APPLICATION_XML_TYPE, marshaller, unmarshaller, false);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		System.out.println(registry.getStatistics());
+	}
+
+	private void testSharedRelease() throws Exception
+	{
+		// Consumer and provider in the same JVM.
+		ClientRegistry.register();
+		ClientRegistry.register();
+		ClientRegistry registry = ClientRegistry.getInstance();
+		ClientInterface client = registry.getClientInterface(new URI(BASE_URL), MediaType.APPLICATION_XML_TYPE, MediaType.APPLICATION_XML_TYPE, marshaller, unmarshaller, false);
+		
+		ClientRegistry.release(); // i.e. consumer shuts down
+		System.out.println("Registry kept after first release: "+(registry == ClientRegistry.getInstance()));
+		System.out.println("Jersey client kept after first release: "+(client.getClient() == ClientRegistry.getInstance().getJerseyClient(false)));
+		
+		ClientRegistry.release(); // i.e. provider shuts down
+		System.out.println("Registry shut down after last release: "+(registry != ClientRegistry.getInstance()));
+	}
+
+	private void testConnectionCounter() throws Exception
+	{
+		ClientRegistry registry = ClientRegistry.getInstance();
+		try
+		{
+			// Nothing listens on this port. The request fails but it still leases a connection while it runs.
+			registry.getJerseyClient(false).resource("http://localhost:1/nothing").get(String.class);
+		}
+		catch (Exception ex)
+		{
+			System.out.println("Request failed as expected: "+ex.getClass().getSimpleName());
+		}
+		System.out.println("Requests = "+registry.getRequestCount()+", leased = "+registry.getLeasedConnectionCount()+", peak leased = "+registry.getPeakLeasedConnectionCount());
+	}
+
+	public static void main(String[] args)
+	{
+		TestClientRegistry tester = new TestClientRegistry();
+
+		System.out.println("Start Testing ClientRegistry...");
+
+		try
+		{
+			tester.testReuse();
+			tester.testConcurrentAccess();
+			tester.testSharedRelease();
+			tester.testConnectionCounter();
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+		}
+		finally
+		{
+			ClientRegistry.shutdown();
+		}
+
+		System.out.println("End Testing ClientRegistry.");
+	}
+}
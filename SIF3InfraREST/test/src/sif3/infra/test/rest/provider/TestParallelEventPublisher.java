@@ -0,0 +1,185 @@
+/*
+ * TestParallelEventPublisher.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package sif3.infra.test.rest.provider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sif3.infra.rest.provider.ParallelEventPublisher;
+
+/**
+ * Simulates sending event batches to many zones where each send takes a few milliseconds (broker round trip). Compares the time
+ * of sending one zone after the other with the ParallelEventPublisher and checks that the events of each zone are sent in order
+ * and the in-flight limit holds.
+ * 
+ * @author agent
+ */
+public class TestParallelEventPublisher
+{
+	private static final int NUM_ZONES = 40;
+	private static final int NUM_BATCHES = 10;
+	private static final long SEND_MILLIS = 5;
+	
+	private List<List<Integer>> sentPerZone = new ArrayList<List<Integer>>();
+	private AtomicInteger inFlight = new AtomicInteger(0);
+	private AtomicInteger maxInFlight = new AtomicInteger(0);
+	
+	private void reset()
+	{
+		sentPerZone.clear();
+		for (int i = 0; i < NUM_ZONES; i++)
+		{
+			sentPerZone.add(Collections.synchronizedList(new ArrayList<Integer>()));
+		}
+		maxInFlight.set(0);
+	}
+	
+	private void send(int zone, int batch)
+	{
+		int current = inFlight.incrementAndGet();
+		synchronized (maxInFlight)
+		{
+			maxInFlight.set(Math.max(maxInFlight.get(), current));
+		}
+		try
+		{
+			Thread.sleep(zone % 3 == 0 ? SEND_MILLIS * 2 : SEND_MILLIS); // some zones are slower
+		}
+		catch (InterruptedException ex)
+		{
+			// nothing to do.
+		}
+		sentPerZone.get(zone).add(batch);
+		inFlight.decrementAndGet();
+	}
+	
+	private boolean inOrder()
+	{
+		for (List<Integer> sent : sentPerZone)
+		{
+			if (sent.size() != NUM_BATCHES)
+			{
+				return false;
+			}
+			for (int i = 0; i < sent.size(); i++)
+			{
+				if (sent.get(i) != i)
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	public void testSequential()
+	{
+		reset();
+		long start = System.currentTimeMillis();
+		for (int batch = 0; batch < NUM_BATCHES; batch++)
+		{
+			for (int zone = 0; zone < NUM_ZONES; zone++)
+			{
+				send(zone, batch);
+			}
+		}
+		System.out.println("Sequential: " + (System.currentTimeMillis() - start) + "ms, in order = " + inOrder());
+	}
+	
+	public void testParallel(int numThreads, int maxInFlightTasks)
+	{
+		reset();
+		ParallelEventPublisher publisher = new ParallelEventPublisher("TestPublisher", numThreads, maxInFlightTasks);
+		long start = System.currentTimeMillis();
+		for (int batch = 0; batch < NUM_BATCHES; batch++)
+		{
+			for (int zone = 0; zone < NUM_ZONES; zone++)
+			{
+				final int zoneNo = zone;
+				final int batchNo = batch;
+				publisher.submit("zone" + zone + "|DEFAULT", new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						send(zoneNo, batchNo);
+					}
+				});
+			}
+		}
+		publisher.awaitCompletion();
+		System.out.println("Parallel (" + numThreads + " threads, max in flight " + publisher.getMaxInFlight() + "): " + (System.currentTimeMillis() - start) + "ms, in order = " + inOrder() + ", max concurrent sends = " + maxInFlight.get() + ", in flight after completion = " + publisher.getNumInFlight());
+		publisher.shutdown();
+	}
+	
+	/*
+	 * Another caller keeps submitting tasks while awaitCompletion() is called. It must return once the tasks submitted before 
+	 * the call have finished.
+	 */
+	public void testAwaitWhileSubmitting() throws Exception
+	{
+		reset();
+		final ParallelEventPublisher publisher = new ParallelEventPublisher("TestPublisher", 2, 4);
+		Thread pusher = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				int batch = 0;
+				while (!Thread.currentThread().isInterrupted())
+				{
+					final int batchNo = batch++;
+					publisher.submit("zone0|DEFAULT", new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							send(0, batchNo);
+						}
+					});
+				}
+			}
+		});
+		pusher.start();
+		Thread.sleep(50);
+		long start = System.currentTimeMillis();
+		publisher.awaitCompletion();
+		System.out.println("Await while submitting returned after " + (System.currentTimeMillis() - start) + "ms, pusher still running = " + pusher.isAlive());
+		pusher.interrupt();
+		pusher.join();
+		publisher.shutdown();
+	}
+	
+	public static void main(String[] args)
+	{
+		TestParallelEventPublisher tester = new TestParallelEventPublisher();
+		System.out.println("Start Testing TestParallelEventPublisher...");
+		try
+		{
+			tester.testSequential();
+			tester.testParallel(4, 8);
+			tester.testParallel(8, 16);
+			tester.testParallel(16, 64);
+			tester.testAwaitWhileSubmitting();
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+		}
+		System.out.println("End Testing TestParallelEventPublisher.");
+	}
+}
@@ -19,6 +19,8 @@
 package sif3.infra.test.rest.provider;
 
 import sif3.infra.common.env.types.AdapterEnvironmentStore;
+import sif3.infra.rest.provider.ProviderClassInfo;
+import sif3.infra.rest.provider.ProviderClassInfo.Lifecycle;
 import sif3.infra.rest.provider.ProviderFactory;
 
 /**
@@ -27,10 +29,36 @@ import sif3.infra.rest.provider.ProviderFactory;
  */
 public class TestProviderFactory
 {	
+	private static void testLifecycle(Lifecycle lifecycle) throws Exception
+	{
+		ProviderClassInfo info = new ProviderClassInfo(Object.class, new Class[] {});
+		info.setLifecycle(lifecycle, null, 1);
+		
+		Object first = info.acquireInstance();
+		info.releaseInstance(first);
+		Object second = info.acquireInstance();
+		Object third = info.acquireInstance(); // pool is empty now (POOLED) => new instance
+		info.releaseInstance(second);
+		info.releaseInstance(third); // pool is full (POOLED) => discarded
+		
+		System.out.println(lifecycle+": same instance after release = "+(first == second)+", same instance while in use = "+(second == third));
+	}
+	
 	public static void main(String[] args)
 	  {
 	    
 	    System.out.println("Start Testing TestProviderFactory...");
+		try
+		{
+			testLifecycle(Lifecycle.PER_REQUEST);
+			testLifecycle(Lifecycle.SINGLETON);
+			testLifecycle(Lifecycle.POOLED);
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+		}
+		
 		AdapterEnvironmentStore store = new AdapterEnvironmentStore("StudentProvider");
 	    
 	    ProviderFactory.createFactory(store.getAdapterProperties());
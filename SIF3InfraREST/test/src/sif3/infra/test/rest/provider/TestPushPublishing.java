@@ -0,0 +1,422 @@
+/*
+ * TestPushPublishing.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package sif3.infra.test.rest.provider;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import sif.dd.au30.conversion.DataModelMarshalFactory;
+import sif.dd.au30.conversion.DataModelUnmarshalFactory;
+import sif.dd.au30.model.StudentCollectionType;
+import sif.dd.au30.model.StudentPersonalType;
+import sif3.common.conversion.MarshalFactory;
+import sif3.common.conversion.ModelObjectInfo;
+import sif3.common.conversion.UnmarshalFactory;
+import sif3.common.header.HeaderProperties;
+import sif3.common.header.HeaderValues.EventAction;
+import sif3.common.header.HeaderValues.ServiceType;
+import sif3.common.header.HeaderValues.UpdateType;
+import sif3.common.interfaces.SIFEventIterator;
+import sif3.common.model.PagingInfo;
+import sif3.common.model.RequestMetadata;
+import sif3.common.model.SIFContext;
+import sif3.common.model.SIFEvent;
+import sif3.common.model.SIFZone;
+import sif3.common.model.ServiceInfo;
+import sif3.common.model.ServiceRights.AccessRight;
+import sif3.common.model.ServiceRights.AccessType;
+import sif3.common.persist.model.SIF3Session;
+import sif3.common.ws.CreateOperationStatus;
+import sif3.common.ws.OperationStatus;
+import sif3.infra.rest.client.EventClient;
+import sif3.infra.rest.provider.BaseEventProvider;
+import sif3.infra.rest.provider.EventPayloadCache;
+import au.com.systemic.framework.utils.AdvancedProperties;
+
+/**
+ * Pushes StudentPersonal events through BaseEventProvider.publish() to a stub provider that records what would be sent to each
+ * zone instead of sending it to a broker. Checks that events are combined (event.push.linger, getMaxObjectsInEvent() and the 
+ * default mergeEvents()), that events are rejected when the push buffer is full, that errors are reported against the pushed 
+ * events and that every pushed event is either sent to all zones or reported with onEventError() when the provider is shut down.
+ * 
+ * @author agent
+ */
+public class TestPushPublishing
+{
+	/*
+	 * Records the events per zone. Sending takes sendMillis and fails for the zone failZone.
+	 */
+	private static class PushProvider extends BaseEventProvider<StudentCollectionType>
+	{
+		private static MarshalFactory marshaller = new DataModelMarshalFactory();
+		private static UnmarshalFactory unmarshaller = new DataModelUnmarshalFactory();
+
+		private AdvancedProperties properties;
+		private SIF3Session session = new SIF3Session();
+		private int maxObjects;
+		private int numThreads;
+		private long sendMillis;
+		private String failZone;
+		
+		/* zone -> sizes of the events sent to the zone */
+		private Map<String, List<Integer>> sizesPerZone = new HashMap<String, List<Integer>>();
+		
+		/* zone -> refIds of the objects sent to the zone */
+		private Map<String, List<String>> sentPerZone = new HashMap<String, List<String>>();
+		
+		/* refIds and zones of the events given to onEventError() */
+		private List<String> errorRefIds = new ArrayList<String>();
+		private List<String> errorZones = new ArrayList<String>();
+		private int maxErrorListSize = 0;
+		
+		private PushProvider(String[] zones, int capacity, int linger, int timeout, int maxObjects, int numThreads, long sendMillis, String failZone)
+		{
+			super();
+			properties = new AdvancedProperties("providers/StudentProvider");
+			properties.getProperties().setProperty("event.push.capacity", String.valueOf(capacity));
+			properties.getProperties().setProperty("event.push.linger", String.valueOf(linger));
+			properties.getProperties().setProperty("event.push.timeout", String.valueOf(timeout));
+			this.maxObjects = maxObjects;
+			this.numThreads = numThreads;
+			this.sendMillis = sendMillis;
+			this.failZone = failZone;
+			
+			ArrayList<ServiceInfo> services = new ArrayList<ServiceInfo>();
+			for (String zone : zones)
+			{
+				ServiceInfo service = new ServiceInfo(getServiceName(), ServiceType.OBJECT);
+				service.setZone(new SIFZone(zone));
+				service.setContext(new SIFContext("DEFAULT"));
+				service.setRight(AccessRight.PROVIDE, AccessType.APPROVED);
+				services.add(service);
+				sizesPerZone.put(zone, new ArrayList<Integer>());
+				sentPerZone.put(zone, new ArrayList<String>());
+			}
+			session.setServices(services);
+		}
+		
+		@Override
+		public AdvancedProperties getServiceProperties()
+		{
+			return properties;
+		}
+		
+		@Override
+		public String getPrettyName()
+		{
+			return getProviderName();
+		}
+		
+		@Override
+		public int getMaxObjectsInEvent()
+		{
+			return maxObjects;
+		}
+		
+		@Override
+		public int getPublishThreads()
+		{
+			return numThreads;
+		}
+		
+		@Override
+		public boolean getMarshalOnce()
+		{
+			return false;
+		}
+		
+		@Override
+		protected SIF3Session getActiveSession()
+		{
+			return session;
+		}
+		
+		@Override
+		protected EventClient getEventClient(SIF3Session sif3Session)
+		{
+			return null; // events are recorded by sendEvents()
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		protected boolean sendEvents(EventClient evtClient, SIFEvent<?> sifEvents, EventPayloadCache payloadCache, SIFZone zone, SIFContext context, HeaderProperties customHTTPHeaders)
+		{
+			if (sendMillis > 0)
+			{
+				try
+				{
+					Thread.sleep(sendMillis);
+				}
+				catch (InterruptedException ex)
+				{
+					Thread.currentThread().interrupt(); // a broker call would fail as well
+					return false;
+				}
+			}
+			if (zone.getId().equals(failZone))
+			{
+				return false;
+			}
+			synchronized (this)
+			{
+				sizesPerZone.get(zone.getId()).add(sifEvents.getListSize());
+				for (StudentPersonalType student : ((SIFEvent<StudentCollectionType>)sifEvents).getSIFObjectList().getStudentPersonal())
+				{
+					sentPerZone.get(zone.getId()).add(student.getRefId());
+				}
+			}
+			return true;
+		}
+		
+		@Override
+		public synchronized void onEventError(SIFEvent<StudentCollectionType> sifEvent, SIFZone zone, SIFContext context)
+		{
+			maxErrorListSize = Math.max(maxErrorListSize, sifEvent.getListSize());
+			for (StudentPersonalType student : sifEvent.getSIFObjectList().getStudentPersonal())
+			{
+				errorRefIds.add(student.getRefId());
+				errorZones.add((zone != null) ? zone.getId() : null);
+			}
+		}
+		
+		/*
+		 * Returns the number of the given refIds that have neither been sent to all zones nor been reported with onEventError().
+		 */
+		private synchronized int getNumLost(List<String> refIds)
+		{
+			int numLost = 0;
+			for (String refId : refIds)
+			{
+				boolean sentToAll = true;
+				for (List<String> sent : sentPerZone.values())
+				{
+					sentToAll = sentToAll && sent.contains(refId);
+				}
+				if (!sentToAll && !errorRefIds.contains(refId))
+				{
+					numLost++;
+				}
+			}
+			return numLost;
+		}
+		
+		@Override
+		public SIFEventIterator<StudentCollectionType> getSIFEvents()
+		{
+			return null; // only pushed events
+		}
+		
+		@Override
+		public SIFEvent<StudentCollectionType> modifyBeforePublishing(SIFEvent<StudentCollectionType> sifEvent, SIFZone zone, SIFContext context, HeaderProperties customHTTPHeaders)
+		{
+			return sifEvent;
+		}
+		
+		@Override
+		public MarshalFactory getMarshaller()
+		{
+			return marshaller;
+		}
+		
+		@Override
+		public UnmarshalFactory getUnmarshaller()
+		{
+			return unmarshaller;
+		}
+		
+		@Override
+		public ModelObjectInfo getSingleObjectClassInfo()
+		{
+			return new ModelObjectInfo("StudentPersonal", StudentPersonalType.class);
+		}
+		
+		@Override
+		public ModelObjectInfo getMultiObjectClassInfo()
+		{
+			return new ModelObjectInfo("StudentPersonals", StudentCollectionType.class);
+		}
+		
+		@Override
+		public void shutdown()
+		{
+		}
+		
+		@Override
+		public Object retrievByPrimaryKey(String resourceID, SIFZone zone, SIFContext context, RequestMetadata metadata)
+		{
+			return null;
+		}
+		
+		@Override
+		public Object createSingle(Object data, boolean useAdvisory, SIFZone zone, SIFContext context, RequestMetadata metadata)
+		{
+			return null;
+		}
+		
+		@Override
+		public boolean updateSingle(Object data, String resourceID, SIFZone zone, SIFContext context, RequestMetadata metadata)
+		{
+			return false;
+		}
+		
+		@Override
+		public boolean deleteSingle(String resourceID, SIFZone zone, SIFContext context, RequestMetadata metadata)
+		{
+			return false;
+		}
+		
+		@Override
+		public Object retrieve(SIFZone zone, SIFContext context, PagingInfo pagingInfo, RequestMetadata metadata)
+		{
+			return null;
+		}
+		
+		@Override
+		public List<CreateOperationStatus> createMany(Object data, boolean useAdvisory, SIFZone zone, SIFContext context, RequestMetadata metadata)
+		{
+			return null;
+		}
+		
+		@Override
+		public List<OperationStatus> updateMany(Object data, SIFZone zone, SIFContext context, RequestMetadata metadata)
+		{
+			return null;
+		}
+		
+		@Override
+		public List<OperationStatus> deleteMany(List<String> resourceIDs, SIFZone zone, SIFContext context, RequestMetadata metadata)
+		{
+			return null;
+		}
+	}
+	
+	private SIFEvent<StudentCollectionType> getEvent(String refId)
+	{
+		StudentPersonalType student = new StudentPersonalType();
+		student.setRefId(refId);
+		StudentCollectionType students = new StudentCollectionType();
+		students.getStudentPersonal().add(student);
+		return new SIFEvent<StudentCollectionType>(students, EventAction.CREATE, UpdateType.FULL, 1);
+	}
+	
+	/*
+	 * Publishes numEvents events and returns the refIds of the accepted ones.
+	 */
+	private List<String> push(PushProvider provider, int numEvents)
+	{
+		List<String> refIds = new ArrayList<String>();
+		for (int i = 0; i < numEvents; i++)
+		{
+			String refId = "student-" + i;
+			if (provider.publish(getEvent(refId)))
+			{
+				refIds.add(refId);
+			}
+		}
+		return refIds;
+	}
+	
+	private void waitForSent(PushProvider provider, long numSent, long maxMillis) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + maxMillis;
+		while ((provider.getNumPushSent() < numSent) && (System.currentTimeMillis() < deadline))
+		{
+			Thread.sleep(10);
+		}
+	}
+	
+	/*
+	 * 12 events of one object are combined into events of 5, 5 and 2 objects. The last one is sent once the linger time is over.
+	 */
+	public void testBatching() throws Exception
+	{
+		PushProvider provider = new PushProvider(new String[] {"zone1", "zone2"}, 100, 300, 1000, 5, 2, 0, null);
+		long start = System.currentTimeMillis();
+		List<String> refIds = push(provider, 12);
+		waitForSent(provider, 3, 5000);
+		long millis = System.currentTimeMillis() - start;
+		provider.finalise();
+		System.out.println("Batching: sizes zone1 = " + provider.sizesPerZone.get("zone1") + ", sizes zone2 = " + provider.sizesPerZone.get("zone2") + " (expected [5, 5, 2])");
+		System.out.println("Batching: in order = " + provider.sentPerZone.get("zone1").equals(refIds) + ", pushed = " + provider.getNumPushed() + ", sent = " + provider.getNumPushSent() + " (expected 3), errors = " + provider.errorRefIds.size() + ", took " + millis + "ms (expected >= linger 300ms)");
+	}
+	
+	/*
+	 * Sending blocks, so the flusher holds one event and the buffer of 2 events fills up. The other events are rejected after the 
+	 * push timeout.
+	 */
+	public void testBufferFull() throws Exception
+	{
+		PushProvider provider = new PushProvider(new String[] {"zone1"}, 2, 0, 50, 1, 1, 500, null);
+		List<String> refIds = push(provider, 6);
+		System.out.println("Buffer full: accepted = " + refIds.size() + " (expected 3), pushed = " + provider.getNumPushed() + ", rejected = " + provider.getNumPushRejected() + " (expected 3)");
+		waitForSent(provider, 3, 5000);
+		provider.finalise();
+		System.out.println("Buffer full: sent = " + provider.getNumPushSent() + " (expected 3), rejected after shut down = " + (provider.publish(getEvent("late")) ? 0 : 1) + " (expected 1)");
+	}
+	
+	/*
+	 * Sending to one of the zones fails. The combined event must be reported as the pushed events and not counted as sent.
+	 */
+	public void testZoneFailure() throws Exception
+	{
+		PushProvider provider = new PushProvider(new String[] {"zone1", "failing"}, 100, 100, 1000, 5, 2, 0, "failing");
+		List<String> refIds = push(provider, 5);
+		long deadline = System.currentTimeMillis() + 5000;
+		while ((provider.errorRefIds.size() < refIds.size()) && (System.currentTimeMillis() < deadline))
+		{
+			Thread.sleep(10);
+		}
+		provider.finalise();
+		Set<String> errorZones = new LinkedHashSet<String>(provider.errorZones);
+		System.out.println("Zone failure: sizes zone1 = " + provider.sizesPerZone.get("zone1") + " (expected [5]), reported = " + provider.errorRefIds.size() + " (expected 5), max reported list size = " + provider.maxErrorListSize + " (expected 1), reported zones = " + errorZones + " (expected [failing]), sent = " + provider.getNumPushSent() + " (expected 0)");
+	}
+	
+	/*
+	 * The provider is shut down while events are still being sent. Each pushed event must either have been sent to all zones or 
+	 * be reported.
+	 */
+	public void testShutdown() throws Exception
+	{
+		PushProvider provider = new PushProvider(new String[] {"zone1", "zone2", "zone3"}, 100, 0, 1000, 2, 2, 100, null);
+		List<String> refIds = push(provider, 20);
+		Thread.sleep(250);
+		provider.finalise();
+		Thread.sleep(300); // tasks that were running when shut down
+		int numReported = new LinkedHashSet<String>(provider.errorRefIds).size();
+		System.out.println("Shut down: pushed = " + refIds.size() + ", sent = " + provider.getNumPushSent() + " events, reported = " + numReported + " objects, max reported list size = " + provider.maxErrorListSize + " (expected 1), neither sent nor reported = " + provider.getNumLost(refIds) + " (expected 0)");
+	}
+	
+	public static void main(String[] args)
+	{
+		TestPushPublishing tester = new TestPushPublishing();
+		System.out.println("Start Testing TestPushPublishing...");
+		try
+		{
+			tester.testBatching();
+			tester.testBufferFull();
+			tester.testZoneFailure();
+			tester.testShutdown();
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+		}
+		System.out.println("End Testing TestPushPublishing.");
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * TestDelayedResponseRegistry.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.test.rest.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sif3.common.header.HeaderProperties;
+import sif3.common.header.HeaderValues.ResponseAction;
+import sif3.common.header.HeaderValues.ServiceType;
+import sif3.common.header.ResponseHeaderConstants;
+import sif3.common.interfaces.DelayedResponseHandler;
+import sif3.common.model.DelayedRequestReceipt;
+import sif3.common.utils.UUIDGenerator;
+import sif3.common.ws.Response;
+import sif3.infra.rest.queue.DelayedResponseFuture;
+import sif3.infra.rest.queue.DelayedResponseRegistry;
+
+/**
+ * Registers DELAYED requests, delivers responses for some of them, lets one time out and cancels one. Also delivers a paged response
+ * whose pages arrive out of order and twice.
+ * 
+ * @author agent
+ */
+public class TestDelayedResponseRegistry
+{
+	private AtomicInteger numResponses = new AtomicInteger(0);
+	private AtomicInteger numTimeouts = new AtomicInteger(0);
+	
+	private DelayedResponseHandler handler = new DelayedResponseHandler()
+	{
+		@Override
+		public void onDelayedResponse(Response response, DelayedRequestReceipt receipt)
+		{
+			numResponses.incrementAndGet();
+			response.setDataObject("Handled on " + Thread.currentThread().getName());
+		}
+
+		@Override
+		public void onDelayedTimeout(DelayedRequestReceipt receipt)
+		{
+			numTimeouts.incrementAndGet();
+		}
+	};
+	
+	private DelayedResponseFuture register(long timeoutMillis)
+	{
+		DelayedRequestReceipt receipt = new DelayedRequestReceipt(UUIDGenerator.getUUID(), "StudentPersonals", ServiceType.OBJECT, ResponseAction.QUERY, null, null);
+		return DelayedResponseRegistry.getInstance().register(receipt, handler, timeoutMillis);
+	}
+	
+	private Response makeResponse(String requestID)
+	{
+		Response response = new Response();
+		response.setHdrProperties(new HeaderProperties());
+		response.getHdrProperties().setHeaderProperty(ResponseHeaderConstants.HDR_REQUEST_ID, requestID);
+		response.setStatus(200);
+		return response;
+	}
+	
+	public void testCorrelation() throws Exception
+	{
+		DelayedResponseRegistry registry = DelayedResponseRegistry.getInstance();
+		registry.start("testQueue", 2);
+		
+		int numRequests = 1000;
+		DelayedResponseFuture[] futures = new DelayedResponseFuture[numRequests];
+		for (int i = 0; i < numRequests; i++)
+		{
+			futures[i] = register(60000);
+		}
+		System.out.println("Duplicate registration returns null: " + (registry.register(futures[0].getReceipt(), handler, 1000) == null));
+		
+		// Responses arrive in reverse order.
+		for (int i = numRequests - 1; i >= 0; i--)
+		{
+			registry.onResponse(makeResponse(futures[i].getRequestID()));
+		}
+		int numOK = 0;
+		for (DelayedResponseFuture future : futures)
+		{
+			Response response = future.get(5, TimeUnit.SECONDS);
+			numOK += ((response != null) && future.getRequestID().equals(response.getHdrProperties().getHeaderProperty(ResponseHeaderConstants.HDR_REQUEST_ID))) ? 1 : 0;
+		}
+		System.out.println("Completed futures with matching response: " + numOK + " of " + numRequests + ", handler calls = " + numResponses.get() + ", " + futures[0].get());
+		System.out.println("Late duplicate response is matched: " + registry.onResponse(makeResponse(futures[0].getRequestID())) + " (expected false)");
+		
+		DelayedResponseFuture timedOut = register(200);
+		DelayedResponseFuture cancelled = register(60000);
+		System.out.println("Cancel: " + cancelled.cancel(false) + ", isCancelled = " + cancelled.isCancelled());
+		long start = System.currentTimeMillis();
+		System.out.println("Timed out request returns " + timedOut.get() + " after " + (System.currentTimeMillis() - start) + "ms, isTimedOut = " + timedOut.isTimedOut() + ", timeout handler calls = " + numTimeouts.get());
+		System.out.println("Response after timeout is matched: " + registry.onResponse(makeResponse(timedOut.getRequestID())) + " (expected false)");
+		
+		DelayedResponseFuture pending = register(60000);
+		registry.shutdown();
+		System.out.println("Pending request at shutdown is cancelled: " + pending.isCancelled());
+		System.out.println(registry);
+	}
+	
+	public void testPagedResponse() throws Exception
+	{
+		DelayedResponseRegistry registry = DelayedResponseRegistry.getInstance();
+		registry.start("testQueue", 2);
+		int numResponsesBefore = numResponses.get();
+		
+		DelayedResponseFuture future = register(60000);
+		int numPages = 3;
+		int[] pageOrder = {2, 0, 2, 1};
+		for (int i = 0; i < pageOrder.length; i++)
+		{
+			Response page = makeResponse(future.getRequestID());
+			page.getHdrProperties().setHeaderProperty(ResponseHeaderConstants.HDR_PAGE_NO, String.valueOf(pageOrder[i]));
+			page.getHdrProperties().setHeaderProperty(ResponseHeaderConstants.HDR_LAST_PAGE_NO, String.valueOf(numPages));
+			boolean matched = registry.onResponse(page);
+			Thread.sleep(50);
+			System.out.println("Page " + pageOrder[i] + " matched = " + matched + ", request done = " + future.isDone() + ", pending = " + (registry.getPendingRequest(future.getRequestID()) != null));
+		}
+		Response response = future.get(5, TimeUnit.SECONDS);
+		System.out.println("Paged response: handler calls = " + (numResponses.get() - numResponsesBefore) + " (expected " + numPages + "), last page = " + response.getHdrProperties().getHeaderProperty(ResponseHeaderConstants.HDR_PAGE_NO));
+		System.out.println("Page after completion is matched: " + registry.onResponse(makeResponse(future.getRequestID())) + " (expected false)");
+		registry.shutdown();
+	}
+	
+	public static void main(String[] args)
+	{
+		TestDelayedResponseRegistry tester = new TestDelayedResponseRegistry();
+		System.out.println("Start Testing TestDelayedResponseRegistry...");
+		try
+		{
+			tester.testCorrelation();
+			tester.testPagedResponse();
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+		}
+		System.out.println("End Testing TestDelayedResponseRegistry.");
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * TestEventBatcher.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.test.rest.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sif3.common.conversion.MarshalFactory;
+import sif3.common.conversion.ModelObjectInfo;
+import sif3.common.conversion.UnmarshalFactory;
+import sif3.common.header.HeaderValues.EventAction;
+import sif3.common.header.HeaderValues.UpdateType;
+import sif3.common.interfaces.BatchEventConsumer;
+import sif3.common.interfaces.EventConsumer;
+import sif3.common.model.EventMetadata;
+import sif3.common.model.SIFContext;
+import sif3.common.model.SIFEvent;
+import sif3.common.model.SIFEventBatch;
+import sif3.common.model.SIFZone;
+import sif3.infra.rest.queue.EventBatcher;
+import sif3.infra.rest.queue.LocalBatchConsumer;
+import sif3.infra.rest.queue.LocalConsumerQueue;
+import sif3.infra.rest.queue.types.EventInfo;
+import sif3.infra.rest.queue.types.StageMetrics;
+import systemic.sif3.demo.rest.conversion.CSVMarshaller;
+import systemic.sif3.demo.rest.conversion.CSVUnmarshaller;
+
+/**
+ * Pushes events of two zones on a local queue and checks that they are delivered in batches per zone.
+ * 
+ * @author agent
+ */
+public class TestEventBatcher
+{
+	private static final int BATCH_SIZE = 10;
+	private static final long MAX_WAIT = 200;
+	
+	private static class TestBatchConsumer implements EventConsumer<String>, BatchEventConsumer<String>
+	{
+		private List<String> batches = new ArrayList<String>();
+		private int numSingleEvents = 0;
+		
+		@Override
+		public synchronized boolean processEvents(SIFEventBatch<String> batch, String consumerID)
+		{
+			batches.add(batch.getZone().getId() + ":" + batch.size());
+			
+			// Fail batches that contain a 'bad' event.
+			for (SIFEvent<String> event : batch.getEvents())
+			{
+				if (event.getSIFObjectList().startsWith("bad"))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public synchronized void onEvent(SIFEvent<String> sifEvent, SIFZone zone, SIFContext context, EventMetadata metadata, String msgReadID, String consumerID)
+		{
+			numSingleEvents++;
+		}
+
+		@Override
+		public SIFEvent<String> createEventObject(Object sifObjectList, EventAction eventAction, UpdateType updateType)
+		{
+			return new SIFEvent<String>((String)sifObjectList, eventAction, updateType, 1);
+		}
+
+		@Override
+		public MarshalFactory getMarshaller()
+		{
+			return new CSVMarshaller();
+		}
+
+		@Override
+		public UnmarshalFactory getUnmarshaller()
+		{
+			return new CSVUnmarshaller();
+		}
+
+		@Override
+		public ModelObjectInfo getSingleObjectClassInfo()
+		{
+			return new ModelObjectInfo("CSVStudent", String.class);
+		}
+
+		@Override
+		public ModelObjectInfo getMultiObjectClassInfo()
+		{
+			return new ModelObjectInfo("CSVStudents", String.class);
+		}
+	}
+	
+	private void pushEvents(LocalConsumerQueue queue, String zoneID, int num, String prefix)
+	{
+		for (int i = 0; i < num; i++)
+		{
+			queue.blockingPush(new EventInfo(prefix + "Student" + i, new CSVUnmarshaller().getDefault(), EventAction.CREATE, null, new SIFZone(zoneID), new SIFContext("DEFAULT", true)));
+		}
+	}
+	
+	public void testBatches() throws Exception
+	{
+		LocalConsumerQueue queue = new LocalConsumerQueue(100, "TestBatchQueue", null);
+		TestBatchConsumer consumer = new TestBatchConsumer();
+		StageMetrics decodeMetrics = new StageMetrics("Decode");
+		StageMetrics processMetrics = new StageMetrics("Process");
+		EventBatcher batcher = new EventBatcher(queue, consumer, "TestBatcher", "CSVStudents", BATCH_SIZE, MAX_WAIT, 10, decodeMetrics);
+		Thread worker = new Thread(new LocalBatchConsumer(batcher, "TestBatchConsumer", consumer, true, processMetrics));
+		worker.setDaemon(true);
+		worker.start();
+		batcher.start();
+		
+		pushEvents(queue, "zoneA", 15, "");
+		pushEvents(queue, "zoneB", 10, "");
+		pushEvents(queue, "zoneC", 3, "bad");
+		Thread.sleep(MAX_WAIT * 3);
+		
+		System.out.println("Batches (zone:size): " + consumer.batches + " - expected [zoneA:10, zoneB:10, zoneA:5, zoneC:3] (order of the last two may differ)");
+		System.out.println("Events delivered one by one after failed batch: " + consumer.numSingleEvents + " - expected 3");
+		System.out.println(decodeMetrics);
+		System.out.println(processMetrics);
+		batcher.shutdown();
+	}
+	
+	public static void main(String[] args)
+	{
+		TestEventBatcher tester = new TestEventBatcher();
+		System.out.println("Start Testing TestEventBatcher...");
+		
+		try
+		{
+			tester.testBatches();
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+		}
+		
+		System.out.println("End Testing TestEventBatcher.");
+	}
+}
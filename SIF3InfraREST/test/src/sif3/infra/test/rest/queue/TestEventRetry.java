@@ -0,0 +1,246 @@
+/*
+ * TestEventRetry.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package sif3.infra.test.rest.queue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sif3.common.conversion.MarshalFactory;
+import sif3.common.conversion.ModelObjectInfo;
+import sif3.common.conversion.UnmarshalFactory;
+import sif3.common.header.HeaderValues.EventAction;
+import sif3.common.header.HeaderValues.UpdateType;
+import sif3.common.interfaces.EventConsumer;
+import sif3.common.model.EventMetadata;
+import sif3.common.model.SIFContext;
+import sif3.common.model.SIFEvent;
+import sif3.common.model.SIFZone;
+import sif3.infra.rest.queue.EventRetryStage;
+import sif3.infra.rest.queue.LocalConsumerQueue;
+import sif3.infra.rest.queue.LocalMessageConsumer;
+import sif3.infra.rest.queue.persist.DeadLetterStore;
+import sif3.infra.rest.queue.persist.DeadLetterStore.DeadLetter;
+import sif3.infra.rest.queue.types.EventInfo;
+import systemic.sif3.demo.rest.conversion.CSVMarshaller;
+import systemic.sif3.demo.rest.conversion.CSVUnmarshaller;
+
+/**
+ * Pushes good, flaky (fail twice), bad (always fail) and undecodable events on a local queue. Checks that good events are not held
+ * up by retries, flaky events recover, bad and undecodable events end up in the dead letter store and that they can be replayed.
+ * Also checks that the dead letter store survives a torn record, a record that cannot be decoded and a crash during a replay.
+ * 
+ * @author agent
+ */
+public class TestEventRetry
+{
+	private static final File DIR = new File(System.getProperty("java.io.tmpdir"), "testDeadLetters");
+	private static final int NUM_GOOD = 1000;
+	private static final int NUM_FLAKY = 10;
+	private static final int NUM_BAD = 5;
+	private static final int NUM_UNDECODABLE = 2;
+	
+	private static class FlakyConsumer implements EventConsumer<String>
+	{
+		private ConcurrentHashMap<String, AtomicInteger> attempts = new ConcurrentHashMap<String, AtomicInteger>();
+		private AtomicInteger numGood = new AtomicInteger(0);
+		private AtomicInteger numProcessed = new AtomicInteger(0);
+		private volatile boolean healed = false;
+		private volatile long lastGoodTime = 0;
+		
+		@Override
+		public void onEvent(SIFEvent<String> sifEvent, SIFZone zone, SIFContext context, EventMetadata metadata, String msgReadID, String consumerID)
+		{
+			String payload = sifEvent.getSIFObjectList();
+			attempts.putIfAbsent(payload, new AtomicInteger(0));
+			int attempt = attempts.get(payload).incrementAndGet();
+			if (payload.startsWith("flaky") && (attempt <= 2))
+			{
+				throw new RuntimeException("Flaky failure " + attempt + " for " + payload);
+			}
+			if (payload.startsWith("bad") && !healed)
+			{
+				throw new RuntimeException("Permanent failure for " + payload);
+			}
+			if (payload.startsWith("good"))
+			{
+				numGood.incrementAndGet();
+				lastGoodTime = System.currentTimeMillis();
+			}
+			numProcessed.incrementAndGet();
+		}
+
+		@Override
+		public SIFEvent<String> createEventObject(Object sifObjectList, EventAction eventAction, UpdateType updateType)
+		{
+			if (((String)sifObjectList).startsWith("undecodable"))
+			{
+				throw new IllegalArgumentException("Cannot decode " + sifObjectList);
+			}
+			return new SIFEvent<String>((String)sifObjectList, eventAction, updateType, 1);
+		}
+
+		@Override
+		public MarshalFactory getMarshaller()
+		{
+			return new CSVMarshaller();
+		}
+
+		@Override
+		public UnmarshalFactory getUnmarshaller()
+		{
+			return new CSVUnmarshaller();
+		}
+
+		@Override
+		public ModelObjectInfo getSingleObjectClassInfo()
+		{
+			return new ModelObjectInfo("CSVStudent", String.class);
+		}
+
+		@Override
+		public ModelObjectInfo getMultiObjectClassInfo()
+		{
+			return new ModelObjectInfo("CSVStudents", String.class);
+		}
+	}
+	
+	private void pushEvents(LocalConsumerQueue queue, String prefix, int num)
+	{
+		for (int i = 0; i < num; i++)
+		{
+			queue.blockingPush(new EventInfo(prefix + "Student" + i, new CSVUnmarshaller().getDefault(), EventAction.CREATE, null, new SIFZone("auTestSchool"), new SIFContext("DEFAULT", true)));
+		}
+	}
+	
+	public void testRetry() throws Exception
+	{
+		new File(DIR, "TestRetryConsumer.dlq").delete();
+		new File(DIR, "TestRetryConsumer.dlq.taken").delete();
+		DeadLetterStore deadLetterStore = new DeadLetterStore("TestRetryConsumer", DIR);
+		
+		LocalConsumerQueue queue = new LocalConsumerQueue(100, "TestRetryQueue", null);
+		FlakyConsumer consumer = new FlakyConsumer();
+		EventRetryStage retryStage = new EventRetryStage("TestRetryConsumer", consumer, 3, 200, 1000, 1, deadLetterStore);
+		retryStage.start();
+		for (int i = 0; i < 2; i++)
+		{
+			LocalMessageConsumer localConsumer = new LocalMessageConsumer(queue, null, "TestRetryConsumer " + (i + 1), consumer, null, null);
+			localConsumer.setRetryStage(retryStage);
+			Thread worker = new Thread(localConsumer);
+			worker.setDaemon(true);
+			worker.start();
+		}
+		
+		long start = System.currentTimeMillis();
+		pushEvents(queue, "flaky", NUM_FLAKY);
+		pushEvents(queue, "bad", NUM_BAD);
+		pushEvents(queue, "undecodable", NUM_UNDECODABLE);
+		pushEvents(queue, "good", NUM_GOOD);
+		while (consumer.numGood.get() < NUM_GOOD)
+		{
+			Thread.sleep(5);
+		}
+		System.out.println("All " + NUM_GOOD + " good events processed after " + (consumer.lastGoodTime - start) + "ms, retries pending at that time = " + retryStage.getNumPending());
+
+		// 3 attempts: 200ms and 400ms backoff plus jitter.
+		while ((retryStage.getNumPending() > 0) || (retryStage.getNumDeadLettered() < NUM_BAD + NUM_UNDECODABLE))
+		{
+			Thread.sleep(10);
+		}
+		System.out.println("Retries done after " + (System.currentTimeMillis() - start) + "ms: " + retryStage);
+		System.out.println("Recovered = " + retryStage.getNumRecovered() + " (expected " + NUM_FLAKY + "), dead letters = " + deadLetterStore.size() + " (expected " + (NUM_BAD + NUM_UNDECODABLE) + ")");
+		
+		// Re-open the store as after a restart.
+		DeadLetterStore reopened = new DeadLetterStore("TestRetryConsumer", DIR);
+		List<DeadLetter> deadLetters = reopened.readAll();
+		System.out.println("Re-opened store holds " + reopened.size() + " dead letters. First: attempts = " + deadLetters.get(0).getAttempts() + ", reason = " + deadLetters.get(0).getReason());
+		
+		// Replay after the consumer has been fixed. Undecodable events go back to the store.
+		consumer.healed = true;
+		int processedBefore = consumer.numProcessed.get();
+		List<DeadLetter> replay = deadLetterStore.takeAll();
+		for (DeadLetter deadLetter : replay)
+		{
+			queue.blockingPush(deadLetter.getEventInfo());
+		}
+		deadLetterStore.removeTaken();
+		Thread.sleep(500);
+		System.out.println("Replayed " + replay.size() + " events: processed = " + (consumer.numProcessed.get() - processedBefore) + " (expected " + NUM_BAD + "), dead letters = " + deadLetterStore.size() + " (expected " + NUM_UNDECODABLE + ")");
+		
+		// A retry that is pending at shutdown is dead-lettered.
+		consumer.healed = false;
+		pushEvents(queue, "bad", 1);
+		Thread.sleep(100);
+		retryStage.shutdown();
+		System.out.println("After shutdown: dead letters = " + deadLetterStore.size() + " (expected " + (NUM_UNDECODABLE + 1) + "), " + retryStage);
+	}
+	
+	public void testCorruptStore() throws Exception
+	{
+		File file = new File(DIR, "TestCorruptStore.dlq");
+		file.delete();
+		new File(DIR, "TestCorruptStore.dlq.taken").delete();
+		EventInfo eventInfo = new EventInfo("Student", new CSVUnmarshaller().getDefault(), EventAction.CREATE, null, new SIFZone("auTestSchool"), new SIFContext("DEFAULT", true));
+		
+		DeadLetterStore store = new DeadLetterStore("TestCorruptStore", DIR);
+		store.append(eventInfo, 1, "first");
+		store.append(eventInfo, 1, "second");
+		
+		// A record that has a valid length but cannot be decoded, then a torn record as after a crash during append.
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true));
+		out.writeInt(8);
+		out.writeLong(0);
+		out.writeInt(500);
+		out.write(new byte[10]);
+		out.close();
+		long tornLength = file.length();
+		
+		store = new DeadLetterStore("TestCorruptStore", DIR);
+		System.out.println("Torn record truncated: "+(file.length() == tornLength - 14)+", size = "+store.size()+" (expected 3)");
+		store.append(eventInfo, 1, "third");
+		store = new DeadLetterStore("TestCorruptStore", DIR);
+		System.out.println("Dead letters readable after append = "+store.readAll().size()+" (expected 3, undecodable one skipped)");
+		
+		// Crash during a replay: the taken dead letters are still in the store after a restart.
+		List<DeadLetter> taken = store.takeAll();
+		store.append(eventInfo, 1, "fourth");
+		store = new DeadLetterStore("TestCorruptStore", DIR);
+		System.out.println("Taken = "+taken.size()+", after restart: size = "+store.size()+" (expected 5), readAll = "+store.readAll().size()+" (expected 4)");
+		taken = store.takeAll();
+		store.removeTaken();
+		store = new DeadLetterStore("TestCorruptStore", DIR);
+		System.out.println("Replayed = "+taken.size()+" (expected 4), size after replay and restart = "+store.size()+" (expected 0)");
+	}
+	
+	public static void main(String[] args)
+	{
+		TestEventRetry tester = new TestEventRetry();
+		System.out.println("Start Testing TestEventRetry...");
+		try
+		{
+			tester.testRetry();
+			tester.testCorruptStore();
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+		}
+		System.out.println("End Testing TestEventRetry.");
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * TestMessageIdStore.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.test.rest.queue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sif3.common.utils.UUIDGenerator;
+import sif3.infra.rest.queue.persist.MessageIdStore;
+
+/**
+ * Checks the message ID store against a simple set, adds the same IDs from several threads, re-opens a persisted store and measures
+ * the time of a large store.
+ * 
+ * @author agent
+ */
+public class TestMessageIdStore
+{
+	private static final File DIR = new File(System.getProperty("java.io.tmpdir"), "testMessageIds");
+	
+	public void testAgainstSet() throws Exception
+	{
+		int capacity = 1000;
+		MessageIdStore store = new MessageIdStore("TestStore", capacity, 0, null);
+		LinkedHashSet<String> expected = new LinkedHashSet<String>();
+		List<String> allIDs = new ArrayList<String>();
+		Random random = new Random(42);
+		int errors = 0;
+		for (int i = 0; i < 100000; i++)
+		{
+			// Mostly new IDs, some re-deliveries of recent IDs. Some non UUID IDs.
+			String id = ((allIDs.size() > 0) && (random.nextInt(10) == 0)) ? allIDs.get(allIDs.size() - 1 - random.nextInt(Math.min(allIDs.size(), 2000))) : ((i % 7 == 0) ? "msg-" + i : UUIDGenerator.getUUID());
+			allIDs.add(id);
+			if (store.contains(id) != expected.contains(id))
+			{
+				errors++;
+			}
+			if (!expected.contains(id))
+			{
+				store.add(id);
+				expected.add(id);
+				if (expected.size() > capacity)
+				{
+					expected.remove(expected.iterator().next());
+				}
+			}
+		}
+		System.out.println("Compared with set: errors = " + errors + " (expected 0). " + store);
+	}
+	
+	/*
+	 * Several threads add the same IDs like readers that receive the same re-delivered messages. Each ID must be added by one 
+	 * thread only. Removed IDs can be added again.
+	 */
+	public void testAddIfAbsent(int numThreads, final int numIDs) throws Exception
+	{
+		final MessageIdStore store = new MessageIdStore("ConcurrentStore", numIDs, 0, null);
+		final List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < numIDs; i++)
+		{
+			ids.add(UUIDGenerator.getUUID());
+		}
+		final AtomicInteger numAdded = new AtomicInteger(0);
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++)
+		{
+			threads[t] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for (String id : ids)
+					{
+						if (store.addIfAbsent(id))
+						{
+							numAdded.incrementAndGet();
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		System.out.println(numThreads + " threads: IDs added = " + numAdded.get() + " (expected " + numIDs + "). " + store);
+		
+		store.remove(ids.get(10));
+		System.out.println("After remove: contains = " + store.contains(ids.get(10)) + ", size = " + store.size() + ", added again = " + store.addIfAbsent(ids.get(10)) + " (expected false, " + (numIDs - 1) + ", true)");
+	}
+	
+	public void testPersistence() throws Exception
+	{
+		new File(DIR, "PersistedStore.ids").delete();
+		MessageIdStore store = new MessageIdStore("PersistedStore", 100, 3600, DIR);
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 150; i++)
+		{
+			ids.add(UUIDGenerator.getUUID());
+			store.add(ids.get(i));
+		}
+		store.remove(ids.get(120));
+		store.flush();
+		
+		store = new MessageIdStore("PersistedStore", 100, 3600, DIR);
+		int found = 0;
+		for (String id : ids)
+		{
+			found += store.contains(id) ? 1 : 0;
+		}
+		System.out.println("After re-open: size = " + store.size() + ", found = " + found + " (expected 99, 99), last ID found = " + store.contains(ids.get(149)) + ", first ID found = " + store.contains(ids.get(0)) + ", removed ID found = " + store.contains(ids.get(120)));
+		new File(DIR, "PersistedStore.ids").delete();
+		DIR.delete();
+	}
+	
+	public void testLargeStore() throws Exception
+	{
+		int capacity = 1000000;
+		long heapBefore = usedHeap();
+		MessageIdStore store = new MessageIdStore("LargeStore", capacity, 0, null);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < capacity * 2; i++)
+		{
+			String id = UUIDGenerator.getUUID();
+			if (!store.contains(id))
+			{
+				store.add(id);
+			}
+		}
+		System.out.println("2M IDs checked and added in " + (System.currentTimeMillis() - start) + "ms. " + store);
+		System.out.println("Heap growth: " + (usedHeap() - heapBefore) / 1024 + "KB");
+	}
+	
+	private long usedHeap()
+	{
+		System.gc();
+		return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+	}
+	
+	public static void main(String[] args)
+	{
+		TestMessageIdStore tester = new TestMessageIdStore();
+		System.out.println("Start Testing TestMessageIdStore...");
+		try
+		{
+			tester.testAgainstSet();
+			tester.testAddIfAbsent(8, 100000);
+			tester.testPersistence();
+			tester.testLargeStore();
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+		}
+		System.out.println("End Testing TestMessageIdStore.");
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * TestPersistentLocalQueue.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.test.rest.queue;
+
+import java.io.File;
+
+import javax.ws.rs.core.MediaType;
+
+import sif3.common.header.HeaderValues.EventAction;
+import sif3.common.header.HeaderValues.UpdateType;
+import sif3.common.model.SIFContext;
+import sif3.common.model.SIFZone;
+import sif3.infra.rest.queue.LocalConsumerQueue;
+import sif3.infra.rest.queue.persist.SegmentedEventLog;
+import sif3.infra.rest.queue.types.EventInfo;
+
+/**
+ * Pushes events to a persistent local queue, re-opens the queue and checks that the events not yet taken off the
+ * queue are still available. Also checks that consumed segments of the log are deleted and that a re-opened log
+ * continues at the committed position.
+ * 
+ * @author agent
+ */
+public class TestPersistentLocalQueue
+{
+	private static final String WORKING_DIR = System.getProperty("java.io.tmpdir") + "/testLocalQueues";
+	private static final String QUEUE_ID = "TestLocalQueue";
+	private static final int NUM_EVENTS = 1000;
+	
+	private LocalConsumerQueue createQueue()
+	{
+		// Small segments to force roll-over.
+		return new LocalConsumerQueue(NUM_EVENTS, QUEUE_ID, WORKING_DIR, 10, 64 * 1024, false);
+	}
+	
+	private EventInfo createEvent(int i)
+	{
+		return new EventInfo("<StudentPersonal RefId=\"" + i + "\"/>", MediaType.APPLICATION_XML_TYPE, EventAction.UPDATE, UpdateType.PARTIAL, new SIFZone("testZone"), new SIFContext("DEFAULT", true));
+	}
+	
+	private void deleteDir(File dir)
+	{
+		File[] files = dir.listFiles();
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	public void testPushPullRecover()
+	{
+		deleteDir(new File(WORKING_DIR, QUEUE_ID));
+		
+		LocalConsumerQueue queue = createQueue();
+		System.out.println("Queue is persistent: " + queue.isPersistent());
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < NUM_EVENTS; i++)
+		{
+			queue.blockingPush(createEvent(i));
+		}
+		System.out.println("Pushed " + NUM_EVENTS + " events in " + (System.currentTimeMillis() - start) + "ms.");
+
+		// Take half of them off the queue.
+		for (int i = 0; i < NUM_EVENTS / 2; i++)
+		{
+			checkEvent(queue.blockingPull(), i);
+		}
+		queue.flush();
+
+		// Simulate restart.
+		queue = createQueue();
+		for (int i = NUM_EVENTS / 2; i < NUM_EVENTS; i++)
+		{
+			checkEvent(queue.blockingPull(), i);
+		}
+		queue.flush();
+		System.out.println("All events recovered. Segment files left: " + new File(WORKING_DIR, QUEUE_ID).list().length);
+		deleteDir(new File(WORKING_DIR, QUEUE_ID));
+	}
+	
+	public void testOverflowPolicy()
+	{
+		deleteDir(new File(WORKING_DIR, QUEUE_ID));
+		LocalConsumerQueue[] queues = {new LocalConsumerQueue(10, QUEUE_ID, WORKING_DIR), new LocalConsumerQueue(10, QUEUE_ID, WORKING_DIR, 3, 64 * 1024, false)};
+		for (LocalConsumerQueue queue : queues)
+		{
+			queue.setHighWaterMark(8);
+			queue.setOverflowPolicy(LocalConsumerQueue.OverflowPolicy.DROP_OLDEST, 0);
+			for (int i = 0; i < 15; i++)
+			{
+				queue.blockingPush(createEvent(i));
+			}
+			System.out.println("Persistent = " + queue.isPersistent() + ": depth = " + queue.getDepth() + ", maxDepth = " + queue.getMaxDepth() + ", dropped = " + queue.getNumDropped() + ", aboveHighWaterMark = " + queue.isAboveHighWaterMark());
+			checkEvent(queue.blockingPull(), 5);
+
+			queue.setOverflowPolicy(LocalConsumerQueue.OverflowPolicy.TIMEOUT, 50);
+			queue.blockingPush(createEvent(15));
+			long start = System.currentTimeMillis();
+			boolean pushed = queue.blockingPush(createEvent(16));
+			System.out.println("TIMEOUT: pushed = " + pushed + " after " + (System.currentTimeMillis() - start) + "ms, dropped = " + queue.getNumDropped());
+			queue.flush();
+		}
+		deleteDir(new File(WORKING_DIR, QUEUE_ID));
+	}
+	
+	public void testSegmentRemoval() throws Exception
+	{
+		File dir = new File(WORKING_DIR, QUEUE_ID);
+		deleteDir(dir);
+		
+		// Each segment holds about 10 records. Records are committed as they are read.
+		SegmentedEventLog log = new SegmentedEventLog(dir, 1024, false);
+		int numRecords = 1000;
+		for (int i = 0; i < numRecords; i++)
+		{
+			log.append(("record-" + i + "-" + String.format("%80d", i)).getBytes("UTF-8"));
+			if (i % 3 == 0)
+			{
+				byte[] record = log.read();
+				log.commit(log.getReadPosition());
+				if ((record == null) || !new String(record, "UTF-8").startsWith("record-" + (i / 3) + "-"))
+				{
+					System.out.println("ERROR: Record " + (i / 3) + " not as expected.");
+				}
+			}
+		}
+		long committed = log.getReadPosition();
+		log.flush();
+		int numSegments = dir.list().length - 1; // without checkpoint file
+		
+		// Re-open and read the rest.
+		log = new SegmentedEventLog(dir, 1024, false);
+		int firstUnread = (numRecords + 2) / 3;
+		System.out.println("Segment files before re-open = " + numSegments + ", unread after re-open = " + log.getNumUnread() + " (expected " + (numRecords - firstUnread) + "), position kept = " + (log.getReadPosition() == committed));
+		byte[] record = log.read();
+		System.out.println("First record after re-open is record " + firstUnread + ": " + ((record != null) && new String(record, "UTF-8").startsWith("record-" + firstUnread + "-")));
+		while (log.read() != null)
+		{
+			log.commit(log.getReadPosition());
+		}
+		log.flush();
+		System.out.println("All records read. Segment files left: " + (dir.list().length - 1) + " (expected 1)");
+		deleteDir(dir);
+	}
+	
+	private void checkEvent(EventInfo event, int i)
+	{
+		String expected = "<StudentPersonal RefId=\"" + i + "\"/>";
+		if ((event == null) || !expected.equals(event.getEventPayload()) || (event.getEventAction() != EventAction.UPDATE) || !"testZone".equals(event.getZone().getId()))
+		{
+			System.out.println("ERROR: Event " + i + " not as expected: " + event);
+		}
+	}
+	
+	public static void main(String[] args)
+	{
+		TestPersistentLocalQueue tester = new TestPersistentLocalQueue();
+		System.out.println("Start Testing TestPersistentLocalQueue...");
+		
+		tester.testPushPullRecover();
+		tester.testOverflowPolicy();
+		try
+		{
+			tester.testSegmentRemoval();
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+		}
+		
+		System.out.println("End Testing TestPersistentLocalQueue.");
+	}
+}
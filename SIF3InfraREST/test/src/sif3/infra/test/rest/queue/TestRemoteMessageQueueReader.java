@@ -0,0 +1,295 @@
+/*
+ * TestRemoteMessageQueueReader.java
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package sif3.infra.test.rest.queue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response.Status;
+
+import sif3.common.CommonConstants;
+import sif3.common.exception.ServiceInvokationException;
+import sif3.common.header.HeaderProperties;
+import sif3.common.header.HeaderValues.EventAction;
+import sif3.common.header.HeaderValues.MessageType;
+import sif3.common.header.HeaderValues.ServiceType;
+import sif3.common.header.ResponseHeaderConstants;
+import sif3.common.model.SIFZone;
+import sif3.common.persist.model.SIF3Queue;
+import sif3.common.persist.model.SIF3Session;
+import sif3.common.ws.Response;
+import sif3.infra.common.env.types.ConsumerEnvironment;
+import sif3.infra.rest.client.MessageClient;
+import sif3.infra.rest.queue.LocalConsumerQueue;
+import sif3.infra.rest.queue.RemoteMessageQueueReader;
+import sif3.infra.rest.queue.types.EventInfo;
+import sif3.infra.rest.queue.types.QueueListenerInfo;
+
+/**
+ * Runs a RemoteMessageQueueReader with a prefetch window against a stub message client instead of a SIF queue. The stub re-delivers
+ * a message that hasn't been removed, yet, and records how each message is removed from the queue (deleteMessageId of the next GET 
+ * or a separate DELETE). The test checks that events are pushed to the local queue in the order of the queue, that no more messages 
+ * than the prefetch window allows are held by the reader and that each message is removed exactly once after it has been pushed.
+ * 
+ * @author agent
+ */
+public class TestRemoteMessageQueueReader
+{
+	private static final String ZONE_ID = "testZone";
+	private static final String SERVICE_NAME = "StudentPersonals";
+	
+	/* Order in which events have been pushed to the local queue. */
+	private List<String> pushed = Collections.synchronizedList(new ArrayList<String>());
+	
+	/*
+	 * A message client that serves a fixed list of messages. A message that is listed twice is only re-delivered if it hasn't been
+	 * removed, yet, like a SIF queue would do.
+	 */
+	private class StubMessageClient extends MessageClient
+	{
+		private List<String> messages = null;
+		private int next = 0;
+		private Map<String, Integer> numRemoved = new HashMap<String, Integer>();
+		private int numDelivered = 0;
+		private int numGetAcks = 0;
+		private int numDeletes = 0;
+		private int numEarlyRemoves = 0;
+		private int maxHeld = 0;
+		
+		public StubMessageClient(List<String> messages, ConsumerEnvironment consumerEnv, SIF3Session session) throws Exception
+		{
+			super(new URI("http://localhost:9080/queues/testQueue/messages"), consumerEnv, session);
+			this.messages = messages;
+		}
+		
+		@Override
+		public synchronized Response getMessage(String removeMsgID, String consumerInstanceID) throws ServiceInvokationException
+		{
+			if (remove(removeMsgID))
+			{
+				numGetAcks++;
+			}
+			while (next < messages.size())
+			{
+				String msgID = messages.get(next++);
+				if (!numRemoved.containsKey(msgID))
+				{
+					numRemoved.put(msgID, 0);
+					numDelivered++;
+					maxHeld = Math.max(maxHeld, numDelivered - pushed.size());
+					return makeEvent(msgID);
+				}
+				else if (numRemoved.get(msgID) == 0) // not removed, yet => re-deliver
+				{
+					return makeEvent(msgID);
+				}
+			}
+			Response response = new Response();
+			response.setHdrProperties(new HeaderProperties());
+			response.setStatus(Status.NO_CONTENT.getStatusCode());
+			return response;
+		}
+
+		@Override
+		public Response getMessage(String removeMsgID, String consumerInstanceID, int readTimeout) throws ServiceInvokationException
+		{
+			return getMessage(removeMsgID, consumerInstanceID);
+		}
+
+		@Override
+		public synchronized Response removeMessage(String removeMsgID, String consumerInstanceID) throws ServiceInvokationException
+		{
+			if (remove(removeMsgID))
+			{
+				numDeletes++;
+			}
+			Response response = new Response();
+			response.setHdrProperties(new HeaderProperties());
+			response.setStatus(Status.NO_CONTENT.getStatusCode());
+			return response;
+		}
+		
+		public synchronized boolean allRemoved()
+		{
+			return (next >= messages.size()) && !numRemoved.containsValue(0);
+		}
+		
+		public synchronized int getNumRemoved()
+		{
+			int numRemovedMsges = 0;
+			for (Integer count : numRemoved.values())
+			{
+				numRemovedMsges += (count > 0) ? 1 : 0;
+			}
+			return numRemovedMsges;
+		}
+		
+		public synchronized int getNumRemovedTwice()
+		{
+			int numTwice = 0;
+			for (Integer count : numRemoved.values())
+			{
+				numTwice += (count > 1) ? 1 : 0;
+			}
+			return numTwice;
+		}
+		
+		private boolean remove(String msgID)
+		{
+			if (msgID == null)
+			{
+				return false;
+			}
+			if (!pushed.contains(msgID))
+			{
+				numEarlyRemoves++;
+			}
+			Integer count = numRemoved.get(msgID);
+			numRemoved.put(msgID, (count == null) ? 1 : count + 1);
+			return true;
+		}
+		
+		private Response makeEvent(String msgID)
+		{
+			Response response = new Response();
+			response.setHdrProperties(new HeaderProperties());
+			response.setStatus(Status.OK.getStatusCode());
+			response.setMediaType(MediaType.APPLICATION_XML_TYPE);
+			response.getHdrProperties().setHeaderProperty(ResponseHeaderConstants.HDR_MESSAGE_ID, msgID);
+			response.getHdrProperties().setHeaderProperty(ResponseHeaderConstants.HDR_MESSAGE_TYPE, MessageType.EVENT.name());
+			response.getHdrProperties().setHeaderProperty(ResponseHeaderConstants.HDR_EVENT_ACTION, EventAction.CREATE.name());
+			response.getHdrProperties().setHeaderProperty(ResponseHeaderConstants.HDR_ZONE_ID, ZONE_ID);
+			response.getHdrProperties().setHeaderProperty(ResponseHeaderConstants.HDR_CONTEXT_ID, CommonConstants.DEFAULT_CONTEXT_NAME);
+			response.getHdrProperties().setHeaderProperty(ResponseHeaderConstants.HDR_SERVICE_NAME, SERVICE_NAME);
+			response.getHdrProperties().setHeaderProperty(ResponseHeaderConstants.HDR_SERVICE_TYPE, ServiceType.OBJECT.name());
+			response.setDataObject(msgID);
+			return response;
+		}
+	}
+	
+	/*
+	 * Local queue that takes a little while for each push, so that the prefetch window fills up.
+	 */
+	private class SlowLocalQueue extends LocalConsumerQueue
+	{
+		public SlowLocalQueue()
+		{
+			super(100000, "TestLocalQueue", null);
+		}
+
+		@Override
+		public boolean blockingPush(EventInfo event)
+		{
+			try
+			{
+				Thread.sleep(1);
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			boolean ok = super.blockingPush(event);
+			if (ok)
+			{
+				pushed.add(event.getEventPayload());
+			}
+			return ok;
+		}
+	}
+	
+	/*
+	 * Reads numMessages messages with the given prefetch size. If stopAfter is greater than 0 then the reader is stopped once that
+	 * many events have been pushed, otherwise once all messages have been removed from the queue.
+	 */
+	public void testPrefetch(int numMessages, int prefetchSize, int stopAfter) throws Exception
+	{
+		pushed.clear();
+		
+		// Every 10th message is re-delivered straight away because it is still in the prefetch window.
+		List<String> messages = new ArrayList<String>();
+		for (int i = 0; i < numMessages; i++)
+		{
+			messages.add("msg-" + i);
+			if (i % 10 == 5)
+			{
+				messages.add("msg-" + i);
+			}
+		}
+		
+		ConsumerEnvironment consumerEnv = new ConsumerEnvironment("TestReader");
+		consumerEnv.setMediaType(MediaType.APPLICATION_XML_TYPE);
+		consumerEnv.setPrefetchSize(prefetchSize);
+		consumerEnv.setPollFrequency(1);
+		consumerEnv.setPollMinWait(0);
+		SIF3Session session = new SIF3Session();
+		session.setDefaultZone(new SIFZone(ZONE_ID, true));
+		SIF3Queue queue = new SIF3Queue();
+		queue.setName("testQueue");
+		queue.setWaitTime(0L);
+		queue.setQueueType("IMMEDIATE");
+		QueueListenerInfo listenerInfo = new QueueListenerInfo(queue);
+		listenerInfo.addLocalConsumerQueue(ZONE_ID, CommonConstants.DEFAULT_CONTEXT_NAME, SERVICE_NAME, ServiceType.OBJECT.name(), new SlowLocalQueue());
+		
+		StubMessageClient client = new StubMessageClient(messages, consumerEnv, session);
+		RemoteMessageQueueReader reader = new RemoteMessageQueueReader(listenerInfo, consumerEnv, session, "TestReader 1", client);
+		Thread readerThread = new Thread(reader, "TestReader 1");
+		long start = System.currentTimeMillis();
+		readerThread.start();
+		while (!client.allRemoved() && ((stopAfter <= 0) || (pushed.size() < stopAfter)) && (System.currentTimeMillis() - start < 30000))
+		{
+			Thread.sleep(10);
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		readerThread.interrupt();
+		readerThread.join();
+		
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < pushed.size(); i++)
+		{
+			expected.add("msg-" + i);
+		}
+		System.out.println("Prefetch size " + prefetchSize + ((stopAfter > 0) ? ", stopped after " + stopAfter + " events" : "") + ": " + pushed.size() + " of " + numMessages + " events pushed in " + elapsed + "ms, in queue order: " + expected.equals(pushed));
+		System.out.println("  Max messages held by reader = " + client.maxHeld + " (window + 2 = " + (prefetchSize + 2) + ")");
+		System.out.println("  Removed with next GET = " + client.numGetAcks + ", with DELETE = " + client.numDeletes + ", removed twice = " + client.getNumRemovedTwice() + ", removed before pushed = " + client.numEarlyRemoves + ", all removed = " + client.allRemoved());
+		System.out.println("  Messages removed = " + client.getNumRemoved() + ", events pushed = " + pushed.size() + " (expected equal)");
+		System.out.println("  Reader received = " + reader.getNumMessagesReceived() + ", processed = " + reader.getNumMessagesProcessed());
+	}
+	
+	public static void main(String[] args)
+	{
+		TestRemoteMessageQueueReader tester = new TestRemoteMessageQueueReader();
+		System.out.println("Start Testing TestRemoteMessageQueueReader...");
+		try
+		{
+			tester.testPrefetch(1000, 1, 0);
+			tester.testPrefetch(1000, 10, 0);
+			tester.testPrefetch(1000, 50, 0);
+			tester.testPrefetch(1000, 50, 300); // stopped while the window is full
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+		}
+		System.out.println("End Testing TestRemoteMessageQueueReader.");
+	}
+}